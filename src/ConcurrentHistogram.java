@@ -0,0 +1,189 @@
+// File: ConcurrentHistogram.java
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative {@code long} values (e.g. latencies in
+ * nanoseconds or playlist lengths) that many threads can record into without
+ * locking.
+ *
+ * <p>
+ * Buckets are log-linear, in the style of HdrHistogram: values below 64 get a
+ * bucket each, and every power-of-two range above that is split into 32 equal
+ * sub-buckets, so any recorded value is reported within about 3% of its true
+ * value. The whole {@code long} range fits in 1888 counters. Recording is one
+ * atomic increment plus two uncontended updates; reading is a walk over the
+ * counters and may miss records that race with it.
+ * </p>
+ *
+ * @author …
+ */
+public final class ConcurrentHistogram {
+
+    /**
+     * Bits of precision kept inside each power-of-two range.
+     */
+    private static final int SUB_BITS = 5;
+
+    /**
+     * Number of sub-buckets per power-of-two range.
+     */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * Values below this get a bucket of their own.
+     */
+    private static final int LINEAR_LIMIT = 2 * SUB_COUNT;
+
+    /**
+     * Number of buckets needed for the whole {@code long} range.
+     */
+    private static final int BUCKETS = LINEAR_LIMIT
+            + (Long.SIZE - 2 - SUB_BITS) * SUB_COUNT;
+
+    /**
+     * Count of recorded values per bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of recorded values.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Sum of recorded values.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Largest recorded value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Returns the bucket holding {@code value}.
+     *
+     * @param value
+     *            a non-negative value
+     * @return its bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BITS;
+        int sub = (int) (value >>> shift);
+        return LINEAR_LIMIT + (shift - 1) * SUB_COUNT + (sub - SUB_COUNT);
+    }
+
+    /**
+     * Returns the largest value that falls in {@code bucket}.
+     *
+     * @param bucket
+     *            the bucket
+     * @return its upper bound
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_LIMIT) / SUB_COUNT + 1;
+        long sub = (bucket - LINEAR_LIMIT) % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Records one occurrence of {@code value}; negative values are recorded
+     * as 0.
+     *
+     * @param value
+     *            the value to record
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        this.counts.incrementAndGet(bucketOf(v));
+        this.count.increment();
+        this.sum.add(v);
+        long seen = this.max.get();
+        while (v > seen && !this.max.compareAndSet(seen, v)) {
+            seen = this.max.get();
+        }
+    }
+
+    /**
+     * Reports the number of recorded values.
+     *
+     * @return the count
+     */
+    public long count() {
+        return this.count.sum();
+    }
+
+    /**
+     * Reports the largest recorded value.
+     *
+     * @return the maximum, or 0 if nothing was recorded
+     */
+    public long max() {
+        return this.max.get();
+    }
+
+    /**
+     * Reports the mean of the recorded values.
+     *
+     * @return the mean, or 0 if nothing was recorded
+     */
+    public double mean() {
+        long n = this.count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        return (double) this.sum.sum() / n;
+    }
+
+    /**
+     * Reports the value below which {@code percentile} percent of the
+     * recorded values fall, within the precision of the buckets.
+     *
+     * @param percentile
+     *            the percentile, between 0 and 100
+     * @return the value at that percentile, or 0 if nothing was recorded
+     */
+    public long valueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Forgets every recorded value.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.set(0);
+    }
+
+}
@@ -0,0 +1,184 @@
+// File: CountMinSketch.java
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch: approximate occurrence counts of {@code long} items in a
+ * fixed amount of memory, whatever the number of distinct items.
+ *
+ * <p>
+ * The sketch is {@code depth} rows of {@code width} counters. Adding an item
+ * increments one counter per row, chosen by a per-row hash; its estimated
+ * count is the smallest of those counters. Estimates never undercount, and
+ * overcount by at most {@code e / width} times the total count with
+ * probability at least {@code 1 - exp(-depth)}. Two sketches of the same
+ * shape merge by adding their counters, giving the sketch of the combined
+ * stream.
+ * </p>
+ *
+ * @author …
+ */
+public final class CountMinSketch {
+
+    /**
+     * Counters, row after row.
+     */
+    private final long[] counts;
+
+    /**
+     * Number of rows.
+     */
+    private final int depth;
+
+    /**
+     * {@code width - 1}; the width is a power of two.
+     */
+    private final int mask;
+
+    /**
+     * Sum of all added counts.
+     */
+    private long total;
+
+    /**
+     * Constructor.
+     *
+     * @param width
+     *            counters per row
+     * @param depth
+     *            number of rows
+     * @requires width is a power of two AND 1 <= depth <= 16
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("width must be a power of two");
+        }
+        if (depth < 1 || depth > 16) {
+            throw new IllegalArgumentException("depth out of range");
+        }
+        this.counts = new long[width * depth];
+        this.depth = depth;
+        this.mask = width - 1;
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param other
+     *            the sketch to copy
+     */
+    public CountMinSketch(CountMinSketch other) {
+        this.counts = other.counts.clone();
+        this.depth = other.depth;
+        this.mask = other.mask;
+        this.total = other.total;
+    }
+
+    /**
+     * Scrambles {@code x} into a well-mixed 64-bit hash (the SplitMix64
+     * finalizer).
+     *
+     * @param x
+     *            the value
+     * @return its hash
+     */
+    static long mix(long x) {
+        long z = x + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the counter of {@code item} in row {@code row}, using double
+     * hashing from one 64-bit hash.
+     *
+     * @param hash
+     *            hash of the item
+     * @param row
+     *            the row
+     * @return the counter's index in {@code counts}
+     */
+    private int slot(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * (this.mask + 1) + ((h1 + row * h2) & this.mask);
+    }
+
+    /**
+     * Adds {@code count} occurrences of {@code item}.
+     *
+     * @param item
+     *            the item
+     * @param count
+     *            number of occurrences
+     * @return the item's estimated count afterwards
+     * @requires count >= 0
+     */
+    public long add(long item, long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count cannot be negative");
+        }
+        long hash = mix(item);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            int i = this.slot(hash, row);
+            this.counts[i] += count;
+            min = Math.min(min, this.counts[i]);
+        }
+        this.total += count;
+        return min;
+    }
+
+    /**
+     * Returns the estimated number of occurrences of {@code item}.
+     *
+     * @param item
+     *            the item
+     * @return an estimate, never below the true count
+     */
+    public long estimate(long item) {
+        long hash = mix(item);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            min = Math.min(min, this.counts[this.slot(hash, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * Reports the total count added, exactly.
+     *
+     * @return the sum of all added counts
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Adds every count of {@code other} to this sketch.
+     *
+     * @param other
+     *            a sketch of the same width and depth
+     * @requires other has the same width and depth as this
+     */
+    public void merge(CountMinSketch other) {
+        if (other.counts.length != this.counts.length
+                || other.depth != this.depth) {
+            throw new IllegalArgumentException("sketch shapes differ");
+        }
+        for (int i = 0; i < this.counts.length; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.total += other.total;
+    }
+
+    /**
+     * Resets every count to 0.
+     */
+    public void clear() {
+        Arrays.fill(this.counts, 0);
+        this.total = 0;
+    }
+
+}
@@ -0,0 +1,415 @@
+// File: FairPlaylistQueue.java
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Party-mode play queue shared by many contributors: each contributor's songs
+ * wait in their own queue, and songs are played by weighted round robin
+ * across contributors, so one contributor adding many songs cannot starve
+ * the others.
+ *
+ * <p>
+ * Scheduling is stride scheduling. Every contributor has a pass value, and
+ * the contributor with the smallest pass plays next; playing one of their
+ * songs adds {@code STRIDE / weight} to their pass, so over any stretch of
+ * time a contributor with weight 2 plays twice as many songs as one with
+ * weight 1; ties go to whoever reached that pass first. A contributor whose
+ * queue empties leaves the rotation and, on adding a song again, rejoins at
+ * the current pass, with no credit for the time away.
+ * </p>
+ *
+ * <p>
+ * Contributors with waiting songs are kept in a binary heap ordered by pass,
+ * so {@link #addSong(String, Song)} is O(1) (O(log k) when the contributor
+ * rejoins the rotation) and {@link #nextSong()} is O(log k) amortized, for k
+ * contributors with waiting songs. {@link #removeContributor(String)} leaves
+ * the contributor's heap entry behind, to be skipped when it comes up, and
+ * compacts the heap once such entries outnumber the live ones, so it is O(1)
+ * amortized. Unlike a {@link MusicPlaylist}, the queue does not wrap around:
+ * a song leaves it once {@link #nextSong()} moves past it.
+ * </p>
+ *
+ * <p>
+ * A contributor with no waiting songs and the default weight is forgotten
+ * once the virtual time reaches their pass: rejoining then starts at the
+ * current pass either way, so the queue only remembers contributors who
+ * have songs waiting, have a weight set, or have played recently.
+ * </p>
+ *
+ * @author …
+ */
+public final class FairPlaylistQueue {
+
+    /**
+     * Pass increment of a contributor with weight 1.
+     */
+    private static final long STRIDE = 1L << 20;
+
+    /**
+     * One contributor.
+     */
+    private static final class Contributor
+            implements Comparable<Contributor> {
+
+        /**
+         * The contributor's name.
+         */
+        private final String name;
+
+        /**
+         * The contributor's waiting songs.
+         */
+        private final ArrayDeque<Song> songs = new ArrayDeque<>();
+
+        /**
+         * Share of the plays, relative to other contributors.
+         */
+        private int weight = 1;
+
+        /**
+         * Virtual time of the contributor's next play.
+         */
+        private long pass;
+
+        /**
+         * When {@code pass} was last set, to break ties first come, first
+         * served.
+         */
+        private long ticket;
+
+        /**
+         * Constructor.
+         *
+         * @param name
+         *            the contributor's name
+         */
+        Contributor(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public int compareTo(Contributor other) {
+            if (this.pass != other.pass) {
+                return Long.compare(this.pass, other.pass);
+            }
+            return Long.compare(this.ticket, other.ticket);
+        }
+    }
+
+    /**
+     * A contributor whose queue emptied, and their pass at the time.
+     */
+    private static final class Departure {
+
+        /**
+         * The contributor's pass when their queue emptied.
+         */
+        private final long pass;
+
+        /**
+         * The contributor.
+         */
+        private final Contributor who;
+
+        /**
+         * Constructor.
+         *
+         * @param who
+         *            the contributor
+         */
+        Departure(Contributor who) {
+            this.pass = who.pass;
+            this.who = who;
+        }
+    }
+
+    /**
+     * Contributors, by name.
+     */
+    private final Map<String, Contributor> contributors = new HashMap<>();
+
+    /**
+     * Contributors with waiting songs, smallest pass first.
+     */
+    private final PriorityQueue<Contributor> ready = new PriorityQueue<>();
+
+    /**
+     * Entries of {@code ready} left by {@link #removeContributor(String)};
+     * their contributors have no waiting songs.
+     */
+    private int stale;
+
+    /**
+     * Contributors whose queue emptied, smallest pass first, to forget once
+     * the virtual time reaches their pass.
+     */
+    private final PriorityQueue<Departure> departed = new PriorityQueue<>(
+            Comparator.comparingLong((Departure d) -> d.pass));
+
+    /**
+     * The song playing, or null if the queue is empty.
+     */
+    private Song current;
+
+    /**
+     * Who added the song playing.
+     */
+    private String currentContributor;
+
+    /**
+     * Pass of the last contributor scheduled: the virtual time.
+     */
+    private long now;
+
+    /**
+     * Number of songs, including the current one.
+     */
+    private int length;
+
+    /**
+     * Number of pass updates so far, for tickets.
+     */
+    private long tickets;
+
+    /**
+     * Returns the contributor called {@code name}, registering it if needed.
+     *
+     * @param name
+     *            the name
+     * @return the contributor
+     */
+    private Contributor contributor(String name) {
+        Contributor c = this.contributors.get(name);
+        if (c == null) {
+            c = new Contributor(name);
+            this.contributors.put(name, c);
+        }
+        return c;
+    }
+
+    /**
+     * Sets the share of plays of {@code contributor}; the default weight is
+     * 1. Takes effect from the contributor's next play.
+     *
+     * @param contributor
+     *            the contributor
+     * @param weight
+     *            their weight
+     * @requires contributor != null AND 1 <= weight <= 1024
+     */
+    public void setWeight(String contributor, int weight) {
+        if (contributor == null) {
+            throw new IllegalArgumentException("contributor cannot be null");
+        }
+        if (weight < 1 || weight > 1024) {
+            throw new IllegalArgumentException("weight out of range");
+        }
+        this.contributor(contributor).weight = weight;
+    }
+
+    /**
+     * Adds {@code song} at the end of {@code contributor}'s queue. If the
+     * queue was empty, the song becomes current.
+     *
+     * @param contributor
+     *            who adds the song
+     * @param song
+     *            the song
+     * @requires contributor != null AND song != null
+     */
+    public void addSong(String contributor, Song song) {
+        if (contributor == null || song == null) {
+            throw new IllegalArgumentException(
+                    "contributor and song cannot be null");
+        }
+        Contributor c = this.contributor(contributor);
+        this.length++;
+        if (this.current == null) {
+            this.current = song;
+            this.currentContributor = c.name;
+            this.charge(c);
+            return;
+        }
+        c.songs.addLast(song);
+        if (c.songs.size() == 1) {
+            c.pass = Math.max(c.pass, this.now);
+            c.ticket = this.tickets++;
+            this.ready.add(c);
+        }
+    }
+
+    /**
+     * Adds a song titled {@code title} at the end of {@code contributor}'s
+     * queue.
+     *
+     * @param contributor
+     *            who adds the song
+     * @param title
+     *            the title
+     * @requires contributor != null AND title != null
+     */
+    public void addSong(String contributor, String title) {
+        if (title == null) {
+            throw new IllegalArgumentException("title cannot be null");
+        }
+        this.addSong(contributor, new Song(title));
+    }
+
+    /**
+     * Records that {@code c} was scheduled: advances the virtual time to its
+     * pass and moves its pass on by its stride.
+     *
+     * @param c
+     *            the contributor
+     */
+    private void charge(Contributor c) {
+        c.pass = Math.max(c.pass, this.now);
+        this.now = c.pass;
+        c.pass += STRIDE / c.weight;
+        c.ticket = this.tickets++;
+        if (c.songs.isEmpty()) {
+            this.departed.add(new Departure(c));
+        }
+        // forget whoever left and whose pass the virtual time has reached
+        while (!this.departed.isEmpty()
+                && this.departed.peek().pass <= this.now) {
+            Contributor gone = this.departed.poll().who;
+            if (gone.songs.isEmpty() && gone.pass <= this.now
+                    && gone.weight == 1
+                    && this.contributors.get(gone.name) == gone) {
+                this.contributors.remove(gone.name);
+            }
+        }
+    }
+
+    /**
+     * Returns the title of the song playing.
+     *
+     * @return the current title, or "No songs in playlist" if the queue is
+     *         empty
+     */
+    public String getCurrentSong() {
+        if (this.current == null) {
+            return "No songs in playlist";
+        }
+        return this.current.title();
+    }
+
+    /**
+     * Returns the song playing.
+     *
+     * @return the current song, or null if the queue is empty
+     */
+    public Song currentSong() {
+        return this.current;
+    }
+
+    /**
+     * Returns who added the song playing.
+     *
+     * @return the contributor, or null if the queue is empty
+     */
+    public String currentContributor() {
+        return this.currentContributor;
+    }
+
+    /**
+     * Drops the song playing and makes current the first waiting song of the
+     * contributor whose turn it is. Does nothing if the queue is empty.
+     */
+    public void nextSong() {
+        if (this.current == null) {
+            return;
+        }
+        this.length--;
+        Contributor c = this.ready.poll();
+        while (c != null && c.songs.isEmpty()) {
+            // left behind by removeContributor
+            this.stale--;
+            c = this.ready.poll();
+        }
+        if (c == null) {
+            this.current = null;
+            this.currentContributor = null;
+            return;
+        }
+        this.current = c.songs.pollFirst();
+        this.currentContributor = c.name;
+        this.charge(c);
+        if (!c.songs.isEmpty()) {
+            this.ready.add(c);
+        }
+    }
+
+    /**
+     * Removes every waiting song of {@code contributor}; the song playing is
+     * kept even if it is theirs.
+     *
+     * @param contributor
+     *            the contributor
+     * @return the number of songs removed
+     */
+    public int removeContributor(String contributor) {
+        Contributor c = this.contributors.remove(contributor);
+        if (c == null) {
+            return 0;
+        }
+        int removed = c.songs.size();
+        if (removed > 0) {
+            // c stays in the heap, skipped once it comes up
+            c.songs.clear();
+            this.length -= removed;
+            this.stale++;
+            if (this.stale > this.ready.size() - this.stale) {
+                this.ready.removeIf(x -> x.songs.isEmpty());
+                this.stale = 0;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Reports the number of songs in the queue, including the one playing.
+     *
+     * @return the length
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Reports the number of songs {@code contributor} has waiting.
+     *
+     * @param contributor
+     *            the contributor
+     * @return the number of their waiting songs
+     */
+    public int waiting(String contributor) {
+        Contributor c = this.contributors.get(contributor);
+        return c == null ? 0 : c.songs.size();
+    }
+
+    /**
+     * Reports the number of contributors with waiting songs.
+     *
+     * @return the number of contributors in the rotation
+     */
+    public int activeContributors() {
+        return this.ready.size() - this.stale;
+    }
+
+    /**
+     * Reports the number of contributors the queue remembers: those with
+     * waiting songs, with a weight set, or not yet forgotten after playing.
+     *
+     * @return the number of contributors remembered
+     */
+    int rememberedContributors() {
+        return this.contributors.size();
+    }
+
+}
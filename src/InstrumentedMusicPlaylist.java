@@ -0,0 +1,471 @@
+// File: InstrumentedMusicPlaylist.java
+
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+/**
+ * Decorator that forwards every call to another {@link MusicPlaylist} and
+ * records its latency (and, for calls that change the length, the resulting
+ * length) in a {@link PlaylistMetrics}.
+ *
+ * <p>
+ * When the metrics are disabled each call costs one extra volatile read and
+ * no clock reads or allocation. Calls that throw are not recorded.
+ * </p>
+ *
+ * <p>
+ * Playlists produced by {@link #newInstance()} are instrumented with the same
+ * metrics. {@link #transferFrom(MusicPlaylist)} accepts either another
+ * instrumented playlist or a playlist of the decorated kind.
+ * </p>
+ *
+ * @author …
+ */
+public final class InstrumentedMusicPlaylist implements MusicPlaylist {
+
+    /**
+     * Returned by {@link #start()} when recording is off.
+     */
+    private static final long OFF = Long.MIN_VALUE;
+
+    /**
+     * The decorated playlist.
+     */
+    private final MusicPlaylist delegate;
+
+    /**
+     * Where calls are recorded.
+     */
+    private final PlaylistMetrics metrics;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate
+     *            the playlist to instrument
+     * @param metrics
+     *            where to record its calls
+     * @requires delegate != null AND metrics != null
+     * @ensures <pre>
+     *          this = delegate
+     *          </pre>
+     */
+    public InstrumentedMusicPlaylist(MusicPlaylist delegate,
+            PlaylistMetrics metrics) {
+        if (delegate == null || metrics == null) {
+            throw new IllegalArgumentException(
+                    "delegate and metrics cannot be null");
+        }
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the decorated playlist.
+     *
+     * @return the decorated playlist
+     */
+    public MusicPlaylist delegate() {
+        return this.delegate;
+    }
+
+    /**
+     * Starts timing a call.
+     *
+     * @return the start time, or {@link #OFF} if recording is off
+     */
+    private long start() {
+        if (!this.metrics.isEnabled()) {
+            return OFF;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Finishes timing a call that does not change the length.
+     *
+     * @param op
+     *            the operation
+     * @param start
+     *            value returned by {@link #start()}
+     */
+    private void stop(PlaylistMetrics.Operation op, long start) {
+        if (start != OFF) {
+            this.metrics.record(op, System.nanoTime() - start, -1);
+        }
+    }
+
+    /**
+     * Finishes timing a call that may change the length, and records the new
+     * length.
+     *
+     * @param op
+     *            the operation
+     * @param start
+     *            value returned by {@link #start()}
+     */
+    private void stopResized(PlaylistMetrics.Operation op, long start) {
+        if (start != OFF) {
+            long nanos = System.nanoTime() - start;
+            this.metrics.record(op, nanos, this.delegate.length());
+        }
+    }
+
+    // Standard methods
+
+    @Override
+    public void clear() {
+        long start = this.start();
+        this.delegate.clear();
+        this.stopResized(PlaylistMetrics.Operation.CLEAR, start);
+    }
+
+    @Override
+    public MusicPlaylist newInstance() {
+        return new InstrumentedMusicPlaylist(this.delegate.newInstance(),
+                this.metrics);
+    }
+
+    @Override
+    public void transferFrom(MusicPlaylist source) {
+        if (source == this) {
+            throw new IllegalArgumentException("Cannot transfer from self");
+        }
+        MusicPlaylist from = source;
+        if (source instanceof InstrumentedMusicPlaylist) {
+            from = ((InstrumentedMusicPlaylist) source).delegate;
+        }
+        long start = this.start();
+        this.delegate.transferFrom(from);
+        this.stopResized(PlaylistMetrics.Operation.TRANSFER_FROM, start);
+    }
+
+    // Kernel methods
+
+    @Override
+    public void addSong(String song) {
+        long start = this.start();
+        this.delegate.addSong(song);
+        this.stopResized(PlaylistMetrics.Operation.ADD_SONG, start);
+    }
+
+    @Override
+    public void addSong(Song song) {
+        long start = this.start();
+        this.delegate.addSong(song);
+        this.stopResized(PlaylistMetrics.Operation.ADD_SONG, start);
+    }
+
+    @Override
+    public String removeSong(String song) {
+        long start = this.start();
+        String result = this.delegate.removeSong(song);
+        this.stopResized(PlaylistMetrics.Operation.REMOVE_SONG, start);
+        return result;
+    }
+
+    @Override
+    public String getCurrentSong() {
+        long start = this.start();
+        String result = this.delegate.getCurrentSong();
+        this.stop(PlaylistMetrics.Operation.GET_CURRENT_SONG, start);
+        return result;
+    }
+
+    @Override
+    public String titleAt(int index) {
+        long start = this.start();
+        String result = this.delegate.titleAt(index);
+        this.stop(PlaylistMetrics.Operation.TITLE_AT, start);
+        return result;
+    }
+
+    @Override
+    public Song songAt(int index) {
+        long start = this.start();
+        Song result = this.delegate.songAt(index);
+        this.stop(PlaylistMetrics.Operation.SONG_AT, start);
+        return result;
+    }
+
+    @Override
+    public int currentIndex() {
+        long start = this.start();
+        int result = this.delegate.currentIndex();
+        this.stop(PlaylistMetrics.Operation.CURRENT_INDEX, start);
+        return result;
+    }
+
+    @Override
+    public void nextSong() {
+        long start = this.start();
+        this.delegate.nextSong();
+        this.stop(PlaylistMetrics.Operation.NEXT_SONG, start);
+    }
+
+    @Override
+    public void insertSongAt(String song, int index) {
+        long start = this.start();
+        this.delegate.insertSongAt(song, index);
+        this.stopResized(PlaylistMetrics.Operation.INSERT_SONG_AT, start);
+    }
+
+    @Override
+    public void insertSongAt(Song song, int index) {
+        long start = this.start();
+        this.delegate.insertSongAt(song, index);
+        this.stopResized(PlaylistMetrics.Operation.INSERT_SONG_AT, start);
+    }
+
+    @Override
+    public String removeSongAt(int index) {
+        long start = this.start();
+        String result = this.delegate.removeSongAt(index);
+        this.stopResized(PlaylistMetrics.Operation.REMOVE_SONG_AT, start);
+        return result;
+    }
+
+    @Override
+    public String removeCurrentSong() {
+        long start = this.start();
+        String result = this.delegate.removeCurrentSong();
+        this.stopResized(PlaylistMetrics.Operation.REMOVE_CURRENT_SONG,
+                start);
+        return result;
+    }
+
+    @Override
+    public void goToSong(int index) {
+        long start = this.start();
+        this.delegate.goToSong(index);
+        this.stop(PlaylistMetrics.Operation.GO_TO_SONG, start);
+    }
+
+    @Override
+    public void moveSong(int from, int to) {
+        long start = this.start();
+        this.delegate.moveSong(from, to);
+        this.stop(PlaylistMetrics.Operation.MOVE_SONG, start);
+    }
+
+    @Override
+    public void moveRange(int from, int count, int to) {
+        long start = this.start();
+        this.delegate.moveRange(from, count, to);
+        this.stop(PlaylistMetrics.Operation.MOVE_RANGE, start);
+    }
+
+    // Secondary methods
+
+    @Override
+    public void previousSong() {
+        long start = this.start();
+        this.delegate.previousSong();
+        this.stop(PlaylistMetrics.Operation.PREVIOUS_SONG, start);
+    }
+
+    @Override
+    public void shuffle() {
+        long start = this.start();
+        this.delegate.shuffle();
+        this.stop(PlaylistMetrics.Operation.SHUFFLE, start);
+    }
+
+    @Override
+    public boolean contains(String song) {
+        long start = this.start();
+        boolean result = this.delegate.contains(song);
+        this.stop(PlaylistMetrics.Operation.CONTAINS, start);
+        return result;
+    }
+
+    @Override
+    public void displayPlaylist() {
+        long start = this.start();
+        this.delegate.displayPlaylist();
+        this.stop(PlaylistMetrics.Operation.DISPLAY_PLAYLIST, start);
+    }
+
+    @Override
+    public int length() {
+        long start = this.start();
+        int result = this.delegate.length();
+        this.stop(PlaylistMetrics.Operation.LENGTH, start);
+        return result;
+    }
+
+    @Override
+    public int[] searchPrefix(String prefix) {
+        long start = this.start();
+        int[] result = this.delegate.searchPrefix(prefix);
+        this.stop(PlaylistMetrics.Operation.SEARCH_PREFIX, start);
+        return result;
+    }
+
+    @Override
+    public int[] searchContaining(String fragment) {
+        long start = this.start();
+        int[] result = this.delegate.searchContaining(fragment);
+        this.stop(PlaylistMetrics.Operation.SEARCH_CONTAINING, start);
+        return result;
+    }
+
+    @Override
+    public int[] searchSimilar(String query) {
+        long start = this.start();
+        int[] result = this.delegate.searchSimilar(query);
+        this.stop(PlaylistMetrics.Operation.SEARCH_SIMILAR, start);
+        return result;
+    }
+
+    @Override
+    public int indexOfId(long id) {
+        long start = this.start();
+        int result = this.delegate.indexOfId(id);
+        this.stop(PlaylistMetrics.Operation.INDEX_OF_ID, start);
+        return result;
+    }
+
+    @Override
+    public void addSong(String song, long durationMillis) {
+        long start = this.start();
+        this.delegate.addSong(song, durationMillis);
+        this.stopResized(PlaylistMetrics.Operation.ADD_SONG, start);
+    }
+
+    @Override
+    public long totalDuration() {
+        long start = this.start();
+        long result = this.delegate.totalDuration();
+        this.stop(PlaylistMetrics.Operation.TOTAL_DURATION, start);
+        return result;
+    }
+
+    @Override
+    public long timeRemainingFromCurrent() {
+        long start = this.start();
+        long result = this.delegate.timeRemainingFromCurrent();
+        this.stop(PlaylistMetrics.Operation.TIME_REMAINING_FROM_CURRENT,
+                start);
+        return result;
+    }
+
+    @Override
+    public void goToTime(long millis) {
+        long start = this.start();
+        this.delegate.goToTime(millis);
+        this.stop(PlaylistMetrics.Operation.GO_TO_TIME, start);
+    }
+
+    @Override
+    public int distinct() {
+        long start = this.start();
+        int result = this.delegate.distinct();
+        this.stopResized(PlaylistMetrics.Operation.DISTINCT, start);
+        return result;
+    }
+
+    @Override
+    public void sort(Comparator<? super Song> order) {
+        long start = this.start();
+        this.delegate.sort(order);
+        this.stop(PlaylistMetrics.Operation.SORT, start);
+    }
+
+    @Override
+    public int removeIf(Predicate<? super Song> filter) {
+        long start = this.start();
+        int result = this.delegate.removeIf(filter);
+        this.stopResized(PlaylistMetrics.Operation.REMOVE_IF, start);
+        return result;
+    }
+
+    @Override
+    public void mergeFrom(MusicPlaylist... sources) {
+        MusicPlaylist[] unwrapped = sources.clone();
+        for (int i = 0; i < unwrapped.length; i++) {
+            if (sources[i] instanceof InstrumentedMusicPlaylist) {
+                // read the source directly, without recording the read
+                unwrapped[i] = ((InstrumentedMusicPlaylist) sources[i])
+                        .delegate;
+            }
+        }
+        long start = this.start();
+        this.delegate.mergeFrom(unwrapped);
+        this.stopResized(PlaylistMetrics.Operation.MERGE_FROM, start);
+    }
+
+    @Override
+    public void copyFrom(MusicPlaylist source) {
+        MusicPlaylist from = source;
+        if (source instanceof InstrumentedMusicPlaylist) {
+            from = ((InstrumentedMusicPlaylist) source).delegate;
+        }
+        long start = this.start();
+        this.delegate.copyFrom(from);
+        this.stopResized(PlaylistMetrics.Operation.COPY_FROM, start);
+    }
+
+    @Override
+    public PlaylistWindow window(int from, int count) {
+        long start = this.start();
+        if (from < 0 || count < 0 || from > this.delegate.length()) {
+            throw new IllegalArgumentException("window out of bounds");
+        }
+        // the window views this playlist, so that reads through it are
+        // recorded too
+        PlaylistWindow result = new PlaylistWindow(this, from, count);
+        this.stop(PlaylistMetrics.Operation.WINDOW, start);
+        return result;
+    }
+
+    @Override
+    public PlaylistWindow windowAroundCurrent(int count) {
+        long start = this.start();
+        PlaylistWindow inner = this.delegate.windowAroundCurrent(count);
+        this.stop(PlaylistMetrics.Operation.WINDOW_AROUND_CURRENT, start);
+        return new PlaylistWindow(this, inner.from(), count);
+    }
+
+    @Override
+    public Song[] songsInRange(int from, int count) {
+        long start = this.start();
+        Song[] result = this.delegate.songsInRange(from, count);
+        this.stop(PlaylistMetrics.Operation.SONGS_IN_RANGE, start);
+        return result;
+    }
+
+    // Object methods
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof InstrumentedMusicPlaylist)) {
+            return false;
+        }
+        MusicPlaylist other = ((InstrumentedMusicPlaylist) obj).delegate;
+        long start = this.start();
+        boolean result = this.delegate.equals(other);
+        this.stop(PlaylistMetrics.Operation.EQUALS, start);
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        long start = this.start();
+        int result = this.delegate.hashCode();
+        this.stop(PlaylistMetrics.Operation.HASH_CODE, start);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        long start = this.start();
+        String result = this.delegate.toString();
+        this.stop(PlaylistMetrics.Operation.TO_STRING, start);
+        return result;
+    }
+
+}
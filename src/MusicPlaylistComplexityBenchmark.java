@@ -0,0 +1,226 @@
+// File: MusicPlaylistComplexityBenchmark.java
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Scaling checks: times operations at size n and 8n on every kernel and
+ * reports whether the time grows faster than the documented complexity
+ * allows. The exponent is fitted from the best of several warmed-up runs and
+ * compared against the expected one with a wide margin, so that only a change
+ * in growth rate (for example O(n) becoming O(n^2)) is reported, not a noisy
+ * machine.
+ *
+ * <p>
+ * Wall-clock measurements are still at the mercy of the machine, so this is
+ * not part of the unit tests; run it on its own, on an otherwise idle machine,
+ * before merging changes to a kernel. The unit tests guard
+ * {@link MusicPlaylistOnSequence} by counting steps instead, in
+ * {@code MusicPlaylistOnSequenceGrowthTest}. Usage:
+ * {@code MusicPlaylistComplexityBenchmark [n]}; defaults to n = 2000. Exits
+ * with status 1 if any operation grows too fast.
+ * </p>
+ *
+ * @author …
+ */
+public final class MusicPlaylistComplexityBenchmark {
+
+    /**
+     * Ratio of the larger size to the smaller.
+     */
+    private static final int FACTOR = 8;
+
+    /**
+     * Allowed excess of the fitted exponent over the expected one.
+     */
+    private static final double SLACK = 0.6;
+
+    /**
+     * Runs per size; the fastest counts.
+     */
+    private static final int RUNS = 7;
+
+    /**
+     * Every kernel.
+     */
+    private static final List<Supplier<MusicPlaylist>> ALL = Arrays.asList(
+            MusicPlaylistOnSequence::new, MusicPlaylistOnColumns::new,
+            () -> new MusicPlaylistOnRga(1));
+
+    /**
+     * Result sink, so the measured calls are not optimized away.
+     */
+    private static long sink;
+
+    /**
+     * Smaller size measured.
+     */
+    private static int n;
+
+    /**
+     * Number of operations that grew too fast.
+     */
+    private static int failures;
+
+    /**
+     * No instances.
+     */
+    private MusicPlaylistComplexityBenchmark() {
+    }
+
+    /**
+     * Returns a playlist from {@code kernel} of {@code size} songs with many
+     * repeated titles, current in the middle.
+     *
+     * @param kernel
+     *            makes empty playlists
+     * @param size
+     *            number of songs
+     * @return the playlist
+     */
+    private static MusicPlaylist build(Supplier<MusicPlaylist> kernel,
+            int size) {
+        MusicPlaylist p = kernel.get();
+        for (int i = 0; i < size; i++) {
+            p.addSong(new Song(i, "t" + (i % 50), "a", 1000));
+        }
+        p.goToSong(size / 2);
+        return p;
+    }
+
+    /**
+     * Returns the best time in nanoseconds of the operation {@code setup}
+     * prepares on a playlist of {@code size} songs; the preparation is not
+     * timed.
+     *
+     * @param kernel
+     *            makes empty playlists
+     * @param size
+     *            number of songs
+     * @param setup
+     *            prepares the operation on a playlist
+     * @return the best time, at least 1
+     */
+    private static long time(Supplier<MusicPlaylist> kernel, int size,
+            Function<MusicPlaylist, LongSupplier> setup) {
+        LongSupplier op = setup.apply(build(kernel, size));
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++) {
+            long t0 = System.nanoTime();
+            sink += op.getAsLong();
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        return Math.max(best, 1);
+    }
+
+    /**
+     * Reports how the operation {@code setup} prepares grows on each of
+     * {@code kernels}, counting a failure for each kernel where it grows
+     * faster than n^{@code expected}.
+     *
+     * @param name
+     *            name of the operation
+     * @param expected
+     *            expected exponent
+     * @param kernels
+     *            the kernels to measure
+     * @param setup
+     *            prepares the operation on a playlist
+     */
+    private static void check(String name, double expected,
+            List<Supplier<MusicPlaylist>> kernels,
+            Function<MusicPlaylist, LongSupplier> setup) {
+        for (Supplier<MusicPlaylist> kernel : kernels) {
+            // warm up at both sizes first
+            time(kernel, n, setup);
+            time(kernel, n * FACTOR, setup);
+            double exponent = 0;
+            // a second attempt absorbs an unlucky pause
+            for (int attempt = 0; attempt < 2; attempt++) {
+                long small = time(kernel, n, setup);
+                long large = time(kernel, n * FACTOR, setup);
+                exponent = Math.log((double) large / small)
+                        / Math.log(FACTOR);
+                if (exponent <= expected + SLACK) {
+                    break;
+                }
+            }
+            boolean ok = exponent <= expected + SLACK;
+            if (!ok) {
+                failures++;
+            }
+            System.out.printf(Locale.ROOT,
+                    "%-4s %-10s on %-23s grows like n^%.2f, expected n^%.1f%n",
+                    ok ? "ok" : "SLOW", name,
+                    kernel.get().getClass().getSimpleName(), exponent,
+                    expected);
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            optional smaller size measured
+     */
+    public static void main(String[] args) {
+        n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        check("length", 0, ALL, p -> () -> {
+            long sum = 0;
+            for (int k = 0; k < 1000; k++) {
+                sum += p.length();
+            }
+            return sum;
+        });
+        check("equals", 1, ALL, p -> {
+            MusicPlaylist q = p.newInstance();
+            q.copyFrom(p);
+            return () -> p.equals(q) ? 1 : 0;
+        });
+        check("hashCode", 1, ALL, p -> () -> p.hashCode());
+        check("toString", 1, ALL, p -> () -> p.toString().length());
+        check("contains", 1, ALL, p -> () -> p.contains("missing") ? 1 : 0);
+        // n log n fits within the slack of a linear bound
+        check("addSong", 1, ALL,
+                p -> () -> build(p::newInstance, p.length()).length());
+        check("tailChurn", 0, ALL, p -> () -> {
+            for (int k = 0; k < 100; k++) {
+                p.removeSongAt(p.length() - 1);
+                p.addSong(new Song(k, "churn", "a", 1000));
+            }
+            return p.length();
+        });
+        check("insertMid", 1, ALL, p -> () -> {
+            for (int k = 0; k < 10; k++) {
+                p.insertSongAt(new Song(k, "mid", "a", 1000), p.length() / 2);
+            }
+            return p.length();
+        });
+        check("removeMid", 1, ALL, p -> () -> {
+            for (int k = 0; k < 10; k++) {
+                p.removeSongAt(p.length() / 2);
+                p.addSong(new Song(k, "refill", "a", 1000));
+            }
+            return p.length();
+        });
+        check("moveMid", 1, ALL, p -> () -> {
+            int quarter = p.length() / 4;
+            p.moveRange(quarter, quarter, 2 * quarter);
+            p.moveSong(p.length() / 2, p.length() / 3);
+            return p.currentIndex();
+        });
+        check("shuffle", 1, ALL, p -> () -> {
+            p.shuffle();
+            return p.currentIndex();
+        });
+        System.out.println("(checksum " + sink + ")");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+}
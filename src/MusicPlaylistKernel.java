@@ -27,6 +27,18 @@ public interface MusicPlaylistKernel extends Standard<MusicPlaylist> {
      */
     void addSong(String song);
 
+    /**
+     * Adds the given song, with its metadata, to the end of this playlist.
+     *
+     * @param song
+     *            the song to add
+     * @requires song != null
+     * @ensures <pre>
+     *          [song is appended to the end of this playlist]
+     *          </pre>
+     */
+    void addSong(Song song);
+
     /**
      * Removes the given song from this playlist, if present, and returns it.
      *
@@ -54,6 +66,53 @@ public interface MusicPlaylistKernel extends Standard<MusicPlaylist> {
      */
     String getCurrentSong();
 
+    /**
+     * Reports the song at the given position without moving the current song.
+     *
+     * @param index
+     *            position of the song
+     * @return the song at {@code index}
+     * @requires 0 <= index < songs.length()
+     * @ensures <pre>
+     *          titleAt = [title of songs.entry(index)]
+     *          </pre>
+     */
+    String titleAt(int index);
+
+    /**
+     * Reports the song, with its metadata, at the given position without
+     * moving the current song.
+     *
+     * @param index
+     *            position of the song
+     * @return the song at {@code index}
+     * @requires 0 <= index < songs.length()
+     * @ensures <pre>
+     *          songAt = songs.entry(index)
+     *          </pre>
+     */
+    Song songAt(int index);
+
+    /**
+     * Reports the position of the current song.
+     *
+     * @return the current index, or 0 if this playlist is empty
+     * @ensures <pre>
+     *          currentIndex = [position of the current song]
+     *          </pre>
+     */
+    int currentIndex();
+
+    /**
+     * Reports the number of songs in this playlist.
+     *
+     * @return the length of this playlist
+     * @ensures <pre>
+     *          [returns total number of songs in this playlist]
+     *          </pre>
+     */
+    int length();
+
     /**
      * Advances to the next song in this playlist, wrapping around if at the
      * end.
@@ -78,6 +137,20 @@ public interface MusicPlaylistKernel extends Standard<MusicPlaylist> {
      */
     void insertSongAt(String song, int index);
 
+    /**
+     * Inserts the given song, with its metadata, at the specified position.
+     *
+     * @param song
+     *            the song to insert
+     * @param index
+     *            position at which to insert
+     * @requires song != null AND 0 <= index <= songs.length()
+     * @ensures <pre>
+     *          songs.entry(index) = song AND songs.length() = #songs + 1
+     *          </pre>
+     */
+    void insertSongAt(Song song, int index);
+
     /**
      * Removes and returns the song at the specified position.
      *
@@ -113,4 +186,44 @@ public interface MusicPlaylistKernel extends Standard<MusicPlaylist> {
      */
     void goToSong(int index);
 
+    /**
+     * Moves the song at position {@code from} so that it ends up at position
+     * {@code to}, shifting the songs in between by one. The current song stays
+     * current (it may change position).
+     *
+     * @param from
+     *            position of the song to move
+     * @param to
+     *            position the song occupies afterwards
+     * @requires 0 <= from < songs.length() AND 0 <= to < songs.length()
+     * @ensures <pre>
+     *          songs.entry(to) = #songs.entry(from) AND
+     *          songs.length() = #songs.length() AND
+     *          [current song is unchanged]
+     *          </pre>
+     */
+    void moveSong(int from, int to);
+
+    /**
+     * Moves the {@code count} songs starting at position {@code from} as one
+     * block so that the block starts at position {@code to}, keeping the order
+     * of the songs inside the block. The current song stays current (it may
+     * change position).
+     *
+     * @param from
+     *            position of the first song in the block
+     * @param count
+     *            number of songs in the block
+     * @param to
+     *            position of the first song of the block afterwards
+     * @requires 0 <= from AND 0 <= count AND from + count <= songs.length()
+     *           AND 0 <= to <= songs.length() - count
+     * @ensures <pre>
+     *          [songs.entry(to + k) = #songs.entry(from + k)
+     *           for 0 <= k < count] AND songs.length() = #songs.length() AND
+     *          [current song is unchanged]
+     *          </pre>
+     */
+    void moveRange(int from, int count, int to);
+
 }
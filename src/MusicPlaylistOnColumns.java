@@ -0,0 +1,669 @@
+// File: MusicPlaylistOnColumns.java
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A concrete implementation of the MusicPlaylist component that stores songs
+ * column by column (struct-of-arrays): one primitive array per numeric field
+ * and one array of shared strings per text field.
+ *
+ * <p>
+ * Compared to {@link MusicPlaylistOnSequence}, no {@link Song} object is kept
+ * per entry, titles and artists shared by many entries are stored once (in a
+ * table private to the playlist, so nothing outlives it), and positional
+ * access, insertion at the end and aggregate scans (e.g.
+ * {@link #indexOfId(long)}, {@link #contains(String)}, {@link #equals}) run
+ * over the columns without building {@link Song} objects.
+ * </p>
+ *
+ * <p>
+ * <b>Representation Invariant:</b>
+ * <ul>
+ * <li>{@code 0 <= size <= ids.length = titles.length = artists.length =
+ * durations.length}.</li>
+ * <li>If {@code size == 0}, then {@code currentIndex == 0}.</li>
+ * <li>If {@code size > 0}, then {@code 0 <= currentIndex < size}.</li>
+ * <li>{@code titles[i]} and {@code artists[i]} are non-null values of
+ * {@code strings} for {@code 0 <= i < size}, and null for
+ * {@code i >= size}.</li>
+ * <li>{@code strings} maps each string to itself.</li>
+ * <li>{@code index} is null or indexes exactly {@code titles[0, size)} at
+ * their positions.</li>
+ * <li>{@code durationSums.get(i) = durations[i]} for
+ * {@code 0 <= i < size}.</li>
+ * <li>every position in {@code history} is in {@code [0, size)}.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * <b>Correspondence:</b> <br>
+ * Playlist ⟷ &lt;(ids[0], titles[0], artists[0], durations[0]), …,
+ * (ids[size-1], titles[size-1], artists[size-1], durations[size-1])&gt; with
+ * current song at {@code currentIndex}.
+ * </p>
+ *
+ * @author …
+ */
+public class MusicPlaylistOnColumns extends MusicPlaylistSecondary {
+
+    /**
+     * Initial capacity of the columns.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Catalog ids.
+     */
+    private long[] ids;
+
+    /**
+     * Titles, shared through {@code strings}.
+     */
+    private String[] titles;
+
+    /**
+     * Artists, shared through {@code strings}.
+     */
+    private String[] artists;
+
+    /**
+     * Durations in milliseconds.
+     */
+    private int[] durations;
+
+    /**
+     * One copy of every title and artist stored, so repeated ones share it.
+     */
+    private Map<String, String> strings;
+
+    /**
+     * Number of songs.
+     */
+    private int size;
+
+    /**
+     * Index of the current song.
+     */
+    private int currentIndex;
+
+    /**
+     * Title search index over {@code titles}, or null if no search ran since
+     * the playlist was created, cleared or bulk loaded: playlists that are
+     * never searched do not pay for it. Volatile, so that a search building
+     * it under the monitor publishes it safely to searches running
+     * concurrently.
+     */
+    private volatile SongSearchIndex index;
+
+    /**
+     * Prefix sums over {@code durations}, for time-based queries.
+     */
+    private PrefixSumTree durationSums;
+
+    /**
+     * Positions recently moved away from, for {@link #previousSong()}.
+     */
+    private PlayHistory history;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.ids = new long[INITIAL_CAPACITY];
+        this.titles = new String[INITIAL_CAPACITY];
+        this.artists = new String[INITIAL_CAPACITY];
+        this.durations = new int[INITIAL_CAPACITY];
+        this.strings = new HashMap<>();
+        this.size = 0;
+        this.currentIndex = 0;
+        this.index = null;
+        this.durationSums = new PrefixSumTree();
+        this.history = new PlayHistory();
+    }
+
+    /**
+     * Constructor: Initializes an empty MusicPlaylistOnColumns.
+     *
+     * @ensures <pre>
+     *          size = 0  and
+     *          currentIndex = 0
+     *          </pre>
+     */
+    public MusicPlaylistOnColumns() {
+        this.createNewRep();
+    }
+
+    /**
+     * Makes room for at least {@code capacity} songs.
+     *
+     * @param capacity
+     *            the required capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.ids.length) {
+            int grown = Math.max(capacity, this.ids.length * 2);
+            this.ids = Arrays.copyOf(this.ids, grown);
+            this.titles = Arrays.copyOf(this.titles, grown);
+            this.artists = Arrays.copyOf(this.artists, grown);
+            this.durations = Arrays.copyOf(this.durations, grown);
+        }
+    }
+
+    /**
+     * Returns the stored copy of {@code s}, storing it first if it is new.
+     * Strings no longer used are dropped once the table holds twice as many
+     * strings as the columns can refer to, so its size stays O(size) and the
+     * O(size) sweep is paid at most once per O(size) new strings.
+     *
+     * @param s
+     *            a title or artist
+     * @return the shared copy of {@code s}
+     */
+    private String share(String s) {
+        if (this.strings.size() > 4 * this.size + INITIAL_CAPACITY) {
+            Map<String, String> used = new HashMap<>();
+            for (int i = 0; i < this.size; i++) {
+                used.put(this.titles[i], this.titles[i]);
+                used.put(this.artists[i], this.artists[i]);
+            }
+            this.strings = used;
+        }
+        String shared = this.strings.putIfAbsent(s, s);
+        return shared == null ? s : shared;
+    }
+
+    /**
+     * Checks that {@code index} is a valid song position.
+     *
+     * @param index
+     *            the position to check
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+    }
+
+    /**
+     * Removes the song at {@code index} from every column and fixes
+     * {@code currentIndex}.
+     *
+     * @param index
+     *            position of the song to remove
+     * @return title of the removed song
+     */
+    private String removeAt(int index) {
+        String removed = this.titles[index];
+        int tail = this.size - index - 1;
+        System.arraycopy(this.ids, index + 1, this.ids, index, tail);
+        System.arraycopy(this.titles, index + 1, this.titles, index, tail);
+        System.arraycopy(this.artists, index + 1, this.artists, index, tail);
+        System.arraycopy(this.durations, index + 1, this.durations, index,
+                tail);
+        this.size--;
+        this.titles[this.size] = null;
+        this.artists[this.size] = null;
+        if (this.index != null) {
+            this.index.remove(index, removed);
+        }
+        this.durationSums.remove(index);
+        this.history.removed(index);
+        if (this.size == 0) {
+            this.currentIndex = 0;
+        } else if (index < this.currentIndex) {
+            this.currentIndex--;
+        } else if (this.currentIndex >= this.size) {
+            this.currentIndex = 0;
+        }
+        return removed;
+    }
+
+    /**
+     * Rebuilds {@code durationSums} from the columns, in O(size), and drops
+     * {@code index} until the next search.
+     */
+    private void rebuildIndexes() {
+        this.index = null;
+        long[] millis = new long[this.size];
+        for (int i = 0; i < this.size; i++) {
+            millis[i] = this.durations[i];
+        }
+        this.durationSums = new PrefixSumTree();
+        this.durationSums.load(millis, this.size);
+    }
+
+    /**
+     * Moves the block {@code column[from, from + count)} to start at
+     * {@code to}, using {@code block} as scratch space.
+     *
+     * @param column
+     *            one of the column arrays
+     * @param block
+     *            scratch array of the same type, of length at least
+     *            {@code count}
+     * @param from
+     *            start of the block
+     * @param count
+     *            length of the block
+     * @param to
+     *            start of the block afterwards
+     */
+    private static void moveBlock(Object column, Object block, int from,
+            int count, int to) {
+        System.arraycopy(column, from, block, 0, count);
+        if (to < from) {
+            System.arraycopy(column, to, column, to + count, from - to);
+        } else {
+            System.arraycopy(column, from + count, column, from, to - from);
+        }
+        System.arraycopy(block, 0, column, to, count);
+    }
+
+    // Standard methods
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final MusicPlaylist newInstance() {
+        return new MusicPlaylistOnColumns();
+    }
+
+    @Override
+    public final void transferFrom(MusicPlaylist source) {
+        if (source == this) {
+            throw new IllegalArgumentException("Cannot transfer from self");
+        }
+        if (!(source instanceof MusicPlaylistOnColumns)) {
+            // another implementation: bulk copy, then empty the source
+            this.copyFrom(source);
+            source.clear();
+            return;
+        }
+        MusicPlaylistOnColumns other = (MusicPlaylistOnColumns) source;
+        this.ids = other.ids;
+        this.titles = other.titles;
+        this.artists = other.artists;
+        this.durations = other.durations;
+        this.strings = other.strings;
+        this.size = other.size;
+        this.currentIndex = other.currentIndex;
+        this.index = other.index;
+        this.durationSums = other.durationSums;
+        this.history = other.history;
+        other.createNewRep();
+    }
+
+    // Kernel methods
+
+    @Override
+    public final void addSong(String song) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        this.addSong(new Song(song));
+    }
+
+    @Override
+    public final void addSong(Song song) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        this.insertSongAt(song, this.size);
+    }
+
+    @Override
+    public final String removeSong(String song) {
+        if (song == null) {
+            return null;
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (this.titles[i].equals(song)) {
+                return this.removeAt(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public final String getCurrentSong() {
+        if (this.size == 0) {
+            return "No songs in playlist";
+        }
+        return this.titles[this.currentIndex];
+    }
+
+    @Override
+    public final String titleAt(int index) {
+        this.checkIndex(index);
+        return this.titles[index];
+    }
+
+    @Override
+    public final Song songAt(int index) {
+        this.checkIndex(index);
+        return new Song(this.ids[index], this.titles[index],
+                this.artists[index], this.durations[index]);
+    }
+
+    @Override
+    public final int currentIndex() {
+        return this.currentIndex;
+    }
+
+    @Override
+    public final void nextSong() {
+        if (this.size > 1) {
+            this.history.push(this.currentIndex);
+            this.currentIndex = (this.currentIndex + 1) % this.size;
+        }
+    }
+
+    @Override
+    public final void insertSongAt(String song, int index) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        this.insertSongAt(new Song(song), index);
+    }
+
+    @Override
+    public final void insertSongAt(Song song, int index) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        if (index < 0 || index > this.size) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+        String title = this.share(song.title());
+        String artist = this.share(song.artist());
+        this.ensureCapacity(this.size + 1);
+        int tail = this.size - index;
+        System.arraycopy(this.ids, index, this.ids, index + 1, tail);
+        System.arraycopy(this.titles, index, this.titles, index + 1, tail);
+        System.arraycopy(this.artists, index, this.artists, index + 1, tail);
+        System.arraycopy(this.durations, index, this.durations, index + 1,
+                tail);
+        this.ids[index] = song.id();
+        this.titles[index] = title;
+        this.artists[index] = artist;
+        this.durations[index] = (int) song.durationMillis();
+        this.size++;
+        if (this.index != null) {
+            this.index.insert(index, song.title());
+        }
+        this.durationSums.insert(index, song.durationMillis());
+        this.history.inserted(index);
+        if (this.size > 1 && index <= this.currentIndex) {
+            this.currentIndex++;
+        }
+    }
+
+    @Override
+    public final String removeSongAt(int index) {
+        this.checkIndex(index);
+        return this.removeAt(index);
+    }
+
+    @Override
+    public final String removeCurrentSong() {
+        if (this.size == 0) {
+            return null;
+        }
+        return this.removeAt(this.currentIndex);
+    }
+
+    @Override
+    public final void goToSong(int index) {
+        this.checkIndex(index);
+        if (index != this.currentIndex) {
+            this.history.push(this.currentIndex);
+            this.currentIndex = index;
+        }
+    }
+
+    @Override
+    public final void moveSong(int from, int to) {
+        this.moveRange(from, 1, to);
+    }
+
+    @Override
+    public final void moveRange(int from, int count, int to) {
+        if (from < 0 || count < 0 || from > this.size - count) {
+            throw new IllegalArgumentException("range out of bounds");
+        }
+        if (to < 0 || to > this.size - count) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+        if (count == 0 || from == to) {
+            return;
+        }
+        moveBlock(this.ids, new long[count], from, count, to);
+        moveBlock(this.titles, new String[count], from, count, to);
+        moveBlock(this.artists, new String[count], from, count, to);
+        moveBlock(this.durations, new int[count], from, count, to);
+        if (this.index != null) {
+            this.index.remap(i -> positionAfterMove(i, from, count, to));
+        }
+        this.durationSums.move(from, count, to);
+        this.history.remap(i -> positionAfterMove(i, from, count, to));
+        this.currentIndex = positionAfterMove(this.currentIndex, from, count,
+                to);
+    }
+
+    // Secondary methods overridden for efficiency
+
+    @Override
+    public final void previousSong() {
+        if (this.size > 1) {
+            int back = this.history.pop();
+            while (back == this.currentIndex) {
+                back = this.history.pop();
+            }
+            if (back < 0) {
+                back = (this.currentIndex + this.size - 1) % this.size;
+            }
+            this.currentIndex = back;
+        }
+    }
+
+    @Override
+    public final int length() {
+        return this.size;
+    }
+
+    @Override
+    protected final Song[] songsToArray() {
+        Song[] result = new Song[this.size];
+        for (int i = 0; i < this.size; i++) {
+            result[i] = new Song(this.ids[i], this.titles[i], this.artists[i],
+                    this.durations[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public final Song[] songsInRange(int from, int count) {
+        checkRange(from, count, this.size);
+        Song[] result = new Song[count];
+        for (int i = 0; i < count; i++) {
+            int j = from + i;
+            result[i] = new Song(this.ids[j], this.titles[j], this.artists[j],
+                    this.durations[j]);
+        }
+        return result;
+    }
+
+    @Override
+    protected final void loadSongs(Song[] songs, int count, int current) {
+        this.createNewRep();
+        this.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            Song song = songs[i];
+            this.ids[i] = song.id();
+            this.titles[i] = this.share(song.title());
+            this.artists[i] = this.share(song.artist());
+            this.durations[i] = (int) song.durationMillis();
+            this.size = i + 1;
+        }
+        this.size = count;
+        this.currentIndex = current;
+        this.rebuildIndexes();
+    }
+
+    @Override
+    public final void copyFrom(MusicPlaylist source) {
+        if (!(source instanceof MusicPlaylistOnColumns)) {
+            super.copyFrom(source);
+            return;
+        }
+        if (source == this) {
+            return;
+        }
+        // same representation: copy the columns directly
+        MusicPlaylistOnColumns other = (MusicPlaylistOnColumns) source;
+        int capacity = Math.max(other.size, INITIAL_CAPACITY);
+        this.ids = Arrays.copyOf(other.ids, capacity);
+        this.titles = Arrays.copyOf(other.titles, capacity);
+        this.artists = Arrays.copyOf(other.artists, capacity);
+        this.durations = Arrays.copyOf(other.durations, capacity);
+        this.strings = new HashMap<>(other.strings);
+        this.size = other.size;
+        this.currentIndex = other.currentIndex;
+        this.history.clear();
+        this.rebuildIndexes();
+    }
+
+    @Override
+    public final boolean contains(String song) {
+        if (song == null) {
+            return false;
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (this.titles[i].equals(song)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public final boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || this.getClass() != obj.getClass()) {
+            return false;
+        }
+        MusicPlaylistOnColumns other = (MusicPlaylistOnColumns) obj;
+        int n = this.size;
+        if (n != other.size) {
+            return false;
+        }
+        // same titles in the same circular order from the current song
+        for (int k = 0; k < n; k++) {
+            if (!this.titles[(this.currentIndex + k) % n]
+                    .equals(other.titles[(other.currentIndex + k) % n])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public final int hashCode() {
+        int h = 1;
+        for (int k = 0; k < this.size; k++) {
+            h = 31 * h + this.titles[(this.currentIndex + k) % this.size]
+                    .hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public final String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int k = 0; k < this.size; k++) {
+            String s = this.titles[(this.currentIndex + k) % this.size];
+            if (k == 0) {
+                sb.append("*").append(s).append("*");
+            } else {
+                sb.append(", ").append(s);
+            }
+        }
+        return sb.append("]").toString();
+    }
+
+    @Override
+    public final int indexOfId(long id) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public final long totalDuration() {
+        return this.durationSums.total();
+    }
+
+    @Override
+    public final long timeRemainingFromCurrent() {
+        return this.durationSums.total()
+                - this.durationSums.prefixSum(this.currentIndex);
+    }
+
+    @Override
+    public final void goToTime(long millis) {
+        if (millis < 0 || millis >= this.durationSums.total()) {
+            throw new IllegalArgumentException("time out of bounds");
+        }
+        this.goToSong(this.durationSums.find(millis));
+    }
+
+    /**
+     * Returns {@code index}, building it first if needed. Searches may run
+     * concurrently, so the first one builds it under the monitor and the
+     * others wait for it; once built, reading the volatile field is enough.
+     *
+     * @return the title search index
+     */
+    private SongSearchIndex searchIndex() {
+        SongSearchIndex built = this.index;
+        if (built == null) {
+            synchronized (this) {
+                built = this.index;
+                if (built == null) {
+                    built = new SongSearchIndex();
+                    for (int i = 0; i < this.size; i++) {
+                        built.insert(i, this.titles[i]);
+                    }
+                    this.index = built;
+                }
+            }
+        }
+        return built;
+    }
+
+    @Override
+    public final int[] searchPrefix(String prefix) {
+        return this.searchIndex().prefix(prefix);
+    }
+
+    @Override
+    public final int[] searchContaining(String fragment) {
+        return this.searchIndex().containing(fragment);
+    }
+
+    @Override
+    public final int[] searchSimilar(String query) {
+        return this.searchIndex().similar(query);
+    }
+
+}
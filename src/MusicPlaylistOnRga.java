@@ -0,0 +1,1642 @@
+// File: MusicPlaylistOnRga.java
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * A replicated implementation of the MusicPlaylist component: each instance is
+ * one replica of a playlist edited concurrently from several nodes, stored as
+ * a Replicated Growable Array (RGA) sequence CRDT.
+ *
+ * <p>
+ * Every song ever inserted is an element with a unique id, a Lamport
+ * timestamp {@code (counter, replica)}; removing a song only marks its element
+ * as a tombstone. A local insert is placed after the element before it; a
+ * remote insert is placed after the same element, skipping any elements with
+ * larger ids, so concurrent inserts at the same place end up in the same
+ * order on every replica. Replicas that have applied the same set of updates
+ * therefore hold the same songs in the same order, whatever order the updates
+ * arrived in.
+ * </p>
+ *
+ * <p>
+ * Moving a song inserts a new element for it at its new place and hides the
+ * old one. Every element of a song shares the song's first element, and the
+ * song is shown at its element with the largest id: when the same song is
+ * moved concurrently, every replica keeps the same one of the moves, and the
+ * song is never duplicated. A removal deletes the song whichever of its
+ * elements is shown, so it wins over a concurrent move.
+ * </p>
+ *
+ * <p>
+ * Bulk operations ({@code sort}, {@code shuffle}, {@code distinct},
+ * {@code removeIf}, {@code mergeFrom}, {@code copyFrom}, ...) are replicated
+ * as the smallest edit from the old songs to the new ones: the songs that
+ * are dropped are removed, songs that are new are inserted, and among the
+ * songs that stay, those outside a longest run already in the new relative
+ * order are moved. Songs are matched by value, so no song is re-sent and
+ * concurrent edits to the songs left alone are kept. Each moved song is
+ * still placed by a single move, though: two different reorderings made
+ * concurrently converge, but to an interleaving of both orders, not to one
+ * of them. A bulk load sharing no song with the playlist is replicated as a
+ * clear followed by insertions.
+ * </p>
+ *
+ * <p>
+ * Local edits are queued as compact binary updates; {@link #takeUpdates()}
+ * returns them and {@link #applyUpdates(byte[])} applies updates from other
+ * replicas. Updates may be delivered late, out of order or more than once:
+ * each is applied once, after the earlier updates of the same replica and
+ * after the update that inserted the song it refers to. Tombstones are purged
+ * by {@link #collectGarbage(Collection)} once every replica is known to have
+ * seen exactly the same updates, after which no update can refer to them.
+ * </p>
+ *
+ * <p>
+ * The current song, the play history, and everything else not listed above
+ * are local to each replica. Positional operations scan the elements from the
+ * nearer end, so they are O(n), like {@link MusicPlaylistOnSequence}, but
+ * appending or removing the last song only passes the tombstones after it;
+ * searches and time-based queries make a single pass over them, and the total
+ * duration is kept up to date.
+ * </p>
+ *
+ * <p>
+ * <b>Representation Invariant:</b>
+ * <ul>
+ * <li>{@code elements} is in RGA order and {@code byId} maps the id of each of
+ * its elements to it.</li>
+ * <li>For every element {@code e}, {@code e.first.live} is the element of
+ * {@code e}'s song with the largest id, and {@code e} is removed unless
+ * {@code e == e.first.live} and {@code e.first.deleted} is false.</li>
+ * <li>{@code visible} and {@code tombstones} count the elements that are and
+ * are not removed, and {@code totalMillis} is the total duration of the songs
+ * of the elements not removed.</li>
+ * <li>If {@code visible == 0}, then {@code currentRaw == -1} and
+ * {@code currentIndex == 0}; otherwise {@code elements[currentRaw]} is not
+ * removed and is the {@code currentIndex}-th element that is not removed.</li>
+ * <li>{@code applied.get(r)} is the number of updates of replica {@code r}
+ * applied here, and {@code pending} holds received updates not applied
+ * yet.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * <b>Correspondence:</b> <br>
+ * Playlist ⟷ &lt;songs of the elements that are not removed, in
+ * {@code elements} order&gt; with current song at {@code currentIndex}.
+ * </p>
+ *
+ * @author …
+ */
+public class MusicPlaylistOnRga extends MusicPlaylistSecondary {
+
+    /**
+     * Update kind: insert a song.
+     */
+    private static final int INSERT = 0;
+
+    /**
+     * Update kind: remove a song.
+     */
+    private static final int REMOVE = 1;
+
+    /**
+     * Update kind: remove every song the replica making it had seen.
+     */
+    private static final int CLEAR = 2;
+
+    /**
+     * Update kind: move a song, as a new element for it.
+     */
+    private static final int MOVE = 3;
+
+    /**
+     * One song ever inserted into the playlist.
+     */
+    private static final class Element {
+
+        /**
+         * Lamport counter of the insertion.
+         */
+        private final long counter;
+
+        /**
+         * Replica that inserted it.
+         */
+        private final long replica;
+
+        /**
+         * The song.
+         */
+        private final Song song;
+
+        /**
+         * The element that inserted the song; the elements added when the
+         * song is moved share it.
+         */
+        private final Element first;
+
+        /**
+         * Whether it is hidden: the song was deleted, or it is not the
+         * song's element with the largest id.
+         */
+        private boolean removed;
+
+        /**
+         * On a first element: the element of the song with the largest id,
+         * where the song is shown.
+         */
+        private Element live;
+
+        /**
+         * On a first element: whether the song was removed.
+         */
+        private boolean deleted;
+
+        /**
+         * Constructor for the element inserting {@code song}.
+         *
+         * @param counter
+         *            Lamport counter of the insertion
+         * @param replica
+         *            replica that inserted it
+         * @param song
+         *            the song
+         */
+        Element(long counter, long replica, Song song) {
+            this.counter = counter;
+            this.replica = replica;
+            this.song = song;
+            this.first = this;
+            this.live = this;
+        }
+
+        /**
+         * Constructor for an element moving the song of {@code moved}.
+         *
+         * @param counter
+         *            Lamport counter of the move
+         * @param replica
+         *            replica that moved it
+         * @param moved
+         *            an element of the song
+         */
+        Element(long counter, long replica, Element moved) {
+            this.counter = counter;
+            this.replica = replica;
+            this.song = moved.song;
+            this.first = moved.first;
+        }
+
+        /**
+         * Reports whether this element's id is greater than
+         * {@code (counter, replica)}.
+         *
+         * @param otherCounter
+         *            counter of the other id
+         * @param otherReplica
+         *            replica of the other id
+         * @return true if this id sorts after the other
+         */
+        boolean after(long otherCounter, long otherReplica) {
+            if (this.counter != otherCounter) {
+                return this.counter > otherCounter;
+            }
+            return this.replica > otherReplica;
+        }
+    }
+
+    /**
+     * Id of an element, as a map key.
+     */
+    private static final class Id {
+
+        /**
+         * Lamport counter.
+         */
+        private final long counter;
+
+        /**
+         * Replica.
+         */
+        private final long replica;
+
+        /**
+         * Constructor.
+         *
+         * @param counter
+         *            Lamport counter
+         * @param replica
+         *            replica
+         */
+        Id(long counter, long replica) {
+            this.counter = counter;
+            this.replica = replica;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Id)) {
+                return false;
+            }
+            Id other = (Id) obj;
+            return this.counter == other.counter
+                    && this.replica == other.replica;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.counter, this.replica);
+        }
+    }
+
+    /**
+     * One decoded update.
+     */
+    private static final class Update {
+
+        /**
+         * {@link #INSERT}, {@link #REMOVE}, {@link #CLEAR} or {@link #MOVE}.
+         */
+        private int kind;
+
+        /**
+         * Replica that made the update.
+         */
+        private long origin;
+
+        /**
+         * Sequence number of the update among those of {@code origin},
+         * starting at 1.
+         */
+        private long seq;
+
+        /**
+         * For an insert or a move, the Lamport counter of the new element.
+         */
+        private long counter;
+
+        /**
+         * The element inserted or moved after (0 counter for the start of
+         * the playlist), or the element removed.
+         */
+        private Id ref;
+
+        /**
+         * For a move, the element of the song moved.
+         */
+        private Id moved;
+
+        /**
+         * For an insert, the song.
+         */
+        private Song song;
+
+        /**
+         * For a clear, the replicas whose songs are removed.
+         */
+        private long[] replicas;
+
+        /**
+         * For a clear, the number of updates of each of {@code replicas} that
+         * had been applied; the clear waits until as many are applied here.
+         */
+        private long[] seqs;
+
+        /**
+         * For a clear, the largest counter of a song of each of
+         * {@code replicas} that is removed; a replica's counters increase, so
+         * its songs with larger counters were not seen and stay.
+         */
+        private long[] counters;
+    }
+
+    /**
+     * Id of this replica.
+     */
+    private long replicaId;
+
+    /**
+     * Lamport clock: the largest counter seen.
+     */
+    private long clock;
+
+    /**
+     * Every element, removed or not, in RGA order.
+     */
+    private List<Element> elements;
+
+    /**
+     * Elements by id.
+     */
+    private Map<Id, Element> byId;
+
+    /**
+     * Number of elements not removed.
+     */
+    private int visible;
+
+    /**
+     * Number of removed elements.
+     */
+    private int tombstones;
+
+    /**
+     * Total duration of the songs not removed, in milliseconds.
+     */
+    private long totalMillis;
+
+    /**
+     * Position in {@code elements} of the current song, or -1 if none.
+     */
+    private int currentRaw;
+
+    /**
+     * Index of the current song among the songs not removed.
+     */
+    private int currentIndex;
+
+    /**
+     * Positions recently moved away from, for {@link #previousSong()}.
+     */
+    private PlayHistory history;
+
+    /**
+     * Number of updates applied, by replica (the version vector).
+     */
+    private Map<Long, Long> applied;
+
+    /**
+     * Received updates waiting for the updates they depend on.
+     */
+    private List<Update> pending;
+
+    /**
+     * Encoded local updates not yet taken by {@link #takeUpdates()}.
+     */
+    private VarintCodec outbox;
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param replica
+     *            id of the new replica
+     */
+    private void createNewRep(long replica) {
+        this.replicaId = replica;
+        this.clock = 0;
+        this.elements = new ArrayList<>();
+        this.byId = new HashMap<>();
+        this.visible = 0;
+        this.tombstones = 0;
+        this.totalMillis = 0;
+        this.currentRaw = -1;
+        this.currentIndex = 0;
+        this.history = new PlayHistory();
+        this.applied = new HashMap<>();
+        this.pending = new ArrayList<>();
+        this.outbox = new VarintCodec();
+    }
+
+    /**
+     * Returns a new random replica id.
+     *
+     * @return a positive replica id
+     */
+    private static long randomReplicaId() {
+        return ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor: Initializes an empty replica with a random id.
+     *
+     * @ensures <pre>
+     *          this = &lt;&gt;
+     *          </pre>
+     */
+    public MusicPlaylistOnRga() {
+        this.createNewRep(randomReplicaId());
+    }
+
+    /**
+     * Constructor: Initializes an empty replica with the given id. Replicas
+     * of one playlist must have different ids; small ids encode smaller.
+     *
+     * @param replicaId
+     *            id of this replica
+     * @ensures <pre>
+     *          this = &lt;&gt;
+     *          </pre>
+     */
+    public MusicPlaylistOnRga(long replicaId) {
+        this.createNewRep(replicaId);
+    }
+
+    // Encoding helpers
+
+    /**
+     * Encodes {@code u} onto {@code out}: kind, origin, sequence number, then
+     * for an insert the counter, the predecessor and the song, for a move the
+     * counter, the predecessor and the element moved, for a removal the
+     * removed element, and for a clear the number of replicas followed by the
+     * replica, sequence number and counter of each.
+     *
+     * @param out
+     *            where to write
+     * @param u
+     *            the update
+     */
+    private static void encode(VarintCodec out, Update u) {
+        out.writeByte(u.kind);
+        out.writeZigZag(u.origin);
+        out.writeVarLong(u.seq);
+        if (u.kind == CLEAR) {
+            out.writeVarLong(u.replicas.length);
+            for (int i = 0; i < u.replicas.length; i++) {
+                out.writeZigZag(u.replicas[i]);
+                out.writeVarLong(u.seqs[i]);
+                out.writeVarLong(u.counters[i]);
+            }
+            return;
+        }
+        if (u.kind != REMOVE) {
+            out.writeVarLong(u.counter);
+        }
+        out.writeVarLong(u.ref.counter);
+        if (u.ref.counter != 0) {
+            out.writeZigZag(u.ref.replica);
+        }
+        if (u.kind == MOVE) {
+            out.writeVarLong(u.moved.counter);
+            out.writeZigZag(u.moved.replica);
+        }
+        if (u.kind == INSERT) {
+            out.writeZigZag(u.song.id());
+            out.writeString(u.song.title());
+            out.writeString(u.song.artist());
+            out.writeVarLong(u.song.durationMillis());
+        }
+    }
+
+    /**
+     * Decodes one update from {@code in}.
+     *
+     * @param in
+     *            the buffer, positioned at an update
+     * @return the update
+     */
+    private static Update decode(ByteBuffer in) {
+        Update u = new Update();
+        u.kind = in.get();
+        if (u.kind < INSERT || u.kind > MOVE) {
+            throw new IllegalArgumentException("malformed update");
+        }
+        u.origin = VarintCodec.readZigZag(in);
+        u.seq = VarintCodec.readVarLong(in);
+        if (u.kind == CLEAR) {
+            int n = VarintCodec.readVarInt(in);
+            u.replicas = new long[n];
+            u.seqs = new long[n];
+            u.counters = new long[n];
+            for (int i = 0; i < n; i++) {
+                u.replicas[i] = VarintCodec.readZigZag(in);
+                u.seqs[i] = VarintCodec.readVarLong(in);
+                u.counters[i] = VarintCodec.readVarLong(in);
+            }
+            return u;
+        }
+        if (u.kind != REMOVE) {
+            u.counter = VarintCodec.readVarLong(in);
+        }
+        long refCounter = VarintCodec.readVarLong(in);
+        long refReplica = 0;
+        if (refCounter != 0) {
+            refReplica = VarintCodec.readZigZag(in);
+        }
+        u.ref = new Id(refCounter, refReplica);
+        if (u.kind == MOVE) {
+            long movedCounter = VarintCodec.readVarLong(in);
+            u.moved = new Id(movedCounter, VarintCodec.readZigZag(in));
+        }
+        if (u.kind == INSERT) {
+            long id = VarintCodec.readZigZag(in);
+            String title = VarintCodec.readString(in);
+            String artist = VarintCodec.readString(in);
+            long millis = VarintCodec.readVarLong(in);
+            u.song = new Song(id, title, artist, millis);
+        }
+        return u;
+    }
+
+    // Element helpers
+
+    /**
+     * Returns the position in {@code elements} of the {@code index}-th song
+     * not removed, scanning from the nearer end so that the last song is found
+     * without passing the others.
+     *
+     * @param index
+     *            the song index, {@code 0 <= index < visible}
+     * @return its position in {@code elements}
+     */
+    private int rawOf(int index) {
+        if (index == this.currentIndex && this.currentRaw >= 0) {
+            return this.currentRaw;
+        }
+        if (index >= this.visible / 2) {
+            int seen = this.visible;
+            for (int raw = this.elements.size() - 1; raw >= 0; raw--) {
+                if (!this.elements.get(raw).removed) {
+                    seen--;
+                    if (seen == index) {
+                        return raw;
+                    }
+                }
+            }
+        } else {
+            int seen = 0;
+            for (int raw = 0; raw < this.elements.size(); raw++) {
+                if (!this.elements.get(raw).removed) {
+                    if (seen == index) {
+                        return raw;
+                    }
+                    seen++;
+                }
+            }
+        }
+        throw new AssertionError("index " + index + " not found");
+    }
+
+    /**
+     * Returns the index among the songs not removed of the element at
+     * {@code raw}, or of the first one after it if it is removed. Counts from
+     * the nearer end, so it needs {@code visible} to be up to date.
+     *
+     * @param raw
+     *            a position in {@code elements}, up to its size
+     * @return the number of songs not removed before {@code raw}
+     */
+    private int indexOfRaw(int raw) {
+        int size = this.elements.size();
+        if (raw > size / 2) {
+            int seen = this.visible;
+            for (int i = raw; i < size; i++) {
+                if (!this.elements.get(i).removed) {
+                    seen--;
+                }
+            }
+            return seen;
+        }
+        int seen = 0;
+        for (int i = 0; i < raw; i++) {
+            if (!this.elements.get(i).removed) {
+                seen++;
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * Checks that {@code index} is a valid song index.
+     *
+     * @param index
+     *            the index
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.visible) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+    }
+
+    /**
+     * Places {@code e}, shown or hidden, after the element {@code ref} (or at
+     * the start), after any elements with larger ids, and updates the current
+     * song.
+     *
+     * @param e
+     *            the new element
+     * @param ref
+     *            id of its predecessor when it was inserted
+     * @return the position of {@code e} in {@code elements}
+     */
+    private int integrate(Element e, Id ref) {
+        int raw = 0;
+        if (ref.counter != 0) {
+            // appends refer to one of the last elements
+            raw = this.elements.lastIndexOf(this.byId.get(ref)) + 1;
+        }
+        while (raw < this.elements.size()
+                && this.elements.get(raw).after(e.counter, e.replica)) {
+            raw++;
+        }
+        int index = this.indexOfRaw(raw);
+        this.elements.add(raw, e);
+        this.byId.put(new Id(e.counter, e.replica), e);
+        this.clock = Math.max(this.clock, e.counter);
+        if (e.removed) {
+            this.tombstones++;
+            if (raw <= this.currentRaw) {
+                this.currentRaw++;
+            }
+            return raw;
+        }
+        this.visible++;
+        this.totalMillis += e.song.durationMillis();
+        this.history.inserted(index);
+        if (this.visible == 1) {
+            this.currentRaw = raw;
+            this.currentIndex = 0;
+        } else if (raw <= this.currentRaw) {
+            this.currentRaw++;
+            this.currentIndex++;
+        }
+        return raw;
+    }
+
+    /**
+     * Places {@code e}, a new element of a song that already has some, after
+     * the element {@code ref} as {@link #integrate(Element, Id)} does. The
+     * song's element with the largest id is shown and the others hidden; if
+     * the song was current, it stays current.
+     *
+     * @param e
+     *            the new element
+     * @param ref
+     *            id of its predecessor when it was moved
+     */
+    private void integrateMove(Element e, Id ref) {
+        Element first = e.first;
+        Element old = first.live;
+        boolean wins = e.after(old.counter, old.replica);
+        if (wins) {
+            first.live = e;
+        }
+        e.removed = !wins || first.deleted;
+        boolean wasCurrent = !e.removed && this.currentRaw >= 0
+                && this.elements.get(this.currentRaw) == old;
+        if (!e.removed) {
+            this.tombstone(old);
+        }
+        int raw = this.integrate(e, ref);
+        if (wasCurrent) {
+            this.currentRaw = raw;
+            this.currentIndex = this.indexOfRaw(raw);
+        }
+    }
+
+    /**
+     * Deletes the song of {@code e}, hiding whichever of its elements is
+     * shown.
+     *
+     * @param e
+     *            an element of the song
+     */
+    private void delete(Element e) {
+        Element first = e.first;
+        if (!first.deleted) {
+            first.deleted = true;
+            this.tombstone(first.live);
+        }
+    }
+
+    /**
+     * Marks {@code e} removed, if it is not already, and updates the current
+     * song: if it was current, the next song becomes current, or the first
+     * one if it was the last.
+     *
+     * @param e
+     *            the element
+     */
+    private void tombstone(Element e) {
+        if (!e.removed) {
+            this.tombstone(e, this.elements.indexOf(e));
+        }
+    }
+
+    /**
+     * Marks the element {@code e}, not removed and at {@code raw} in
+     * {@code elements}, removed as {@link #tombstone(Element)} does.
+     *
+     * @param e
+     *            the element
+     * @param raw
+     *            its position in {@code elements}
+     */
+    private void tombstone(Element e, int raw) {
+        int index = this.indexOfRaw(raw);
+        e.removed = true;
+        this.visible--;
+        this.tombstones++;
+        this.totalMillis -= e.song.durationMillis();
+        this.history.removed(index);
+        if (this.visible == 0) {
+            this.currentRaw = -1;
+            this.currentIndex = 0;
+        } else if (raw == this.currentRaw) {
+            int next = raw + 1;
+            while (next < this.elements.size()
+                    && this.elements.get(next).removed) {
+                next++;
+            }
+            if (next < this.elements.size()) {
+                this.currentRaw = next;
+            } else {
+                this.currentRaw = this.rawOfFirst();
+                this.currentIndex = 0;
+            }
+        } else if (index < this.currentIndex) {
+            this.currentIndex--;
+        }
+    }
+
+    /**
+     * Returns the position of the first song not removed.
+     *
+     * @return its position in {@code elements}
+     */
+    private int rawOfFirst() {
+        int raw = 0;
+        while (this.elements.get(raw).removed) {
+            raw++;
+        }
+        return raw;
+    }
+
+    /**
+     * Applies the clear {@code u} in two passes: deletes every song with an
+     * element of one of the replicas it lists with a counter up to the one
+     * listed, shown or not (a song moved concurrently is shown at an element
+     * the clear did not see, but the clear saw the song). If the current song
+     * is removed, the next remaining song becomes current, or the first one
+     * if there is none after it. The history starts afresh.
+     *
+     * @param u
+     *            a clear
+     */
+    private void removeSeen(Update u) {
+        Map<Long, Long> upTo = new HashMap<>();
+        for (int i = 0; i < u.replicas.length; i++) {
+            upTo.put(u.replicas[i], u.counters[i]);
+        }
+        for (Element e : this.elements) {
+            Long last = upTo.get(e.replica);
+            if (last != null && e.counter <= last) {
+                e.first.deleted = true;
+            }
+        }
+        int oldCurrent = this.currentRaw;
+        int firstRaw = -1;
+        int nextRaw = -1;
+        int nextIndex = 0;
+        int index = 0;
+        for (int raw = 0; raw < this.elements.size(); raw++) {
+            Element e = this.elements.get(raw);
+            if (e.removed) {
+                continue;
+            }
+            if (e.first.deleted) {
+                e.removed = true;
+                this.visible--;
+                this.tombstones++;
+                this.totalMillis -= e.song.durationMillis();
+            } else {
+                if (firstRaw < 0) {
+                    firstRaw = raw;
+                }
+                if (nextRaw < 0 && raw >= oldCurrent) {
+                    nextRaw = raw;
+                    nextIndex = index;
+                }
+                index++;
+            }
+        }
+        if (this.visible == 0) {
+            this.currentRaw = -1;
+            this.currentIndex = 0;
+        } else if (nextRaw >= 0) {
+            this.currentRaw = nextRaw;
+            this.currentIndex = nextIndex;
+        } else {
+            this.currentRaw = firstRaw;
+            this.currentIndex = 0;
+        }
+        this.history.clear();
+    }
+
+    /**
+     * Queues {@code u}, a local update, for {@link #takeUpdates()} and counts
+     * it as applied.
+     *
+     * @param u
+     *            the update
+     */
+    private void record(Update u) {
+        encode(this.outbox, u);
+        this.applied.put(this.replicaId, u.seq);
+    }
+
+    /**
+     * Returns the sequence number of the next local update.
+     *
+     * @return the next sequence number
+     */
+    private long nextSeq() {
+        return this.applied.getOrDefault(this.replicaId, 0L) + 1;
+    }
+
+    // Replication methods
+
+    /**
+     * Reports the id of this replica.
+     *
+     * @return the replica id
+     */
+    public final long replicaId() {
+        return this.replicaId;
+    }
+
+    /**
+     * Returns the local updates made since the last call, encoded, and
+     * forgets them. Every other replica must eventually be given them through
+     * {@link #applyUpdates(byte[])}.
+     *
+     * @return the encoded updates; empty if there are none
+     */
+    public final byte[] takeUpdates() {
+        byte[] result = this.outbox.toByteArray();
+        this.outbox.clear();
+        return result;
+    }
+
+    /**
+     * Applies updates taken from another replica. Updates whose dependencies
+     * have not been applied yet are kept until they have; updates applied
+     * before are ignored.
+     *
+     * @param updates
+     *            updates returned by {@link #takeUpdates()} on another replica
+     * @requires updates != null
+     */
+    public final void applyUpdates(byte[] updates) {
+        if (updates == null) {
+            throw new IllegalArgumentException("updates cannot be null");
+        }
+        ByteBuffer in = ByteBuffer.wrap(updates);
+        while (in.hasRemaining()) {
+            this.pending.add(decode(in));
+        }
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            Iterator<Update> it = this.pending.iterator();
+            while (it.hasNext()) {
+                Update u = it.next();
+                long done = this.applied.getOrDefault(u.origin, 0L);
+                if (u.seq <= done) {
+                    it.remove();
+                } else if (u.seq == done + 1 && this.ready(u)) {
+                    it.remove();
+                    this.apply(u);
+                    progress = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports whether the element {@code u} refers to is known here.
+     *
+     * @param u
+     *            a remote update
+     * @return true if {@code u} can be applied
+     */
+    private boolean ready(Update u) {
+        if (u.kind == CLEAR) {
+            for (int i = 0; i < u.replicas.length; i++) {
+                if (this.applied.getOrDefault(u.replicas[i], 0L) < u.seqs[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (u.kind == MOVE && !this.byId.containsKey(u.moved)) {
+            return false;
+        }
+        return (u.kind != REMOVE && u.ref.counter == 0)
+                || this.byId.containsKey(u.ref);
+    }
+
+    /**
+     * Applies the remote update {@code u}.
+     *
+     * @param u
+     *            the update
+     */
+    private void apply(Update u) {
+        if (u.kind == INSERT) {
+            this.integrate(new Element(u.counter, u.origin, u.song), u.ref);
+        } else if (u.kind == MOVE) {
+            this.integrateMove(
+                    new Element(u.counter, u.origin, this.byId.get(u.moved)),
+                    u.ref);
+        } else if (u.kind == CLEAR) {
+            this.removeSeen(u);
+        } else {
+            this.delete(this.byId.get(u.ref));
+        }
+        this.applied.put(u.origin, u.seq);
+    }
+
+    /**
+     * Reports the number of received updates waiting for updates they depend
+     * on.
+     *
+     * @return the number of pending updates
+     */
+    public final int pendingUpdates() {
+        return this.pending.size();
+    }
+
+    /**
+     * Returns the version vector of this replica: for each replica, the
+     * number of its updates applied here.
+     *
+     * @return a copy of the version vector
+     */
+    public final Map<Long, Long> versionVector() {
+        return new HashMap<>(this.applied);
+    }
+
+    /**
+     * Reports the number of removed songs still kept as tombstones.
+     *
+     * @return the number of tombstones
+     */
+    public final int tombstones() {
+        return this.tombstones;
+    }
+
+    /**
+     * Purges every tombstone if every replica of the playlist has applied
+     * exactly the updates applied here, as shown by their version vectors;
+     * otherwise does nothing. After that point every new update is made
+     * with knowledge of all the current elements, so none can refer to a
+     * tombstone.
+     *
+     * @param peerVectors
+     *            the current version vectors of all other replicas
+     * @return the number of tombstones purged
+     * @requires peerVectors != null
+     */
+    public final int collectGarbage(Collection<Map<Long, Long>> peerVectors) {
+        if (peerVectors == null) {
+            throw new IllegalArgumentException("peerVectors cannot be null");
+        }
+        for (Map<Long, Long> peer : peerVectors) {
+            if (!this.applied.equals(peer)) {
+                return 0;
+            }
+        }
+        int purged = this.tombstones;
+        if (purged > 0) {
+            Element current = null;
+            if (this.currentRaw >= 0) {
+                current = this.elements.get(this.currentRaw);
+            }
+            List<Element> kept = new ArrayList<>(this.visible);
+            for (Element e : this.elements) {
+                if (e.removed) {
+                    this.byId.remove(new Id(e.counter, e.replica));
+                } else {
+                    if (e == current) {
+                        this.currentRaw = kept.size();
+                    }
+                    kept.add(e);
+                }
+            }
+            this.elements = kept;
+            this.tombstones = 0;
+        }
+        return purged;
+    }
+
+    // Standard methods
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Replicated as a single update listing, for each replica with songs
+     * here, the largest counter among them: O(n) here and O(replicas) on the
+     * wire. Songs inserted concurrently on other replicas were not seen, so
+     * they survive the clear everywhere.
+     * </p>
+     */
+    @Override
+    public final void clear() {
+        if (this.visible == 0) {
+            return;
+        }
+        Map<Long, Long> last = new HashMap<>();
+        for (Element e : this.elements) {
+            if (!e.removed) {
+                last.merge(e.replica, e.counter, Math::max);
+            }
+        }
+        Update u = new Update();
+        u.kind = CLEAR;
+        u.origin = this.replicaId;
+        u.seq = this.nextSeq();
+        int n = last.size();
+        u.replicas = new long[n];
+        u.seqs = new long[n];
+        u.counters = new long[n];
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : last.entrySet()) {
+            u.replicas[i] = entry.getKey();
+            u.seqs[i] = this.applied.getOrDefault(entry.getKey(), 0L);
+            u.counters[i] = entry.getValue();
+            i++;
+        }
+        this.removeSeen(u);
+        this.record(u);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The new playlist is a replica of a new playlist, with a random id, not
+     * another replica of this one.
+     * </p>
+     */
+    @Override
+    public final MusicPlaylist newInstance() {
+        return new MusicPlaylistOnRga();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Both replicas keep their identity: the songs of {@code source} are
+     * loaded here as local edits of this replica, replicated like any bulk
+     * load, and {@code source} is cleared, which is replicated from it.
+     * </p>
+     */
+    @Override
+    public final void transferFrom(MusicPlaylist source) {
+        if (source == this) {
+            throw new IllegalArgumentException("Cannot transfer from self");
+        }
+        this.copyFrom(source);
+        source.clear();
+    }
+
+    // Kernel methods
+
+    @Override
+    public final void addSong(String song) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        this.insertSongAt(new Song(song), this.visible);
+    }
+
+    @Override
+    public final void addSong(Song song) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        this.insertSongAt(song, this.visible);
+    }
+
+    @Override
+    public final String removeSong(String song) {
+        if (song == null) {
+            return null;
+        }
+        int index = 0;
+        for (Element e : this.elements) {
+            if (!e.removed) {
+                if (e.song.title().equals(song)) {
+                    return this.removeSongAt(index);
+                }
+                index++;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public final String getCurrentSong() {
+        if (this.visible == 0) {
+            return "No songs in playlist";
+        }
+        return this.elements.get(this.currentRaw).song.title();
+    }
+
+    @Override
+    public final String titleAt(int index) {
+        return this.songAt(index).title();
+    }
+
+    @Override
+    public final Song songAt(int index) {
+        this.checkIndex(index);
+        return this.elements.get(this.rawOf(index)).song;
+    }
+
+    @Override
+    public final int currentIndex() {
+        return this.currentIndex;
+    }
+
+    @Override
+    public final void nextSong() {
+        if (this.visible > 1) {
+            this.history.push(this.currentIndex);
+            int next = this.currentRaw + 1;
+            while (next < this.elements.size()
+                    && this.elements.get(next).removed) {
+                next++;
+            }
+            if (next < this.elements.size()) {
+                this.currentRaw = next;
+                this.currentIndex++;
+            } else {
+                this.currentRaw = this.rawOfFirst();
+                this.currentIndex = 0;
+            }
+        }
+    }
+
+    @Override
+    public final void insertSongAt(String song, int index) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        this.insertSongAt(new Song(song), index);
+    }
+
+    @Override
+    public final void insertSongAt(Song song, int index) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        if (index < 0 || index > this.visible) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+        Id ref = new Id(0, 0);
+        if (index > 0) {
+            Element before = this.elements.get(this.rawOf(index - 1));
+            ref = new Id(before.counter, before.replica);
+        }
+        Update u = new Update();
+        u.kind = INSERT;
+        u.origin = this.replicaId;
+        u.seq = this.nextSeq();
+        u.counter = this.clock + 1;
+        u.ref = ref;
+        u.song = song;
+        this.integrate(new Element(u.counter, this.replicaId, song), ref);
+        this.record(u);
+    }
+
+    @Override
+    public final String removeSongAt(int index) {
+        this.checkIndex(index);
+        int raw = this.rawOf(index);
+        Element e = this.elements.get(raw);
+        Update u = new Update();
+        u.kind = REMOVE;
+        u.origin = this.replicaId;
+        u.seq = this.nextSeq();
+        u.ref = new Id(e.counter, e.replica);
+        // a shown element is the live one of its song
+        e.first.deleted = true;
+        this.tombstone(e, raw);
+        this.record(u);
+        return e.song.title();
+    }
+
+    @Override
+    public final String removeCurrentSong() {
+        if (this.visible == 0) {
+            return null;
+        }
+        return this.removeSongAt(this.currentIndex);
+    }
+
+    @Override
+    public final void goToSong(int index) {
+        this.checkIndex(index);
+        if (index != this.currentIndex) {
+            this.history.push(this.currentIndex);
+            this.currentRaw = this.rawOf(index);
+            this.currentIndex = index;
+        }
+    }
+
+    @Override
+    public final void moveSong(int from, int to) {
+        this.moveRange(from, 1, to);
+    }
+
+    @Override
+    public final void moveRange(int from, int count, int to) {
+        if (from < 0 || count < 0 || from > this.visible - count) {
+            throw new IllegalArgumentException("range out of bounds");
+        }
+        if (to < 0 || to > this.visible - count) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+        if (count == 0 || from == to) {
+            return;
+        }
+        // one pass; only the block moves, even if the songs it jumps over are
+        // fewer, so concurrent moves of the same songs conflict as they should
+        Element[] order = new Element[this.visible];
+        boolean[] stays = new boolean[this.visible];
+        int index = 0;
+        for (Element e : this.elements) {
+            if (!e.removed) {
+                int moved = positionAfterMove(index, from, count, to);
+                order[moved] = e;
+                stays[moved] = index < from || index >= from + count;
+                index++;
+            }
+        }
+        this.rearrange(order, null, stays, this.visible,
+                positionAfterMove(this.currentIndex, from, count, to));
+        this.history.remap(i -> positionAfterMove(i, from, count, to));
+    }
+
+    // Secondary methods overridden for efficiency
+
+    @Override
+    public final void previousSong() {
+        if (this.visible > 1) {
+            int back = this.history.pop();
+            while (back == this.currentIndex) {
+                back = this.history.pop();
+            }
+            if (back < 0) {
+                back = (this.currentIndex + this.visible - 1) % this.visible;
+            }
+            this.currentRaw = this.rawOf(back);
+            this.currentIndex = back;
+        }
+    }
+
+    @Override
+    public final int length() {
+        return this.visible;
+    }
+
+    /**
+     * Returns the positions of the songs satisfying {@code test}, in one pass
+     * over the elements.
+     *
+     * @param test
+     *            which songs to report
+     * @return their positions, ascending
+     */
+    private int[] positionsOf(Predicate<Song> test) {
+        int[] found = new int[this.visible];
+        int count = 0;
+        int index = 0;
+        for (Element e : this.elements) {
+            if (!e.removed) {
+                if (test.test(e.song)) {
+                    found[count] = index;
+                    count++;
+                }
+                index++;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    @Override
+    public final int[] searchPrefix(String prefix) {
+        String key = SongSearchIndex.normalize(prefix);
+        return this.positionsOf(
+                s -> SongSearchIndex.normalize(s.title()).startsWith(key));
+    }
+
+    @Override
+    public final int[] searchContaining(String fragment) {
+        String key = SongSearchIndex.normalize(fragment);
+        return this.positionsOf(
+                s -> SongSearchIndex.normalize(s.title()).contains(key));
+    }
+
+    @Override
+    public final int[] searchSimilar(String query) {
+        String key = SongSearchIndex.normalize(query);
+        return this.positionsOf(s -> SongSearchIndex
+                .isSimilar(SongSearchIndex.normalize(s.title()), key));
+    }
+
+    @Override
+    public final int indexOfId(long id) {
+        int index = 0;
+        for (Element e : this.elements) {
+            if (!e.removed) {
+                if (e.song.id() == id) {
+                    return index;
+                }
+                index++;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public final long totalDuration() {
+        return this.totalMillis;
+    }
+
+    @Override
+    public final long timeRemainingFromCurrent() {
+        long remaining = 0;
+        int n = this.elements.size();
+        for (int raw = Math.max(this.currentRaw, 0); raw < n; raw++) {
+            Element e = this.elements.get(raw);
+            if (!e.removed) {
+                remaining += e.song.durationMillis();
+            }
+        }
+        return remaining;
+    }
+
+    @Override
+    public final void goToTime(long millis) {
+        if (millis < 0 || millis >= this.totalMillis) {
+            throw new IllegalArgumentException("time out of bounds");
+        }
+        long start = 0;
+        int index = 0;
+        for (int raw = 0; raw < this.elements.size(); raw++) {
+            Element e = this.elements.get(raw);
+            if (!e.removed) {
+                start += e.song.durationMillis();
+                if (millis < start) {
+                    if (index != this.currentIndex) {
+                        this.history.push(this.currentIndex);
+                        this.currentRaw = raw;
+                        this.currentIndex = index;
+                    }
+                    return;
+                }
+                index++;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Replicated as the edit described in the class comment, in
+     * O(n log n): songs are matched to the elements showing equal songs, in
+     * order, so songs that stay are neither re-sent nor re-inserted.
+     * </p>
+     */
+    @Override
+    protected final void loadSongs(Song[] songs, int count, int current) {
+        Map<Song, ArrayDeque<Element>> shown = new HashMap<>();
+        for (Element e : this.elements) {
+            if (!e.removed) {
+                shown.computeIfAbsent(e.song, k -> new ArrayDeque<>()).add(e);
+            }
+        }
+        Element[] reuse = new Element[count];
+        boolean shared = false;
+        for (int i = 0; i < count; i++) {
+            ArrayDeque<Element> same = shown.get(songs[i]);
+            if (same != null && !same.isEmpty()) {
+                reuse[i] = same.poll();
+                shared = true;
+            }
+        }
+        if (!shared) {
+            // nothing stays: one clear instead of a removal per song
+            this.clear();
+        }
+        int[] ranks = new int[count];
+        Map<Element, Integer> rank = this.ranks();
+        for (int i = 0; i < count; i++) {
+            ranks[i] = reuse[i] == null ? -1 : rank.get(reuse[i]);
+        }
+        this.rearrange(reuse, songs, longestIncreasing(ranks), count,
+                current);
+        // the history starts afresh, as in the other kernels
+        this.history.clear();
+    }
+
+    /**
+     * Returns the positions of a longest strictly increasing subsequence of
+     * the non-negative entries of {@code ranks}, in O(n log n).
+     *
+     * @param ranks
+     *            the values; negative entries are skipped
+     * @return whether each position is in the subsequence
+     */
+    private static boolean[] longestIncreasing(int[] ranks) {
+        int n = ranks.length;
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            if (ranks[i] < 0) {
+                continue;
+            }
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ranks[tails[mid]] < ranks[i]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            previous[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+        boolean[] result = new boolean[n];
+        if (length > 0) {
+            for (int i = tails[length - 1]; i >= 0; i = previous[i]) {
+                result[i] = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position of each element shown among the songs shown.
+     *
+     * @return the positions, by element
+     */
+    private Map<Element, Integer> ranks() {
+        Map<Element, Integer> rank = new IdentityHashMap<>();
+        for (Element e : this.elements) {
+            if (!e.removed) {
+                rank.put(e, rank.size());
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Makes the songs shown, in order, those of {@code reuse[0, count)}, with
+     * {@code songs[i]} inserted wherever {@code reuse[i]} is null, and makes
+     * the song at {@code current} current, as local edits: the elements shown
+     * and not reused are removed, the reused ones marked in {@code stays}
+     * stay where they are, and the others are moved, each right after the
+     * song before it. Runs in O(n) for n elements; the caller fixes the
+     * history.
+     *
+     * @param reuse
+     *            distinct elements shown, or null
+     * @param songs
+     *            the songs to insert where {@code reuse} is null; may be null
+     *            if there are none
+     * @param stays
+     *            which reused elements stay; those marked must already be in
+     *            order
+     * @param count
+     *            number of songs to show
+     * @param current
+     *            position of the new current song
+     */
+    private void rearrange(Element[] reuse, Song[] songs, boolean[] stays,
+            int count, int current) {
+        Map<Element, Integer> dropped = this.ranks();
+        for (int i = 0; i < count; i++) {
+            if (reuse[i] != null) {
+                dropped.remove(reuse[i]);
+            }
+        }
+        for (Element e : dropped.keySet()) {
+            Update u = new Update();
+            u.kind = REMOVE;
+            u.origin = this.replicaId;
+            u.seq = this.nextSeq();
+            u.ref = new Id(e.counter, e.replica);
+            e.first.deleted = true;
+            e.removed = true;
+            this.tombstones++;
+            this.record(u);
+        }
+        // the new elements, by the element they follow
+        List<Element> atStart = new ArrayList<>();
+        Map<Element, List<Element>> runs = new IdentityHashMap<>();
+        List<Element> run = atStart;
+        Element before = null;
+        Element currentElement = null;
+        long millis = 0;
+        for (int i = 0; i < count; i++) {
+            Element e = reuse[i];
+            if (!stays[i]) {
+                Update u = new Update();
+                u.origin = this.replicaId;
+                u.seq = this.nextSeq();
+                u.counter = this.clock + 1;
+                u.ref = new Id(0, 0);
+                if (before != null) {
+                    u.ref = new Id(before.counter, before.replica);
+                }
+                if (e == null) {
+                    u.kind = INSERT;
+                    u.song = songs[i];
+                    e = new Element(u.counter, this.replicaId, songs[i]);
+                } else {
+                    u.kind = MOVE;
+                    u.moved = new Id(e.counter, e.replica);
+                    Element moved = e;
+                    e = new Element(u.counter, this.replicaId, moved);
+                    e.first.live = e;
+                    moved.removed = true;
+                    this.tombstones++;
+                }
+                this.clock = u.counter;
+                this.byId.put(new Id(e.counter, e.replica), e);
+                if (run == null) {
+                    run = new ArrayList<>();
+                    runs.put(before, run);
+                }
+                run.add(e);
+                this.record(u);
+            } else {
+                run = null;
+            }
+            if (i == current) {
+                currentElement = e;
+            }
+            millis += e.song.durationMillis();
+            before = e;
+        }
+        List<Element> rebuilt = new ArrayList<>(
+                this.elements.size() + count);
+        rebuilt.addAll(atStart);
+        for (Element e : this.elements) {
+            rebuilt.add(e);
+            List<Element> after = runs.get(e);
+            if (after != null) {
+                rebuilt.addAll(after);
+            }
+        }
+        this.elements = rebuilt;
+        this.visible = count;
+        this.totalMillis = millis;
+        this.currentRaw = -1;
+        this.currentIndex = 0;
+        if (count > 0) {
+            this.currentRaw = rebuilt.indexOf(currentElement);
+            this.currentIndex = current;
+        }
+    }
+
+    @Override
+    protected final Song[] songsToArray() {
+        return this.songsInRange(0, this.visible);
+    }
+
+    @Override
+    public final Song[] songsInRange(int from, int count) {
+        checkRange(from, count, this.visible);
+        Song[] result = new Song[count];
+        int index = 0;
+        for (Element e : this.elements) {
+            if (!e.removed) {
+                if (index >= from + count) {
+                    break;
+                }
+                if (index >= from) {
+                    result[index - from] = e.song;
+                }
+                index++;
+            }
+        }
+        return result;
+    }
+
+}
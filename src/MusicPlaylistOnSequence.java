@@ -1,11 +1,13 @@
 // File: MusicPlaylistOnSequence.java
 
+import java.util.Iterator;
+
 import components.sequence.Sequence;
 import components.sequence.Sequence1L;
 
 /**
  * A concrete implementation of the MusicPlaylist component using an OSU
- * {@link components.sequence.Sequence} to store song titles.
+ * {@link components.sequence.Sequence} to store songs.
  *
  * <p>
  * <b>Representation Invariant:</b>
@@ -13,6 +15,15 @@ import components.sequence.Sequence1L;
  * <li>If {@code songs.length() == 0}, then {@code currentIndex == 0}.</li>
  * <li>If {@code songs.length() > 0}, then
  * {@code 0 <= currentIndex < songs.length()}.</li>
+ * <li>{@code index} is null or indexes exactly the entries of {@code songs}
+ * at their positions.</li>
+ * <li>{@code durations.get(i) = songs.entry(i).durationMillis()} for
+ * {@code 0 <= i < songs.length()}.</li>
+ * <li>every position in {@code history} is in {@code [0, songs.length())}.
+ * </li>
+ * <li>If {@code reader != null}, then {@code page} holds the songs at
+ * {@code [pageFrom, pageFrom + |page|)} and {@code reader} returns the songs
+ * from {@code pageFrom + |page|} on.</li>
  * </ul>
  * </p>
  *
@@ -27,15 +38,51 @@ import components.sequence.Sequence1L;
 public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
 
     /**
-     * Sequence of song titles.
+     * Sequence of songs.
      */
-    private Sequence<String> songs;
+    private Sequence<Song> songs;
 
     /**
      * Index of the current song.
      */
     private int currentIndex;
 
+    /**
+     * Title search index over {@code songs}, or null if no search ran since
+     * the playlist was created, cleared or bulk loaded: playlists that are
+     * never searched do not pay for it. Volatile, so that a search building
+     * it under the monitor publishes it safely to searches running
+     * concurrently.
+     */
+    private volatile SongSearchIndex index;
+
+    /**
+     * Durations of {@code songs}, for time-based queries.
+     */
+    private PrefixSumTree durations;
+
+    /**
+     * Positions recently moved away from, for {@link #previousSong()}.
+     */
+    private PlayHistory history;
+
+    /**
+     * Iterator over {@code songs} left just past the last page read by
+     * {@link #songsInRange(int, int)}, so the next page can continue from it;
+     * null if {@code songs} changed since.
+     */
+    private Iterator<Song> reader;
+
+    /**
+     * The last page read, ending where {@code reader} stands.
+     */
+    private Song[] page;
+
+    /**
+     * Position of the first song of {@code page}.
+     */
+    private int pageFrom;
+
     /**
      * Constructor: Initializes an empty MusicPlaylistOnSequence.
      *
@@ -45,8 +92,28 @@ public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
      *          </pre>
      */
     public MusicPlaylistOnSequence() {
-        this.songs = new Sequence1L<>();
+        this(new Sequence1L<>());
+    }
+
+    /**
+     * Constructor: Initializes an empty MusicPlaylistOnSequence storing its
+     * songs in {@code songs}, so tests can count the steps it takes.
+     *
+     * @param songs
+     *            the empty sequence to use, and to make new ones from
+     * @requires songs.length() = 0
+     * @ensures <pre>
+     *          songs.length() = 0  and
+     *          currentIndex = 0
+     *          </pre>
+     */
+    MusicPlaylistOnSequence(Sequence<Song> songs) {
+        assert songs.length() == 0 : "Violation of: songs is empty";
+        this.songs = songs;
         this.currentIndex = 0;
+        this.index = null;
+        this.durations = new PrefixSumTree();
+        this.history = new PlayHistory();
     }
 
     // Standard methods
@@ -54,12 +121,16 @@ public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
     @Override
     public final void clear() {
         this.songs.clear();
+        this.reader = null;
         this.currentIndex = 0;
+        this.index = null;
+        this.durations.clear();
+        this.history.clear();
     }
 
     @Override
     public final MusicPlaylist newInstance() {
-        return new MusicPlaylistOnSequence();
+        return new MusicPlaylistOnSequence(this.songs.newInstance());
     }
 
     @Override
@@ -68,13 +139,23 @@ public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
             throw new IllegalArgumentException("Cannot transfer from self");
         }
         if (!(source instanceof MusicPlaylistOnSequence)) {
-            throw new IllegalArgumentException(
-                    "Source must be MusicPlaylistOnSequence");
+            // another implementation: bulk copy, then empty the source
+            this.copyFrom(source);
+            source.clear();
+            return;
         }
         MusicPlaylistOnSequence other = (MusicPlaylistOnSequence) source;
         this.songs.transferFrom(other.songs);
+        this.reader = null;
+        other.reader = null;
         this.currentIndex = other.currentIndex;
         other.currentIndex = 0;
+        this.index = other.index;
+        other.index = null;
+        this.durations = other.durations;
+        other.durations = new PrefixSumTree();
+        this.history = other.history;
+        other.history = new PlayHistory();
     }
 
     // Kernel methods
@@ -84,7 +165,20 @@ public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
         if (song == null) {
             throw new IllegalArgumentException("song cannot be null");
         }
+        this.addSong(new Song(song));
+    }
+
+    @Override
+    public final void addSong(Song song) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        if (this.index != null) {
+            this.index.insert(this.songs.length(), song.title());
+        }
+        this.durations.insert(this.songs.length(), song.durationMillis());
         this.songs.add(this.songs.length(), song);
+        this.reader = null;
         if (this.songs.length() == 1) {
             this.currentIndex = 0;
         }
@@ -95,18 +189,26 @@ public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
         if (song == null) {
             return null;
         }
+        // walk once instead of calling entry, which walks again each time
         int idx = -1;
-        int len = this.songs.length();
-        for (int i = 0; i < len; i++) {
-            if (this.songs.entry(i).equals(song)) {
+        int i = 0;
+        for (Song s : this.songs) {
+            if (s.title().equals(song)) {
                 idx = i;
                 break;
             }
+            i++;
         }
         if (idx == -1) {
             return null;
         }
-        String removed = this.songs.remove(idx);
+        String removed = this.songs.remove(idx).title();
+        this.reader = null;
+        if (this.index != null) {
+            this.index.remove(idx, removed);
+        }
+        this.durations.remove(idx);
+        this.history.removed(idx);
         if (this.songs.length() == 0) {
             this.currentIndex = 0;
         } else if (idx < this.currentIndex) {
@@ -124,18 +226,48 @@ public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
         if (this.songs.length() == 0) {
             return "No songs in playlist";
         }
-        return this.songs.entry(this.currentIndex);
+        return this.songs.entry(this.currentIndex).title();
+    }
+
+    @Override
+    public final String titleAt(int index) {
+        if (index < 0 || index >= this.songs.length()) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+        return this.songs.entry(index).title();
+    }
+
+    @Override
+    public final Song songAt(int index) {
+        if (index < 0 || index >= this.songs.length()) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+        return this.songs.entry(index);
+    }
+
+    @Override
+    public final int currentIndex() {
+        return this.currentIndex;
     }
 
     @Override
     public final void nextSong() {
-        if (this.songs.length() > 0) {
+        if (this.songs.length() > 1) {
+            this.history.push(this.currentIndex);
             this.currentIndex = (this.currentIndex + 1) % this.songs.length();
         }
     }
 
     @Override
     public final void insertSongAt(String song, int index) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        this.insertSongAt(new Song(song), index);
+    }
+
+    @Override
+    public final void insertSongAt(Song song, int index) {
         if (song == null) {
             throw new IllegalArgumentException("song cannot be null");
         }
@@ -143,6 +275,12 @@ public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
             throw new IllegalArgumentException("index out of bounds");
         }
         this.songs.add(index, song);
+        this.reader = null;
+        if (this.index != null) {
+            this.index.insert(index, song.title());
+        }
+        this.durations.insert(index, song.durationMillis());
+        this.history.inserted(index);
         if (this.songs.length() > 1 && index <= this.currentIndex) {
             this.currentIndex++;
         }
@@ -153,7 +291,13 @@ public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
         if (index < 0 || index >= this.songs.length()) {
             throw new IllegalArgumentException("index out of bounds");
         }
-        String removed = this.songs.remove(index);
+        String removed = this.songs.remove(index).title();
+        this.reader = null;
+        if (this.index != null) {
+            this.index.remove(index, removed);
+        }
+        this.durations.remove(index);
+        this.history.removed(index);
         if (this.songs.length() == 0) {
             this.currentIndex = 0;
         } else if (index < this.currentIndex) {
@@ -171,7 +315,13 @@ public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
         if (this.songs.length() == 0) {
             return null;
         }
-        String removed = this.songs.remove(this.currentIndex);
+        String removed = this.songs.remove(this.currentIndex).title();
+        this.reader = null;
+        if (this.index != null) {
+            this.index.remove(this.currentIndex, removed);
+        }
+        this.durations.remove(this.currentIndex);
+        this.history.removed(this.currentIndex);
         if (this.songs.length() == 0) {
             this.currentIndex = 0;
         } else if (this.currentIndex >= this.songs.length()) {
@@ -185,7 +335,209 @@ public class MusicPlaylistOnSequence extends MusicPlaylistSecondary {
         if (index < 0 || index >= this.songs.length()) {
             throw new IllegalArgumentException("index out of bounds");
         }
-        this.currentIndex = index;
+        if (index != this.currentIndex) {
+            this.history.push(this.currentIndex);
+            this.currentIndex = index;
+        }
+    }
+
+    @Override
+    public final void moveSong(int from, int to) {
+        this.moveRange(from, 1, to);
+    }
+
+    @Override
+    public final void moveRange(int from, int count, int to) {
+        int len = this.songs.length();
+        if (from < 0 || count < 0 || from > len - count) {
+            throw new IllegalArgumentException("range out of bounds");
+        }
+        if (to < 0 || to > len - count) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+        if (count == 0 || from == to) {
+            return;
+        }
+        Sequence<Song> block = this.songs.newInstance();
+        this.songs.extract(from, from + count, block);
+        this.songs.insert(to, block);
+        this.reader = null;
+        if (this.index != null) {
+            this.index.remap(i -> positionAfterMove(i, from, count, to));
+        }
+        this.durations.move(from, count, to);
+        this.history.remap(i -> positionAfterMove(i, from, count, to));
+        this.currentIndex = positionAfterMove(this.currentIndex, from, count,
+                to);
+    }
+
+    // Secondary methods overridden for efficiency
+
+    @Override
+    public final void previousSong() {
+        int len = this.songs.length();
+        if (len > 1) {
+            int back = this.history.pop();
+            while (back == this.currentIndex) {
+                back = this.history.pop();
+            }
+            if (back < 0) {
+                back = (this.currentIndex + len - 1) % len;
+            }
+            this.currentIndex = back;
+        }
+    }
+
+    @Override
+    public final int length() {
+        return this.songs.length();
+    }
+
+    @Override
+    protected final Song[] songsToArray() {
+        Song[] result = new Song[this.songs.length()];
+        int i = 0;
+        for (Song song : this.songs) {
+            result[i] = song;
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The sequence can only be walked from the front, so the walk resumes
+     * where the previous page ended: reading the same page again, or any page
+     * further on, costs O(count) plus the distance skipped, and only a page
+     * starting before the previous one walks again from position 0. Reads may
+     * run concurrently, so the walk is synchronized.
+     * </p>
+     */
+    @Override
+    public final synchronized Song[] songsInRange(int from, int count) {
+        checkRange(from, count, this.songs.length());
+        if (this.reader == null || from < this.pageFrom) {
+            this.reader = this.songs.iterator();
+            this.page = new Song[0];
+            this.pageFrom = 0;
+        }
+        Song[] result = new Song[count];
+        int end = from + count;
+        int pageEnd = this.pageFrom + this.page.length;
+        if (end <= pageEnd) {
+            System.arraycopy(this.page, from - this.pageFrom, result, 0,
+                    count);
+            return result;
+        }
+        // reuse the part of the last page that overlaps this one
+        int next = from;
+        while (next < pageEnd) {
+            result[next - from] = this.page[next - this.pageFrom];
+            next++;
+        }
+        // skip to this page if it starts after the last one
+        for (int i = pageEnd; i < from; i++) {
+            this.reader.next();
+        }
+        while (next < end) {
+            result[next - from] = this.reader.next();
+            next++;
+        }
+        // the caller owns the result, so the page keeps a copy
+        this.page = result.clone();
+        this.pageFrom = from;
+        return result;
+    }
+
+    @Override
+    protected final void loadSongs(Song[] songs, int count, int current) {
+        Sequence<Song> loaded = this.songs.newInstance();
+        long[] millis = new long[count];
+        for (int i = 0; i < count; i++) {
+            loaded.add(i, songs[i]);
+            millis[i] = songs[i].durationMillis();
+        }
+        this.songs = loaded;
+        this.reader = null;
+        // the search index is rebuilt on the first search, if any
+        this.index = null;
+        this.durations.load(millis, count);
+        this.history.clear();
+        this.currentIndex = current;
+    }
+
+    @Override
+    public final int indexOfId(long id) {
+        int i = 0;
+        for (Song song : this.songs) {
+            if (song.id() == id) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    @Override
+    public final long totalDuration() {
+        return this.durations.total();
+    }
+
+    @Override
+    public final long timeRemainingFromCurrent() {
+        return this.durations.total()
+                - this.durations.prefixSum(this.currentIndex);
+    }
+
+    @Override
+    public final void goToTime(long millis) {
+        if (millis < 0 || millis >= this.durations.total()) {
+            throw new IllegalArgumentException("time out of bounds");
+        }
+        this.goToSong(this.durations.find(millis));
+    }
+
+    /**
+     * Returns {@code index}, building it first if needed. Searches may run
+     * concurrently, so the first one builds it under the monitor and the
+     * others wait for it; once built, reading the volatile field is enough.
+     *
+     * @return the title search index
+     */
+    private SongSearchIndex searchIndex() {
+        SongSearchIndex built = this.index;
+        if (built == null) {
+            synchronized (this) {
+                built = this.index;
+                if (built == null) {
+                    built = new SongSearchIndex();
+                    int i = 0;
+                    for (Song song : this.songs) {
+                        built.insert(i, song.title());
+                        i++;
+                    }
+                    this.index = built;
+                }
+            }
+        }
+        return built;
+    }
+
+    @Override
+    public final int[] searchPrefix(String prefix) {
+        return this.searchIndex().prefix(prefix);
+    }
+
+    @Override
+    public final int[] searchContaining(String fragment) {
+        return this.searchIndex().containing(fragment);
+    }
+
+    @Override
+    public final int[] searchSimilar(String query) {
+        return this.searchIndex().similar(query);
     }
 
 }
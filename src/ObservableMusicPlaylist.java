@@ -0,0 +1,464 @@
+// File: ObservableMusicPlaylist.java
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * Decorator that forwards every call to another {@link MusicPlaylist} and
+ * tells its {@link PlaylistListener}s about each edit and each change of the
+ * current song.
+ *
+ * <p>
+ * Single-song edits are reported precisely ({@code songsInserted},
+ * {@code songRemoved}, {@code songsMoved}); bulk reorderings and replacements
+ * are reported as {@code contentsReplaced}. Navigation is reported as
+ * {@code currentMoved}, only when the current position actually changes, and
+ * {@code nextSong} is also reported as {@code songAdvanced}.
+ * Calls that throw, and calls that change nothing, are not reported.
+ * </p>
+ *
+ * <p>
+ * Playlists produced by {@link #newInstance()} are observable but have no
+ * listeners. {@link #transferFrom(MusicPlaylist)} accepts either another
+ * observable playlist, whose listeners are told it was emptied, or a playlist
+ * of the decorated kind.
+ * </p>
+ *
+ * @author …
+ */
+public final class ObservableMusicPlaylist implements MusicPlaylist {
+
+    /**
+     * The decorated playlist.
+     */
+    private final MusicPlaylist delegate;
+
+    /**
+     * The listeners, in registration order.
+     */
+    private final List<PlaylistListener> listeners =
+            new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param delegate
+     *            the playlist to observe
+     * @requires delegate != null
+     * @ensures <pre>
+     *          this = delegate
+     *          </pre>
+     */
+    public ObservableMusicPlaylist(MusicPlaylist delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the decorated playlist.
+     *
+     * @return the decorated playlist
+     */
+    public MusicPlaylist delegate() {
+        return this.delegate;
+    }
+
+    /**
+     * Registers {@code listener} to be told about later changes.
+     *
+     * @param listener
+     *            the listener
+     * @requires listener != null
+     */
+    public void addListener(PlaylistListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener cannot be null");
+        }
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Unregisters {@code listener}; does nothing if it is not registered.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void removeListener(PlaylistListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Returns the playlist {@code p} decorates, if it is observable.
+     *
+     * @param p
+     *            a playlist
+     * @return the decorated playlist, or {@code p} itself
+     */
+    private static MusicPlaylist unwrap(MusicPlaylist p) {
+        if (p instanceof ObservableMusicPlaylist) {
+            return ((ObservableMusicPlaylist) p).delegate;
+        }
+        return p;
+    }
+
+    /**
+     * Reports {@code count} songs inserted at {@code index}, if any.
+     *
+     * @param index
+     *            position of the first inserted song
+     * @param count
+     *            number of songs inserted
+     */
+    private void fireInserted(int index, int count) {
+        if (count > 0) {
+            for (PlaylistListener l : this.listeners) {
+                l.songsInserted(index, count);
+            }
+        }
+    }
+
+    /**
+     * Reports the song at {@code index} removed.
+     *
+     * @param index
+     *            position the song had
+     */
+    private void fireRemoved(int index) {
+        for (PlaylistListener l : this.listeners) {
+            l.songRemoved(index);
+        }
+    }
+
+    /**
+     * Reports a bulk change.
+     */
+    private void fireReplaced() {
+        for (PlaylistListener l : this.listeners) {
+            l.contentsReplaced();
+        }
+    }
+
+    /**
+     * Reports a change of current position from {@code from}, if there was
+     * one.
+     *
+     * @param from
+     *            the current position before navigating
+     */
+    private void fireMoved(int from) {
+        int to = this.delegate.currentIndex();
+        if (to != from) {
+            for (PlaylistListener l : this.listeners) {
+                l.currentMoved(from, to);
+            }
+        }
+    }
+
+    /**
+     * Tells every listener that {@code nextSong} moved the current song away
+     * from {@code from}, if it did.
+     *
+     * @param from
+     *            the current position before the call
+     */
+    private void fireAdvanced(int from) {
+        int to = this.delegate.currentIndex();
+        if (to != from) {
+            for (PlaylistListener l : this.listeners) {
+                l.currentMoved(from, to);
+                l.songAdvanced(from, to);
+            }
+        }
+    }
+
+    // Standard methods
+
+    @Override
+    public void clear() {
+        this.delegate.clear();
+        this.fireReplaced();
+    }
+
+    @Override
+    public MusicPlaylist newInstance() {
+        return new ObservableMusicPlaylist(this.delegate.newInstance());
+    }
+
+    @Override
+    public void transferFrom(MusicPlaylist source) {
+        if (source == this) {
+            throw new IllegalArgumentException("Cannot transfer from self");
+        }
+        this.delegate.transferFrom(unwrap(source));
+        this.fireReplaced();
+        if (source instanceof ObservableMusicPlaylist) {
+            ((ObservableMusicPlaylist) source).fireReplaced();
+        }
+    }
+
+    // Kernel methods
+
+    @Override
+    public void addSong(String song) {
+        this.delegate.addSong(song);
+        this.fireInserted(this.delegate.length() - 1, 1);
+    }
+
+    @Override
+    public void addSong(Song song) {
+        this.delegate.addSong(song);
+        this.fireInserted(this.delegate.length() - 1, 1);
+    }
+
+    @Override
+    public String removeSong(String song) {
+        if (song == null) {
+            return null;
+        }
+        int i = 0;
+        for (Song s : this.delegate.window(0, this.delegate.length())) {
+            if (s.title().equals(song)) {
+                return this.removeSongAt(i);
+            }
+            i++;
+        }
+        return null;
+    }
+
+    @Override
+    public String getCurrentSong() {
+        return this.delegate.getCurrentSong();
+    }
+
+    @Override
+    public String titleAt(int index) {
+        return this.delegate.titleAt(index);
+    }
+
+    @Override
+    public Song songAt(int index) {
+        return this.delegate.songAt(index);
+    }
+
+    @Override
+    public int currentIndex() {
+        return this.delegate.currentIndex();
+    }
+
+    @Override
+    public void nextSong() {
+        int from = this.delegate.currentIndex();
+        this.delegate.nextSong();
+        this.fireAdvanced(from);
+    }
+
+    @Override
+    public void insertSongAt(String song, int index) {
+        this.delegate.insertSongAt(song, index);
+        this.fireInserted(index, 1);
+    }
+
+    @Override
+    public void insertSongAt(Song song, int index) {
+        this.delegate.insertSongAt(song, index);
+        this.fireInserted(index, 1);
+    }
+
+    @Override
+    public String removeSongAt(int index) {
+        String result = this.delegate.removeSongAt(index);
+        this.fireRemoved(index);
+        return result;
+    }
+
+    @Override
+    public String removeCurrentSong() {
+        int index = this.delegate.currentIndex();
+        String result = this.delegate.removeCurrentSong();
+        if (result != null) {
+            this.fireRemoved(index);
+        }
+        return result;
+    }
+
+    @Override
+    public void goToSong(int index) {
+        int from = this.delegate.currentIndex();
+        this.delegate.goToSong(index);
+        this.fireMoved(from);
+    }
+
+    @Override
+    public void moveSong(int from, int to) {
+        this.moveRange(from, 1, to);
+    }
+
+    @Override
+    public void moveRange(int from, int count, int to) {
+        this.delegate.moveRange(from, count, to);
+        if (count > 0 && from != to) {
+            for (PlaylistListener l : this.listeners) {
+                l.songsMoved(from, count, to);
+            }
+        }
+    }
+
+    // Secondary methods
+
+    @Override
+    public void previousSong() {
+        int from = this.delegate.currentIndex();
+        this.delegate.previousSong();
+        this.fireMoved(from);
+    }
+
+    @Override
+    public void shuffle() {
+        this.delegate.shuffle();
+        this.fireReplaced();
+    }
+
+    @Override
+    public boolean contains(String song) {
+        return this.delegate.contains(song);
+    }
+
+    @Override
+    public void displayPlaylist() {
+        this.delegate.displayPlaylist();
+    }
+
+    @Override
+    public int length() {
+        return this.delegate.length();
+    }
+
+    @Override
+    public int[] searchPrefix(String prefix) {
+        return this.delegate.searchPrefix(prefix);
+    }
+
+    @Override
+    public int[] searchContaining(String fragment) {
+        return this.delegate.searchContaining(fragment);
+    }
+
+    @Override
+    public int[] searchSimilar(String query) {
+        return this.delegate.searchSimilar(query);
+    }
+
+    @Override
+    public int indexOfId(long id) {
+        return this.delegate.indexOfId(id);
+    }
+
+    @Override
+    public void addSong(String song, long durationMillis) {
+        this.delegate.addSong(song, durationMillis);
+        this.fireInserted(this.delegate.length() - 1, 1);
+    }
+
+    @Override
+    public long totalDuration() {
+        return this.delegate.totalDuration();
+    }
+
+    @Override
+    public long timeRemainingFromCurrent() {
+        return this.delegate.timeRemainingFromCurrent();
+    }
+
+    @Override
+    public void goToTime(long millis) {
+        int from = this.delegate.currentIndex();
+        this.delegate.goToTime(millis);
+        this.fireMoved(from);
+    }
+
+    @Override
+    public int distinct() {
+        int result = this.delegate.distinct();
+        if (result > 0) {
+            this.fireReplaced();
+        }
+        return result;
+    }
+
+    @Override
+    public void sort(Comparator<? super Song> order) {
+        this.delegate.sort(order);
+        this.fireReplaced();
+    }
+
+    @Override
+    public int removeIf(Predicate<? super Song> filter) {
+        int result = this.delegate.removeIf(filter);
+        if (result > 0) {
+            this.fireReplaced();
+        }
+        return result;
+    }
+
+    @Override
+    public void mergeFrom(MusicPlaylist... sources) {
+        MusicPlaylist[] unwrapped = sources.clone();
+        for (int i = 0; i < unwrapped.length; i++) {
+            unwrapped[i] = unwrap(sources[i]);
+        }
+        int before = this.delegate.length();
+        this.delegate.mergeFrom(unwrapped);
+        this.fireInserted(before, this.delegate.length() - before);
+    }
+
+    @Override
+    public void copyFrom(MusicPlaylist source) {
+        if (source != this) {
+            this.delegate.copyFrom(unwrap(source));
+            this.fireReplaced();
+        }
+    }
+
+    @Override
+    public Song[] songsInRange(int from, int count) {
+        return this.delegate.songsInRange(from, count);
+    }
+
+    @Override
+    public PlaylistWindow window(int from, int count) {
+        return this.delegate.window(from, count);
+    }
+
+    @Override
+    public PlaylistWindow windowAroundCurrent(int count) {
+        return this.delegate.windowAroundCurrent(count);
+    }
+
+    // Object methods
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ObservableMusicPlaylist)) {
+            return false;
+        }
+        return this.delegate.equals(((ObservableMusicPlaylist) obj).delegate);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.delegate.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.delegate.toString();
+    }
+
+}
@@ -0,0 +1,174 @@
+// File: PlayHistory.java
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Bounded history of the playlist positions a playlist has moved away from,
+ * most recent last, kept in a ring buffer.
+ *
+ * <p>
+ * Every operation is allocation-free. {@link #push(int)} and {@link #pop()}
+ * are O(1); when the buffer is full, pushing forgets the oldest position. The
+ * edit hooks ({@link #inserted(int)}, {@link #removed(int)} and
+ * {@link #remap(IntUnaryOperator)}) keep the recorded positions pointing at
+ * the same songs and cost O(capacity), which is a constant independent of the
+ * playlist length.
+ * </p>
+ *
+ * @author …
+ */
+final class PlayHistory {
+
+    /**
+     * Number of positions remembered by default.
+     */
+    static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Ring buffer of positions.
+     */
+    private final int[] positions;
+
+    /**
+     * Slot the next position will be written to.
+     */
+    private int head;
+
+    /**
+     * Number of positions remembered.
+     */
+    private int size;
+
+    /**
+     * Constructor: empty history of {@link #DEFAULT_CAPACITY} positions.
+     */
+    PlayHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor: empty history.
+     *
+     * @param capacity
+     *            number of positions to remember
+     * @requires capacity > 0
+     */
+    PlayHistory(int capacity) {
+        this.positions = new int[capacity];
+        this.head = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Returns the slot {@code k} places after the oldest remembered position.
+     *
+     * @param k
+     *            offset from the oldest position
+     * @return the slot
+     */
+    private int slot(int k) {
+        int n = this.positions.length;
+        return (this.head - this.size + k + 2 * n) % n;
+    }
+
+    /**
+     * Forgets every position.
+     */
+    void clear() {
+        this.head = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Reports the number of positions remembered.
+     *
+     * @return the size of the history
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Remembers {@code position} as the most recent one, forgetting the oldest
+     * if the history is full.
+     *
+     * @param position
+     *            the position moved away from
+     */
+    void push(int position) {
+        this.positions[this.head] = position;
+        this.head = (this.head + 1) % this.positions.length;
+        if (this.size < this.positions.length) {
+            this.size++;
+        }
+    }
+
+    /**
+     * Removes and returns the most recent position.
+     *
+     * @return the most recent position, or -1 if the history is empty
+     */
+    int pop() {
+        if (this.size == 0) {
+            return -1;
+        }
+        this.head = (this.head - 1 + this.positions.length)
+                % this.positions.length;
+        this.size--;
+        return this.positions[this.head];
+    }
+
+    /**
+     * Updates the history after a song was inserted at {@code index}.
+     *
+     * @param index
+     *            position of the inserted song
+     */
+    void inserted(int index) {
+        for (int k = 0; k < this.size; k++) {
+            int s = this.slot(k);
+            if (this.positions[s] >= index) {
+                this.positions[s]++;
+            }
+        }
+    }
+
+    /**
+     * Updates the history after the song at {@code index} was removed,
+     * forgetting every visit to it.
+     *
+     * @param index
+     *            position of the removed song
+     */
+    void removed(int index) {
+        int first = this.slot(0);
+        int kept = 0;
+        for (int k = 0; k < this.size; k++) {
+            int p = this.positions[(first + k) % this.positions.length];
+            if (p != index) {
+                if (p > index) {
+                    p--;
+                }
+                this.positions[(first + kept) % this.positions.length] = p;
+                kept++;
+            }
+        }
+        this.head = (first + kept) % this.positions.length;
+        this.size = kept;
+    }
+
+    /**
+     * Replaces every remembered position {@code p} by {@code f(p)}, e.g. after
+     * songs were moved.
+     *
+     * @param f
+     *            old position to new position
+     */
+    void remap(IntUnaryOperator f) {
+        for (int k = 0; k < this.size; k++) {
+            int s = this.slot(k);
+            this.positions[s] = f.applyAsInt(this.positions[s]);
+        }
+    }
+
+}
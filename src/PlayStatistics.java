@@ -0,0 +1,324 @@
+// File: PlayStatistics.java
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Streaming play statistics in bounded memory: approximate play counts and
+ * the most played songs, from a {@link CountMinSketch} and a top-K heap, and
+ * the approximate number of distinct songs played, from a
+ * {@link HyperLogLog}.
+ *
+ * <p>
+ * A play is recorded with {@link #record(Song)}, or automatically for a
+ * playlist given to {@link #follow(ObservableMusicPlaylist)}, which records
+ * the song landed on every time {@code nextSong} advances the playlist. Each
+ * record costs O(depth) for the sketch plus O(K) when the song's place among
+ * the heavy hitters changes, and the memory used is fixed by the sketch sizes
+ * and K, however many songs the catalog holds.
+ * </p>
+ *
+ * <p>
+ * Songs are identified by catalog id, or by title and artist if they have
+ * none. All methods are thread-safe. Collectors of the same shape, e.g. one
+ * per playlist or per thread, can be combined with {@link #merge}.
+ * </p>
+ *
+ * @author …
+ */
+public final class PlayStatistics {
+
+    /**
+     * Default number of heavy hitters kept.
+     */
+    public static final int DEFAULT_TOP_K = 20;
+
+    /**
+     * Default Count-Min sketch width.
+     */
+    public static final int DEFAULT_WIDTH = 4096;
+
+    /**
+     * Default Count-Min sketch depth.
+     */
+    public static final int DEFAULT_DEPTH = 5;
+
+    /**
+     * A heavy-hitter candidate.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+
+        /**
+         * The song.
+         */
+        private final Song song;
+
+        /**
+         * Its estimated play count when last updated.
+         */
+        private long plays;
+
+        /**
+         * Constructor.
+         *
+         * @param song
+         *            the song
+         * @param plays
+         *            its estimated play count
+         */
+        Candidate(Song song, long plays) {
+            this.song = song;
+            this.plays = plays;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Long.compare(this.plays, other.plays);
+        }
+    }
+
+    /**
+     * Play counts.
+     */
+    private final CountMinSketch counts;
+
+    /**
+     * Distinct songs played.
+     */
+    private final HyperLogLog distinct;
+
+    /**
+     * Number of heavy hitters kept.
+     */
+    private final int topK;
+
+    /**
+     * Heavy-hitter candidates, by song key.
+     */
+    private final Map<Long, Candidate> candidates = new HashMap<>();
+
+    /**
+     * The candidates, least played first.
+     */
+    private final PriorityQueue<Candidate> heap = new PriorityQueue<>();
+
+    /**
+     * Constructor with the default sizes.
+     */
+    public PlayStatistics() {
+        this(DEFAULT_TOP_K, DEFAULT_WIDTH, DEFAULT_DEPTH,
+                HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param topK
+     *            number of most played songs to keep
+     * @param width
+     *            Count-Min sketch width
+     * @param depth
+     *            Count-Min sketch depth
+     * @param precision
+     *            HyperLogLog precision
+     * @requires topK > 0 AND width is a power of two AND 1 <= depth <= 16
+     *           AND 4 <= precision <= 18
+     */
+    public PlayStatistics(int topK, int width, int depth, int precision) {
+        if (topK <= 0) {
+            throw new IllegalArgumentException("topK must be > 0");
+        }
+        this.topK = topK;
+        this.counts = new CountMinSketch(width, depth);
+        this.distinct = new HyperLogLog(precision);
+    }
+
+    /**
+     * Returns the 64-bit key identifying {@code song} in the sketches: its
+     * catalog id, or else a hash of its title and artist.
+     *
+     * @param song
+     *            the song
+     * @return its key
+     */
+    private static long keyOf(Song song) {
+        if (song.id() != 0) {
+            return song.id();
+        }
+        long h = 0xCBF29CE484222325L;
+        String s = song.title() + '\u0000' + song.artist();
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    /**
+     * Records one play of {@code song}.
+     *
+     * @param song
+     *            the song played
+     * @requires song != null
+     */
+    public synchronized void record(Song song) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        long key = keyOf(song);
+        this.distinct.add(key);
+        this.offer(key, song, this.counts.add(key, 1));
+    }
+
+    /**
+     * Updates the heavy hitters with the estimate {@code plays} of
+     * {@code song}.
+     *
+     * @param key
+     *            the song's key
+     * @param song
+     *            the song
+     * @param plays
+     *            its estimated play count
+     */
+    private void offer(long key, Song song, long plays) {
+        Candidate c = this.candidates.get(key);
+        if (c != null) {
+            // the heap is keyed on plays, so reinsert to reorder it
+            this.heap.remove(c);
+            c.plays = plays;
+            this.heap.add(c);
+        } else if (this.heap.size() < this.topK) {
+            c = new Candidate(song, plays);
+            this.candidates.put(key, c);
+            this.heap.add(c);
+        } else if (plays > this.heap.peek().plays) {
+            Candidate evicted = this.heap.poll();
+            this.candidates.remove(keyOf(evicted.song));
+            c = new Candidate(song, plays);
+            this.candidates.put(key, c);
+            this.heap.add(c);
+        }
+    }
+
+    /**
+     * Records a play every time {@code nextSong} advances {@code playlist} to
+     * another song, until the returned handle is closed. Jumps made with
+     * {@code previousSong}, {@code goToSong} or {@code goToTime} are not
+     * plays.
+     *
+     * @param playlist
+     *            the playlist to follow
+     * @return a handle that stops following when closed
+     * @requires playlist != null
+     */
+    public AutoCloseable follow(ObservableMusicPlaylist playlist) {
+        if (playlist == null) {
+            throw new IllegalArgumentException("playlist cannot be null");
+        }
+        PlaylistListener listener = new PlaylistListener() {
+            @Override
+            public void songAdvanced(int from, int to) {
+                PlayStatistics.this.record(playlist.songAt(to));
+            }
+        };
+        playlist.addListener(listener);
+        return () -> playlist.removeListener(listener);
+    }
+
+    /**
+     * Reports the number of plays recorded, exactly.
+     *
+     * @return the number of plays
+     */
+    public synchronized long totalPlays() {
+        return this.counts.total();
+    }
+
+    /**
+     * Returns the estimated number of plays of {@code song}.
+     *
+     * @param song
+     *            the song
+     * @return an estimate, never below the true count
+     * @requires song != null
+     */
+    public synchronized long estimatedPlays(Song song) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        return this.counts.estimate(keyOf(song));
+    }
+
+    /**
+     * Returns the estimated number of distinct songs played.
+     *
+     * @return the estimate
+     */
+    public synchronized long distinctSongs() {
+        return this.distinct.estimate();
+    }
+
+    /**
+     * Returns the most played songs with their estimated play counts, most
+     * played first.
+     *
+     * @return at most {@code topK} songs and counts
+     */
+    public synchronized List<Map.Entry<Song, Long>> topSongs() {
+        List<Candidate> sorted = new ArrayList<>(this.heap);
+        sorted.sort((a, b) -> Long.compare(b.plays, a.plays));
+        List<Map.Entry<Song, Long>> result = new ArrayList<>(sorted.size());
+        for (Candidate c : sorted) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>(c.song,
+                    c.plays));
+        }
+        return result;
+    }
+
+    /**
+     * Adds every play recorded by {@code other} to this collector. The heavy
+     * hitters are re-ranked from both collectors' candidates using the merged
+     * counts.
+     *
+     * @param other
+     *            a collector of the same shape
+     * @requires other was constructed with the same arguments as this
+     */
+    public void merge(PlayStatistics other) {
+        if (other == this) {
+            throw new IllegalArgumentException("Cannot merge with self");
+        }
+        // copy other first, so that two collectors merging into each other
+        // never hold both locks
+        List<Song> songs = new ArrayList<>();
+        CountMinSketch otherCounts;
+        HyperLogLog otherDistinct;
+        synchronized (other) {
+            for (Candidate c : other.heap) {
+                songs.add(c.song);
+            }
+            otherCounts = new CountMinSketch(other.counts);
+            otherDistinct = new HyperLogLog(other.distinct);
+        }
+        synchronized (this) {
+            this.counts.merge(otherCounts);
+            this.distinct.merge(otherDistinct);
+            for (Candidate c : this.heap) {
+                songs.add(c.song);
+            }
+            this.candidates.clear();
+            this.heap.clear();
+            for (Song song : songs) {
+                long key = keyOf(song);
+                if (!this.candidates.containsKey(key)) {
+                    this.offer(key, song, this.counts.estimate(key));
+                }
+            }
+        }
+    }
+
+}
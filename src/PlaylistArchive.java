@@ -0,0 +1,830 @@
+// File: PlaylistArchive.java
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Read access to an archive of many {@link MusicPlaylist}s, each stored under
+ * a {@code long} playlist id, as written by {@link PlaylistArchive.Writer}.
+ *
+ * <p>
+ * The archive is columnar and compact. Every distinct song across all
+ * playlists is stored once, in a song table whose titles and artists are
+ * dictionary-encoded; each playlist is stored as its length, its current
+ * position and the song-table codes of its songs, delta-encoded as zig-zag
+ * varints (songs are numbered in first-seen order, so runs of consecutive
+ * codes cost one byte each). Playlists are sorted by id and grouped into
+ * blocks of {@value #BLOCK_SIZE}; a sparse index holds the first id and file
+ * offset of each block.
+ * </p>
+ *
+ * <p>
+ * Opening an archive reads the song table and the block index. Reading one
+ * playlist then costs a binary search of the index, one read of its block,
+ * and decoding that one playlist; the rest of the file is never touched.
+ * </p>
+ *
+ * <p>
+ * An archive also serves as a startup snapshot: {@link #snapshot(Map, Path)}
+ * writes every live playlist to one image file, and {@link #restoreAll}
+ * rebuilds them all at boot, decoding blocks in parallel and filling each
+ * playlist with one bulk load instead of repeated {@code addSong} calls.
+ * </p>
+ *
+ * <p>
+ * File layout (all integers are unsigned LEB128 varints unless noted; "zz"
+ * marks zig-zag encoded deltas):
+ * </p>
+ *
+ * <pre>
+ * header   "MPLA" (4 bytes), version (4 bytes)
+ * songs    titleCount, titles (length, UTF-8 bytes)...,
+ *          artistCount, artists (length, UTF-8 bytes)...,
+ *          songCount, titleRef..., artistRef..., zz id..., duration...
+ * blocks   per playlist: zz id, payload length,
+ *          payload = length, current, zz code...
+ * index    blockCount, per block: zz first id, offset delta;
+ *          playlistCount, entryCount
+ * footer   songs offset, blocks offset, index offset (8 bytes each), "MPLA"
+ * </pre>
+ *
+ * @author …
+ */
+public final class PlaylistArchive implements AutoCloseable {
+
+    /**
+     * Magic number at the start and end of every archive ("MPLA").
+     */
+    private static final int MAGIC = 0x4D504C41;
+
+    /**
+     * Format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Number of playlists per block.
+     */
+    public static final int BLOCK_SIZE = 128;
+
+    /**
+     * Size of the fixed-size footer, in bytes.
+     */
+    private static final int FOOTER_BYTES = 3 * Long.BYTES + Integer.BYTES;
+
+    /**
+     * Collects playlists and writes them as one archive.
+     *
+     * <p>
+     * Each playlist is encoded as it is added, so the writer holds only the
+     * song table and the encoded bytes, not the playlists.
+     * </p>
+     */
+    public static final class Writer {
+
+        /**
+         * Song-table code of each distinct song.
+         */
+        private final Map<Song, Integer> codes = new HashMap<>();
+
+        /**
+         * Dictionary code of each distinct title.
+         */
+        private final Map<String, Integer> titleCodes = new HashMap<>();
+
+        /**
+         * Dictionary code of each distinct artist.
+         */
+        private final Map<String, Integer> artistCodes = new HashMap<>();
+
+        /**
+         * Distinct titles, by code.
+         */
+        private final VarintCodec titles = new VarintCodec();
+
+        /**
+         * Distinct artists, by code.
+         */
+        private final VarintCodec artists = new VarintCodec();
+
+        /**
+         * Title column of the song table.
+         */
+        private final VarintCodec titleRefs = new VarintCodec();
+
+        /**
+         * Artist column of the song table.
+         */
+        private final VarintCodec artistRefs = new VarintCodec();
+
+        /**
+         * Id column of the song table, delta-encoded.
+         */
+        private final VarintCodec songIds = new VarintCodec();
+
+        /**
+         * Duration column of the song table.
+         */
+        private final VarintCodec songDurations = new VarintCodec();
+
+        /**
+         * Id of the last song added to the song table.
+         */
+        private long lastSongId;
+
+        /**
+         * Encoded payload of each playlist, by playlist id.
+         */
+        private final TreeMap<Long, byte[]> playlists = new TreeMap<>();
+
+        /**
+         * Total number of songs in the added playlists.
+         */
+        private long entries;
+
+        /**
+         * Reusable buffer for encoding one playlist.
+         */
+        private final VarintCodec scratch = new VarintCodec();
+
+        /**
+         * Returns the dictionary code of {@code s}, adding it if new.
+         *
+         * @param dictionary
+         *            codes so far
+         * @param values
+         *            encoded dictionary entries
+         * @param s
+         *            the string
+         * @return its code
+         */
+        private static int intern(Map<String, Integer> dictionary,
+                VarintCodec values, String s) {
+            Integer code = dictionary.get(s);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(s, code);
+                values.writeString(s);
+            }
+            return code;
+        }
+
+        /**
+         * Returns the song-table code of {@code song}, adding it if new.
+         *
+         * @param song
+         *            the song
+         * @return its code
+         */
+        private int codeOf(Song song) {
+            Integer code = this.codes.get(song);
+            if (code == null) {
+                code = this.codes.size();
+                this.codes.put(song, code);
+                this.titleRefs.writeVarLong(
+                        intern(this.titleCodes, this.titles, song.title()));
+                this.artistRefs.writeVarLong(intern(this.artistCodes,
+                        this.artists, song.artist()));
+                this.songIds.writeZigZag(song.id() - this.lastSongId);
+                this.lastSongId = song.id();
+                this.songDurations.writeVarLong(song.durationMillis());
+            }
+            return code;
+        }
+
+        /**
+         * Adds {@code playlist} under {@code id}. The playlist is unchanged.
+         *
+         * @param id
+         *            the playlist id
+         * @param playlist
+         *            the playlist
+         * @requires playlist != null AND [id was not added before]
+         */
+        public void add(long id, MusicPlaylist playlist) {
+            if (playlist == null) {
+                throw new IllegalArgumentException("playlist cannot be null");
+            }
+            if (this.playlists.containsKey(id)) {
+                throw new IllegalArgumentException("duplicate playlist id");
+            }
+            int n = playlist.length();
+            this.scratch.clear();
+            this.scratch.writeVarLong(n);
+            this.scratch.writeVarLong(playlist.currentIndex());
+            int previous = 0;
+            for (Song song : playlist.window(0, n)) {
+                int code = this.codeOf(song);
+                this.scratch.writeZigZag(code - previous);
+                previous = code;
+            }
+            this.playlists.put(id, this.scratch.toByteArray());
+            this.entries += n;
+        }
+
+        /**
+         * Reports the number of playlists added.
+         *
+         * @return the number of playlists
+         */
+        public int size() {
+            return this.playlists.size();
+        }
+
+        /**
+         * Reports the total number of songs in the added playlists.
+         *
+         * @return the number of entries
+         */
+        public long entries() {
+            return this.entries;
+        }
+
+        /**
+         * Writes every added playlist to {@code out} as one archive.
+         *
+         * @param out
+         *            where to write
+         * @return the number of bytes written
+         * @throws IOException
+         *             if {@code out} fails
+         */
+        public long writeTo(OutputStream out) throws IOException {
+            VarintCodec sink = new VarintCodec();
+            long written = 0;
+            ByteBuffer fixed = ByteBuffer.allocate(FOOTER_BYTES);
+            fixed.putInt(MAGIC).putInt(VERSION);
+            out.write(fixed.array(), 0, fixed.position());
+            written += fixed.position();
+
+            long songsOffset = written;
+            sink.writeVarLong(this.titleCodes.size());
+            sink.writeAll(this.titles);
+            sink.writeVarLong(this.artistCodes.size());
+            sink.writeAll(this.artists);
+            sink.writeVarLong(this.codes.size());
+            sink.writeAll(this.titleRefs);
+            sink.writeAll(this.artistRefs);
+            sink.writeAll(this.songIds);
+            sink.writeAll(this.songDurations);
+            written += sink.drainTo(out);
+
+            long blocksOffset = written;
+            VarintCodec index = new VarintCodec();
+            int blocks = (this.playlists.size() + BLOCK_SIZE - 1)
+                    / BLOCK_SIZE;
+            index.writeVarLong(blocks);
+            int inBlock = 0;
+            long previousId = 0;
+            long blockFirstId = 0;
+            long blockOffset = 0;
+            for (Map.Entry<Long, byte[]> e : this.playlists.entrySet()) {
+                long id = e.getKey();
+                if (inBlock == 0) {
+                    long offset = written - blocksOffset;
+                    index.writeZigZag(id - blockFirstId);
+                    index.writeVarLong(offset - blockOffset);
+                    blockFirstId = id;
+                    blockOffset = offset;
+                    previousId = id;
+                }
+                sink.writeZigZag(id - previousId);
+                sink.writeVarLong(e.getValue().length);
+                sink.writeBytes(e.getValue(), e.getValue().length);
+                previousId = id;
+                inBlock++;
+                if (inBlock == BLOCK_SIZE) {
+                    inBlock = 0;
+                }
+                written += sink.drainTo(out);
+            }
+            long indexOffset = written;
+            index.writeVarLong(this.playlists.size());
+            index.writeVarLong(this.entries);
+            written += index.drainTo(out);
+
+            fixed.clear();
+            fixed.putLong(songsOffset).putLong(blocksOffset)
+                    .putLong(indexOffset).putInt(MAGIC);
+            out.write(fixed.array(), 0, FOOTER_BYTES);
+            written += FOOTER_BYTES;
+            return written;
+        }
+
+        /**
+         * Writes every added playlist to the file {@code path} as one
+         * archive, replacing it if it exists.
+         *
+         * @param path
+         *            the file to write
+         * @return the number of bytes written
+         * @throws IOException
+         *             if the file cannot be written
+         */
+        public long writeTo(Path path) throws IOException {
+            try (OutputStream out = new BufferedOutputStream(
+                    Files.newOutputStream(path), 1 << 16)) {
+                return this.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Writes {@code playlists} to the file {@code path} as one archive. The
+     * archive is written to a temporary file next to {@code path} and then
+     * moved over it, so a crash never leaves a partial snapshot behind.
+     *
+     * @param playlists
+     *            the playlists to write, by id
+     * @param path
+     *            the file to write
+     * @return the number of bytes written
+     * @throws IOException
+     *             if the file cannot be written
+     * @requires playlists != null AND path != null
+     */
+    public static long snapshot(Map<Long, ? extends MusicPlaylist> playlists,
+            Path path) throws IOException {
+        if (playlists == null || path == null) {
+            throw new IllegalArgumentException(
+                    "playlists and path cannot be null");
+        }
+        Writer writer = new Writer();
+        for (Map.Entry<Long, ? extends MusicPlaylist> e : playlists
+                .entrySet()) {
+            writer.add(e.getKey(), e.getValue());
+        }
+        Path dir = path.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, path.getFileName().toString(),
+                ".tmp");
+        try {
+            long written = writer.writeTo(tmp);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return written;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * The archive file.
+     */
+    private final RandomAccessFile file;
+
+    /**
+     * Offset of the first block.
+     */
+    private final long blocksOffset;
+
+    /**
+     * Offset of the index, i.e. end of the last block.
+     */
+    private final long indexOffset;
+
+    /**
+     * Playlist id of the first playlist of each block.
+     */
+    private final long[] blockFirstIds;
+
+    /**
+     * Offset of each block, relative to {@code blocksOffset}, plus the end of
+     * the last block.
+     */
+    private final long[] blockOffsets;
+
+    /**
+     * Number of playlists.
+     */
+    private final int size;
+
+    /**
+     * Total number of songs in the playlists.
+     */
+    private final long entries;
+
+    /**
+     * The song table, by code.
+     */
+    private final Song[] songs;
+
+    /**
+     * Opens the archive {@code path}, reading its song table and index.
+     *
+     * @param path
+     *            the archive file
+     * @throws IOException
+     *             if the file cannot be read or is not an archive
+     */
+    public PlaylistArchive(Path path) throws IOException {
+        this.file = new RandomAccessFile(path.toFile(), "r");
+        boolean opened = false;
+        try {
+            long length = this.file.length();
+            if (length < 2 * Integer.BYTES + FOOTER_BYTES) {
+                throw new IOException("not a playlist archive");
+            }
+            ByteBuffer footer = this.read(length - FOOTER_BYTES,
+                    FOOTER_BYTES);
+            long songsOffset = footer.getLong();
+            this.blocksOffset = footer.getLong();
+            this.indexOffset = footer.getLong();
+            ByteBuffer header = this.read(0, 2 * Integer.BYTES);
+            if (footer.getInt() != MAGIC || header.getInt() != MAGIC) {
+                throw new IOException("not a playlist archive");
+            }
+            if (header.getInt() != VERSION) {
+                throw new IOException("unsupported archive version");
+            }
+
+            ByteBuffer index = this.read(this.indexOffset,
+                    (int) (length - FOOTER_BYTES - this.indexOffset));
+            int blocks = VarintCodec.readVarInt(index);
+            this.blockFirstIds = new long[blocks];
+            this.blockOffsets = new long[blocks + 1];
+            long id = 0;
+            long offset = 0;
+            for (int b = 0; b < blocks; b++) {
+                id += VarintCodec.readZigZag(index);
+                offset += VarintCodec.readVarLong(index);
+                this.blockFirstIds[b] = id;
+                this.blockOffsets[b] = offset;
+            }
+            this.blockOffsets[blocks] = this.indexOffset - this.blocksOffset;
+            this.size = VarintCodec.readVarInt(index);
+            this.entries = VarintCodec.readVarLong(index);
+
+            this.songs = readSongs(this.read(songsOffset,
+                    (int) (this.blocksOffset - songsOffset)));
+            opened = true;
+        } finally {
+            if (!opened) {
+                this.file.close();
+            }
+        }
+    }
+
+    /**
+     * Decodes the song table.
+     *
+     * @param in
+     *            the songs section
+     * @return the songs, by code
+     */
+    private static Song[] readSongs(ByteBuffer in) {
+        String[] titles = new String[VarintCodec.readVarInt(in)];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = VarintCodec.readString(in);
+        }
+        String[] artists = new String[VarintCodec.readVarInt(in)];
+        for (int i = 0; i < artists.length; i++) {
+            artists[i] = VarintCodec.readString(in);
+        }
+        int n = VarintCodec.readVarInt(in);
+        int[] titleRefs = new int[n];
+        for (int i = 0; i < n; i++) {
+            titleRefs[i] = VarintCodec.readVarInt(in);
+        }
+        int[] artistRefs = new int[n];
+        for (int i = 0; i < n; i++) {
+            artistRefs[i] = VarintCodec.readVarInt(in);
+        }
+        long[] ids = new long[n];
+        long id = 0;
+        for (int i = 0; i < n; i++) {
+            id += VarintCodec.readZigZag(in);
+            ids[i] = id;
+        }
+        Song[] result = new Song[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = new Song(ids[i], titles[titleRefs[i]],
+                    artists[artistRefs[i]], VarintCodec.readVarLong(in));
+        }
+        return result;
+    }
+
+    /**
+     * Reads {@code length} bytes of the file starting at {@code offset}.
+     *
+     * @param offset
+     *            where to start
+     * @param length
+     *            how many bytes to read
+     * @return the bytes
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        this.file.seek(offset);
+        this.file.readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Reads {@code length} bytes of the file starting at {@code offset},
+     * without moving the file pointer, so that many threads may call it at
+     * once.
+     *
+     * @param offset
+     *            where to start
+     * @param length
+     *            how many bytes to read
+     * @return the bytes
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private ByteBuffer readAt(long offset, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        FileChannel channel = this.file.getChannel();
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, offset + bytes.position()) < 0) {
+                throw new IOException("truncated playlist archive");
+            }
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * Reports the number of playlists in this archive.
+     *
+     * @return the number of playlists
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Reports the total number of songs in the playlists of this archive.
+     *
+     * @return the number of entries
+     */
+    public long entries() {
+        return this.entries;
+    }
+
+    /**
+     * Reports the number of distinct songs in this archive.
+     *
+     * @return the size of the song table
+     */
+    public int distinctSongs() {
+        return this.songs.length;
+    }
+
+    /**
+     * Finds the payload of playlist {@code id}.
+     *
+     * @param id
+     *            the playlist id
+     * @return the block positioned at the payload, or null if there is no
+     *         such playlist
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private ByteBuffer seek(long id) throws IOException {
+        int b = Arrays.binarySearch(this.blockFirstIds, id);
+        if (b < 0) {
+            b = -b - 2;
+            if (b < 0) {
+                return null;
+            }
+        }
+        long start = this.blockOffsets[b];
+        ByteBuffer block = this.read(this.blocksOffset + start,
+                (int) (this.blockOffsets[b + 1] - start));
+        long current = this.blockFirstIds[b];
+        while (block.hasRemaining()) {
+            current += VarintCodec.readZigZag(block);
+            int length = VarintCodec.readVarInt(block);
+            if (current == id) {
+                return block;
+            }
+            if (current > id) {
+                return null;
+            }
+            block.position(block.position() + length);
+        }
+        return null;
+    }
+
+    /**
+     * Reports whether this archive holds a playlist with id {@code id}.
+     *
+     * @param id
+     *            the playlist id
+     * @return true if it does
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public synchronized boolean contains(long id) throws IOException {
+        return this.seek(id) != null;
+    }
+
+    /**
+     * Replaces the contents of {@code into} with playlist {@code id}, reading
+     * only the block that holds it.
+     *
+     * @param id
+     *            the playlist id
+     * @param into
+     *            the playlist to fill
+     * @throws IOException
+     *             if the file cannot be read
+     * @requires into != null AND [this archive holds playlist id]
+     * @ensures <pre>
+     *          into = [playlist id, with its current song]
+     *          </pre>
+     */
+    public synchronized void read(long id, MusicPlaylist into)
+            throws IOException {
+        if (into == null) {
+            throw new IllegalArgumentException("playlist cannot be null");
+        }
+        ByteBuffer in = this.seek(id);
+        if (in == null) {
+            throw new IllegalArgumentException("no playlist with id " + id);
+        }
+        this.decode(in, into);
+    }
+
+    /**
+     * Loads each playlist of this archive in turn into {@code into}, in
+     * ascending id order, and calls {@code action} with its id. Reads the
+     * file once, block by block.
+     *
+     * @param into
+     *            the playlist to load each stored playlist into
+     * @param action
+     *            called with the id of each playlist once it is loaded
+     * @throws IOException
+     *             if the file cannot be read
+     * @requires into != null AND action != null
+     */
+    public synchronized void forEach(MusicPlaylist into, LongConsumer action)
+            throws IOException {
+        if (into == null || action == null) {
+            throw new IllegalArgumentException(
+                    "playlist and action cannot be null");
+        }
+        for (int b = 0; b < this.blockFirstIds.length; b++) {
+            long start = this.blockOffsets[b];
+            ByteBuffer block = this.read(this.blocksOffset + start,
+                    (int) (this.blockOffsets[b + 1] - start));
+            long current = this.blockFirstIds[b];
+            while (block.hasRemaining()) {
+                current += VarintCodec.readZigZag(block);
+                VarintCodec.readVarInt(block);
+                this.decode(block, into);
+                action.accept(current);
+            }
+        }
+    }
+
+    /**
+     * Creates every playlist of this archive, each from {@code factory} and
+     * filled with one bulk load, and returns them by id. Blocks are read and
+     * decoded in parallel on the common fork/join pool.
+     *
+     * @param factory
+     *            makes each empty playlist to fill
+     * @return the playlists, by id, in ascending id order
+     * @throws IOException
+     *             if the file cannot be read
+     * @requires factory != null AND factory returns a new, distinct playlist
+     *           on every call
+     */
+    public Map<Long, MusicPlaylist> restoreAll(
+            Supplier<? extends MusicPlaylist> factory) throws IOException {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory cannot be null");
+        }
+        List<Map<Long, MusicPlaylist>> blocks;
+        try {
+            blocks = IntStream.range(0, this.blockFirstIds.length).parallel()
+                    .mapToObj(b -> this.restoreBlock(b, factory))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Map<Long, MusicPlaylist> result = new LinkedHashMap<>(
+                2 * this.size);
+        for (Map<Long, MusicPlaylist> block : blocks) {
+            result.putAll(block);
+        }
+        return result;
+    }
+
+    /**
+     * Creates and fills the playlists of block {@code b}.
+     *
+     * @param b
+     *            the block number
+     * @param factory
+     *            makes each empty playlist to fill
+     * @return the playlists of the block, by id, in ascending id order
+     */
+    private Map<Long, MusicPlaylist> restoreBlock(int b,
+            Supplier<? extends MusicPlaylist> factory) {
+        Map<Long, MusicPlaylist> result = new LinkedHashMap<>();
+        long start = this.blockOffsets[b];
+        ByteBuffer block;
+        try {
+            block = this.readAt(this.blocksOffset + start,
+                    (int) (this.blockOffsets[b + 1] - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long current = this.blockFirstIds[b];
+        while (block.hasRemaining()) {
+            current += VarintCodec.readZigZag(block);
+            VarintCodec.readVarInt(block);
+            MusicPlaylist p = factory.get();
+            this.decode(block, p);
+            result.put(current, p);
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the playlist payload at the position of {@code in} into
+     * {@code into}, leaving {@code in} just after it.
+     *
+     * @param in
+     *            the block, positioned at a payload
+     * @param into
+     *            the playlist to fill
+     */
+    private void decode(ByteBuffer in, MusicPlaylist into) {
+        int n = VarintCodec.readVarInt(in);
+        int current = VarintCodec.readVarInt(in);
+        Song[] loaded = new Song[n];
+        int code = 0;
+        for (int i = 0; i < n; i++) {
+            code += (int) VarintCodec.readZigZag(in);
+            loaded[i] = this.songs[code];
+        }
+        if (into instanceof MusicPlaylistSecondary) {
+            ((MusicPlaylistSecondary) into).loadSongs(loaded, n, current);
+        } else {
+            into.clear();
+            for (Song song : loaded) {
+                into.addSong(song);
+            }
+            if (n > 0) {
+                into.goToSong(current);
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of every playlist in this archive, in ascending order.
+     * Reads every block.
+     *
+     * @return the playlist ids
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public synchronized long[] ids() throws IOException {
+        long[] result = new long[this.size];
+        int k = 0;
+        for (int b = 0; b < this.blockFirstIds.length; b++) {
+            long start = this.blockOffsets[b];
+            ByteBuffer block = this.read(this.blocksOffset + start,
+                    (int) (this.blockOffsets[b + 1] - start));
+            long current = this.blockFirstIds[b];
+            while (block.hasRemaining()) {
+                current += VarintCodec.readZigZag(block);
+                result[k++] = current;
+                int length = VarintCodec.readVarInt(block);
+                block.position(block.position() + length);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.file.close();
+    }
+
+}
@@ -0,0 +1,111 @@
+// File: PlaylistArchiveBenchmark.java
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures {@link PlaylistArchive}: bytes per stored entry, write throughput,
+ * full load throughput into each kernel, and the latency of reading one
+ * playlist by id.
+ *
+ * <p>
+ * Usage: {@code PlaylistArchiveBenchmark [playlists] [songsPerPlaylist]
+ * [catalogSize]}; defaults to 100000 playlists of 50 songs drawn from a
+ * catalog of 200000 songs, mostly as runs of consecutive catalog entries
+ * (albums) with some random picks.
+ * </p>
+ *
+ * @author …
+ */
+public final class PlaylistArchiveBenchmark {
+
+    /**
+     * No instances.
+     */
+    private PlaylistArchiveBenchmark() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            optional playlist count, songs per playlist and catalog size
+     * @throws IOException
+     *             if the temporary archive cannot be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        int playlists = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int perPlaylist = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int catalogSize = args.length > 2 ? Integer.parseInt(args[2])
+                : 200_000;
+        Random rnd = new Random(37);
+        Song[] catalog = new Song[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            catalog[i] = new Song(1_000_000L + i, "Track " + (i % 5000),
+                    "Artist " + (i / 12), 120_000 + rnd.nextInt(240_000));
+        }
+
+        long encodeNanos = 0;
+        PlaylistArchive.Writer writer = new PlaylistArchive.Writer();
+        MusicPlaylist p = new MusicPlaylistOnColumns();
+        for (int id = 0; id < playlists; id++) {
+            p.clear();
+            while (p.length() < perPlaylist) {
+                int start = rnd.nextInt(catalogSize);
+                int run = rnd.nextInt(4) == 0 ? 1 : 1 + rnd.nextInt(12);
+                for (int k = 0; k < run && p.length() < perPlaylist; k++) {
+                    p.addSong(catalog[(start + k) % catalogSize]);
+                }
+            }
+            long t0 = System.nanoTime();
+            writer.add(id * 7L, p);
+            encodeNanos += System.nanoTime() - t0;
+        }
+        Path file = Files.createTempFile("playlists", ".mpla");
+        try {
+            long t1 = System.nanoTime();
+            long bytes = writer.writeTo(file);
+            encodeNanos += System.nanoTime() - t1;
+            long entries = writer.entries();
+            System.out.printf(Locale.ROOT,
+                    "%d playlists, %d entries, %d bytes: %.2f bytes/entry "
+                            + "(%.1f MB)%n",
+                    playlists, entries, bytes, (double) bytes / entries,
+                    bytes / 1e6);
+            System.out.printf(Locale.ROOT, "encode+write: %.0f entries/s%n",
+                    entries / (encodeNanos / 1e9));
+
+            try (PlaylistArchive archive = new PlaylistArchive(file)) {
+                MusicPlaylist[] targets = { new MusicPlaylistOnSequence(),
+                        new MusicPlaylistOnColumns() };
+                for (MusicPlaylist into : targets) {
+                    long t2 = System.nanoTime();
+                    long[] loaded = new long[1];
+                    archive.forEach(into, id -> loaded[0] += into.length());
+                    long t3 = System.nanoTime();
+                    System.out.printf(Locale.ROOT,
+                            "full load into %s: %.0f entries/s%n",
+                            into.getClass().getSimpleName(),
+                            loaded[0] / ((t3 - t2) / 1e9));
+                }
+
+                int lookups = 10_000;
+                MusicPlaylist q = new MusicPlaylistOnSequence();
+                long t4 = System.nanoTime();
+                for (int i = 0; i < lookups; i++) {
+                    archive.read(rnd.nextInt(playlists) * 7L, q);
+                }
+                long t5 = System.nanoTime();
+                System.out.printf(Locale.ROOT,
+                        "random access: %.1f us per playlist%n",
+                        (t5 - t4) / 1e3 / lookups);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
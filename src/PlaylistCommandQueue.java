@@ -0,0 +1,429 @@
+// File: PlaylistCommandQueue.java
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Single-writer command queue in front of a {@link MusicPlaylist}: any number
+ * of threads submit commands, and one writer thread applies them to the
+ * playlist in submission order, in batches.
+ *
+ * <p>
+ * Commands go through a bounded multi-producer, single-consumer ring buffer in
+ * the style of the LMAX Disruptor. A producer claims a slot with one
+ * compare-and-set on the claim counter, fills it, and publishes it by writing
+ * the slot's sequence number; it never takes a lock. The writer takes every
+ * published command at once (up to {@code maxBatch}), applies them back to
+ * back without any synchronization, then completes their futures. Under load
+ * the cost of waking the writer and of the memory fences is therefore paid
+ * once per batch rather than once per command, and the playlist is only ever
+ * touched by one thread. When the buffer is full, producers wait for space.
+ * </p>
+ *
+ * <p>
+ * Every command gets a {@link CompletableFuture} completed with its result, or
+ * exceptionally with what it threw; a failing command does not affect the
+ * others. {@link #batchSizes()} and {@link #queueLatency()} report how many
+ * commands each batch held and how long, in nanoseconds, commands waited
+ * between submission and being applied.
+ * </p>
+ *
+ * <p>
+ * The playlist must not be used directly while the queue is open; read it
+ * through {@link #submit(Function)} too.
+ * </p>
+ *
+ * @author …
+ */
+public final class PlaylistCommandQueue implements AutoCloseable {
+
+    /**
+     * Default ring buffer capacity.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Number of empty polls before the writer parks.
+     */
+    private static final int SPINS = 100;
+
+    /**
+     * Longest the writer parks for when idle, in nanoseconds.
+     */
+    private static final long PARK_NANOS = 1_000_000;
+
+    /**
+     * Set in {@code claimed} once the queue is closed.
+     */
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    /**
+     * One ring buffer slot.
+     */
+    private static final class Slot {
+
+        /**
+         * Sequence number of the command in this slot, once published; the
+         * slot is free for sequence {@code s} once the writer passed
+         * {@code s - capacity}.
+         */
+        private volatile long published = -1;
+
+        /**
+         * The command.
+         */
+        private Function<? super MusicPlaylist, ?> command;
+
+        /**
+         * Completed with the command's result.
+         */
+        private CompletableFuture<Object> result;
+
+        /**
+         * When the command was submitted, from {@link System#nanoTime()}.
+         */
+        private long submittedNanos;
+    }
+
+    /**
+     * The playlist the commands apply to.
+     */
+    private final MusicPlaylist playlist;
+
+    /**
+     * The ring buffer; its length is a power of two.
+     */
+    private final Slot[] ring;
+
+    /**
+     * {@code ring.length - 1}.
+     */
+    private final int mask;
+
+    /**
+     * Largest number of commands applied per batch.
+     */
+    private final int maxBatch;
+
+    /**
+     * Next sequence number to claim, with {@link #CLOSED} set once closed, so
+     * that claiming and closing are ordered by one counter.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * Sequence number of the next command the writer will apply; slots below
+     * it are free.
+     */
+    private volatile long consumed;
+
+    /**
+     * Whether the writer is parked, or about to park, waiting for commands.
+     */
+    private volatile boolean idle;
+
+    /**
+     * Number of commands per batch.
+     */
+    private final ConcurrentHistogram batchSizes = new ConcurrentHistogram();
+
+    /**
+     * Nanoseconds from submission to application, per command.
+     */
+    private final ConcurrentHistogram queueLatency = new ConcurrentHistogram();
+
+    /**
+     * The writer thread.
+     */
+    private final Thread writer;
+
+    /**
+     * Constructor: starts the writer thread with the default capacity and
+     * unbounded batches.
+     *
+     * @param playlist
+     *            the playlist to apply commands to
+     * @requires playlist != null
+     */
+    public PlaylistCommandQueue(MusicPlaylist playlist) {
+        this(playlist, DEFAULT_CAPACITY, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor: starts the writer thread.
+     *
+     * @param playlist
+     *            the playlist to apply commands to
+     * @param capacity
+     *            number of commands the buffer holds
+     * @param maxBatch
+     *            largest number of commands applied per batch
+     * @requires playlist != null AND capacity is a power of two AND
+     *           maxBatch > 0
+     */
+    public PlaylistCommandQueue(MusicPlaylist playlist, int capacity,
+            int maxBatch) {
+        if (playlist == null) {
+            throw new IllegalArgumentException("playlist cannot be null");
+        }
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(
+                    "capacity must be a power of two");
+        }
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("maxBatch must be > 0");
+        }
+        this.playlist = playlist;
+        this.ring = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.ring[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.maxBatch = maxBatch;
+        this.writer = new Thread(this::drain, "playlist-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues {@code command} to be applied to the playlist by the writer
+     * thread, after every command submitted before it. Waits while the buffer
+     * is full.
+     *
+     * @param <T>
+     *            type of the command's result
+     * @param command
+     *            the command
+     * @return a future completed with the command's result
+     * @requires command != null AND this is not closed
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(
+            Function<? super MusicPlaylist, ? extends T> command) {
+        if (command == null) {
+            throw new IllegalArgumentException("command cannot be null");
+        }
+        long seq = this.claimed.get();
+        while (seq >= 0 && !this.claimed.compareAndSet(seq, seq + 1)) {
+            seq = this.claimed.get();
+        }
+        if (seq < 0) {
+            throw new IllegalStateException("queue is closed");
+        }
+        while (seq - this.consumed >= this.ring.length) {
+            if (this.idle) {
+                LockSupport.unpark(this.writer);
+            }
+            Thread.onSpinWait();
+            Thread.yield();
+        }
+        Slot slot = this.ring[(int) seq & this.mask];
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        slot.command = command;
+        slot.result = result;
+        slot.submittedNanos = System.nanoTime();
+        slot.published = seq;
+        if (this.idle) {
+            LockSupport.unpark(this.writer);
+        }
+        return (CompletableFuture<T>) result;
+    }
+
+    /**
+     * Queues {@code addSong(song)}.
+     *
+     * @param song
+     *            the song to add
+     * @return a future completed once the song is added
+     */
+    public CompletableFuture<Void> addSong(Song song) {
+        return this.submit(p -> {
+            p.addSong(song);
+            return null;
+        });
+    }
+
+    /**
+     * Queues {@code insertSongAt(song, index)}.
+     *
+     * @param song
+     *            the song to insert
+     * @param index
+     *            where to insert it
+     * @return a future completed once the song is inserted
+     */
+    public CompletableFuture<Void> insertSongAt(Song song, int index) {
+        return this.submit(p -> {
+            p.insertSongAt(song, index);
+            return null;
+        });
+    }
+
+    /**
+     * Queues {@code removeSong(song)}.
+     *
+     * @param song
+     *            title of the song to remove
+     * @return a future completed with the removed title, or null
+     */
+    public CompletableFuture<String> removeSong(String song) {
+        return this.submit(p -> p.removeSong(song));
+    }
+
+    /**
+     * Queues {@code removeSongAt(index)}.
+     *
+     * @param index
+     *            position of the song to remove
+     * @return a future completed with the removed title
+     */
+    public CompletableFuture<String> removeSongAt(int index) {
+        return this.submit(p -> p.removeSongAt(index));
+    }
+
+    /**
+     * Queues {@code moveSong(from, to)}.
+     *
+     * @param from
+     *            position of the song to move
+     * @param to
+     *            its new position
+     * @return a future completed once the song is moved
+     */
+    public CompletableFuture<Void> moveSong(int from, int to) {
+        return this.submit(p -> {
+            p.moveSong(from, to);
+            return null;
+        });
+    }
+
+    /**
+     * Writer thread loop: applies published commands in batches until closed
+     * and drained.
+     */
+    private void drain() {
+        long next = 0;
+        int spins = 0;
+        while (true) {
+            int n = 0;
+            while (n < this.maxBatch
+                    && this.ring[(int) (next + n) & this.mask].published
+                            == next + n) {
+                n++;
+            }
+            if (n == 0) {
+                long c = this.claimed.get();
+                if (c < 0 && next == (c & ~CLOSED)) {
+                    return;
+                }
+                if (++spins < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    this.idle = true;
+                    if (this.ring[(int) next & this.mask].published != next
+                            && this.claimed.get() >= 0) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    this.idle = false;
+                }
+                continue;
+            }
+            spins = 0;
+            this.applyBatch(next, n);
+            next += n;
+            this.consumed = next;
+        }
+    }
+
+    /**
+     * Applies the {@code n} commands from sequence {@code first}, then
+     * completes their futures and frees their slots.
+     *
+     * @param first
+     *            sequence number of the first command
+     * @param n
+     *            number of commands
+     */
+    private void applyBatch(long first, int n) {
+        Object[] results = new Object[n];
+        Throwable[] failures = new Throwable[n];
+        long now = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            Slot slot = this.ring[(int) (first + i) & this.mask];
+            this.queueLatency.record(now - slot.submittedNanos);
+            try {
+                results[i] = slot.command.apply(this.playlist);
+            } catch (RuntimeException | Error e) {
+                failures[i] = e;
+            }
+        }
+        this.batchSizes.record(n);
+        for (int i = 0; i < n; i++) {
+            Slot slot = this.ring[(int) (first + i) & this.mask];
+            CompletableFuture<Object> result = slot.result;
+            slot.command = null;
+            slot.result = null;
+            if (failures[i] == null) {
+                result.complete(results[i]);
+            } else {
+                result.completeExceptionally(failures[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the histogram of the number of commands applied per batch.
+     *
+     * @return the batch size histogram
+     */
+    public ConcurrentHistogram batchSizes() {
+        return this.batchSizes;
+    }
+
+    /**
+     * Returns the histogram of the time, in nanoseconds, commands waited
+     * between submission and the start of their batch.
+     *
+     * @return the queue latency histogram
+     */
+    public ConcurrentHistogram queueLatency() {
+        return this.queueLatency;
+    }
+
+    /**
+     * Reports the number of commands submitted and not yet applied.
+     *
+     * @return the queue depth
+     */
+    public int pending() {
+        return (int) Math.max(0,
+                (this.claimed.get() & ~CLOSED) - this.consumed);
+    }
+
+    /**
+     * Stops accepting commands, waits for the writer to apply every command
+     * already submitted, and stops it.
+     */
+    @Override
+    public void close() {
+        long c = this.claimed.get();
+        while (c >= 0 && !this.claimed.compareAndSet(c, c | CLOSED)) {
+            c = this.claimed.get();
+        }
+        LockSupport.unpark(this.writer);
+        boolean interrupted = false;
+        while (this.writer.isAlive()) {
+            try {
+                this.writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
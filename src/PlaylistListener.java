@@ -0,0 +1,79 @@
+// File: PlaylistListener.java
+
+/**
+ * Receives the changes made through an {@link ObservableMusicPlaylist}. Each
+ * method is called after the change, on the thread that made it; the default
+ * implementations do nothing.
+ *
+ * @author …
+ */
+public interface PlaylistListener {
+
+    /**
+     * Called after {@code count} songs were inserted at positions
+     * {@code [index, index + count)}.
+     *
+     * @param index
+     *            position of the first inserted song
+     * @param count
+     *            number of songs inserted
+     */
+    default void songsInserted(int index, int count) {
+    }
+
+    /**
+     * Called after the song at {@code index} was removed.
+     *
+     * @param index
+     *            position the song had
+     */
+    default void songRemoved(int index) {
+    }
+
+    /**
+     * Called after the {@code count} songs at {@code from} were moved to start
+     * at {@code to}, as by {@link MusicPlaylistKernel#moveRange}.
+     *
+     * @param from
+     *            old position of the first moved song
+     * @param count
+     *            number of songs moved
+     * @param to
+     *            new position of the first moved song
+     */
+    default void songsMoved(int from, int count, int to) {
+    }
+
+    /**
+     * Called after a bulk change (e.g. {@code clear}, {@code shuffle},
+     * {@code sort}, {@code removeIf}) after which positions recorded before
+     * it are meaningless.
+     */
+    default void contentsReplaced() {
+    }
+
+    /**
+     * Called after navigation ({@code nextSong}, {@code previousSong},
+     * {@code goToSong} or {@code goToTime}) made another position current.
+     *
+     * @param from
+     *            the previous current position
+     * @param to
+     *            the new current position
+     */
+    default void currentMoved(int from, int to) {
+    }
+
+    /**
+     * Called after {@code nextSong} advanced to another song, i.e. playback
+     * moved on rather than the user jumping; follows {@code currentMoved}.
+     *
+     * @param from
+     *            the previous current position
+     * @param to
+     *            the new current position
+     */
+    default void songAdvanced(int from, int to) {
+    }
+
+}
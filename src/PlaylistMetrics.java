@@ -0,0 +1,287 @@
+// File: PlaylistMetrics.java
+
+import java.util.Locale;
+
+/**
+ * Per-operation call counts and latency histograms, plus a histogram of
+ * playlist lengths, recorded by {@link InstrumentedMusicPlaylist}.
+ *
+ * <p>
+ * One instance may be shared by any number of instrumented playlists and
+ * threads; everything is recorded without locking. Operations slower than the
+ * slow-operation threshold are also emitted as
+ * {@link SlowPlaylistOperationEvent} JFR events. Recording can be switched off
+ * at run time, in which case an instrumented playlist only pays for one
+ * volatile read per call.
+ * </p>
+ *
+ * @author …
+ */
+public final class PlaylistMetrics {
+
+    /**
+     * The instrumented operations of {@link MusicPlaylist}; overloads share a
+     * constant.
+     */
+    public enum Operation {
+        /** {@code addSong}. */
+        ADD_SONG,
+        /** {@code removeSong}. */
+        REMOVE_SONG,
+        /** {@code getCurrentSong}. */
+        GET_CURRENT_SONG,
+        /** {@code titleAt}. */
+        TITLE_AT,
+        /** {@code songAt}. */
+        SONG_AT,
+        /** {@code currentIndex}. */
+        CURRENT_INDEX,
+        /** {@code nextSong}. */
+        NEXT_SONG,
+        /** {@code insertSongAt}. */
+        INSERT_SONG_AT,
+        /** {@code removeSongAt}. */
+        REMOVE_SONG_AT,
+        /** {@code removeCurrentSong}. */
+        REMOVE_CURRENT_SONG,
+        /** {@code goToSong}. */
+        GO_TO_SONG,
+        /** {@code moveSong}. */
+        MOVE_SONG,
+        /** {@code moveRange}. */
+        MOVE_RANGE,
+        /** {@code clear}. */
+        CLEAR,
+        /** {@code transferFrom}. */
+        TRANSFER_FROM,
+        /** {@code previousSong}. */
+        PREVIOUS_SONG,
+        /** {@code shuffle}. */
+        SHUFFLE,
+        /** {@code contains}. */
+        CONTAINS,
+        /** {@code displayPlaylist}. */
+        DISPLAY_PLAYLIST,
+        /** {@code length}. */
+        LENGTH,
+        /** {@code searchPrefix}. */
+        SEARCH_PREFIX,
+        /** {@code searchContaining}. */
+        SEARCH_CONTAINING,
+        /** {@code searchSimilar}. */
+        SEARCH_SIMILAR,
+        /** {@code indexOfId}. */
+        INDEX_OF_ID,
+        /** {@code totalDuration}. */
+        TOTAL_DURATION,
+        /** {@code timeRemainingFromCurrent}. */
+        TIME_REMAINING_FROM_CURRENT,
+        /** {@code goToTime}. */
+        GO_TO_TIME,
+        /** {@code distinct}. */
+        DISTINCT,
+        /** {@code sort}. */
+        SORT,
+        /** {@code removeIf}. */
+        REMOVE_IF,
+        /** {@code mergeFrom}. */
+        MERGE_FROM,
+        /** {@code copyFrom}. */
+        COPY_FROM,
+        /** {@code window}. */
+        WINDOW,
+        /** {@code windowAroundCurrent}. */
+        WINDOW_AROUND_CURRENT,
+        /** {@code songsInRange}, e.g. fetching a page of a window. */
+        SONGS_IN_RANGE,
+        /** {@code equals}. */
+        EQUALS,
+        /** {@code hashCode}. */
+        HASH_CODE,
+        /** {@code toString}. */
+        TO_STRING;
+
+        /**
+         * Returns the name of the method, e.g. {@code "getCurrentSong"}.
+         *
+         * @return the method name
+         */
+        public String methodName() {
+            StringBuilder sb = new StringBuilder();
+            boolean upper = false;
+            for (char c : this.name().toCharArray()) {
+                if (c == '_') {
+                    upper = true;
+                } else {
+                    sb.append(upper ? c : Character.toLowerCase(c));
+                    upper = false;
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Default slow-operation threshold: one millisecond.
+     */
+    private static final long DEFAULT_SLOW_NANOS = 1_000_000L;
+
+    /**
+     * Latencies, in nanoseconds, per operation.
+     */
+    private final ConcurrentHistogram[] latencies;
+
+    /**
+     * Playlist lengths observed after operations that change the length.
+     */
+    private final ConcurrentHistogram sizes = new ConcurrentHistogram();
+
+    /**
+     * Whether recording is on.
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * Calls at least this slow, in nanoseconds, are emitted as JFR events.
+     */
+    private volatile long slowNanos = DEFAULT_SLOW_NANOS;
+
+    /**
+     * Constructor: no calls recorded, recording enabled, slow threshold of
+     * one millisecond.
+     */
+    public PlaylistMetrics() {
+        Operation[] all = Operation.values();
+        this.latencies = new ConcurrentHistogram[all.length];
+        for (int i = 0; i < all.length; i++) {
+            this.latencies[i] = new ConcurrentHistogram();
+        }
+    }
+
+    /**
+     * Reports whether recording is on.
+     *
+     * @return true if calls are being recorded
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Switches recording on or off.
+     *
+     * @param on
+     *            whether to record calls
+     */
+    public void setEnabled(boolean on) {
+        this.enabled = on;
+    }
+
+    /**
+     * Sets the latency from which calls are emitted as
+     * {@link SlowPlaylistOperationEvent}s.
+     *
+     * @param nanos
+     *            the threshold, in nanoseconds
+     */
+    public void setSlowThresholdNanos(long nanos) {
+        this.slowNanos = nanos;
+    }
+
+    /**
+     * Records one call of {@code op} that took {@code nanos} nanoseconds on a
+     * playlist of length {@code length}.
+     *
+     * @param op
+     *            the operation
+     * @param nanos
+     *            its latency
+     * @param length
+     *            the playlist length afterwards, or -1 if not observed
+     */
+    void record(Operation op, long nanos, int length) {
+        this.latencies[op.ordinal()].record(nanos);
+        if (length >= 0) {
+            this.sizes.record(length);
+        }
+        if (nanos >= this.slowNanos) {
+            SlowPlaylistOperationEvent event = new SlowPlaylistOperationEvent();
+            if (event.isEnabled()) {
+                event.operation = op.methodName();
+                event.latency = nanos;
+                event.length = length;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Reports how many calls of {@code op} were recorded.
+     *
+     * @param op
+     *            the operation
+     * @return its call count
+     */
+    public long calls(Operation op) {
+        return this.latencies[op.ordinal()].count();
+    }
+
+    /**
+     * Returns the latency histogram, in nanoseconds, of {@code op}.
+     *
+     * @param op
+     *            the operation
+     * @return its latency histogram
+     */
+    public ConcurrentHistogram latency(Operation op) {
+        return this.latencies[op.ordinal()];
+    }
+
+    /**
+     * Returns the histogram of playlist lengths observed after calls that
+     * change the length.
+     *
+     * @return the length histogram
+     */
+    public ConcurrentHistogram sizes() {
+        return this.sizes;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        for (ConcurrentHistogram h : this.latencies) {
+            h.reset();
+        }
+        this.sizes.reset();
+    }
+
+    /**
+     * Returns a table with one line per called operation: call count and
+     * p50/p99/max latency in microseconds, followed by the length
+     * distribution.
+     *
+     * @return the report
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-26s %10s %10s %10s %10s%n",
+                "operation", "calls", "p50 us", "p99 us", "max us"));
+        for (Operation op : Operation.values()) {
+            ConcurrentHistogram h = this.latencies[op.ordinal()];
+            if (h.count() > 0) {
+                sb.append(String.format(Locale.ROOT,
+                        "%-26s %10d %10.1f %10.1f %10.1f%n", op.methodName(),
+                        h.count(), h.valueAtPercentile(50) / 1e3,
+                        h.valueAtPercentile(99) / 1e3, h.max() / 1e3));
+            }
+        }
+        sb.append(String.format(Locale.ROOT,
+                "length: p50 %d, p99 %d, max %d%n",
+                this.sizes.valueAtPercentile(50),
+                this.sizes.valueAtPercentile(99), this.sizes.max()));
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,438 @@
+// File: PlaylistPrefetcher.java
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Resolves the current song and the next few songs of an
+ * {@link ObservableMusicPlaylist} in the background, so that by the time
+ * {@code nextSong()} fires the song it lands on is already resolved.
+ *
+ * <p>
+ * The prefetcher listens to the playlist. After every edit or navigation it
+ * recomputes the songs it wants (the current song, then the {@code lookahead}
+ * songs after it, wrapping around like {@code nextSong()}), cancels work on
+ * songs that are no longer wanted, and starts work on new ones in playlist
+ * order. A plain {@code nextSong()} therefore keeps every result still ahead
+ * and starts only the one new song at the end of the window, while a jump or
+ * an edit drops what became stale. At most {@code maxInFlight} resolutions run
+ * at a time; cancelled ones are interrupted, and keep counting until they
+ * actually return, so the bound holds for the executor's threads too.
+ * </p>
+ *
+ * <p>
+ * The playlist must only be used from one thread at a time, as usual; the
+ * resolver runs on the given executor, and {@link #resolved(Song)} may be
+ * called from any thread.
+ * </p>
+ *
+ * @param <R>
+ *            type of resolved songs, e.g. a stream URL and audio buffer
+ * @author …
+ */
+public final class PlaylistPrefetcher<R> implements PlaylistListener,
+        AutoCloseable {
+
+    /**
+     * Turns a song into whatever the player needs to start playing it.
+     *
+     * @param <R>
+     *            type of resolved songs
+     */
+    @FunctionalInterface
+    public interface Resolver<R> {
+
+        /**
+         * Resolves {@code song}. Called on an executor thread; should give up
+         * promptly when the thread is interrupted.
+         *
+         * @param song
+         *            the song to resolve
+         * @return the resolved song
+         * @throws Exception
+         *             if the song cannot be resolved
+         */
+        R resolve(Song song) throws Exception;
+    }
+
+    /**
+     * One wanted song and the state of its resolution.
+     */
+    private final class Entry {
+
+        /**
+         * The song.
+         */
+        private final Song song;
+
+        /**
+         * Completed with the resolved song.
+         */
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+
+        /**
+         * Whether the resolution was started.
+         */
+        private boolean submitted;
+
+        /**
+         * The submitted task, or null if not started yet.
+         */
+        private Future<?> task;
+
+        /**
+         * Whether the resolution counts toward {@code inFlight}: it was
+         * submitted and has not finished, nor been cancelled before it began.
+         */
+        private boolean running;
+
+        /**
+         * Whether the task began running.
+         */
+        private boolean began;
+
+        /**
+         * Constructor.
+         *
+         * @param song
+         *            the song to resolve
+         */
+        Entry(Song song) {
+            this.song = song;
+        }
+    }
+
+    /**
+     * The observed playlist.
+     */
+    private final ObservableMusicPlaylist playlist;
+
+    /**
+     * Resolves songs.
+     */
+    private final Resolver<R> resolver;
+
+    /**
+     * Runs the resolutions.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Number of songs after the current one to resolve.
+     */
+    private final int lookahead;
+
+    /**
+     * Largest number of resolutions running at a time.
+     */
+    private final int maxInFlight;
+
+    /**
+     * Wanted songs, in the order they will be played. Guarded by
+     * {@code this}.
+     */
+    private Map<Song, Entry> wanted = new LinkedHashMap<>();
+
+    /**
+     * Number of running resolutions. Guarded by {@code this}.
+     */
+    private int inFlight;
+
+    /**
+     * Number of resolutions started so far. Guarded by {@code this}.
+     */
+    private long started;
+
+    /**
+     * Whether {@link #close()} was called. Guarded by {@code this}.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor. Starts nothing: {@link #attach} does, once the prefetcher
+     * is fully constructed.
+     *
+     * @param playlist
+     *            the playlist to follow
+     * @param resolver
+     *            resolves songs
+     * @param executor
+     *            runs the resolutions
+     * @param lookahead
+     *            number of songs after the current one to resolve
+     * @param maxInFlight
+     *            largest number of resolutions running at a time
+     */
+    private PlaylistPrefetcher(ObservableMusicPlaylist playlist,
+            Resolver<R> resolver, ExecutorService executor, int lookahead,
+            int maxInFlight) {
+        this.playlist = playlist;
+        this.resolver = resolver;
+        this.executor = executor;
+        this.lookahead = lookahead;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Attaches a new prefetcher to {@code playlist} and starts resolving its
+     * current and upcoming songs.
+     *
+     * @param <R>
+     *            type of resolved songs
+     * @param playlist
+     *            the playlist to follow
+     * @param resolver
+     *            resolves songs
+     * @param executor
+     *            runs the resolutions
+     * @param lookahead
+     *            number of songs after the current one to resolve
+     * @param maxInFlight
+     *            largest number of resolutions running at a time
+     * @return the running prefetcher
+     * @requires playlist, resolver and executor are not null AND
+     *           lookahead >= 0 AND maxInFlight > 0
+     */
+    public static <R> PlaylistPrefetcher<R> attach(
+            ObservableMusicPlaylist playlist, Resolver<R> resolver,
+            ExecutorService executor, int lookahead, int maxInFlight) {
+        if (playlist == null || resolver == null || executor == null) {
+            throw new IllegalArgumentException(
+                    "playlist, resolver and executor cannot be null");
+        }
+        if (lookahead < 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException(
+                    "lookahead must be >= 0 and maxInFlight > 0");
+        }
+        PlaylistPrefetcher<R> prefetcher = new PlaylistPrefetcher<>(playlist,
+                resolver, executor, lookahead, maxInFlight);
+        prefetcher.refresh();
+        playlist.addListener(prefetcher);
+        return prefetcher;
+    }
+
+    /**
+     * Returns the songs that should be resolved now: the current song and the
+     * {@code lookahead} songs after it, without repeats.
+     *
+     * @return the wanted songs, in play order
+     */
+    private List<Song> upcoming() {
+        List<Song> songs = new ArrayList<>();
+        int n = this.playlist.length();
+        if (n == 0) {
+            return songs;
+        }
+        int want = Math.min(this.lookahead + 1, n);
+        int current = this.playlist.currentIndex();
+        songs.addAll(this.playlist.window(current, want));
+        if (songs.size() < want) {
+            songs.addAll(this.playlist.window(0, want - songs.size()));
+        }
+        return songs;
+    }
+
+    /**
+     * Recomputes the wanted songs, cancels stale work and starts new work.
+     */
+    private synchronized void refresh() {
+        if (this.closed) {
+            return;
+        }
+        Map<Song, Entry> next = new LinkedHashMap<>();
+        for (Song song : this.upcoming()) {
+            Entry e = this.wanted.remove(song);
+            if (e == null && !next.containsKey(song)) {
+                e = new Entry(song);
+            }
+            if (e != null) {
+                next.put(song, e);
+            }
+        }
+        for (Entry stale : this.wanted.values()) {
+            this.cancel(stale);
+        }
+        this.wanted = next;
+        this.pump();
+    }
+
+    /**
+     * Cancels the resolution of {@code e}, if it is not finished. A resolution
+     * that has not begun will never run and stops counting now; one that has
+     * begun is interrupted and keeps counting until it actually returns.
+     *
+     * @param e
+     *            the entry
+     */
+    private void cancel(Entry e) {
+        assert Thread.holdsLock(this);
+        if (e.running) {
+            if (!e.began) {
+                e.running = false;
+                this.inFlight--;
+            }
+            if (e.task != null) {
+                e.task.cancel(true);
+            }
+        }
+        e.result.cancel(false);
+    }
+
+    /**
+     * Starts wanted resolutions, in play order, while fewer than
+     * {@code maxInFlight} are running.
+     */
+    private void pump() {
+        assert Thread.holdsLock(this);
+        Iterator<Entry> it = this.wanted.values().iterator();
+        while (this.inFlight < this.maxInFlight && it.hasNext()) {
+            Entry e = it.next();
+            if (!e.submitted) {
+                e.submitted = true;
+                e.running = true;
+                this.inFlight++;
+                this.started++;
+                e.task = this.executor.submit(() -> this.run(e));
+            }
+        }
+    }
+
+    /**
+     * Resolves the song of {@code e} on an executor thread.
+     *
+     * @param e
+     *            the entry
+     */
+    private void run(Entry e) {
+        synchronized (this) {
+            if (!e.running) {
+                // cancelled before it began, and already not counted
+                return;
+            }
+            e.began = true;
+        }
+        try {
+            e.result.complete(this.resolver.resolve(e.song));
+        } catch (Exception ex) {
+            e.result.completeExceptionally(ex);
+        } finally {
+            synchronized (this) {
+                if (e.running) {
+                    e.running = false;
+                    this.inFlight--;
+                    this.pump();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the resolution of {@code song}: the prefetched one if the song
+     * is current or upcoming, otherwise one started now, outside the
+     * in-flight bound.
+     *
+     * @param song
+     *            the song to resolve
+     * @return a future completed with the resolved song
+     * @requires song != null
+     */
+    public synchronized CompletableFuture<R> resolved(Song song) {
+        if (song == null) {
+            throw new IllegalArgumentException("song cannot be null");
+        }
+        Entry e = this.wanted.get(song);
+        if (e != null && !e.result.isCancelled()) {
+            return e.result;
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.resolver.resolve(song);
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, this.executor);
+    }
+
+    /**
+     * Reports whether {@code song} is resolved and waiting in the cache.
+     *
+     * @param song
+     *            the song
+     * @return true if its resolution is complete and successful
+     */
+    public synchronized boolean isReady(Song song) {
+        Entry e = this.wanted.get(song);
+        return e != null && e.result.isDone()
+                && !e.result.isCompletedExceptionally();
+    }
+
+    /**
+     * Reports the number of resolutions running now.
+     *
+     * @return the number of resolutions in flight
+     */
+    public synchronized int inFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * Reports the number of resolutions started so far, not counting those
+     * started by {@link #resolved(Song)}.
+     *
+     * @return the number of resolutions started
+     */
+    public synchronized long started() {
+        return this.started;
+    }
+
+    /**
+     * Detaches from the playlist and cancels all work. Does not shut down the
+     * executor.
+     */
+    @Override
+    public void close() {
+        this.playlist.removeListener(this);
+        synchronized (this) {
+            this.closed = true;
+            for (Entry e : this.wanted.values()) {
+                this.cancel(e);
+            }
+            this.wanted.clear();
+        }
+    }
+
+    // PlaylistListener methods
+
+    @Override
+    public void songsInserted(int index, int count) {
+        this.refresh();
+    }
+
+    @Override
+    public void songRemoved(int index) {
+        this.refresh();
+    }
+
+    @Override
+    public void songsMoved(int from, int count, int to) {
+        this.refresh();
+    }
+
+    @Override
+    public void contentsReplaced() {
+        this.refresh();
+    }
+
+    @Override
+    public void currentMoved(int from, int to) {
+        this.refresh();
+    }
+
+}
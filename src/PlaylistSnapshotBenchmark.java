@@ -0,0 +1,163 @@
+// File: PlaylistSnapshotBenchmark.java
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures player startup: the time from having nothing in memory to every
+ * one of many playlists answering {@code getCurrentSong()}, when rebuilding
+ * them with repeated {@code addSong} calls on {@link MusicPlaylistOnSequence}
+ * and when restoring them from a {@link PlaylistArchive} snapshot.
+ *
+ * <p>
+ * Usage: {@code PlaylistSnapshotBenchmark [playlists] [songsPerPlaylist]
+ * [rounds]}; defaults to 10000 playlists of 50 songs, 5 rounds. The first
+ * round runs on a cold JVM, as a restarted pod does, and is reported
+ * separately from the best round. For a cold start closer to production, run
+ * with one round per JVM, and with class data sharing (for example
+ * {@code -XX:SharedArchiveFile}) to also cut class loading time.
+ * </p>
+ *
+ * @author …
+ */
+public final class PlaylistSnapshotBenchmark {
+
+    /**
+     * No instances.
+     */
+    private PlaylistSnapshotBenchmark() {
+    }
+
+    /**
+     * Rebuilds every playlist song by song, as startup did without a
+     * snapshot.
+     *
+     * @param songs
+     *            the songs of each playlist
+     * @param current
+     *            the current position of each playlist
+     * @return the playlists
+     */
+    private static MusicPlaylist[] rebuild(Song[][] songs, int[] current) {
+        MusicPlaylist[] result = new MusicPlaylist[songs.length];
+        for (int i = 0; i < songs.length; i++) {
+            MusicPlaylist p = new MusicPlaylistOnSequence();
+            for (Song s : songs[i]) {
+                p.addSong(s);
+            }
+            p.goToSong(current[i]);
+            result[i] = p;
+        }
+        return result;
+    }
+
+    /**
+     * Calls {@code getCurrentSong()} on every playlist.
+     *
+     * @param playlists
+     *            the playlists
+     * @return the total title length, so the calls are not optimized away
+     */
+    private static long touch(Iterable<MusicPlaylist> playlists) {
+        long sum = 0;
+        for (MusicPlaylist p : playlists) {
+            sum += p.getCurrentSong().length();
+        }
+        return sum;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            optional playlist count, songs per playlist and rounds
+     * @throws IOException
+     *             if the temporary snapshot cannot be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        int playlists = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int perPlaylist = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        Random rnd = new Random(40);
+        Song[] catalog = new Song[50_000];
+        for (int i = 0; i < catalog.length; i++) {
+            catalog[i] = new Song(1_000_000L + i, "Track " + i,
+                    "Artist " + (i / 12), 120_000 + rnd.nextInt(240_000));
+        }
+        Song[][] songs = new Song[playlists][perPlaylist];
+        int[] current = new int[playlists];
+        for (int i = 0; i < playlists; i++) {
+            int start = rnd.nextInt(catalog.length);
+            for (int k = 0; k < perPlaylist; k++) {
+                songs[i][k] = catalog[(start + k) % catalog.length];
+            }
+            current[i] = rnd.nextInt(perPlaylist);
+        }
+
+        Map<Long, MusicPlaylist> live = new HashMap<>();
+        MusicPlaylist[] built = rebuild(songs, current);
+        for (int i = 0; i < playlists; i++) {
+            live.put((long) i, built[i]);
+        }
+        Path file = Files.createTempFile("playlists", ".snapshot");
+        try {
+            long t0 = System.nanoTime();
+            long bytes = PlaylistArchive.snapshot(live, file);
+            long t1 = System.nanoTime();
+            System.out.printf(Locale.ROOT,
+                    "snapshot of %d playlists: %.1f MB in %.1f ms%n",
+                    playlists, bytes / 1e6, (t1 - t0) / 1e6);
+
+            double[] viaAdd = new double[rounds];
+            double[] viaRestore = new double[rounds];
+            long check = 0;
+            for (int r = 0; r < rounds; r++) {
+                long t2 = System.nanoTime();
+                MusicPlaylist[] rebuilt = rebuild(songs, current);
+                check += touch(Arrays.asList(rebuilt));
+                long t3 = System.nanoTime();
+                viaAdd[r] = (t3 - t2) / 1e6;
+
+                long t4 = System.nanoTime();
+                try (PlaylistArchive archive = new PlaylistArchive(file)) {
+                    check += touch(archive
+                            .restoreAll(MusicPlaylistOnSequence::new)
+                            .values());
+                }
+                long t5 = System.nanoTime();
+                viaRestore[r] = (t5 - t4) / 1e6;
+            }
+            report("addSong rebuild", viaAdd);
+            report("snapshot restore", viaRestore);
+            System.out.println("(checksum " + check + ")");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Prints the first and best of {@code millis}.
+     *
+     * @param label
+     *            what was measured
+     * @param millis
+     *            the time of each round, in milliseconds
+     */
+    private static void report(String label, double[] millis) {
+        double best = millis[0];
+        for (double m : millis) {
+            best = Math.min(best, m);
+        }
+        System.out.printf(Locale.ROOT,
+                "%-17s time to getCurrentSong on all: cold %.1f ms, "
+                        + "best %.1f ms%n",
+                label + ":", millis[0], best);
+    }
+
+}
@@ -0,0 +1,124 @@
+// File: PlaylistWindow.java
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of the songs at positions {@code [from, from + count)} of a
+ * {@link MusicPlaylist}, as returned by {@link MusicPlaylist#window(int, int)}.
+ *
+ * <p>
+ * The view holds no songs of its own: {@link #get(int)} reads one position of
+ * the playlist, and iterating fetches the whole page in a single pass over
+ * the representation, so rendering a page costs time proportional to the page
+ * rather than to the playlist. The view is live: it reflects edits made to the
+ * playlist since it was created, and shrinks if the playlist no longer reaches
+ * the end of the window.
+ * </p>
+ *
+ * @author …
+ */
+public final class PlaylistWindow extends AbstractList<Song>
+        implements RandomAccess {
+
+    /**
+     * The viewed playlist.
+     */
+    private final MusicPlaylist playlist;
+
+    /**
+     * Position of the first song of the window.
+     */
+    private final int from;
+
+    /**
+     * Largest number of songs the window shows.
+     */
+    private final int count;
+
+    /**
+     * Constructor.
+     *
+     * @param playlist
+     *            the playlist to view
+     * @param from
+     *            position of the first song of the window
+     * @param count
+     *            largest number of songs to show
+     * @requires 0 <= from AND 0 <= count
+     */
+    PlaylistWindow(MusicPlaylist playlist, int from, int count) {
+        this.playlist = playlist;
+        this.from = from;
+        this.count = count;
+    }
+
+    /**
+     * Reports the playlist position of the first song of this window.
+     *
+     * @return the position of {@code get(0)} in the playlist
+     */
+    public int from() {
+        return this.from;
+    }
+
+    /**
+     * Reports where the current song of the playlist is in this window.
+     *
+     * @return the offset of the current song, or -1 if it is outside the
+     *         window
+     */
+    public int currentOffset() {
+        int offset = this.playlist.currentIndex() - this.from;
+        if (offset < 0 || offset >= this.size()) {
+            return -1;
+        }
+        return offset;
+    }
+
+    /**
+     * Fetches every song of this window in one pass.
+     *
+     * @return the songs, in order
+     */
+    private List<Song> page() {
+        Song[] songs = this.playlist.songsInRange(this.from, this.size());
+        return Collections.unmodifiableList(Arrays.asList(songs));
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0,
+                Math.min(this.count, this.playlist.length() - this.from));
+    }
+
+    @Override
+    public Song get(int index) {
+        if (index < 0 || index >= this.size()) {
+            throw new IndexOutOfBoundsException(
+                    "index " + index + " outside window");
+        }
+        return this.playlist.songAt(this.from + index);
+    }
+
+    @Override
+    public Iterator<Song> iterator() {
+        return this.page().iterator();
+    }
+
+    @Override
+    public ListIterator<Song> listIterator(int index) {
+        return this.page().listIterator(index);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return this.page().toArray();
+    }
+
+}
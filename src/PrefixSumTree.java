@@ -0,0 +1,418 @@
+// File: PrefixSumTree.java
+
+import java.util.Arrays;
+
+/**
+ * Sequence of non-negative {@code long} values with fast prefix sums, kept by
+ * the playlist kernels in step with their songs (one value per position).
+ *
+ * <p>
+ * Backed by an implicit treap: a randomized balanced binary tree ordered by
+ * position, where every node stores the number of values and the sum of the
+ * values in its subtree. Reading a value, prefix sums, locating the position
+ * that contains a given offset, and inserting, removing or moving values
+ * anywhere are all O(log n) expected; the total is O(1) and
+ * {@link #load(long[], int)} is O(n). Nodes live in parallel arrays, so the
+ * tree costs a few dozen bytes per value and no object per value.
+ * </p>
+ *
+ * @author …
+ */
+final class PrefixSumTree {
+
+    /**
+     * Initial capacity.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Left child of every node; 0 is the empty tree. Free nodes are chained
+     * through it.
+     */
+    private int[] left;
+
+    /**
+     * Right child of every node.
+     */
+    private int[] right;
+
+    /**
+     * Heap priority of every node: a parent's is never below its children's.
+     */
+    private int[] priority;
+
+    /**
+     * Number of values in the subtree of every node; {@code count[0] = 0}.
+     */
+    private int[] count;
+
+    /**
+     * Value of every node.
+     */
+    private long[] value;
+
+    /**
+     * Sum of the values in the subtree of every node; {@code sum[0] = 0}.
+     */
+    private long[] sum;
+
+    /**
+     * Root of the tree.
+     */
+    private int root;
+
+    /**
+     * Number of nodes ever allocated, including node 0.
+     */
+    private int allocated;
+
+    /**
+     * First free node, or 0.
+     */
+    private int free;
+
+    /**
+     * State of the priority generator.
+     */
+    private int seed = 0x2545F491;
+
+    /**
+     * Left part produced by {@link #split(int, int)}.
+     */
+    private int splitLeft;
+
+    /**
+     * Right part produced by {@link #split(int, int)}.
+     */
+    private int splitRight;
+
+    /**
+     * Constructor: an empty sequence.
+     */
+    PrefixSumTree() {
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Resets the node arrays to room for {@code capacity} values.
+     *
+     * @param capacity
+     *            number of values to make room for
+     */
+    private void allocate(int capacity) {
+        this.left = new int[capacity + 1];
+        this.right = new int[capacity + 1];
+        this.priority = new int[capacity + 1];
+        this.count = new int[capacity + 1];
+        this.value = new long[capacity + 1];
+        this.sum = new long[capacity + 1];
+        this.root = 0;
+        this.allocated = 1;
+        this.free = 0;
+    }
+
+    /**
+     * Returns a new random priority (xorshift).
+     *
+     * @return the priority
+     */
+    private int nextPriority() {
+        int x = this.seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        this.seed = x;
+        return x;
+    }
+
+    /**
+     * Returns a fresh leaf node holding {@code v}.
+     *
+     * @param v
+     *            its value
+     * @return the node
+     */
+    private int newNode(long v) {
+        int node = this.free;
+        if (node != 0) {
+            this.free = this.left[node];
+        } else {
+            if (this.allocated == this.left.length) {
+                int grown = 2 * this.left.length;
+                this.left = Arrays.copyOf(this.left, grown);
+                this.right = Arrays.copyOf(this.right, grown);
+                this.priority = Arrays.copyOf(this.priority, grown);
+                this.count = Arrays.copyOf(this.count, grown);
+                this.value = Arrays.copyOf(this.value, grown);
+                this.sum = Arrays.copyOf(this.sum, grown);
+            }
+            node = this.allocated;
+            this.allocated++;
+        }
+        this.left[node] = 0;
+        this.right[node] = 0;
+        this.priority[node] = this.nextPriority();
+        this.count[node] = 1;
+        this.value[node] = v;
+        this.sum[node] = v;
+        return node;
+    }
+
+    /**
+     * Recomputes the count and sum of {@code node} from its children.
+     *
+     * @param node
+     *            a node
+     */
+    private void pull(int node) {
+        int l = this.left[node];
+        int r = this.right[node];
+        this.count[node] = this.count[l] + 1 + this.count[r];
+        this.sum[node] = this.sum[l] + this.value[node] + this.sum[r];
+    }
+
+    /**
+     * Splits the tree {@code t} into its first {@code k} values, left in
+     * {@code splitLeft}, and the rest, left in {@code splitRight}.
+     *
+     * @param t
+     *            a tree
+     * @param k
+     *            number of values to split off, {@code 0 <= k <= count[t]}
+     */
+    private void split(int t, int k) {
+        if (t == 0) {
+            this.splitLeft = 0;
+            this.splitRight = 0;
+        } else if (this.count[this.left[t]] >= k) {
+            this.split(this.left[t], k);
+            this.left[t] = this.splitRight;
+            this.pull(t);
+            this.splitRight = t;
+        } else {
+            this.split(this.right[t], k - this.count[this.left[t]] - 1);
+            this.right[t] = this.splitLeft;
+            this.pull(t);
+            this.splitLeft = t;
+        }
+    }
+
+    /**
+     * Concatenates the trees {@code a} and {@code b}.
+     *
+     * @param a
+     *            the first tree
+     * @param b
+     *            the second tree
+     * @return the concatenation
+     */
+    private int merge(int a, int b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0) {
+            return a;
+        }
+        if (this.priority[a] >= this.priority[b]) {
+            this.right[a] = this.merge(this.right[a], b);
+            this.pull(a);
+            return a;
+        }
+        this.left[b] = this.merge(a, this.left[b]);
+        this.pull(b);
+        return b;
+    }
+
+    /**
+     * Removes every value.
+     */
+    void clear() {
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Replaces every value with {@code newValues[0, n)}, building the tree in
+     * O(n).
+     *
+     * @param newValues
+     *            the new values, each {@code >= 0}
+     * @param n
+     *            how many of them to use
+     */
+    void load(long[] newValues, int n) {
+        this.allocate(Math.max(n, INITIAL_CAPACITY));
+        // Cartesian tree construction: the right spine is kept on a stack
+        int[] spine = new int[n + 1];
+        int depth = 0;
+        for (int i = 0; i < n; i++) {
+            int node = this.newNode(newValues[i]);
+            int last = 0;
+            while (depth > 0
+                    && this.priority[spine[depth - 1]] < this.priority[node]) {
+                last = spine[depth - 1];
+                depth--;
+                this.pull(last);
+            }
+            this.left[node] = last;
+            if (depth > 0) {
+                this.right[spine[depth - 1]] = node;
+            }
+            spine[depth] = node;
+            depth++;
+        }
+        while (depth > 0) {
+            depth--;
+            this.pull(spine[depth]);
+        }
+        this.root = n == 0 ? 0 : spine[0];
+    }
+
+    /**
+     * Reports the number of values.
+     *
+     * @return the number of values
+     */
+    int size() {
+        return this.count[this.root];
+    }
+
+    /**
+     * Reports the sum of all values.
+     *
+     * @return the total
+     */
+    long total() {
+        return this.sum[this.root];
+    }
+
+    /**
+     * Reports the value at {@code index}.
+     *
+     * @param index
+     *            the position, {@code 0 <= index < size}
+     * @return the value at {@code index}
+     */
+    long get(int index) {
+        int t = this.root;
+        int k = index;
+        while (true) {
+            int l = this.left[t];
+            if (k < this.count[l]) {
+                t = l;
+            } else if (k == this.count[l]) {
+                return this.value[t];
+            } else {
+                k -= this.count[l] + 1;
+                t = this.right[t];
+            }
+        }
+    }
+
+    /**
+     * Reports the sum of the first {@code n} values.
+     *
+     * @param n
+     *            number of values to add up, {@code 0 <= n <= size}
+     * @return the sum of {@code values[0, n)}
+     */
+    long prefixSum(int n) {
+        long result = 0;
+        int t = this.root;
+        int k = n;
+        while (t != 0 && k > 0) {
+            int l = this.left[t];
+            if (this.count[l] >= k) {
+                t = l;
+            } else {
+                result += this.sum[l] + this.value[t];
+                k -= this.count[l] + 1;
+                t = this.right[t];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position whose value covers {@code offset}, i.e. the
+     * {@code i} with {@code prefixSum(i) <= offset < prefixSum(i + 1)}.
+     *
+     * @param offset
+     *            the offset, {@code 0 <= offset < total()}
+     * @return the position covering {@code offset}
+     */
+    int find(long offset) {
+        int t = this.root;
+        long rest = offset;
+        int position = 0;
+        while (t != 0) {
+            int l = this.left[t];
+            if (rest < this.sum[l]) {
+                t = l;
+            } else if (rest < this.sum[l] + this.value[t]) {
+                return position + this.count[l];
+            } else {
+                rest -= this.sum[l] + this.value[t];
+                position += this.count[l] + 1;
+                t = this.right[t];
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Inserts {@code v} at {@code index}.
+     *
+     * @param index
+     *            the position, {@code 0 <= index <= size}
+     * @param v
+     *            the value, {@code v >= 0}
+     */
+    void insert(int index, long v) {
+        int node = this.newNode(v);
+        this.split(this.root, index);
+        int rest = this.splitRight;
+        this.root = this.merge(this.merge(this.splitLeft, node), rest);
+    }
+
+    /**
+     * Removes the value at {@code index}.
+     *
+     * @param index
+     *            the position, {@code 0 <= index < size}
+     * @return the removed value
+     */
+    long remove(int index) {
+        this.split(this.root, index);
+        int before = this.splitLeft;
+        this.split(this.splitRight, 1);
+        int node = this.splitLeft;
+        this.root = this.merge(before, this.splitRight);
+        long removed = this.value[node];
+        this.left[node] = this.free;
+        this.free = node;
+        return removed;
+    }
+
+    /**
+     * Moves the block of {@code n} values starting at {@code from} so that it
+     * starts at {@code to}.
+     *
+     * @param from
+     *            start of the block
+     * @param n
+     *            length of the block
+     * @param to
+     *            start of the block afterwards
+     */
+    void move(int from, int n, int to) {
+        this.split(this.root, from);
+        int before = this.splitLeft;
+        this.split(this.splitRight, n);
+        int block = this.splitLeft;
+        int rest = this.merge(before, this.splitRight);
+        this.split(rest, to);
+        int after = this.splitRight;
+        this.root = this.merge(this.merge(this.splitLeft, block), after);
+    }
+
+}
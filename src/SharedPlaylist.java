@@ -0,0 +1,492 @@
+// File: SharedPlaylist.java
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * One playlist shared by many listeners: a single store of songs plus any
+ * number of lightweight {@link Cursor}s, each with its own current song, that
+ * stay on the right song while the shared playlist is edited.
+ *
+ * <p>
+ * A cursor is a position and a version number, a few dozen bytes however
+ * long the playlist is. Edits do not touch the cursors: each edit is appended
+ * to a short log of position changes (inserted, removed or moved songs), and a
+ * cursor replays the entries it has not seen the next time it is used. Once
+ * the log holds {@value #LOG_LIMIT} entries, every cursor is brought up to
+ * date and the log is emptied, so its memory stays bounded and the catch-up
+ * cost of an edit is paid once per cursor per {@value #LOG_LIMIT} edits at
+ * most. A cursor follows edits the way the current song of a
+ * {@link MusicPlaylist} does: it keeps its song when others are inserted,
+ * removed or moved, and moves to the next song when its own is removed. After
+ * a bulk change (sort, shuffle, transfer, ...) it keeps its index, clamped to
+ * the new length.
+ * </p>
+ *
+ * <p>
+ * Edits go through {@link #edit(Consumer)}, under a write lock; cursors and
+ * {@link #read(Function)} share a read lock, so any number of listeners read
+ * at once. Each cursor must be used by one thread at a time.
+ * </p>
+ *
+ * @author …
+ */
+public final class SharedPlaylist implements PlaylistListener {
+
+    /**
+     * Number of log entries kept before every cursor is synchronized and the
+     * log emptied.
+     */
+    public static final int LOG_LIMIT = 1024;
+
+    /**
+     * Log entry kind: songs inserted (index, count, new length).
+     */
+    private static final int INSERTED = 0;
+
+    /**
+     * Log entry kind: song removed (index, new length).
+     */
+    private static final int REMOVED = 1;
+
+    /**
+     * Log entry kind: songs moved (from, count, to).
+     */
+    private static final int MOVED = 2;
+
+    /**
+     * Log entry kind: bulk change (new length).
+     */
+    private static final int REPLACED = 3;
+
+    /**
+     * Number of ints per log entry.
+     */
+    private static final int ENTRY = 4;
+
+    /**
+     * A listener's position in the shared playlist.
+     */
+    public final class Cursor implements AutoCloseable {
+
+        /**
+         * Index of the current song, as of {@code version}.
+         */
+        private int position;
+
+        /**
+         * Number of edits already applied to {@code position}.
+         */
+        private long version;
+
+        /**
+         * Index of this cursor in {@code cursors}, or -1 once closed.
+         */
+        private int slot;
+
+        /**
+         * Constructor.
+         *
+         * @param position
+         *            the initial position
+         * @param version
+         *            the current edit count
+         */
+        private Cursor(int position, long version) {
+            this.position = position;
+            this.version = version;
+        }
+
+        /**
+         * Replays the logged edits this cursor has not seen.
+         */
+        private void sync() {
+            SharedPlaylist owner = SharedPlaylist.this;
+            if (this.slot < 0) {
+                throw new IllegalStateException("cursor is closed");
+            }
+            int from = (int) (this.version - owner.base);
+            for (int e = from; e < owner.logSize; e++) {
+                this.position = replay(owner.log, e * ENTRY, this.position);
+            }
+            this.version = owner.base + owner.logSize;
+        }
+
+        /**
+         * Returns the title of this cursor's current song.
+         *
+         * @return the current title, or "No songs in playlist" if the
+         *         playlist is empty
+         */
+        public String getCurrentSong() {
+            SharedPlaylist.this.lock.readLock().lock();
+            try {
+                this.sync();
+                return SharedPlaylist.this.store.length() == 0
+                        ? SharedPlaylist.this.store.getCurrentSong()
+                        : SharedPlaylist.this.store.titleAt(this.position);
+            } finally {
+                SharedPlaylist.this.lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Returns this cursor's current song.
+         *
+         * @return the current song, or null if the playlist is empty
+         */
+        public Song currentSong() {
+            SharedPlaylist.this.lock.readLock().lock();
+            try {
+                this.sync();
+                if (SharedPlaylist.this.store.length() == 0) {
+                    return null;
+                }
+                return SharedPlaylist.this.store.songAt(this.position);
+            } finally {
+                SharedPlaylist.this.lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Reports the index of this cursor's current song.
+         *
+         * @return the current index; 0 if the playlist is empty
+         */
+        public int currentIndex() {
+            SharedPlaylist.this.lock.readLock().lock();
+            try {
+                this.sync();
+                return this.position;
+            } finally {
+                SharedPlaylist.this.lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Advances to the next song, wrapping around to the first.
+         */
+        public void nextSong() {
+            this.step(1);
+        }
+
+        /**
+         * Goes back to the previous song, wrapping around to the last.
+         */
+        public void previousSong() {
+            this.step(-1);
+        }
+
+        /**
+         * Moves {@code delta} songs forward, wrapping around.
+         *
+         * @param delta
+         *            1 or -1
+         */
+        private void step(int delta) {
+            SharedPlaylist.this.lock.readLock().lock();
+            try {
+                this.sync();
+                int n = SharedPlaylist.this.store.length();
+                if (n > 0) {
+                    this.position = (this.position + delta + n) % n;
+                }
+            } finally {
+                SharedPlaylist.this.lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Makes the song at {@code index} current.
+         *
+         * @param index
+         *            the new current index
+         * @requires 0 <= index < [length of the playlist]
+         */
+        public void goToSong(int index) {
+            SharedPlaylist.this.lock.readLock().lock();
+            try {
+                this.sync();
+                if (index < 0
+                        || index >= SharedPlaylist.this.store.length()) {
+                    throw new IllegalArgumentException("index out of bounds");
+                }
+                this.position = index;
+            } finally {
+                SharedPlaylist.this.lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Detaches this cursor from the playlist; it may not be used again.
+         */
+        @Override
+        public void close() {
+            SharedPlaylist.this.lock.writeLock().lock();
+            try {
+                if (this.slot >= 0) {
+                    SharedPlaylist.this.unregister(this);
+                }
+            } finally {
+                SharedPlaylist.this.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * The shared songs.
+     */
+    private final ObservableMusicPlaylist store;
+
+    /**
+     * Guards the store, the log and the cursor registry.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The open cursors.
+     */
+    private final List<Cursor> cursors = new ArrayList<>();
+
+    /**
+     * Logged edits, {@value #ENTRY} ints each: kind, then its arguments.
+     */
+    private int[] log = new int[ENTRY * 16];
+
+    /**
+     * Number of entries in {@code log}.
+     */
+    private int logSize;
+
+    /**
+     * Number of edits made before the first entry of {@code log}.
+     */
+    private long base;
+
+    /**
+     * Constructor: shares {@code songs}, which must from now on only be
+     * edited through {@link #edit(Consumer)}.
+     *
+     * @param songs
+     *            the playlist to share
+     * @requires songs != null
+     */
+    public SharedPlaylist(MusicPlaylist songs) {
+        if (songs == null) {
+            throw new IllegalArgumentException("songs cannot be null");
+        }
+        if (songs instanceof ObservableMusicPlaylist) {
+            this.store = (ObservableMusicPlaylist) songs;
+        } else {
+            this.store = new ObservableMusicPlaylist(songs);
+        }
+        this.store.addListener(this);
+    }
+
+    /**
+     * Applies {@code edit} to the shared playlist, with every reader locked
+     * out. Cursors follow the edit. The current song of the shared playlist
+     * itself is not any listener's and may be ignored.
+     *
+     * @param edit
+     *            the edit
+     * @requires edit != null
+     */
+    public void edit(Consumer<? super MusicPlaylist> edit) {
+        if (edit == null) {
+            throw new IllegalArgumentException("edit cannot be null");
+        }
+        this.lock.writeLock().lock();
+        try {
+            edit.accept(this.store);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies {@code query} to the shared playlist, concurrently with other
+     * readers. {@code query} must not edit the playlist.
+     *
+     * @param <T>
+     *            type of the result
+     * @param query
+     *            the query
+     * @return its result
+     * @requires query != null
+     */
+    public <T> T read(Function<? super MusicPlaylist, ? extends T> query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query cannot be null");
+        }
+        this.lock.readLock().lock();
+        try {
+            return query.apply(this.store);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a new cursor on the first song.
+     *
+     * @return the cursor
+     */
+    public Cursor newCursor() {
+        return this.newCursor(0);
+    }
+
+    /**
+     * Returns a new cursor on the song at {@code index}.
+     *
+     * @param index
+     *            the initial current index
+     * @return the cursor
+     * @requires 0 <= index < [length of the playlist] OR
+     *           [the playlist is empty AND index = 0]
+     */
+    public Cursor newCursor(int index) {
+        this.lock.writeLock().lock();
+        try {
+            int n = this.store.length();
+            if (index < 0 || (index >= n && !(n == 0 && index == 0))) {
+                throw new IllegalArgumentException("index out of bounds");
+            }
+            Cursor c = new Cursor(index, this.base + this.logSize);
+            c.slot = this.cursors.size();
+            this.cursors.add(c);
+            return c;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reports the number of open cursors.
+     *
+     * @return the number of cursors
+     */
+    public int cursors() {
+        this.lock.readLock().lock();
+        try {
+            return this.cursors.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes {@code c} from the registry in O(1), by moving the last cursor
+     * into its slot.
+     *
+     * @param c
+     *            an open cursor
+     */
+    private void unregister(Cursor c) {
+        Cursor last = this.cursors.remove(this.cursors.size() - 1);
+        if (last != c) {
+            last.slot = c.slot;
+            this.cursors.set(c.slot, last);
+        }
+        c.slot = -1;
+    }
+
+    /**
+     * Returns the position a cursor at {@code position} has after the edit
+     * logged at {@code log[at]}.
+     *
+     * @param log
+     *            the log
+     * @param at
+     *            offset of the entry
+     * @param position
+     *            the position before the edit
+     * @return the position after the edit
+     */
+    private static int replay(int[] log, int at, int position) {
+        int result = position;
+        switch (log[at]) {
+            case INSERTED:
+                // the current song keeps its place unless the list was empty
+                if (position >= log[at + 1] && log[at + 3] > log[at + 2]) {
+                    result += log[at + 2];
+                }
+                break;
+            case REMOVED:
+                if (position > log[at + 1]) {
+                    result--;
+                } else if (position >= log[at + 2]) {
+                    result = 0;
+                }
+                break;
+            case MOVED:
+                result = MusicPlaylistSecondary.positionAfterMove(position,
+                        log[at + 1], log[at + 2], log[at + 3]);
+                break;
+            default:
+                result = Math.max(0, Math.min(position, log[at + 1] - 1));
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Appends an entry to the log, first synchronizing every cursor and
+     * emptying the log if it is full. Called with the write lock held.
+     *
+     * @param kind
+     *            the entry kind
+     * @param a
+     *            first argument
+     * @param b
+     *            second argument
+     * @param c
+     *            third argument
+     */
+    private void append(int kind, int a, int b, int c) {
+        if (this.logSize == LOG_LIMIT) {
+            for (Cursor cursor : this.cursors) {
+                cursor.sync();
+            }
+            this.base += this.logSize;
+            this.logSize = 0;
+        }
+        int at = this.logSize * ENTRY;
+        if (at == this.log.length) {
+            this.log = Arrays.copyOf(this.log, 2 * this.log.length);
+        }
+        this.log[at] = kind;
+        this.log[at + 1] = a;
+        this.log[at + 2] = b;
+        this.log[at + 3] = c;
+        this.logSize++;
+    }
+
+    // PlaylistListener methods
+
+    @Override
+    public void songsInserted(int index, int count) {
+        this.append(INSERTED, index, count, this.store.length());
+    }
+
+    @Override
+    public void songRemoved(int index) {
+        this.append(REMOVED, index, this.store.length(), 0);
+    }
+
+    @Override
+    public void songsMoved(int from, int count, int to) {
+        this.append(MOVED, from, count, to);
+    }
+
+    @Override
+    public void contentsReplaced() {
+        this.append(REPLACED, this.store.length(), 0, 0);
+    }
+
+}
@@ -0,0 +1,41 @@
+// File: SlowPlaylistOperationEvent.java
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event emitted by {@link PlaylistMetrics} for a playlist operation slower
+ * than its threshold. Disabled unless a recording enables
+ * {@code playlist.SlowOperation}.
+ *
+ * @author …
+ */
+@Name("playlist.SlowOperation")
+@Label("Slow Playlist Operation")
+@Category("Playlist")
+@Description("A MusicPlaylist call slower than the configured threshold")
+final class SlowPlaylistOperationEvent extends jdk.jfr.Event {
+
+    /**
+     * Name of the method called.
+     */
+    @Label("Operation")
+    String operation;
+
+    /**
+     * Latency of the call.
+     */
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+
+    /**
+     * Length of the playlist after the call, or -1 if not observed.
+     */
+    @Label("Playlist Length")
+    int length;
+
+}
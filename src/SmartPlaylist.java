@@ -0,0 +1,185 @@
+// File: SmartPlaylist.java
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Rule-based playlist: keeps a {@link MusicPlaylist} holding, in catalog
+ * order, exactly the songs of a catalog that satisfy a rule, and updates it
+ * incrementally as the catalog changes.
+ *
+ * <p>
+ * The catalog is an {@link ObservableMusicPlaylist}; the smart playlist
+ * listens to it. Adding or removing one catalog song inserts or removes at
+ * most one song of the playlist, at the position given by the number of
+ * matching catalog songs before it (kept in a {@link PrefixSumTree} over 0/1
+ * match flags, so finding it is O(log n)). Moving catalog songs moves the
+ * matching ones as one block. Only bulk catalog changes rebuild the playlist,
+ * in O(n). In every case the current song of the playlist stays current if it
+ * is still in the playlist; when it was removed, the next remaining song
+ * becomes current, as with {@code removeSongAt}.
+ * </p>
+ *
+ * <p>
+ * The playlist may be navigated freely but must not be edited other than
+ * through the catalog.
+ * </p>
+ *
+ * @author …
+ */
+public final class SmartPlaylist implements PlaylistListener, AutoCloseable {
+
+    /**
+     * The catalog the songs are drawn from.
+     */
+    private final ObservableMusicPlaylist catalog;
+
+    /**
+     * Which catalog songs belong in the playlist.
+     */
+    private final Predicate<? super Song> rule;
+
+    /**
+     * The materialized playlist.
+     */
+    private final MusicPlaylist playlist;
+
+    /**
+     * {@code matches.get(i)} is 1 if catalog song i satisfies the rule, else
+     * 0.
+     */
+    private final PrefixSumTree matches = new PrefixSumTree();
+
+    /**
+     * Constructor: fills {@code playlist} with the catalog songs satisfying
+     * {@code rule} and starts following the catalog.
+     *
+     * @param catalog
+     *            the catalog to draw songs from
+     * @param rule
+     *            which songs belong in the playlist
+     * @param playlist
+     *            the playlist to maintain; its contents are replaced
+     * @requires catalog, rule and playlist are not null AND
+     *           playlist is not catalog
+     * @ensures <pre>
+     *          playlist = [catalog songs satisfying rule, in catalog order]
+     *          </pre>
+     */
+    public SmartPlaylist(ObservableMusicPlaylist catalog,
+            Predicate<? super Song> rule, MusicPlaylist playlist) {
+        if (catalog == null || rule == null || playlist == null) {
+            throw new IllegalArgumentException(
+                    "catalog, rule and playlist cannot be null");
+        }
+        if (playlist == catalog || playlist == catalog.delegate()) {
+            throw new IllegalArgumentException(
+                    "playlist cannot be the catalog");
+        }
+        this.catalog = catalog;
+        this.rule = rule;
+        this.playlist = playlist;
+        this.rebuild();
+        catalog.addListener(this);
+    }
+
+    /**
+     * Returns the maintained playlist.
+     *
+     * @return the playlist
+     */
+    public MusicPlaylist playlist() {
+        return this.playlist;
+    }
+
+    /**
+     * Stops following the catalog; the playlist keeps its current contents.
+     */
+    @Override
+    public void close() {
+        this.catalog.removeListener(this);
+    }
+
+    /**
+     * Re-evaluates the rule on every catalog song and refills the playlist,
+     * keeping its current song current if it still matches; otherwise the
+     * next song of the old playlist that still matches becomes current.
+     */
+    private void rebuild() {
+        int n = this.catalog.length();
+        long[] flags = new long[n];
+        MusicPlaylist fresh = this.playlist.newInstance();
+        Map<Song, Integer> positions = new HashMap<>();
+        int i = 0;
+        for (Song song : this.catalog.window(0, n)) {
+            if (this.rule.test(song)) {
+                flags[i] = 1;
+                positions.putIfAbsent(song, fresh.length());
+                fresh.addSong(song);
+            }
+            i++;
+        }
+        this.matches.load(flags, n);
+        int old = this.playlist.length();
+        if (old > 0) {
+            // walk the old playlist from its current song, wrapping around
+            int current = this.playlist.currentIndex();
+            Integer currentAt = null;
+            for (PlaylistWindow part : Arrays.asList(
+                    this.playlist.window(current, old),
+                    this.playlist.window(0, current))) {
+                Iterator<Song> it = part.iterator();
+                while (currentAt == null && it.hasNext()) {
+                    currentAt = positions.get(it.next());
+                }
+            }
+            if (currentAt != null && currentAt > 0) {
+                fresh.goToSong(currentAt);
+            }
+        }
+        this.playlist.transferFrom(fresh);
+    }
+
+    // PlaylistListener methods
+
+    @Override
+    public void songsInserted(int index, int count) {
+        for (int i = index; i < index + count; i++) {
+            Song song = this.catalog.songAt(i);
+            boolean match = this.rule.test(song);
+            this.matches.insert(i, match ? 1 : 0);
+            if (match) {
+                this.playlist.insertSongAt(song,
+                        (int) this.matches.prefixSum(i));
+            }
+        }
+    }
+
+    @Override
+    public void songRemoved(int index) {
+        int position = (int) this.matches.prefixSum(index);
+        if (this.matches.remove(index) == 1) {
+            this.playlist.removeSongAt(position);
+        }
+    }
+
+    @Override
+    public void songsMoved(int from, int count, int to) {
+        int first = (int) this.matches.prefixSum(from);
+        int moved = (int) this.matches.prefixSum(from + count) - first;
+        this.matches.move(from, count, to);
+        if (moved > 0) {
+            int target = (int) this.matches.prefixSum(to);
+            this.playlist.moveRange(first, moved, target);
+        }
+    }
+
+    @Override
+    public void contentsReplaced() {
+        this.rebuild();
+    }
+
+}
@@ -0,0 +1,149 @@
+// File: Song.java
+
+/**
+ * Immutable description of one playlist entry: catalog id, title, artist and
+ * duration.
+ *
+ * <p>
+ * Songs added to a playlist by title only are represented with id
+ * {@code 0} (no catalog id), an empty artist and a duration of {@code 0}.
+ * </p>
+ *
+ * @author …
+ */
+public final class Song {
+
+    /**
+     * Catalog id, or 0 if the song has none.
+     */
+    private final long id;
+
+    /**
+     * Title.
+     */
+    private final String title;
+
+    /**
+     * Artist, or the empty string if unknown.
+     */
+    private final String artist;
+
+    /**
+     * Duration in milliseconds.
+     */
+    private final long durationMillis;
+
+    /**
+     * Constructor for a song known only by its title.
+     *
+     * @param title
+     *            the title
+     * @requires title != null
+     * @ensures <pre>
+     *          this = (0, title, "", 0)
+     *          </pre>
+     */
+    public Song(String title) {
+        this(0, title, "", 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param id
+     *            catalog id, or 0 if none
+     * @param title
+     *            the title
+     * @param artist
+     *            the artist, or the empty string if unknown
+     * @param durationMillis
+     *            duration in milliseconds
+     * @requires title != null AND artist != null AND
+     *           0 <= durationMillis <= Integer.MAX_VALUE
+     * @ensures <pre>
+     *          this = (id, title, artist, durationMillis)
+     *          </pre>
+     */
+    public Song(long id, String title, String artist, long durationMillis) {
+        if (title == null || artist == null) {
+            throw new IllegalArgumentException(
+                    "title and artist cannot be null");
+        }
+        if (durationMillis < 0 || durationMillis > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("duration out of range");
+        }
+        this.id = id;
+        this.title = title;
+        this.artist = artist;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Reports the catalog id.
+     *
+     * @return the id, or 0 if none
+     */
+    public long id() {
+        return this.id;
+    }
+
+    /**
+     * Reports the title.
+     *
+     * @return the title
+     */
+    public String title() {
+        return this.title;
+    }
+
+    /**
+     * Reports the artist.
+     *
+     * @return the artist, or the empty string if unknown
+     */
+    public String artist() {
+        return this.artist;
+    }
+
+    /**
+     * Reports the duration.
+     *
+     * @return the duration in milliseconds
+     */
+    public long durationMillis() {
+        return this.durationMillis;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Song)) {
+            return false;
+        }
+        Song other = (Song) obj;
+        return this.id == other.id
+                && this.durationMillis == other.durationMillis
+                && this.title.equals(other.title)
+                && this.artist.equals(other.artist);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = Long.hashCode(this.id);
+        h = 31 * h + this.title.hashCode();
+        h = 31 * h + this.artist.hashCode();
+        h = 31 * h + Long.hashCode(this.durationMillis);
+        return h;
+    }
+
+    /**
+     * Returns the title, so songs print the way bare titles used to.
+     */
+    @Override
+    public String toString() {
+        return this.title;
+    }
+
+}
@@ -0,0 +1,798 @@
+// File: SongSearchIndex.java
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Title search index kept alongside the representation of a playlist kernel.
+ *
+ * <p>
+ * Every distinct (case-folded) title gets a small integer id. The index keeps:
+ * <ul>
+ * <li>a compressed (radix) trie over the titles, for prefix queries;</li>
+ * <li>n-gram postings (every distinct substring of one to three characters,
+ * to the ids of the titles containing it), for substring and fuzzy
+ * queries;</li>
+ * <li>for each title id, the sorted positions at which that title occurs in
+ * the playlist.</li>
+ * </ul>
+ * Prefix and substring queries cost time proportional to the query, the
+ * shortest posting list they intersect, and the number of matching positions.
+ * Fuzzy queries only generate candidates from the postings of the query's
+ * rarest trigrams, as many as a similar title cannot avoid, and check each
+ * candidate against the other postings with an early cutoff. None of them
+ * scans the titles of the playlist, and none of them writes to the index, so
+ * any number may run at once. Appending a song is O(1); inserting, removing or
+ * moving songs in the middle shifts stored positions, which is O(n) just like
+ * the shift in the playlist representation itself.
+ * </p>
+ *
+ * <p>
+ * When the last occurrence of a title is removed, its id, trie entry and
+ * postings are released and the id is reused by the next new title, so the
+ * index stays proportional to the distinct titles currently in the playlist.
+ * </p>
+ *
+ * @author …
+ */
+final class SongSearchIndex {
+
+    /**
+     * Length of the n-grams used for substring and fuzzy matching; shorter
+     * substrings are indexed too, so short fragments have postings of their
+     * own.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * Minimum Dice coefficient over trigram sets for a title to count as
+     * similar to a query.
+     */
+    private static final double SIMILARITY = 0.5;
+
+    /**
+     * Per-thread counters for {@link #similar(String)}, indexed by title id
+     * and all zero between queries, so queries neither allocate one per call
+     * nor share one between threads.
+     */
+    private static final ThreadLocal<int[]> SCRATCH = ThreadLocal
+            .withInitial(() -> new int[64]);
+
+    /**
+     * Empty result.
+     */
+    private static final int[] NONE = new int[0];
+
+    /**
+     * Growable list of ints kept in ascending order by its users.
+     */
+    private static final class IntList {
+
+        /**
+         * Elements; only the first {@code size} are meaningful.
+         */
+        private int[] items = new int[2];
+
+        /**
+         * Number of elements.
+         */
+        private int size;
+
+        /**
+         * Appends {@code value}.
+         *
+         * @param value
+         *            the value to append
+         */
+        void add(int value) {
+            if (this.size == this.items.length) {
+                this.items = Arrays.copyOf(this.items, this.size * 2);
+            }
+            this.items[this.size] = value;
+            this.size++;
+        }
+
+        /**
+         * Inserts {@code value} keeping the list sorted.
+         *
+         * @param value
+         *            the value to insert
+         */
+        void insertSorted(int value) {
+            int at = this.lowerBound(value);
+            this.add(value);
+            System.arraycopy(this.items, at, this.items, at + 1,
+                    this.size - 1 - at);
+            this.items[at] = value;
+        }
+
+        /**
+         * Removes one occurrence of {@code value}, if present.
+         *
+         * @param value
+         *            the value to remove
+         */
+        void removeSorted(int value) {
+            int at = this.lowerBound(value);
+            if (at < this.size && this.items[at] == value) {
+                System.arraycopy(this.items, at + 1, this.items, at,
+                        this.size - at - 1);
+                this.size--;
+            }
+        }
+
+        /**
+         * Adds {@code delta} to every element {@code >= from}.
+         *
+         * @param from
+         *            smallest value to shift
+         * @param delta
+         *            amount to add
+         */
+        void shiftFrom(int from, int delta) {
+            for (int i = this.lowerBound(from); i < this.size; i++) {
+                this.items[i] += delta;
+            }
+        }
+
+        /**
+         * Reports whether {@code value} is in the list.
+         *
+         * @param value
+         *            the value to look for
+         * @return true if present
+         */
+        boolean containsSorted(int value) {
+            int at = this.lowerBound(value);
+            return at < this.size && this.items[at] == value;
+        }
+
+        /**
+         * Returns the index of the first element {@code >= value}.
+         *
+         * @param value
+         *            the value to look for
+         * @return the insertion point of {@code value}
+         */
+        int lowerBound(int value) {
+            int lo = 0;
+            int hi = this.size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (this.items[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+    }
+
+    /**
+     * Node of the compressed trie.
+     */
+    private static final class Node {
+
+        /**
+         * Label of the edge leading into this node.
+         */
+        private String label;
+
+        /**
+         * Children keyed by the first character of their label.
+         */
+        private Map<Character, Node> children;
+
+        /**
+         * Id of the title ending at this node, or -1.
+         */
+        private int id = -1;
+
+        /**
+         * Creates a node.
+         *
+         * @param label
+         *            label of the incoming edge
+         */
+        Node(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Returns the child whose label starts with {@code c}, or null.
+         *
+         * @param c
+         *            first character of the label
+         * @return the child, or null
+         */
+        Node child(char c) {
+            if (this.children == null) {
+                return null;
+            }
+            return this.children.get(c);
+        }
+
+        /**
+         * Attaches {@code node} as a child.
+         *
+         * @param node
+         *            the child to attach
+         */
+        void put(Node node) {
+            if (this.children == null) {
+                this.children = new HashMap<>();
+            }
+            this.children.put(node.label.charAt(0), node);
+        }
+
+    }
+
+    /**
+     * Root of the trie; its label is empty.
+     */
+    private final Node root = new Node("");
+
+    /**
+     * Title id of every case-folded title in the playlist.
+     */
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * Case-folded title of every id, or null if the id is free.
+     */
+    private final List<String> keys = new ArrayList<>();
+
+    /**
+     * Number of distinct trigrams of every title id.
+     */
+    private final IntList gramCounts = new IntList();
+
+    /**
+     * Sorted playlist positions of every title id.
+     */
+    private final List<IntList> positions = new ArrayList<>();
+
+    /**
+     * Ids of the titles containing each n-gram of one to {@value #GRAM}
+     * characters, in ascending order.
+     */
+    private final Map<String, IntList> grams = new HashMap<>();
+
+    /**
+     * Released ids, reused before new ones are assigned.
+     */
+    private final IntList freeIds = new IntList();
+
+    /**
+     * Ids in use, in no particular order.
+     */
+    private final IntList live = new IntList();
+
+    /**
+     * Position of every id in use within {@code live}.
+     */
+    private final IntList liveSlot = new IntList();
+
+    /**
+     * Number of positions indexed.
+     */
+    private int size;
+
+    /**
+     * Folds {@code title} to the form used for matching.
+     *
+     * @param title
+     *            the title
+     * @return the case-folded title
+     */
+    static String normalize(String title) {
+        return title.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reports whether {@code title} is similar to {@code query}: their
+     * trigram sets have a Dice coefficient of at least one half. Titles or
+     * queries too short to have trigrams are only similar when equal.
+     *
+     * @param title
+     *            case-folded title
+     * @param query
+     *            case-folded query
+     * @return true if similar
+     */
+    static boolean isSimilar(String title, String query) {
+        Set<String> a = trigrams(title);
+        Set<String> b = trigrams(query);
+        if (a.isEmpty() || b.isEmpty()) {
+            return title.equals(query);
+        }
+        int shared = 0;
+        for (String g : b) {
+            if (a.contains(g)) {
+                shared++;
+            }
+        }
+        return 2.0 * shared >= SIMILARITY * (a.size() + b.size());
+    }
+
+    /**
+     * Returns the distinct trigrams of {@code s}, in order of appearance.
+     *
+     * @param s
+     *            the string
+     * @return its trigrams
+     */
+    private static Set<String> trigrams(String s) {
+        return grams(s, GRAM);
+    }
+
+    /**
+     * Returns the distinct substrings of {@code length} characters of
+     * {@code s}, in order of appearance.
+     *
+     * @param s
+     *            the string
+     * @param length
+     *            length of the substrings
+     * @return its n-grams
+     */
+    private static Set<String> grams(String s, int length) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + length <= s.length(); i++) {
+            result.add(s.substring(i, i + length));
+        }
+        return result;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    void clear() {
+        this.root.children = null;
+        this.ids.clear();
+        this.keys.clear();
+        this.gramCounts.size = 0;
+        this.positions.clear();
+        this.grams.clear();
+        this.freeIds.size = 0;
+        this.live.size = 0;
+        this.liveSlot.size = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Records that {@code title} was inserted at {@code index}.
+     *
+     * @param index
+     *            position of the new song
+     * @param title
+     *            title of the new song
+     */
+    void insert(int index, String title) {
+        if (index < this.size) {
+            this.shift(index, 1);
+        }
+        IntList at = this.positions.get(this.idOf(normalize(title)));
+        if (index == this.size) {
+            at.add(index);
+        } else {
+            at.insertSorted(index);
+        }
+        this.size++;
+    }
+
+    /**
+     * Records that {@code title} was removed from {@code index}.
+     *
+     * @param index
+     *            former position of the song
+     * @param title
+     *            title of the removed song
+     */
+    void remove(int index, String title) {
+        Integer id = this.ids.get(normalize(title));
+        if (id != null) {
+            IntList at = this.positions.get(id);
+            at.removeSorted(index);
+            if (at.size == 0) {
+                this.release(id);
+            }
+        }
+        this.size--;
+        if (index < this.size) {
+            this.shift(index + 1, -1);
+        }
+    }
+
+    /**
+     * Records that every song moved from position {@code i} to
+     * {@code moved.applyAsInt(i)}.
+     *
+     * @param moved
+     *            the new position of every old position
+     */
+    void remap(IntUnaryOperator moved) {
+        for (int k = 0; k < this.live.size; k++) {
+            IntList list = this.positions.get(this.live.items[k]);
+            for (int i = 0; i < list.size; i++) {
+                list.items[i] = moved.applyAsInt(list.items[i]);
+            }
+            Arrays.sort(list.items, 0, list.size);
+        }
+    }
+
+    /**
+     * Returns the positions of the titles starting with {@code prefix},
+     * ignoring case.
+     *
+     * @param prefix
+     *            the prefix
+     * @return matching positions, ascending
+     */
+    int[] prefix(String prefix) {
+        String key = normalize(prefix);
+        Node node = this.root;
+        int matched = 0;
+        while (matched < key.length()) {
+            node = node.child(key.charAt(matched));
+            if (node == null) {
+                return NONE;
+            }
+            int common = commonPrefix(node.label, key, matched);
+            if (common < node.label.length()
+                    && matched + common < key.length()) {
+                return NONE;
+            }
+            matched += common;
+        }
+        IntList found = new IntList();
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            Node n = pending.pop();
+            if (n.id >= 0) {
+                found.add(n.id);
+            }
+            if (n.children != null) {
+                for (Node c : n.children.values()) {
+                    pending.push(c);
+                }
+            }
+        }
+        return this.positionsOf(found);
+    }
+
+    /**
+     * Returns the positions of the titles containing {@code fragment},
+     * ignoring case.
+     *
+     * @param fragment
+     *            the fragment
+     * @return matching positions, ascending
+     */
+    int[] containing(String fragment) {
+        String key = normalize(fragment);
+        IntList found = new IntList();
+        if (key.isEmpty()) {
+            for (int k = 0; k < this.live.size; k++) {
+                found.add(this.live.items[k]);
+            }
+            return this.positionsOf(found);
+        }
+        if (key.length() < GRAM) {
+            // short fragments are indexed whole
+            IntList list = this.grams.get(key);
+            if (list == null) {
+                return NONE;
+            }
+            for (int i = 0; i < list.size; i++) {
+                found.add(list.items[i]);
+            }
+            return this.positionsOf(found);
+        }
+        List<IntList> lists = new ArrayList<>();
+        for (String g : trigrams(key)) {
+            IntList list = this.grams.get(g);
+            if (list == null) {
+                return NONE;
+            }
+            lists.add(list);
+        }
+        lists.sort((x, y) -> Integer.compare(x.size, y.size));
+        IntList smallest = lists.get(0);
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.items[i];
+            boolean inAll = true;
+            for (int j = 1; j < lists.size() && inAll; j++) {
+                inAll = lists.get(j).containsSorted(id);
+            }
+            if (inAll && this.keys.get(id).contains(key)) {
+                found.add(id);
+            }
+        }
+        return this.positionsOf(found);
+    }
+
+    /**
+     * Returns the positions of the titles similar to {@code query}, in the
+     * sense of {@link #isSimilar(String, String)}.
+     *
+     * @param query
+     *            the query
+     * @return matching positions, ascending
+     */
+    int[] similar(String query) {
+        String key = normalize(query);
+        Set<String> wanted = trigrams(key);
+        IntList found = new IntList();
+        if (wanted.isEmpty()) {
+            Integer id = this.ids.get(key);
+            if (id != null) {
+                found.add(id);
+            }
+            return this.positionsOf(found);
+        }
+        // rarest trigrams first; a trigram nobody has is an empty posting
+        List<IntList> lists = new ArrayList<>();
+        for (String g : wanted) {
+            lists.add(this.grams.getOrDefault(g, new IntList()));
+        }
+        lists.sort((x, y) -> Integer.compare(x.size, y.size));
+        int b = lists.size();
+        // a similar title has at least SIMILARITY * b / (2 - SIMILARITY) of
+        // the query trigrams, so it has one of the rarest b - minShared + 1
+        int minShared = Math.max(1,
+                (int) Math.ceil(SIMILARITY * b / (2 - SIMILARITY) - 1e-9));
+        int probe = b - minShared + 1;
+        // count how many probe postings hold each id, in this thread's
+        // scratch counters, which are all zero between queries
+        int[] shared = SCRATCH.get();
+        if (shared.length < this.keys.size()) {
+            shared = new int[Math.max(this.keys.size(), 2 * shared.length)];
+            SCRATCH.set(shared);
+        }
+        IntList touched = new IntList();
+        for (int j = 0; j < probe; j++) {
+            IntList list = lists.get(j);
+            for (int i = 0; i < list.size; i++) {
+                int id = list.items[i];
+                if (shared[id] == 0) {
+                    touched.add(id);
+                }
+                shared[id]++;
+            }
+        }
+        for (int k = 0; k < touched.size; k++) {
+            int id = touched.items[k];
+            int count = shared[id];
+            shared[id] = 0;
+            double needed = SIMILARITY * (this.gramCounts.items[id] + b);
+            for (int j = probe; j < b && 2.0 * (count + b - j) >= needed;
+                    j++) {
+                if (lists.get(j).containsSorted(id)) {
+                    count++;
+                }
+            }
+            if (2.0 * count >= needed) {
+                found.add(id);
+            }
+        }
+        return this.positionsOf(found);
+    }
+
+    /**
+     * Collects the positions of the given title ids into one sorted array.
+     *
+     * @param found
+     *            title ids
+     * @return their positions, ascending
+     */
+    private int[] positionsOf(IntList found) {
+        int total = 0;
+        for (int k = 0; k < found.size; k++) {
+            total += this.positions.get(found.items[k]).size;
+        }
+        int[] result = new int[total];
+        int at = 0;
+        for (int k = 0; k < found.size; k++) {
+            IntList list = this.positions.get(found.items[k]);
+            System.arraycopy(list.items, 0, result, at, list.size);
+            at += list.size;
+        }
+        if (found.size > 1) {
+            Arrays.sort(result);
+        }
+        return result;
+    }
+
+    /**
+     * Adds {@code delta} to every stored position {@code >= from}.
+     *
+     * @param from
+     *            smallest position to shift
+     * @param delta
+     *            amount to add
+     */
+    private void shift(int from, int delta) {
+        for (int k = 0; k < this.live.size; k++) {
+            this.positions.get(this.live.items[k]).shiftFrom(from, delta);
+        }
+    }
+
+    /**
+     * Returns the id of {@code key}, registering it in the trie and the
+     * trigram postings the first time it is seen.
+     *
+     * @param key
+     *            case-folded title
+     * @return its id
+     */
+    private int idOf(String key) {
+        Integer known = this.ids.get(key);
+        if (known != null) {
+            return known;
+        }
+        int id;
+        int trigramCount = trigrams(key).size();
+        if (this.freeIds.size > 0) {
+            this.freeIds.size--;
+            id = this.freeIds.items[this.freeIds.size];
+            this.keys.set(id, key);
+            this.gramCounts.items[id] = trigramCount;
+            this.liveSlot.items[id] = this.live.size;
+        } else {
+            id = this.keys.size();
+            this.keys.add(key);
+            this.positions.add(new IntList());
+            this.gramCounts.add(trigramCount);
+            this.liveSlot.add(this.live.size);
+        }
+        this.live.add(id);
+        this.ids.put(key, id);
+        for (int length = 1; length <= GRAM; length++) {
+            for (String g : grams(key, length)) {
+                // a reused id may be smaller than those already listed
+                this.grams.computeIfAbsent(g, k -> new IntList())
+                        .insertSorted(id);
+            }
+        }
+        this.trieInsert(key, id);
+        return id;
+    }
+
+    /**
+     * Releases {@code id}, whose title no longer occurs in the playlist:
+     * removes it from the trie and the postings and makes it reusable.
+     *
+     * @param id
+     *            an id in use with no positions
+     */
+    private void release(int id) {
+        String key = this.keys.get(id);
+        this.ids.remove(key);
+        this.keys.set(id, null);
+        for (int length = 1; length <= GRAM; length++) {
+            for (String g : grams(key, length)) {
+                IntList list = this.grams.get(g);
+                list.removeSorted(id);
+                if (list.size == 0) {
+                    this.grams.remove(g);
+                }
+            }
+        }
+        trieRemove(this.root, key, 0);
+        // move the last live id into the freed slot
+        int slot = this.liveSlot.items[id];
+        this.live.size--;
+        int last = this.live.items[this.live.size];
+        this.live.items[slot] = last;
+        this.liveSlot.items[last] = slot;
+        this.freeIds.add(id);
+    }
+
+    /**
+     * Adds {@code key} with the given id to the trie.
+     *
+     * @param key
+     *            case-folded title
+     * @param id
+     *            its id
+     */
+    private void trieInsert(String key, int id) {
+        Node node = this.root;
+        int matched = 0;
+        while (matched < key.length()) {
+            Node next = node.child(key.charAt(matched));
+            if (next == null) {
+                Node leaf = new Node(key.substring(matched));
+                leaf.id = id;
+                node.put(leaf);
+                return;
+            }
+            int common = commonPrefix(next.label, key, matched);
+            if (common < next.label.length()) {
+                Node split = new Node(next.label.substring(0, common));
+                next.label = next.label.substring(common);
+                split.put(next);
+                node.put(split);
+                next = split;
+            }
+            matched += common;
+            node = next;
+        }
+        node.id = id;
+    }
+
+    /**
+     * Removes {@code key}, which is in the trie, from the subtree of
+     * {@code node}, whose path spells {@code key}'s first {@code matched}
+     * characters, pruning the nodes left with nothing under them and merging
+     * each node left without a title and with a single child into that
+     * child, so the trie stays as compact as if {@code key} had never been
+     * inserted.
+     *
+     * @param node
+     *            the subtree
+     * @param key
+     *            case-folded title
+     * @param matched
+     *            number of characters of {@code key} spelled down to
+     *            {@code node}
+     * @return true if {@code node} is left empty and may be detached
+     */
+    private static boolean trieRemove(Node node, String key, int matched) {
+        if (matched == key.length()) {
+            node.id = -1;
+        } else {
+            Node next = node.child(key.charAt(matched));
+            if (trieRemove(next, key, matched + next.label.length())) {
+                node.children.remove(next.label.charAt(0));
+                if (node.children.isEmpty()) {
+                    node.children = null;
+                }
+            }
+        }
+        if (matched > 0 && node.id < 0 && node.children != null
+                && node.children.size() == 1) {
+            // the label only grows, so the parent's key for this node holds
+            Node only = node.children.values().iterator().next();
+            node.label = node.label + only.label;
+            node.id = only.id;
+            node.children = only.children;
+        }
+        return node.id < 0 && node.children == null;
+    }
+
+    /**
+     * Returns the length of the common prefix of {@code label} and the part
+     * of {@code key} starting at {@code from}.
+     *
+     * @param label
+     *            edge label
+     * @param key
+     *            the key
+     * @param from
+     *            where to start in {@code key}
+     * @return length of the common prefix
+     */
+    private static int commonPrefix(String label, String key, int from) {
+        int n = Math.min(label.length(), key.length() - from);
+        int i = 0;
+        while (i < n && label.charAt(i) == key.charAt(from + i)) {
+            i++;
+        }
+        return i;
+    }
+
+}
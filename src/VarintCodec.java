@@ -0,0 +1,202 @@
+// File: VarintCodec.java
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer that writes integers as unsigned LEB128 varints (7
+ * bits per byte, low bits first) and signed ones as zig-zag varints, with the
+ * matching readers over a {@link ByteBuffer}. Shared by the binary formats of
+ * {@link PlaylistArchive} and {@link MusicPlaylistOnRga}.
+ *
+ * @author …
+ */
+final class VarintCodec {
+
+    /**
+     * Bytes written; only the first {@code size} are meaningful.
+     */
+    private byte[] bytes = new byte[64];
+
+    /**
+     * Number of bytes written.
+     */
+    private int size;
+
+    /**
+     * Makes room for {@code extra} more bytes.
+     *
+     * @param extra
+     *            number of bytes about to be written
+     */
+    private void ensure(int extra) {
+        if (this.size + extra > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes,
+                    Math.max(this.size + extra, 2 * this.bytes.length));
+        }
+    }
+
+    /**
+     * Writes one byte.
+     *
+     * @param b
+     *            the byte, in its low 8 bits
+     */
+    void writeByte(int b) {
+        this.ensure(1);
+        this.bytes[this.size++] = (byte) b;
+    }
+
+    /**
+     * Writes {@code value} as an unsigned varint.
+     *
+     * @param value
+     *            the value, treated as unsigned
+     */
+    void writeVarLong(long value) {
+        this.ensure(10);
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            this.bytes[this.size++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        this.bytes[this.size++] = (byte) v;
+    }
+
+    /**
+     * Writes {@code value} as a zig-zag varint.
+     *
+     * @param value
+     *            the signed value
+     */
+    void writeZigZag(long value) {
+        this.writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes {@code s} as its UTF-8 length and bytes.
+     *
+     * @param s
+     *            the string
+     */
+    void writeString(String s) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        this.writeVarLong(utf8.length);
+        this.writeBytes(utf8, utf8.length);
+    }
+
+    /**
+     * Writes {@code b[0, count)}.
+     *
+     * @param b
+     *            the bytes
+     * @param count
+     *            how many to write
+     */
+    void writeBytes(byte[] b, int count) {
+        this.ensure(count);
+        System.arraycopy(b, 0, this.bytes, this.size, count);
+        this.size += count;
+    }
+
+    /**
+     * Writes the contents of {@code other}.
+     *
+     * @param other
+     *            the buffer to copy
+     */
+    void writeAll(VarintCodec other) {
+        this.writeBytes(other.bytes, other.size);
+    }
+
+    /**
+     * Returns a copy of the contents.
+     *
+     * @return the bytes written
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(this.bytes, this.size);
+    }
+
+    /**
+     * Empties this.
+     */
+    void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * Writes the contents to {@code out} and empties this.
+     *
+     * @param out
+     *            where to write
+     * @return the number of bytes written
+     * @throws IOException
+     *             if {@code out} fails
+     */
+    int drainTo(OutputStream out) throws IOException {
+        int n = this.size;
+        out.write(this.bytes, 0, n);
+        this.size = 0;
+        return n;
+    }
+
+    /**
+     * Reads an unsigned varint from {@code in}.
+     *
+     * @param in
+     *            the buffer
+     * @return the value
+     */
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Reads a zig-zag varint from {@code in}.
+     *
+     * @param in
+     *            the buffer
+     * @return the signed value
+     */
+    static long readZigZag(ByteBuffer in) {
+        long v = readVarLong(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Reads a varint that must fit in an {@code int}.
+     *
+     * @param in
+     *            the buffer
+     * @return the value
+     */
+    static int readVarInt(ByteBuffer in) {
+        return Math.toIntExact(readVarLong(in));
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(String)}.
+     *
+     * @param in
+     *            the buffer
+     * @return the string
+     */
+    static String readString(ByteBuffer in) {
+        byte[] utf8 = new byte[readVarInt(in)];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+}
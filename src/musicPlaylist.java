@@ -1,5 +1,8 @@
 // File: MusicPlaylist.java
 
+import java.util.Comparator;
+import java.util.function.Predicate;
+
 /**
  * Enhanced interface for a Music Playlist component.
  *
@@ -13,11 +16,17 @@
 public interface MusicPlaylist extends MusicPlaylistKernel {
 
     /**
-     * Moves to the previous song in this playlist, wrapping around if at the
-     * beginning.MusicPlaylist
+     * Goes back to the song that was current before the current one, as
+     * remembered by the play history: {@link #nextSong()},
+     * {@link #goToSong(int)} and {@link #goToTime(long)} record the song they
+     * leave, and each call to this method steps one entry further back. The
+     * history is bounded and forgets removed songs; bulk reorderings clear it.
+     * If it is empty, moves to the previous position instead, wrapping around
+     * if at the beginning.
      *
      * @ensures <pre>
-     *          [currentIndex is decremented by 1 modulo playlist length]
+     *          [currentIndex is the most recent remembered position, or
+     *           #currentIndex - 1 modulo playlist length if none]
      *          </pre>
      */
     void previousSong();
@@ -55,13 +64,244 @@ public interface MusicPlaylist extends MusicPlaylistKernel {
     void displayPlaylist();
 
     /**
-     * Returns the number of songs in this playlist.
+     * Reports the positions of the songs whose title starts with
+     * {@code prefix}, ignoring case.
+     *
+     * @param prefix
+     *            the prefix to look for
+     * @return the matching positions, in ascending order
+     * @requires prefix != null
+     * @ensures <pre>
+     *          [returns every i with songs.entry(i) starting with prefix]
+     *          </pre>
+     */
+    int[] searchPrefix(String prefix);
+
+    /**
+     * Reports the positions of the songs whose title contains
+     * {@code fragment}, ignoring case.
+     *
+     * @param fragment
+     *            the text to look for
+     * @return the matching positions, in ascending order
+     * @requires fragment != null
+     * @ensures <pre>
+     *          [returns every i with songs.entry(i) containing fragment]
+     *          </pre>
+     */
+    int[] searchContaining(String fragment);
+
+    /**
+     * Reports the positions of the songs whose title is similar to
+     * {@code query}, ignoring case: at least half of their three-letter
+     * fragments are shared (Dice coefficient). Tolerates typos and missing
+     * words.
+     *
+     * @param query
+     *            the (approximate) title to look for
+     * @return the matching positions, in ascending order
+     * @requires query != null
+     * @ensures <pre>
+     *          [returns every i with songs.entry(i) similar to query]
+     *          </pre>
+     */
+    int[] searchSimilar(String query);
+
+    /**
+     * Reports the position of the first song with the given catalog id.
+     *
+     * @param id
+     *            the catalog id to look for
+     * @return the first position holding a song with {@code id}, or -1 if
+     *         there is none
+     * @ensures <pre>
+     *          if indexOfId >= 0 then
+     *              songs.entry(indexOfId).id = id
+     *          else
+     *              [no song in this playlist has id]
+     *          </pre>
+     */
+    int indexOfId(long id);
+
+    /**
+     * Adds a song with the given title and duration to the end of this
+     * playlist.
+     *
+     * @param song
+     *            the title of the song to add
+     * @param durationMillis
+     *            its duration in milliseconds
+     * @requires song != null AND 0 <= durationMillis <= Integer.MAX_VALUE
+     * @ensures <pre>
+     *          [song, lasting durationMillis, is appended to the end of this
+     *           playlist]
+     *          </pre>
+     */
+    void addSong(String song, long durationMillis);
+
+    /**
+     * Reports the total duration of this playlist.
+     *
+     * @return the sum of the durations of all songs, in milliseconds
+     * @ensures <pre>
+     *          totalDuration = [sum of the durations of songs]
+     *          </pre>
+     */
+    long totalDuration();
+
+    /**
+     * Reports the playing time from the start of the current song to the end
+     * of this playlist.
+     *
+     * @return the sum of the durations of the current song and every song
+     *         after it, in milliseconds; 0 if this playlist is empty
+     * @ensures <pre>
+     *          timeRemainingFromCurrent = [sum of the durations of
+     *           songs.entry(currentIndex), ..., songs.entry(n-1)]
+     *          </pre>
+     */
+    long timeRemainingFromCurrent();
+
+    /**
+     * Makes current the song that is playing {@code millis} milliseconds after
+     * the start of this playlist.
+     *
+     * @param millis
+     *            offset from the start of this playlist, in milliseconds
+     * @requires 0 <= millis < totalDuration()
+     * @ensures <pre>
+     *          [sum of the durations of songs before currentIndex] <= millis
+     *          < [that sum + the duration of songs.entry(currentIndex)]
+     *          </pre>
+     */
+    void goToTime(long millis);
+
+    /**
+     * Removes every song that is equal (same id, title, artist and duration)
+     * to an earlier song, keeping the first copy. The current song stays
+     * current, as its first copy. Large playlists are processed in parallel.
+     *
+     * @return the number of songs removed
+     * @ensures <pre>
+     *          songs = [#songs without repeated songs, first copies kept] AND
+     *          distinct = |#songs| - |songs|
+     *          </pre>
+     */
+    int distinct();
+
+    /**
+     * Sorts this playlist, stably, in the given order. The current song stays
+     * current. Large playlists are sorted in parallel.
+     *
+     * @param order
+     *            the order to sort in
+     * @requires order != null
+     * @ensures <pre>
+     *          songs = [#songs stably sorted by order] AND
+     *          [current song is unchanged]
+     *          </pre>
+     */
+    void sort(Comparator<? super Song> order);
+
+    /**
+     * Removes every song satisfying {@code filter}. If the current song is
+     * removed, the next remaining song becomes current (or the first, if no
+     * song after it remains). Large playlists are tested in parallel, so
+     * {@code filter} must be safe to call from several threads.
+     *
+     * @param filter
+     *            the songs to remove
+     * @return the number of songs removed
+     * @requires filter != null
+     * @ensures <pre>
+     *          songs = [#songs without the entries satisfying filter] AND
+     *          removeIf = |#songs| - |songs|
+     *          </pre>
+     */
+    int removeIf(Predicate<? super Song> filter);
+
+    /**
+     * Appends the songs of each of {@code sources}, in order, to the end of
+     * this playlist, leaving the sources unchanged. The sources are read in
+     * parallel. The current song is unchanged.
+     *
+     * @param sources
+     *            the playlists to append
+     * @requires [no element of sources is null]
+     * @ensures <pre>
+     *          songs = #songs * sources[0].songs * ... * sources[k-1].songs
+     *          </pre>
+     */
+    void mergeFrom(MusicPlaylist... sources);
+
+    /**
+     * Makes this playlist a copy of {@code source}: same songs, same current
+     * song. {@code source} is unchanged and may be of any implementation; the
+     * copy is made in one linear pass using bulk access to the representations
+     * where available.
+     *
+     * @param source
+     *            the playlist to copy
+     * @requires source != null
+     * @ensures <pre>
+     *          this = source
+     *          </pre>
+     */
+    void copyFrom(MusicPlaylist source);
+
+    /**
+     * Returns the songs at positions {@code [from, from + count)}, in order,
+     * read in one pass over the representation: it costs time proportional
+     * to {@code count} (plus, for representations that can only be walked,
+     * the distance to {@code from}), not {@code count} calls to
+     * {@link #songAt(int)}. {@link PlaylistWindow} uses it to fill a page.
+     *
+     * @param from
+     *            position of the first song
+     * @param count
+     *            number of songs
+     * @return a new array holding those songs
+     * @requires 0 <= from AND 0 <= count AND from + count <= |songs|
+     * @ensures <pre>
+     *          songsInRange = [songs[from, from + count)]
+     *          </pre>
+     */
+    Song[] songsInRange(int from, int count);
+
+    /**
+     * Returns a read-only, live view of at most {@code count} songs starting
+     * at position {@code from}. Nothing is copied up front: reading one entry
+     * costs what {@link #songAt(int)} costs, and iterating reads the whole
+     * window in one pass, so a page costs time proportional to its size.
+     *
+     * @param from
+     *            position of the first song of the window
+     * @param count
+     *            largest number of songs to show
+     * @return the window
+     * @requires 0 <= from <= |songs| AND 0 <= count
+     * @ensures <pre>
+     *          window = [view of songs[from, min(from + count, |songs|))]
+     *          </pre>
+     */
+    PlaylistWindow window(int from, int count);
+
+    /**
+     * Returns a read-only, live view of {@code count} songs (or every song, if
+     * there are fewer) around the current song. The current song is centered
+     * in the window unless it is too close to either end of the playlist, in
+     * which case the window is moved to fit.
      *
-     * @return the length of this playlist
+     * @param count
+     *            largest number of songs to show
+     * @return the window
+     * @requires 0 <= count
      * @ensures <pre>
-     *          [returns total number of songs in this playlist]
+     *          |window| = min(count, |songs|) AND
+     *          [window contains the current song, if count > 0 and songs is
+     *           not empty]
      *          </pre>
      */
-    int length();
+    PlaylistWindow windowAroundCurrent(int count);
 
 }
@@ -1,6 +1,11 @@
 // File: MusicPlaylistSecondary.java
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 /**
  * Secondary implementation for MusicPlaylist component.
@@ -8,9 +13,10 @@ import java.util.Random;
  * <p>
  * This abstract class implements the enhanced operations defined in
  * {@link MusicPlaylist} (e.g. {@code previousSong()}, {@code shuffle()},
- * {@code contains()}, {@code displayPlaylist()}, {@code length()}) in terms of
- * the minimal kernel and standard operations. Concrete subclasses must
- * implement the kernel methods and the {@code Standard} methods.
+ * {@code contains()}, {@code displayPlaylist()}) in terms of the minimal
+ * kernel and standard operations. Concrete subclasses must implement the
+ * kernel methods, including an O(1) {@code length()}, and the
+ * {@code Standard} methods.
  * </p>
  *
  * @author …
@@ -18,120 +24,432 @@ import java.util.Random;
 public abstract class MusicPlaylistSecondary implements MusicPlaylist {
 
     /**
-     * Default message returned by {@link #getCurrentSong()} when the playlist
-     * is empty.
+     * Reports where the song at position {@code index} ends up after the block
+     * of {@code count} songs starting at {@code from} is moved to start at
+     * {@code to}. Shared by the kernel implementations of
+     * {@link #moveRange(int, int, int)}.
+     *
+     * @param index
+     *            position before the move
+     * @param from
+     *            position of the first song in the block
+     * @param count
+     *            number of songs in the block
+     * @param to
+     *            position of the first song of the block after the move
+     * @return position after the move
+     */
+    protected static int positionAfterMove(int index, int from, int count,
+            int to) {
+        if (index >= from && index < from + count) {
+            return index - from + to;
+        }
+        int rest = index;
+        if (index >= from + count) {
+            rest = index - count;
+        }
+        if (rest >= to) {
+            rest += count;
+        }
+        return rest;
+    }
+
+    /**
+     * Checks that {@code [from, from + count)} is a range of positions of a
+     * playlist of {@code length} songs. Shared by the implementations of
+     * {@link #songsInRange(int, int)}.
+     *
+     * @param from
+     *            position of the first song
+     * @param count
+     *            number of songs
+     * @param length
+     *            length of the playlist
+     */
+    protected static void checkRange(int from, int count, int length) {
+        if (from < 0 || count < 0 || from > length - count) {
+            throw new IllegalArgumentException("range out of bounds");
+        }
+    }
+
+    /**
+     * Playlists at least this long are processed in parallel by the bulk
+     * operations; below it the fork/join overhead is not worth paying.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    /**
+     * Returns the positions {@code 0, ..., n - 1} as a stream, parallel (on
+     * the common fork/join pool) when {@code n} is large enough.
+     *
+     * @param n
+     *            number of positions
+     * @return the stream of positions
      */
-    private static final String EMPTY_MESSAGE = "No songs in playlist";
+    private static IntStream positions(int n) {
+        IntStream result = IntStream.range(0, n);
+        if (n >= PARALLEL_THRESHOLD) {
+            result = result.parallel();
+        }
+        return result;
+    }
 
     /**
-     * Reports whether the playlist is empty.
+     * Returns the songs of {@code p}, in order, in one pass.
      *
-     * @return {@code true} if {@link #getCurrentSong()} equals
-     *         {@link #EMPTY_MESSAGE}, {@code false} otherwise.
+     * @param p
+     *            the playlist to read
+     * @return its songs
      */
-    private boolean isEmpty() {
-        return this.getCurrentSong().equals(EMPTY_MESSAGE);
+    private static Song[] songsOf(MusicPlaylist p) {
+        return p.songsInRange(0, p.length());
+    }
+
+    /**
+     * Returns the songs of this playlist, in order. Kernel implementations
+     * may override this with direct access to their representation.
+     *
+     * @return a new array holding the songs of this playlist
+     * @ensures <pre>
+     *          songsToArray = [songs, in order]
+     *          </pre>
+     */
+    protected Song[] songsToArray() {
+        Song[] result = new Song[this.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = this.songAt(i);
+        }
+        return result;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Calls {@link #songAt(int)} for each position; kernel implementations
+     * override this with a single pass over their representation.
+     * </p>
+     */
     @Override
-    public void previousSong() {
-        if (!this.isEmpty()) {
-            int n = this.length();
-            if (n > 1) {
-                // move backwards by rotating forward n-1 times
-                for (int i = 0; i < n - 1; i++) {
-                    this.nextSong();
+    public Song[] songsInRange(int from, int count) {
+        checkRange(from, count, this.length());
+        Song[] result = new Song[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = this.songAt(from + i);
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the contents of this playlist with {@code songs[0, count)} and
+     * makes the song at {@code current} current. Kernel implementations may
+     * override this with a bulk load of their representation.
+     *
+     * @param songs
+     *            the new songs
+     * @param count
+     *            how many entries of {@code songs} to load
+     * @param current
+     *            position of the new current song
+     * @requires 0 <= count <= songs.length AND
+     *           [0 <= current < count, or current = 0 if count = 0]
+     * @ensures <pre>
+     *          this = [songs[0, count)] with current song at current
+     *          </pre>
+     */
+    protected void loadSongs(Song[] songs, int count, int current) {
+        this.clear();
+        for (int i = 0; i < count; i++) {
+            this.addSong(songs[i]);
+        }
+        if (count > 0) {
+            this.goToSong(current);
+        }
+    }
+
+    /**
+     * Reloads this playlist with the songs of {@code songs} whose
+     * {@code keep} flag is set. The new current song is the first kept song
+     * at or after position {@code target}, or the first song if there is
+     * none.
+     *
+     * @param songs
+     *            the songs of this playlist
+     * @param keep
+     *            which songs to keep
+     * @param target
+     *            position of the song that should end up current
+     * @return the number of songs dropped
+     */
+    private int keepOnly(Song[] songs, boolean[] keep, int target) {
+        int kept = 0;
+        int current = -1;
+        for (int i = 0; i < songs.length; i++) {
+            if (keep[i]) {
+                if (current < 0 && i >= target) {
+                    current = kept;
                 }
+                songs[kept] = songs[i];
+                kept++;
             }
         }
+        int dropped = songs.length - kept;
+        if (dropped > 0) {
+            this.loadSongs(songs, kept, Math.max(current, 0));
+        }
+        return dropped;
+    }
+
+    @Override
+    public void previousSong() {
+        // without a history, step back one position
+        int n = this.length();
+        if (n > 1) {
+            this.goToSong((this.currentIndex() + n - 1) % n);
+        }
     }
 
     @Override
     public void shuffle() {
-        MusicPlaylist temp = this.newInstance();
-        temp.transferFrom(this);
+        // Fisher-Yates over the songs, with their metadata, then one bulk load
+        Song[] songs = this.songsToArray();
         Random rnd = new Random();
-        while (!temp.getCurrentSong().equals(EMPTY_MESSAGE)) {
-            String song = temp.getCurrentSong();
-            temp.removeSong(song);
-            if (!this.getCurrentSong().equals(EMPTY_MESSAGE)) {
-                int rotations = rnd.nextInt(this.length() + 1);
-                for (int i = 0; i < rotations; i++) {
-                    this.nextSong();
-                }
-            }
-            this.addSong(song);
+        for (int i = songs.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            Song s = songs[i];
+            songs[i] = songs[j];
+            songs[j] = s;
         }
+        this.loadSongs(songs, songs.length, 0);
     }
 
     @Override
     public boolean contains(String song) {
-        if (song == null || this.isEmpty()) {
+        if (song == null) {
             return false;
         }
-        boolean found = false;
-        MusicPlaylist temp = this.newInstance();
-        temp.transferFrom(this);
-        String start = temp.getCurrentSong();
-        do {
-            if (temp.getCurrentSong().equals(song)) {
-                found = true;
-                break;
+        for (Song s : this.songsToArray()) {
+            if (s.title().equals(song)) {
+                return true;
             }
-            temp.nextSong();
-        } while (!temp.getCurrentSong().equals(start));
-        this.transferFrom(temp);
-        return found;
+        }
+        return false;
     }
 
     @Override
     public void displayPlaylist() {
-        // Remember the current song before we drain 'this'
-        String originalCurrent = this.getCurrentSong();
-
-        MusicPlaylist temp = this.newInstance();
-        temp.transferFrom(this);
-
-        // If empty, just print empty message
-        if (temp.getCurrentSong().equals(EMPTY_MESSAGE)) {
+        Song[] songs = this.songsToArray();
+        if (songs.length == 0) {
             System.out.println("[Playlist is empty]");
-            this.transferFrom(temp);
             return;
         }
-
-        String start = temp.getCurrentSong();
+        // circular order from the current song, marked by position so that
+        // other copies of it are not marked too
+        int current = this.currentIndex();
         System.out.println("Playlist contents:");
+        for (int k = 0; k < songs.length; k++) {
+            String s = songs[(current + k) % songs.length].title();
+            System.out.println(
+                    "- " + s + (k == 0 ? " <-- Current Song" : ""));
+        }
+    }
 
-        do {
-            String s = temp.getCurrentSong();
-            boolean isCurr = s.equals(originalCurrent);
-            System.out.println("- " + s + (isCurr ? " <-- Current Song" : ""));
-            temp.nextSong();
-        } while (!temp.getCurrentSong().equals(start));
+    @Override
+    public int[] searchPrefix(String prefix) {
+        String key = SongSearchIndex.normalize(prefix);
+        int n = this.length();
+        int[] found = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (SongSearchIndex.normalize(this.titleAt(i)).startsWith(key)) {
+                found[count] = i;
+                count++;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
 
-        // Restore into 'this'
-        this.transferFrom(temp);
+    @Override
+    public int[] searchContaining(String fragment) {
+        String key = SongSearchIndex.normalize(fragment);
+        int n = this.length();
+        int[] found = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (SongSearchIndex.normalize(this.titleAt(i)).contains(key)) {
+                found[count] = i;
+                count++;
+            }
+        }
+        return Arrays.copyOf(found, count);
     }
 
     @Override
-    public int length() {
-        MusicPlaylist temp = this.newInstance();
-        temp.transferFrom(this);
-        if (temp.getCurrentSong().equals(EMPTY_MESSAGE)) {
-            this.transferFrom(temp);
-            return 0;
+    public int[] searchSimilar(String query) {
+        String key = SongSearchIndex.normalize(query);
+        int n = this.length();
+        int[] found = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            String title = SongSearchIndex.normalize(this.titleAt(i));
+            if (SongSearchIndex.isSimilar(title, key)) {
+                found[count] = i;
+                count++;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    @Override
+    public int indexOfId(long id) {
+        int n = this.length();
+        for (int i = 0; i < n; i++) {
+            if (this.songAt(i).id() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void addSong(String song, long durationMillis) {
+        this.addSong(new Song(0, song, "", durationMillis));
+    }
+
+    @Override
+    public long totalDuration() {
+        long total = 0;
+        int n = this.length();
+        for (int i = 0; i < n; i++) {
+            total += this.songAt(i).durationMillis();
+        }
+        return total;
+    }
+
+    @Override
+    public long timeRemainingFromCurrent() {
+        long remaining = 0;
+        int n = this.length();
+        for (int i = this.currentIndex(); i < n; i++) {
+            remaining += this.songAt(i).durationMillis();
         }
-        int count = 1;
-        String start = temp.getCurrentSong();
-        while (true) {
-            temp.nextSong();
-            if (temp.getCurrentSong().equals(start)) {
-                break;
+        return remaining;
+    }
+
+    @Override
+    public void goToTime(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("time out of bounds");
+        }
+        long start = 0;
+        int n = this.length();
+        for (int i = 0; i < n; i++) {
+            start += this.songAt(i).durationMillis();
+            if (millis < start) {
+                this.goToSong(i);
+                return;
             }
-            count++;
         }
-        this.transferFrom(temp);
-        return count;
+        throw new IllegalArgumentException("time out of bounds");
+    }
+
+    @Override
+    public int distinct() {
+        Song[] songs = this.songsToArray();
+        if (songs.length < 2) {
+            return 0;
+        }
+        ConcurrentHashMap<Song, Integer> first = new ConcurrentHashMap<>();
+        positions(songs.length)
+                .forEach(i -> first.merge(songs[i], i, Math::min));
+        boolean[] keep = new boolean[songs.length];
+        positions(songs.length)
+                .forEach(i -> keep[i] = first.get(songs[i]) == i);
+        // the current song stays current, as its first copy
+        int target = first.get(songs[this.currentIndex()]);
+        return this.keepOnly(songs, keep, target);
+    }
+
+    @Override
+    public void sort(Comparator<? super Song> order) {
+        Song[] songs = this.songsToArray();
+        if (songs.length < 2) {
+            return;
+        }
+        // a private copy of the current song can be found again by identity,
+        // even among equal songs
+        Song s = songs[this.currentIndex()];
+        Song current = new Song(s.id(), s.title(), s.artist(),
+                s.durationMillis());
+        songs[this.currentIndex()] = current;
+        Arrays.parallelSort(songs, order);
+        int moved = positions(songs.length).filter(i -> songs[i] == current)
+                .findAny().getAsInt();
+        this.loadSongs(songs, songs.length, moved);
+    }
+
+    @Override
+    public int removeIf(Predicate<? super Song> filter) {
+        Song[] songs = this.songsToArray();
+        boolean[] keep = new boolean[songs.length];
+        positions(songs.length).forEach(i -> keep[i] = !filter.test(songs[i]));
+        return this.keepOnly(songs, keep, this.currentIndex());
+    }
+
+    @Override
+    public void mergeFrom(MusicPlaylist... sources) {
+        Song[][] parts = new Song[sources.length + 1][];
+        parts[0] = this.songsToArray();
+        long incoming = 0;
+        for (MusicPlaylist source : sources) {
+            incoming += source.length();
+        }
+        IntStream reads = IntStream.range(0, sources.length);
+        if (sources.length > 1 && incoming >= PARALLEL_THRESHOLD) {
+            reads = reads.parallel();
+        }
+        reads.forEach(k -> parts[k + 1] = songsOf(sources[k]));
+        int total = 0;
+        for (Song[] part : parts) {
+            total += part.length;
+        }
+        Song[] songs = new Song[total];
+        int at = 0;
+        for (Song[] part : parts) {
+            System.arraycopy(part, 0, songs, at, part.length);
+            at += part.length;
+        }
+        if (total > parts[0].length) {
+            this.loadSongs(songs, total, this.currentIndex());
+        }
+    }
+
+    @Override
+    public void copyFrom(MusicPlaylist source) {
+        if (source == this) {
+            return;
+        }
+        Song[] songs = songsOf(source);
+        this.loadSongs(songs, songs.length, source.currentIndex());
+    }
+
+    @Override
+    public PlaylistWindow window(int from, int count) {
+        if (from < 0 || count < 0 || from > this.length()) {
+            throw new IllegalArgumentException("window out of bounds");
+        }
+        return new PlaylistWindow(this, from, count);
+    }
+
+    @Override
+    public PlaylistWindow windowAroundCurrent(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count cannot be negative");
+        }
+        int n = this.length();
+        int from = this.currentIndex() - count / 2;
+        from = Math.max(0, Math.min(from, n - count));
+        return new PlaylistWindow(this, from, count);
     }
 
     /**
@@ -147,41 +465,22 @@ public abstract class MusicPlaylistSecondary implements MusicPlaylist {
         if (obj == null || this.getClass() != obj.getClass()) {
             return false;
         }
-        MusicPlaylist other = (MusicPlaylist) obj;
-        // copy this
-        MusicPlaylist thisCopy = this.newInstance();
-        thisCopy.transferFrom(this);
-        // copy other
-        MusicPlaylist otherCopy = this.newInstance();
-        otherCopy.transferFrom(other);
-        boolean eq;
-        try {
-            if (thisCopy.length() != otherCopy.length()) {
-                eq = false;
-            } else {
-                String thisCurr = thisCopy.getCurrentSong();
-                String otherCurr = otherCopy.getCurrentSong();
-                if (!thisCurr.equals(otherCurr)) {
-                    eq = false;
-                } else {
-                    eq = true;
-                    int n = thisCopy.length();
-                    for (int i = 0; i < n; i++) {
-                        if (!thisCopy.getCurrentSong()
-                                .equals(otherCopy.getCurrentSong())) {
-                            eq = false;
-                            break;
-                        }
-                        thisCopy.nextSong();
-                        otherCopy.nextSong();
-                    }
-                }
+        MusicPlaylistSecondary other = (MusicPlaylistSecondary) obj;
+        int n = this.length();
+        if (n != other.length()) {
+            return false;
+        }
+        Song[] mine = this.songsToArray();
+        Song[] theirs = other.songsToArray();
+        int i = this.currentIndex();
+        int j = other.currentIndex();
+        for (int k = 0; k < n; k++) {
+            if (!mine[(i + k) % n].title().equals(theirs[(j + k) % n]
+                    .title())) {
+                return false;
             }
-        } finally {
-            this.transferFrom(thisCopy);
-            other.transferFrom(otherCopy);
         }
-        return eq;
+        return true;
     }
 
     /**
@@ -189,20 +488,14 @@ public abstract class MusicPlaylistSecondary implements MusicPlaylist {
      */
     @Override
     public int hashCode() {
-        MusicPlaylist copy = this.newInstance();
-        copy.transferFrom(this);
+        Song[] songs = this.songsToArray();
+        int current = this.currentIndex();
         int h = 1;
-        int n = copy.length();
-        for (int i = 0; i < n; i++) {
-            String s = copy.getCurrentSong();
-            h = 31 * h + (s == null ? 0 : s.hashCode());
-            copy.nextSong();
-        }
-        try {
-            return h;
-        } finally {
-            this.transferFrom(copy);
+        for (int k = 0; k < songs.length; k++) {
+            String s = songs[(current + k) % songs.length].title();
+            h = 31 * h + s.hashCode();
         }
+        return h;
     }
 
     /**
@@ -211,35 +504,23 @@ public abstract class MusicPlaylistSecondary implements MusicPlaylist {
      */
     @Override
     public String toString() {
-        MusicPlaylist copy = this.newInstance();
-        copy.transferFrom(this);
-        StringBuilder sb = new StringBuilder();
-        if (copy.getCurrentSong().equals(EMPTY_MESSAGE)) {
-            sb.append("[]");
-        } else {
-            sb.append("[");
-            String start = copy.getCurrentSong();
-            String curr = this.getCurrentSong();
-            do {
-                String s = copy.getCurrentSong();
-                if (s.equals(curr)) {
-                    sb.append("*").append(s).append("*");
-                } else {
-                    sb.append(s);
-                }
-                copy.nextSong();
-                if (!copy.getCurrentSong().equals(start)) {
-                    sb.append(", ");
-                }
-            } while (!copy.getCurrentSong().equals(start));
-            sb.append("]");
+        Song[] songs = this.songsToArray();
+        int current = this.currentIndex();
+        StringBuilder sb = new StringBuilder("[");
+        for (int k = 0; k < songs.length; k++) {
+            String s = songs[(current + k) % songs.length].title();
+            if (k == 0) {
+                sb.append("*").append(s).append("*");
+            } else {
+                sb.append(", ").append(s);
+            }
         }
-        this.transferFrom(copy);
-        return sb.toString();
+        return sb.append("]").toString();
     }
 
-    // Kernel methods (addSong, removeSong, getCurrentSong, nextSong,
-    // insertSongAt, removeSongAt, removeCurrentSong, goToSong) and Standard
-    // methods (clear, newInstance, transferFrom) remain abstract for subclasses.
+    // Kernel methods (addSong, removeSong, getCurrentSong, titleAt, songAt,
+    // currentIndex, nextSong, insertSongAt, removeSongAt, removeCurrentSong,
+    // goToSong, moveSong, moveRange) and Standard methods (clear,
+    // newInstance, transferFrom) remain abstract for subclasses.
 
 }
@@ -0,0 +1,131 @@
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+
+/**
+ * {@link Sequence1L} that counts the steps its linked list takes: a
+ * positional call walks from the nearer end, so it costs
+ * {@code min(pos, length - pos) + 1}, bulk calls add one step per entry they
+ * move, and an iterator costs one step per entry returned. Sequences made by
+ * {@link #newInstance()} share the count, so a kernel that swaps in a new
+ * sequence is still counted. Lets tests check how an operation grows without
+ * timing it.
+ */
+final class CountingSequence<T> extends Sequence1L<T> {
+
+    /**
+     * Steps taken by this and every sequence sharing its count.
+     */
+    private final AtomicLong steps;
+
+    /**
+     * Constructor: an empty sequence with its own count.
+     */
+    CountingSequence() {
+        this(new AtomicLong());
+    }
+
+    /**
+     * Constructor: an empty sequence adding to {@code steps}.
+     *
+     * @param steps
+     *            the shared count
+     */
+    private CountingSequence(AtomicLong steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * Returns the steps taken so far.
+     *
+     * @return the shared count
+     */
+    long steps() {
+        return this.steps.get();
+    }
+
+    /**
+     * Counts a walk to {@code pos}.
+     *
+     * @param pos
+     *            the position walked to
+     */
+    private void walk(int pos) {
+        this.steps.addAndGet(Math.min(pos, this.length() - pos) + 1);
+    }
+
+    @Override
+    public Sequence<T> newInstance() {
+        return new CountingSequence<>(this.steps);
+    }
+
+    @Override
+    public void add(int pos, T x) {
+        this.walk(pos);
+        super.add(pos, x);
+    }
+
+    @Override
+    public T remove(int pos) {
+        this.walk(pos);
+        return super.remove(pos);
+    }
+
+    @Override
+    public T entry(int pos) {
+        this.walk(pos);
+        return super.entry(pos);
+    }
+
+    @Override
+    public T replaceEntry(int pos, T x) {
+        this.walk(pos);
+        return super.replaceEntry(pos, x);
+    }
+
+    @Override
+    public void append(Sequence<T> s) {
+        this.steps.addAndGet(s.length() + 1);
+        super.append(s);
+    }
+
+    @Override
+    public void flip() {
+        this.steps.addAndGet(this.length() + 1);
+        super.flip();
+    }
+
+    @Override
+    public void insert(int pos, Sequence<T> s) {
+        this.walk(pos);
+        this.steps.addAndGet(s.length());
+        super.insert(pos, s);
+    }
+
+    @Override
+    public void extract(int pos1, int pos2, Sequence<T> s) {
+        this.walk(pos1);
+        this.steps.addAndGet(pos2 - pos1);
+        super.extract(pos1, pos2, s);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        Iterator<T> it = super.iterator();
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public T next() {
+                CountingSequence.this.steps.incrementAndGet();
+                return it.next();
+            }
+        };
+    }
+
+}
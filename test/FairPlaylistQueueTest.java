@@ -0,0 +1,180 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class FairPlaylistQueueTest {
+
+    /**
+     * Plays every song of {@code q} and returns the titles in play order.
+     */
+    private static List<String> drain(FairPlaylistQueue q) {
+        List<String> played = new ArrayList<>();
+        while (q.currentSong() != null) {
+            played.add(q.getCurrentSong());
+            q.nextSong();
+        }
+        return played;
+    }
+
+    @Test
+    public void emptyQueue() {
+        FairPlaylistQueue q = new FairPlaylistQueue();
+        assertEquals("No songs in playlist", q.getCurrentSong());
+        assertNull(q.currentContributor());
+        q.nextSong();
+        assertEquals(0, q.length());
+    }
+
+    @Test
+    public void flood_isInterleaved() {
+        FairPlaylistQueue q = new FairPlaylistQueue();
+        for (int i = 1; i <= 5; i++) {
+            q.addSong("ann", "a" + i);
+        }
+        q.addSong("bob", "b1");
+        q.addSong("bob", "b2");
+        q.addSong("cy", "c1");
+        assertEquals(8, q.length());
+        assertEquals("[a1, b1, c1, a2, b2, a3, a4, a5]",
+                drain(q).toString());
+        assertEquals(0, q.length());
+    }
+
+    @Test
+    public void weights_shareThePlays() {
+        FairPlaylistQueue q = new FairPlaylistQueue();
+        q.setWeight("ann", 3);
+        for (int i = 0; i < 100; i++) {
+            q.addSong("ann", "a" + i);
+            q.addSong("bob", "b" + i);
+        }
+        int ann = 0;
+        for (int i = 0; i < 40; i++) {
+            if (q.currentContributor().equals("ann")) {
+                ann++;
+            }
+            q.nextSong();
+        }
+        assertEquals(30, ann);
+    }
+
+    @Test
+    public void returningContributor_getsNoCredit() {
+        FairPlaylistQueue q = new FairPlaylistQueue();
+        q.addSong("ann", "a1");
+        for (int i = 1; i <= 6; i++) {
+            q.addSong("bob", "b" + i);
+        }
+        q.nextSong();
+        q.nextSong();
+        q.nextSong();
+        // ann was away for three plays; she rejoins the rotation, not ahead
+        q.addSong("ann", "a2");
+        q.addSong("ann", "a3");
+        assertEquals("[b3, a2, b4, a3, b5, b6]", drain(q).toString());
+    }
+
+    @Test
+    public void thousandsOfContributors_eachPlaysOncePerRound() {
+        FairPlaylistQueue q = new FairPlaylistQueue();
+        int k = 5000;
+        for (int round = 0; round < 3; round++) {
+            for (int c = 0; c < k; c++) {
+                q.addSong("u" + c, new Song(c, "s" + round, "", 0));
+            }
+        }
+        assertEquals(3 * k, q.length());
+        for (int round = 0; round < 3; round++) {
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < k; i++) {
+                assertEquals("s" + round, q.getCurrentSong());
+                assertTrue(seen.add(q.currentContributor()));
+                q.nextSong();
+            }
+        }
+        assertEquals(0, q.length());
+    }
+
+    @Test
+    public void removeContributor_dropsWaitingSongs() {
+        FairPlaylistQueue q = new FairPlaylistQueue();
+        q.addSong("ann", "a1");
+        q.addSong("ann", "a2");
+        q.addSong("bob", "b1");
+        q.addSong("ann", "a3");
+        assertEquals(2, q.removeContributor("ann"));
+        assertEquals(0, q.waiting("ann"));
+        assertEquals(2, q.length());
+        assertEquals("[a1, b1]", drain(q).toString());
+        assertEquals(0, q.removeContributor("nobody"));
+    }
+
+    @Test
+    public void removeContributor_skipsTheirTurns() {
+        FairPlaylistQueue q = new FairPlaylistQueue();
+        q.addSong("cy", "c0");
+        for (int c = 0; c < 10; c++) {
+            q.addSong("u" + c, "u" + c + "a");
+            q.addSong("u" + c, "u" + c + "b");
+        }
+        assertEquals(10, q.activeContributors());
+        for (int c = 0; c < 10; c += 2) {
+            assertEquals(2, q.removeContributor("u" + c));
+        }
+        assertEquals(5, q.activeContributors());
+        assertEquals(11, q.length());
+        // u1 rejoins after being removed: a fresh contributor
+        assertEquals(2, q.removeContributor("u1"));
+        q.addSong("u1", "u1c");
+        assertEquals(5, q.activeContributors());
+        assertEquals("[c0, u3a, u5a, u7a, u9a, u1c, u3b, u5b, u7b, u9b]",
+                drain(q).toString());
+        assertEquals(0, q.activeContributors());
+    }
+
+    @Test
+    public void idleContributors_areForgotten() {
+        FairPlaylistQueue q = new FairPlaylistQueue();
+        q.setWeight("ann", 2);
+        for (int c = 0; c < 1000; c++) {
+            q.addSong("u" + c, "s" + c);
+            q.addSong("bob", "b" + c);
+        }
+        drain(q);
+        assertEquals(0, q.length());
+        // only ann, whose weight was set, and the last to play are left
+        assertTrue(q.rememberedContributors() <= 2);
+        q.addSong("u0", "again");
+        q.addSong("u1", "again");
+        assertEquals("[again, again]", drain(q).toString());
+        assertTrue(q.rememberedContributors() <= 4);
+    }
+
+    @Test
+    public void eachContributor_keepsTheirOwnOrder() {
+        FairPlaylistQueue q = new FairPlaylistQueue();
+        q.setWeight("u1", 2);
+        q.setWeight("u3", 5);
+        for (int i = 0; i < 50; i++) {
+            q.addSong("u" + (i % 4), "u" + (i % 4) + ":" + i);
+        }
+        Map<String, Integer> last = new HashMap<>();
+        for (String t : drain(q)) {
+            String[] parts = t.split(":");
+            int n = Integer.parseInt(parts[1]);
+            assertTrue(last.getOrDefault(parts[0], -1) < n);
+            last.put(parts[0], n);
+        }
+        assertEquals(4, last.size());
+    }
+
+}
@@ -0,0 +1,81 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for a network resolver: resolves a song to
+ * {@code "stream:" + title}, remembers every call, and, if blocking, waits for
+ * {@link #release(int)} before returning so tests can control timing.
+ */
+final class FakeSongResolver implements PlaylistPrefetcher.Resolver<String> {
+
+    /**
+     * Whether calls wait for a permit.
+     */
+    private final boolean blocking;
+
+    /**
+     * Permits for blocked calls.
+     */
+    private final Semaphore permits = new Semaphore(0);
+
+    /**
+     * Titles of every song resolve was called on, in call order.
+     */
+    final List<String> calls = new CopyOnWriteArrayList<>();
+
+    /**
+     * Calls running now.
+     */
+    final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * Most calls ever running at once.
+     */
+    final AtomicInteger maxRunning = new AtomicInteger();
+
+    /**
+     * Calls that were interrupted.
+     */
+    final AtomicInteger interrupted = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param blocking
+     *            whether calls wait for {@link #release(int)}
+     */
+    FakeSongResolver(boolean blocking) {
+        this.blocking = blocking;
+    }
+
+    /**
+     * Lets {@code n} blocked calls finish.
+     *
+     * @param n
+     *            number of calls to release
+     */
+    void release(int n) {
+        this.permits.release(n);
+    }
+
+    @Override
+    public String resolve(Song song) throws InterruptedException {
+        this.calls.add(song.title());
+        this.maxRunning.accumulateAndGet(this.running.incrementAndGet(),
+                Math::max);
+        try {
+            if (this.blocking) {
+                this.permits.acquire();
+            }
+            return "stream:" + song.title();
+        } catch (InterruptedException e) {
+            this.interrupted.incrementAndGet();
+            throw e;
+        } finally {
+            this.running.decrementAndGet();
+        }
+    }
+
+}
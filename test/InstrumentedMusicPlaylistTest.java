@@ -0,0 +1,191 @@
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class InstrumentedMusicPlaylistTest {
+
+    // forwarding tests
+
+    @Test
+    public void forwards_kernelCalls() {
+        PlaylistMetrics m = new PlaylistMetrics();
+        MusicPlaylist p = new InstrumentedMusicPlaylist(
+                new MusicPlaylistOnColumns(), m);
+        p.addSong("A");
+        p.addSong("B", 1000);
+        p.nextSong();
+        assertEquals("B", p.getCurrentSong());
+        assertEquals(2, p.length());
+        assertEquals(1000, p.totalDuration());
+    }
+
+    @Test
+    public void transferFrom_instrumentedSource() {
+        PlaylistMetrics m = new PlaylistMetrics();
+        MusicPlaylist p = new InstrumentedMusicPlaylist(
+                new MusicPlaylistOnSequence(), m);
+        p.addSong("A");
+        MusicPlaylist q = p.newInstance();
+        q.transferFrom(p);
+        assertEquals(0, p.length());
+        assertEquals("A", q.getCurrentSong());
+        assertEquals(1, m.calls(PlaylistMetrics.Operation.TRANSFER_FROM));
+    }
+
+    @Test
+    public void equals_comparesDelegates() {
+        PlaylistMetrics m = new PlaylistMetrics();
+        MusicPlaylist p = new InstrumentedMusicPlaylist(
+                new MusicPlaylistOnSequence(), m);
+        MusicPlaylist q = new InstrumentedMusicPlaylist(
+                new MusicPlaylistOnSequence(), m);
+        p.addSong("A");
+        q.addSong("A");
+        assertEquals(p, q);
+    }
+
+    @Test
+    public void equals_isSymmetricWithUnwrapped() {
+        PlaylistMetrics m = new PlaylistMetrics();
+        MusicPlaylist raw = new MusicPlaylistOnSequence();
+        MusicPlaylist p = new InstrumentedMusicPlaylist(
+                new MusicPlaylistOnSequence(), m);
+        raw.addSong("A");
+        p.addSong("A");
+        assertFalse(p.equals(raw));
+        assertFalse(raw.equals(p));
+    }
+
+    // recording tests
+
+    @Test
+    public void records_readsThroughWindows() {
+        PlaylistMetrics m = new PlaylistMetrics();
+        MusicPlaylist p = new InstrumentedMusicPlaylist(
+                new MusicPlaylistOnColumns(), m);
+        p.addSong("A");
+        p.addSong("B");
+        p.addSong("C");
+        PlaylistWindow w = p.window(1, 2);
+        assertEquals("B", w.get(0).title());
+        assertEquals(1, m.calls(PlaylistMetrics.Operation.SONG_AT));
+        assertEquals("[B, C]", w.toString());
+        assertEquals(1, m.calls(PlaylistMetrics.Operation.SONGS_IN_RANGE));
+        p.windowAroundCurrent(2).iterator();
+        assertEquals(2, m.calls(PlaylistMetrics.Operation.SONGS_IN_RANGE));
+    }
+
+    @Test
+    public void records_readsThroughOtherWrappers() {
+        PlaylistMetrics m = new PlaylistMetrics();
+        MusicPlaylist p = new ObservableMusicPlaylist(
+                new InstrumentedMusicPlaylist(new MusicPlaylistOnSequence(),
+                        m));
+        p.addSong("A");
+        p.addSong("B");
+        p.addSong("C");
+        assertEquals("[A, B, C]", p.window(0, 3).toString());
+        assertEquals(1, m.calls(PlaylistMetrics.Operation.SONGS_IN_RANGE));
+        assertEquals(0, m.calls(PlaylistMetrics.Operation.SONG_AT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void window_checksBounds() {
+        MusicPlaylist p = new InstrumentedMusicPlaylist(
+                new MusicPlaylistOnSequence(), new PlaylistMetrics());
+        p.window(1, 0);
+    }
+
+    @Test
+    public void records_callsAndSizes() {
+        PlaylistMetrics m = new PlaylistMetrics();
+        MusicPlaylist p = new InstrumentedMusicPlaylist(
+                new MusicPlaylistOnSequence(), m);
+        p.addSong("A");
+        p.addSong("B");
+        p.addSong("C");
+        p.nextSong();
+        p.contains("C");
+        p.removeSongAt(0);
+        assertEquals(3, m.calls(PlaylistMetrics.Operation.ADD_SONG));
+        assertEquals(1, m.calls(PlaylistMetrics.Operation.NEXT_SONG));
+        assertEquals(1, m.calls(PlaylistMetrics.Operation.CONTAINS));
+        assertEquals(4, m.sizes().count());
+        assertEquals(3, m.sizes().max());
+        assertTrue(m.report().contains("addSong"));
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        PlaylistMetrics m = new PlaylistMetrics();
+        m.setEnabled(false);
+        MusicPlaylist p = new InstrumentedMusicPlaylist(
+                new MusicPlaylistOnSequence(), m);
+        p.addSong("A");
+        p.getCurrentSong();
+        assertEquals(0, m.calls(PlaylistMetrics.Operation.ADD_SONG));
+        assertEquals(0, m.sizes().count());
+        m.setEnabled(true);
+        p.getCurrentSong();
+        assertEquals(1, m.calls(PlaylistMetrics.Operation.GET_CURRENT_SONG));
+    }
+
+    @Test
+    public void slowThreshold_doesNotAffectRecording() {
+        PlaylistMetrics m = new PlaylistMetrics();
+        m.setSlowThresholdNanos(0);
+        MusicPlaylist p = new InstrumentedMusicPlaylist(
+                new MusicPlaylistOnSequence(), m);
+        p.addSong("A");
+        assertEquals(1, m.calls(PlaylistMetrics.Operation.ADD_SONG));
+    }
+
+    // histogram tests
+
+    @Test
+    public void histogram_percentilesWithinPrecision() {
+        ConcurrentHistogram h = new ConcurrentHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(1000000, h.max());
+        long p50 = h.valueAtPercentile(50);
+        long p99 = h.valueAtPercentile(99);
+        assertTrue(Math.abs(p50 - 500000) <= 500000 / 16);
+        assertTrue(Math.abs(p99 - 990000) <= 990000 / 16);
+        assertEquals(500500.0, h.mean(), 0.001);
+    }
+
+    @Test
+    public void histogram_smallValuesExact() {
+        ConcurrentHistogram h = new ConcurrentHistogram();
+        h.record(0);
+        h.record(7);
+        h.record(63);
+        assertEquals(7, h.valueAtPercentile(50));
+        assertEquals(63, h.valueAtPercentile(100));
+    }
+
+    @Test
+    public void histogram_concurrentRecording() throws InterruptedException {
+        ConcurrentHistogram h = new ConcurrentHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    h.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(40000, h.count());
+        assertEquals(9999, h.max());
+    }
+}
@@ -0,0 +1,554 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs long random sequences of operations on every {@link MusicPlaylist}
+ * implementation and on a simple reference model side by side, checking after
+ * every step that they agree on the songs, the current position and every
+ * query. Titles and songs are drawn from small pools so that duplicates are
+ * common.
+ */
+@RunWith(Parameterized.class)
+public class MusicPlaylistDifferentialTest {
+
+    /**
+     * Number of random sequences per implementation.
+     */
+    private static final int RUNS = 30;
+
+    /**
+     * Operations per sequence.
+     */
+    private static final int STEPS = 400;
+
+    /**
+     * The implementations under test.
+     */
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> implementations() {
+        List<Object[]> result = new ArrayList<>();
+        result.add(new Object[] { "Sequence",
+                (Supplier<MusicPlaylist>) MusicPlaylistOnSequence::new });
+        result.add(new Object[] { "Columns",
+                (Supplier<MusicPlaylist>) MusicPlaylistOnColumns::new });
+        result.add(new Object[] { "Rga",
+                (Supplier<MusicPlaylist>) () -> new MusicPlaylistOnRga(1) });
+        result.add(new Object[] { "Instrumented",
+                (Supplier<MusicPlaylist>) () -> new InstrumentedMusicPlaylist(
+                        new MusicPlaylistOnSequence(),
+                        new PlaylistMetrics()) });
+        result.add(new Object[] { "Observable",
+                (Supplier<MusicPlaylist>) () -> new ObservableMusicPlaylist(
+                        new MusicPlaylistOnColumns()) });
+        return result;
+    }
+
+    /**
+     * Makes empty playlists of the implementation under test.
+     */
+    private final Supplier<MusicPlaylist> factory;
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *            name of the implementation
+     * @param factory
+     *            makes empty playlists of it
+     */
+    public MusicPlaylistDifferentialTest(String name,
+            Supplier<MusicPlaylist> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Reference model: a list of songs, a current position and a bounded
+     * history of positions, updated by the rules in the interface contracts.
+     */
+    private static final class Model {
+
+        /**
+         * The songs.
+         */
+        private final List<Song> songs = new ArrayList<>();
+
+        /**
+         * The current position.
+         */
+        private int current;
+
+        /**
+         * Positions navigated away from, oldest first.
+         */
+        private final List<Integer> history = new ArrayList<>();
+
+        /**
+         * Remembers {@code position} in the history.
+         */
+        void push(int position) {
+            this.history.add(position);
+            if (this.history.size() > PlayHistory.DEFAULT_CAPACITY) {
+                this.history.remove(0);
+            }
+        }
+
+        void insert(Song song, int index) {
+            this.songs.add(index, song);
+            for (int k = 0; k < this.history.size(); k++) {
+                if (this.history.get(k) >= index) {
+                    this.history.set(k, this.history.get(k) + 1);
+                }
+            }
+            if (this.songs.size() > 1 && index <= this.current) {
+                this.current++;
+            }
+        }
+
+        String remove(int index) {
+            String title = this.songs.remove(index).title();
+            List<Integer> kept = new ArrayList<>();
+            for (int p : this.history) {
+                if (p != index) {
+                    kept.add(p > index ? p - 1 : p);
+                }
+            }
+            this.history.clear();
+            this.history.addAll(kept);
+            if (this.songs.isEmpty()) {
+                this.current = 0;
+            } else if (index < this.current) {
+                this.current--;
+            } else if (this.current == this.songs.size()) {
+                this.current = 0;
+            }
+            return title;
+        }
+
+        void next() {
+            if (this.songs.size() > 1) {
+                this.push(this.current);
+                this.current = (this.current + 1) % this.songs.size();
+            }
+        }
+
+        void goTo(int index) {
+            if (index != this.current) {
+                this.push(this.current);
+                this.current = index;
+            }
+        }
+
+        void previous() {
+            int n = this.songs.size();
+            if (n > 1) {
+                int back = -1;
+                while (!this.history.isEmpty() && back < 0) {
+                    back = this.history.remove(this.history.size() - 1);
+                    if (back == this.current) {
+                        back = -1;
+                    }
+                }
+                this.current = back >= 0 ? back : (this.current + n - 1) % n;
+            }
+        }
+
+        void move(int from, int count, int to) {
+            if (count == 0 || from == to) {
+                return;
+            }
+            // where each old position ends up
+            int n = this.songs.size();
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            List<Integer> rest = new ArrayList<>(Arrays.asList(order));
+            List<Integer> block = new ArrayList<>(
+                    rest.subList(from, from + count));
+            rest.subList(from, from + count).clear();
+            rest.addAll(to, block);
+            int[] newPosition = new int[n];
+            List<Song> moved = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                newPosition[rest.get(i)] = i;
+                moved.add(this.songs.get(rest.get(i)));
+            }
+            this.songs.clear();
+            this.songs.addAll(moved);
+            this.current = newPosition[this.current];
+            this.history.replaceAll(p -> newPosition[p]);
+        }
+
+        /**
+         * Replaces the songs, as the bulk operations do.
+         */
+        void load(List<Song> newSongs, int newCurrent) {
+            this.songs.clear();
+            this.songs.addAll(newSongs);
+            this.current = newSongs.isEmpty() ? 0 : newCurrent;
+            this.history.clear();
+        }
+
+        /**
+         * Keeps the songs flagged in {@code keep}; the first kept song at or
+         * after {@code target} becomes current.
+         */
+        int keepOnly(boolean[] keep, int target) {
+            List<Song> kept = new ArrayList<>();
+            int newCurrent = -1;
+            for (int i = 0; i < keep.length; i++) {
+                if (keep[i]) {
+                    if (newCurrent < 0 && i >= target) {
+                        newCurrent = kept.size();
+                    }
+                    kept.add(this.songs.get(i));
+                }
+            }
+            int dropped = this.songs.size() - kept.size();
+            if (dropped > 0) {
+                this.load(kept, Math.max(newCurrent, 0));
+            }
+            return dropped;
+        }
+
+        String expectedToString() {
+            StringBuilder sb = new StringBuilder("[");
+            int n = this.songs.size();
+            for (int k = 0; k < n; k++) {
+                String t = this.songs.get((this.current + k) % n).title();
+                sb.append(k == 0 ? "*" + t + "*" : ", " + t);
+            }
+            return sb.append("]").toString();
+        }
+    }
+
+    /**
+     * Returns a random song from a small pool, so equal songs and equal
+     * titles are frequent.
+     */
+    private static Song randomSong(Random rnd) {
+        return new Song(rnd.nextInt(3), randomTitle(rnd), "a" + rnd.nextInt(2),
+                1000 * rnd.nextInt(3));
+    }
+
+    /**
+     * Returns a random title from a small pool.
+     */
+    private static String randomTitle(Random rnd) {
+        return "t" + rnd.nextInt(5);
+    }
+
+    /**
+     * Asserts that {@code p} agrees with {@code m} on every query.
+     */
+    private void check(String where, Model m, MusicPlaylist p, Random rnd) {
+        int n = m.songs.size();
+        assertEquals(where, n, p.length());
+        assertEquals(where, m.current, p.currentIndex());
+        assertEquals(where, n == 0 ? "No songs in playlist"
+                : m.songs.get(m.current).title(), p.getCurrentSong());
+        assertEquals(where, m.songs, new ArrayList<>(p.window(0, n)));
+        for (int i = 0; i < n; i++) {
+            assertEquals(where, m.songs.get(i), p.songAt(i));
+            assertEquals(where, m.songs.get(i).title(), p.titleAt(i));
+        }
+        String title = randomTitle(rnd);
+        boolean has = false;
+        long total = 0;
+        long remaining = 0;
+        int firstId = -1;
+        for (int i = 0; i < n; i++) {
+            Song s = m.songs.get(i);
+            has |= s.title().equals(title);
+            total += s.durationMillis();
+            if (i >= m.current) {
+                remaining += s.durationMillis();
+            }
+            if (firstId < 0 && s.id() == 2) {
+                firstId = i;
+            }
+        }
+        assertEquals(where, has, p.contains(title));
+        assertEquals(where, total, p.totalDuration());
+        assertEquals(where, remaining, p.timeRemainingFromCurrent());
+        assertEquals(where, firstId, p.indexOfId(2));
+        assertEquals(where, m.expectedToString(), p.toString());
+
+        // a twin built from the model is equal, and differs once changed
+        MusicPlaylist twin = p.newInstance();
+        for (Song s : m.songs) {
+            twin.addSong(s);
+        }
+        if (n > 0) {
+            twin.goToSong(m.current);
+        }
+        assertEquals(where, twin, p);
+        assertEquals(where, twin.hashCode(), p.hashCode());
+        if (n > 0) {
+            twin.insertSongAt("other", rnd.nextInt(n + 1));
+            assertNotEquals(where, twin, p);
+        }
+    }
+
+    /**
+     * Applies one random operation to both {@code m} and {@code p}.
+     *
+     * @return a description of the operation
+     */
+    private String step(Model m, MusicPlaylist p, Random rnd) {
+        int n = m.songs.size();
+        int op = rnd.nextInt(20);
+        if (n == 0 && op > 3 && op < 16) {
+            op = 0;
+        }
+        switch (op) {
+            case 0: {
+                Song s = randomSong(rnd);
+                m.insert(s, n);
+                p.addSong(s);
+                return "addSong(" + s + ")";
+            }
+            case 1: {
+                String t = randomTitle(rnd);
+                m.insert(new Song(t), n);
+                p.addSong(t);
+                return "addSong(\"" + t + "\")";
+            }
+            case 2:
+            case 3: {
+                Song s = randomSong(rnd);
+                int i = rnd.nextInt(n + 1);
+                m.insert(s, i);
+                p.insertSongAt(s, i);
+                return "insertSongAt(" + s + ", " + i + ")";
+            }
+            case 4: {
+                int i = rnd.nextInt(n);
+                assertEquals(m.remove(i), p.removeSongAt(i));
+                return "removeSongAt(" + i + ")";
+            }
+            case 5: {
+                String t = randomTitle(rnd);
+                String expected = null;
+                for (int i = 0; i < n && expected == null; i++) {
+                    if (m.songs.get(i).title().equals(t)) {
+                        expected = m.remove(i);
+                    }
+                }
+                assertEquals(expected, p.removeSong(t));
+                return "removeSong(\"" + t + "\")";
+            }
+            case 6:
+                assertEquals(m.remove(m.current), p.removeCurrentSong());
+                return "removeCurrentSong()";
+            case 7:
+            case 8:
+                m.next();
+                p.nextSong();
+                return "nextSong()";
+            case 9: {
+                m.previous();
+                p.previousSong();
+                return "previousSong()";
+            }
+            case 10: {
+                int i = rnd.nextInt(n);
+                m.goTo(i);
+                p.goToSong(i);
+                return "goToSong(" + i + ")";
+            }
+            case 11: {
+                int count = rnd.nextInt(Math.min(n, 4) + 1);
+                int from = rnd.nextInt(n - count + 1);
+                int to = rnd.nextInt(n - count + 1);
+                m.move(from, count, to);
+                p.moveRange(from, count, to);
+                return "moveRange(" + from + ", " + count + ", " + to + ")";
+            }
+            case 12: {
+                String t = randomTitle(rnd);
+                boolean[] keep = new boolean[n];
+                for (int i = 0; i < n; i++) {
+                    keep[i] = !m.songs.get(i).title().equals(t);
+                }
+                assertEquals(m.keepOnly(keep, m.current),
+                        p.removeIf(s -> s.title().equals(t)));
+                return "removeIf(" + t + ")";
+            }
+            case 13: {
+                boolean[] keep = new boolean[n];
+                int target = -1;
+                for (int i = 0; i < n; i++) {
+                    int first = m.songs.indexOf(m.songs.get(i));
+                    keep[i] = first == i;
+                    if (i == m.current) {
+                        target = first;
+                    }
+                }
+                int dropped = n < 2 ? 0 : m.keepOnly(keep, target);
+                assertEquals(dropped, p.distinct());
+                return "distinct()";
+            }
+            case 14: {
+                Comparator<Song> byTitle = Comparator.comparing(Song::title);
+                if (n >= 2) {
+                    Integer[] order = new Integer[n];
+                    for (int i = 0; i < n; i++) {
+                        order[i] = i;
+                    }
+                    Arrays.sort(order,
+                            (x, y) -> byTitle.compare(m.songs.get(x),
+                                    m.songs.get(y)));
+                    List<Song> sorted = new ArrayList<>();
+                    int newCurrent = 0;
+                    for (int i = 0; i < n; i++) {
+                        sorted.add(m.songs.get(order[i]));
+                        if (order[i] == m.current) {
+                            newCurrent = i;
+                        }
+                    }
+                    m.load(sorted, newCurrent);
+                }
+                p.sort(byTitle);
+                return "sort(byTitle)";
+            }
+            case 15: {
+                long total = 0;
+                for (Song s : m.songs) {
+                    total += s.durationMillis();
+                }
+                if (total == 0) {
+                    return "goToTime skipped";
+                }
+                long t = (long) (rnd.nextDouble() * total);
+                long start = 0;
+                for (int i = 0; i < n; i++) {
+                    start += m.songs.get(i).durationMillis();
+                    if (t < start) {
+                        m.goTo(i);
+                        break;
+                    }
+                }
+                p.goToTime(t);
+                return "goToTime(" + t + ")";
+            }
+            case 16: {
+                MusicPlaylist other = this.factory.get();
+                List<Song> added = new ArrayList<>();
+                for (int k = rnd.nextInt(3); k > 0; k--) {
+                    Song s = randomSong(rnd);
+                    other.addSong(s);
+                    added.add(s);
+                }
+                if (!added.isEmpty()) {
+                    List<Song> all = new ArrayList<>(m.songs);
+                    all.addAll(added);
+                    m.load(all, m.current);
+                }
+                p.mergeFrom(other);
+                return "mergeFrom(" + added + ")";
+            }
+            case 17: {
+                MusicPlaylist other = this.factory.get();
+                List<Song> copied = new ArrayList<>();
+                for (int k = rnd.nextInt(4); k > 0; k--) {
+                    Song s = randomSong(rnd);
+                    other.addSong(s);
+                    copied.add(s);
+                }
+                int c = copied.isEmpty() ? 0 : rnd.nextInt(copied.size());
+                if (c > 0) {
+                    other.goToSong(c);
+                }
+                m.load(copied, c);
+                p.copyFrom(other);
+                return "copyFrom(" + copied + ", " + c + ")";
+            }
+            case 18: {
+                // invalid calls fail and change nothing
+                int bad = rnd.nextBoolean() ? -1 - rnd.nextInt(3)
+                        : n + rnd.nextInt(3);
+                try {
+                    p.goToSong(bad);
+                    fail("goToSong(" + bad + ") accepted");
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+                try {
+                    p.removeSongAt(bad);
+                    fail("removeSongAt(" + bad + ") accepted");
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+                return "invalid index " + bad;
+            }
+            default:
+                if (rnd.nextInt(10) == 0) {
+                    m.load(new ArrayList<>(), 0);
+                    p.clear();
+                    return "clear()";
+                }
+                m.next();
+                p.nextSong();
+                return "nextSong()";
+        }
+    }
+
+    @Test
+    public void randomOperations_matchModel() {
+        for (int run = 0; run < RUNS; run++) {
+            Random rnd = new Random(44_000 + run);
+            Model m = new Model();
+            MusicPlaylist p = this.factory.get();
+            List<String> trace = new ArrayList<>();
+            for (int s = 0; s < STEPS; s++) {
+                trace.add(this.step(m, p, rnd));
+                if (trace.size() > 8) {
+                    trace.remove(0);
+                }
+                this.check("run " + run + " step " + s + " after " + trace, m,
+                        p, rnd);
+            }
+        }
+    }
+
+    @Test
+    public void duplicates_areCountedAndShown() {
+        MusicPlaylist p = this.factory.get();
+        p.addSong("a");
+        p.addSong("b");
+        p.addSong("a");
+        p.addSong("a");
+        p.goToSong(2);
+        assertEquals(4, p.length());
+        assertEquals("[*a*, a, a, b]", p.toString());
+        assertFalse(p.contains("c"));
+        MusicPlaylist q = p.newInstance();
+        q.addSong("a");
+        q.addSong("b");
+        q.addSong("a");
+        q.addSong("a");
+        q.goToSong(3);
+        // same circular order from the current song
+        assertEquals("[*a*, a, b, a]", q.toString());
+        assertNotEquals(p, q);
+        q.goToSong(2);
+        assertEquals(p, q);
+    }
+
+}
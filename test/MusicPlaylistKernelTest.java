@@ -6,11 +6,38 @@ import org.junit.Test;
 
 public class MusicPlaylistKernelTest {
 
+    /**
+     * Invokes the constructor of the implementation under test.
+     *
+     * @return the new, empty playlist
+     */
+    protected MusicPlaylist constructorTest() {
+        return new MusicPlaylistOnSequence();
+    }
+
+    /**
+     * Lists the songs of {@code p} from position 0, comma separated, by
+     * jumping to each position in turn. Leaves the current song at position
+     * 0.
+     */
+    private static String contents(MusicPlaylist p) {
+        StringBuilder sb = new StringBuilder();
+        int n = p.length();
+        for (int i = n - 1; i >= 0; i--) {
+            p.goToSong(i);
+            sb.insert(0, p.getCurrentSong());
+            if (i > 0) {
+                sb.insert(0, ",");
+            }
+        }
+        return sb.toString();
+    }
+
     // addSong tests
 
     @Test
     public void addSong_single() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         assertEquals(1, p.length());
         assertEquals("A", p.getCurrentSong());
@@ -18,7 +45,7 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void addSong_multiple() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         p.addSong("C");
@@ -28,15 +55,15 @@ public class MusicPlaylistKernelTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void addSong_null() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
-        p.addSong(null);
+        MusicPlaylist p = this.constructorTest();
+        p.addSong((String) null);
     }
 
     // removeSong tests
 
     @Test
     public void removeSong_existing() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         String removed = p.removeSong("A");
@@ -47,7 +74,7 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void removeSong_notPresent() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         assertNull(p.removeSong("X"));
         assertEquals(1, p.length());
@@ -55,7 +82,7 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void removeSong_null() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         assertNull(p.removeSong(null));
         assertEquals(1, p.length());
@@ -65,20 +92,20 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void getCurrentSong_empty() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         assertEquals("No songs in playlist", p.getCurrentSong());
     }
 
     @Test
     public void getCurrentSong_afterAdd() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         assertEquals("A", p.getCurrentSong());
     }
 
     @Test
     public void getCurrentSong_afterAdvance() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         p.nextSong();
@@ -89,14 +116,14 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void nextSong_empty() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.nextSong();
         assertEquals("No songs in playlist", p.getCurrentSong());
     }
 
     @Test
     public void nextSong_single() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.nextSong();
         assertEquals("A", p.getCurrentSong());
@@ -104,7 +131,7 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void nextSong_wraps() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         p.addSong("C");
@@ -118,7 +145,7 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void insertSongAt_middle() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("C");
         p.insertSongAt("B", 1);
@@ -129,7 +156,7 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void insertSongAt_end() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.insertSongAt("B", 1);
         assertEquals(2, p.length());
@@ -139,7 +166,7 @@ public class MusicPlaylistKernelTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void insertSongAt_invalidIndex() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.insertSongAt("A", 2);
     }
 
@@ -147,7 +174,7 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void removeSongAt_start() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         String r = p.removeSongAt(0);
@@ -158,7 +185,7 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void removeSongAt_end() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         String r = p.removeSongAt(1);
@@ -169,7 +196,7 @@ public class MusicPlaylistKernelTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void removeSongAt_invalidIndex() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.removeSongAt(5);
     }
@@ -178,13 +205,13 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void removeCurrentSong_empty() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         assertNull(p.removeCurrentSong());
     }
 
     @Test
     public void removeCurrentSong_single() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         String r = p.removeCurrentSong();
         assertEquals("A", r);
@@ -194,7 +221,7 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void removeCurrentSong_multiple() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         p.nextSong(); // now on B
@@ -208,7 +235,7 @@ public class MusicPlaylistKernelTest {
 
     @Test
     public void goToSong_valid() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         p.goToSong(1);
@@ -217,15 +244,153 @@ public class MusicPlaylistKernelTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void goToSong_negative() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.goToSong(-1);
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void goToSong_tooLarge() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.goToSong(2);
     }
+
+    // moveSong tests
+
+    @Test
+    public void moveSong_forward() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.addSong("C");
+        p.addSong("D");
+        p.moveSong(0, 2);
+        assertEquals("A", p.getCurrentSong());
+        assertEquals("B,C,A,D", contents(p));
+    }
+
+    @Test
+    public void moveSong_backward_keepsCurrent() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.addSong("C");
+        p.addSong("D");
+        p.goToSong(1); // B
+        p.moveSong(3, 0);
+        assertEquals("B", p.getCurrentSong());
+        assertEquals("D,A,B,C", contents(p));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void moveSong_invalidIndex() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.moveSong(0, 1);
+    }
+
+    // moveRange tests
+
+    @Test
+    public void moveRange_blockForward() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.addSong("C");
+        p.addSong("D");
+        p.addSong("E");
+        p.goToSong(1); // B
+        p.moveRange(0, 2, 3);
+        assertEquals("B", p.getCurrentSong());
+        assertEquals("C,D,E,A,B", contents(p));
+    }
+
+    @Test
+    public void moveRange_currentOutsideBlock() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.addSong("C");
+        p.addSong("D");
+        p.addSong("E");
+        p.goToSong(4); // E
+        p.moveRange(2, 2, 0);
+        assertEquals("E", p.getCurrentSong());
+        assertEquals("C,D,A,B,E", contents(p));
+    }
+
+    @Test
+    public void moveRange_empty() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.moveRange(1, 0, 0);
+        assertEquals(1, p.length());
+        assertEquals("A", p.getCurrentSong());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void moveRange_invalidTarget() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.moveRange(0, 2, 1);
+    }
+
+    // Song metadata tests
+
+    @Test
+    public void addSong_withMetadata() {
+        MusicPlaylist p = this.constructorTest();
+        Song s = new Song(42, "Imagine", "John Lennon", 183000);
+        p.addSong(s);
+        assertEquals("Imagine", p.getCurrentSong());
+        assertEquals(s, p.songAt(0));
+    }
+
+    @Test
+    public void addSong_titleOnlyHasNoMetadata() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("Imagine");
+        assertEquals(new Song("Imagine"), p.songAt(0));
+    }
+
+    @Test
+    public void insertSongAt_withMetadata() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("C");
+        p.insertSongAt(new Song(7, "B", "X", 1000), 1);
+        assertEquals("A", p.getCurrentSong());
+        assertEquals(7, p.songAt(1).id());
+        assertEquals("C", p.titleAt(2));
+    }
+
+    @Test
+    public void moveSong_keepsMetadata() {
+        MusicPlaylist p = this.constructorTest();
+        Song a = new Song(1, "A", "X", 1000);
+        Song b = new Song(2, "B", "Y", 2000);
+        p.addSong(a);
+        p.addSong(b);
+        p.moveSong(1, 0);
+        assertEquals(b, p.songAt(0));
+        assertEquals(a, p.songAt(1));
+    }
+
+    @Test
+    public void removeSong_duplicateTitlesRemovesFirst() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong(new Song(1, "A", "X", 0));
+        p.addSong(new Song(2, "A", "Y", 0));
+        assertEquals("A", p.removeSong("A"));
+        assertEquals(1, p.length());
+        assertEquals(2, p.songAt(0).id());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void songAt_invalidIndex() {
+        MusicPlaylist p = this.constructorTest();
+        p.songAt(0);
+    }
 }
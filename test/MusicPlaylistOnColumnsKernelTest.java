@@ -0,0 +1,14 @@
+
+/**
+ * Runs the {@link MusicPlaylistKernelTest} cases against
+ * {@link MusicPlaylistOnColumns}.
+ */
+public class MusicPlaylistOnColumnsKernelTest
+        extends MusicPlaylistKernelTest {
+
+    @Override
+    protected MusicPlaylist constructorTest() {
+        return new MusicPlaylistOnColumns();
+    }
+
+}
@@ -0,0 +1,46 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Runs the {@link MusicPlaylistSecondaryTest} cases against
+ * {@link MusicPlaylistOnColumns}.
+ */
+public class MusicPlaylistOnColumnsSecondaryTest
+        extends MusicPlaylistSecondaryTest {
+
+    @Override
+    protected MusicPlaylist constructorTest() {
+        return new MusicPlaylistOnColumns();
+    }
+
+    @Test
+    public void repeatedTitles_shareOneCopy() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong(new String("Intro"));
+        p.addSong("Other");
+        p.insertSongAt(new String("Intro"), 0);
+        assertSame(p.titleAt(0), p.titleAt(1));
+    }
+
+    @Test
+    public void equals_comparesColumnsFromCurrent() {
+        MusicPlaylist p = this.constructorTest();
+        MusicPlaylist q = this.constructorTest();
+        for (String s : new String[] { "A", "B", "A" }) {
+            p.addSong(s);
+        }
+        for (String s : new String[] { "B", "A", "A" }) {
+            q.addSong(s);
+        }
+        p.goToSong(1);
+        assertEquals(p, q);
+        assertEquals(p.hashCode(), q.hashCode());
+        assertEquals("[*B*, A, A]", p.toString());
+        q.nextSong();
+        assertNotEquals(p, q);
+    }
+
+}
@@ -0,0 +1,14 @@
+
+/**
+ * Runs the {@link MusicPlaylistKernelTest} cases against
+ * {@link MusicPlaylistOnRga}.
+ */
+public class MusicPlaylistOnRgaKernelTest
+        extends MusicPlaylistKernelTest {
+
+    @Override
+    protected MusicPlaylist constructorTest() {
+        return new MusicPlaylistOnRga();
+    }
+
+}
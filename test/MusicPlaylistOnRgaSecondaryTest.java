@@ -0,0 +1,14 @@
+
+/**
+ * Runs the {@link MusicPlaylistSecondaryTest} cases against
+ * {@link MusicPlaylistOnRga}.
+ */
+public class MusicPlaylistOnRgaSecondaryTest
+        extends MusicPlaylistSecondaryTest {
+
+    @Override
+    protected MusicPlaylist constructorTest() {
+        return new MusicPlaylistOnRga();
+    }
+
+}
@@ -0,0 +1,425 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MusicPlaylistOnRgaTest {
+
+    /**
+     * Returns the titles of {@code p}, in order.
+     */
+    private static String contents(MusicPlaylist p) {
+        List<String> titles = new ArrayList<>();
+        for (Song s : p.window(0, p.length())) {
+            titles.add(s.title());
+        }
+        return titles.toString();
+    }
+
+    /**
+     * Returns {@code n} replicas with ids 1 to n.
+     */
+    private static MusicPlaylistOnRga[] replicas(int n) {
+        MusicPlaylistOnRga[] r = new MusicPlaylistOnRga[n];
+        for (int i = 0; i < n; i++) {
+            r[i] = new MusicPlaylistOnRga(i + 1);
+        }
+        return r;
+    }
+
+    /**
+     * Delivers every replica's pending updates to every other replica.
+     */
+    private static void sync(MusicPlaylistOnRga... r) {
+        byte[][] out = new byte[r.length][];
+        for (int i = 0; i < r.length; i++) {
+            out[i] = r[i].takeUpdates();
+        }
+        for (int i = 0; i < r.length; i++) {
+            for (int j = 0; j < r.length; j++) {
+                if (i != j) {
+                    r[j].applyUpdates(out[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the version vectors of all replicas but {@code self}.
+     */
+    private static List<Map<Long, Long>> peers(MusicPlaylistOnRga self,
+            MusicPlaylistOnRga... r) {
+        List<Map<Long, Long>> vectors = new ArrayList<>();
+        for (MusicPlaylistOnRga p : r) {
+            if (p != self) {
+                vectors.add(p.versionVector());
+            }
+        }
+        return vectors;
+    }
+
+    @Test
+    public void localEdits_replicate() {
+        MusicPlaylistOnRga[] r = replicas(2);
+        r[0].addSong("A");
+        r[0].addSong("C");
+        r[0].insertSongAt("B", 1);
+        r[0].removeSongAt(0);
+        sync(r);
+        assertEquals("[B, C]", contents(r[1]));
+        assertEquals(0, r[1].pendingUpdates());
+    }
+
+    @Test
+    public void concurrentInsertsAtSamePlace_converge() {
+        MusicPlaylistOnRga[] r = replicas(3);
+        r[0].addSong("A");
+        r[0].addSong("Z");
+        sync(r);
+        r[0].insertSongAt("x", 1);
+        r[1].insertSongAt("y", 1);
+        r[2].insertSongAt("z", 1);
+        r[2].insertSongAt("z2", 2);
+        sync(r);
+        assertEquals(contents(r[0]), contents(r[1]));
+        assertEquals(contents(r[0]), contents(r[2]));
+        assertEquals(6, r[0].length());
+        String c = contents(r[0]);
+        assertTrue(c.startsWith("[A, ") && c.endsWith(", Z]"));
+        // one replica's run stays together
+        assertTrue(c.contains("z, z2"));
+    }
+
+    @Test
+    public void concurrentRemoves_ofSameSong_removeOnce() {
+        MusicPlaylistOnRga[] r = replicas(2);
+        r[0].addSong("A");
+        r[0].addSong("B");
+        r[0].addSong("C");
+        sync(r);
+        r[0].removeSongAt(1);
+        r[1].removeSongAt(1);
+        r[1].insertSongAt("D", 1);
+        sync(r);
+        assertEquals("[A, D, C]", contents(r[0]));
+        assertEquals("[A, D, C]", contents(r[1]));
+    }
+
+    @Test
+    public void insertAfterConcurrentlyRemovedSong_survives() {
+        MusicPlaylistOnRga[] r = replicas(2);
+        r[0].addSong("A");
+        r[0].addSong("B");
+        sync(r);
+        r[0].removeSongAt(0);
+        r[1].insertSongAt("X", 1);
+        sync(r);
+        assertEquals("[X, B]", contents(r[0]));
+        assertEquals("[X, B]", contents(r[1]));
+    }
+
+    @Test
+    public void clear_isOneUpdateAndKeepsConcurrentInserts() {
+        MusicPlaylistOnRga[] r = replicas(2);
+        for (int i = 0; i < 1000; i++) {
+            r[i % 2].addSong("S" + i);
+        }
+        sync(r);
+        r[0].clear();
+        r[1].insertSongAt("X", 500);
+        byte[] cleared = r[0].takeUpdates();
+        // kind, origin and seq, then replica, seq and counter for 2 replicas
+        assertTrue(cleared.length < 20);
+        r[1].applyUpdates(cleared);
+        r[0].applyUpdates(r[1].takeUpdates());
+        assertEquals("[X]", contents(r[0]));
+        assertEquals("[X]", contents(r[1]));
+        assertEquals("X", r[1].getCurrentSong());
+    }
+
+    @Test
+    public void clear_waitsForTheSongsItSaw() {
+        MusicPlaylistOnRga a = new MusicPlaylistOnRga(1);
+        MusicPlaylistOnRga b = new MusicPlaylistOnRga(2);
+        MusicPlaylistOnRga c = new MusicPlaylistOnRga(3);
+        a.addSong("A");
+        byte[] inserted = a.takeUpdates();
+        b.applyUpdates(inserted);
+        b.clear();
+        c.applyUpdates(b.takeUpdates());
+        assertEquals(1, c.pendingUpdates());
+        c.applyUpdates(inserted);
+        assertEquals(0, c.pendingUpdates());
+        assertEquals(0, c.length());
+    }
+
+    @Test
+    public void outOfOrderDelivery_waitsForDependencies() {
+        MusicPlaylistOnRga a = new MusicPlaylistOnRga(1);
+        MusicPlaylistOnRga b = new MusicPlaylistOnRga(2);
+        a.addSong("A");
+        byte[] first = a.takeUpdates();
+        a.addSong("B");
+        a.removeSongAt(0);
+        byte[] second = a.takeUpdates();
+        b.applyUpdates(second);
+        assertEquals(0, b.length());
+        assertEquals(2, b.pendingUpdates());
+        b.applyUpdates(first);
+        assertEquals("[B]", contents(b));
+        assertEquals(0, b.pendingUpdates());
+        // redelivery is ignored
+        b.applyUpdates(first);
+        b.applyUpdates(second);
+        assertEquals("[B]", contents(b));
+        assertEquals(a.versionVector(), b.versionVector());
+    }
+
+    @Test
+    public void randomEditsWithReorderedDelivery_converge() {
+        Random rnd = new Random(38);
+        for (int round = 0; round < 20; round++) {
+            MusicPlaylistOnRga[] r = replicas(3);
+            List<List<byte[]>> inbox = newInboxes(r.length);
+            for (int step = 0; step < 200; step++) {
+                int who = rnd.nextInt(r.length);
+                MusicPlaylistOnRga p = r[who];
+                int n = p.length();
+                int op = rnd.nextInt(50);
+                if (n == 0 || op < 20) {
+                    p.insertSongAt("s" + step, rnd.nextInt(n + 1));
+                } else if (op < 28) {
+                    p.removeSongAt(rnd.nextInt(n));
+                } else if (op < 36) {
+                    p.moveSong(rnd.nextInt(n), rnd.nextInt(n));
+                } else if (op < 40) {
+                    int count = rnd.nextInt(n + 1);
+                    p.moveRange(rnd.nextInt(n - count + 1), count,
+                            rnd.nextInt(n - count + 1));
+                } else if (op < 43) {
+                    p.sort(rnd.nextBoolean() ? Comparator.comparing(Song::title)
+                            : Comparator.comparing(Song::title).reversed());
+                } else if (op < 46) {
+                    String digit = String.valueOf(rnd.nextInt(10));
+                    p.removeIf(s -> s.title().endsWith(digit));
+                } else if (op < 49) {
+                    p.shuffle();
+                } else {
+                    p.clear();
+                }
+                byte[] u = p.takeUpdates();
+                for (int j = 0; j < r.length; j++) {
+                    if (j != who) {
+                        inbox.get(j).add(u);
+                        if (rnd.nextInt(10) == 0) {
+                            inbox.get(j).add(u);
+                        }
+                    }
+                }
+                // deliver a random part of each inbox, in random order
+                for (int j = 0; j < r.length; j++) {
+                    Collections.shuffle(inbox.get(j), rnd);
+                    int k = rnd.nextInt(inbox.get(j).size() + 1);
+                    for (int d = 0; d < k; d++) {
+                        r[j].applyUpdates(inbox.get(j).remove(0));
+                    }
+                }
+            }
+            for (int j = 0; j < r.length; j++) {
+                Collections.shuffle(inbox.get(j), rnd);
+                for (byte[] u : inbox.get(j)) {
+                    r[j].applyUpdates(u);
+                }
+            }
+            for (MusicPlaylistOnRga p : r) {
+                assertEquals(0, p.pendingUpdates());
+                assertArrayEquals(r[0].window(0, r[0].length()).toArray(),
+                        p.window(0, p.length()).toArray());
+                assertTrue(p.length() == 0
+                        || p.currentIndex() < p.length());
+            }
+        }
+    }
+
+    /**
+     * Returns {@code n} empty message queues.
+     */
+    private static List<List<byte[]>> newInboxes(int n) {
+        List<List<byte[]>> inbox = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            inbox.add(new ArrayList<>());
+        }
+        return inbox;
+    }
+
+    @Test
+    public void collectGarbage_onlyWhenQuiescent() {
+        MusicPlaylistOnRga[] r = replicas(2);
+        for (char c = 'A'; c <= 'E'; c++) {
+            r[0].addSong(String.valueOf(c));
+        }
+        sync(r);
+        r[0].goToSong(3);
+        r[0].removeSongAt(1);
+        r[0].removeSongAt(1);
+        assertEquals(2, r[0].tombstones());
+        assertEquals(0, r[0].collectGarbage(peers(r[0], r)));
+        sync(r);
+        assertEquals(2, r[0].collectGarbage(peers(r[0], r)));
+        assertEquals(2, r[1].collectGarbage(peers(r[1], r)));
+        assertEquals(0, r[0].tombstones());
+        assertEquals("[A, D, E]", contents(r[0]));
+        assertEquals("D", r[0].getCurrentSong());
+        // edits after collection still replicate
+        r[1].insertSongAt("X", 1);
+        r[0].removeSongAt(1);
+        sync(r);
+        assertEquals("[A, X, E]", contents(r[0]));
+        assertEquals(contents(r[0]), contents(r[1]));
+    }
+
+    @Test
+    public void updates_areCompact() {
+        MusicPlaylistOnRga a = new MusicPlaylistOnRga(1);
+        a.addSong("A");
+        a.addSong("B");
+        a.removeSongAt(0);
+        // kind, origin, seq, counter, parent, song id, title, artist and
+        // duration: 10 bytes at the start, 11 after a song; removal: 5 bytes
+        assertEquals(10 + 11 + 5, a.takeUpdates().length);
+        assertEquals(0, a.takeUpdates().length);
+    }
+
+    @Test
+    public void transferFrom_keepsReplicaIds() {
+        MusicPlaylistOnRga[] r = replicas(2);
+        r[0].addSong("A");
+        sync(r);
+        MusicPlaylistOnRga b = new MusicPlaylistOnRga(8);
+        b.addSong("B");
+        r[0].transferFrom(b);
+        assertEquals(1, r[0].replicaId());
+        assertEquals(8, b.replicaId());
+        assertEquals("[B]", contents(r[0]));
+        assertEquals(0, b.length());
+        sync(r);
+        assertEquals("[B]", contents(r[1]));
+        r[1].addSong("C");
+        sync(r);
+        assertEquals("[B, C]", contents(r[0]));
+        assertEquals(0, r[0].pendingUpdates());
+    }
+
+    @Test
+    public void shuffle_keepsReplicasInSync() {
+        MusicPlaylistOnRga[] r = replicas(2);
+        for (char c = 'A'; c <= 'E'; c++) {
+            r[0].addSong(String.valueOf(c));
+        }
+        sync(r);
+        r[0].shuffle();
+        sync(r);
+        assertEquals(1, r[0].replicaId());
+        assertEquals(5, r[0].length());
+        assertEquals(contents(r[0]), contents(r[1]));
+        r[1].removeSongAt(0);
+        r[1].addSong("F");
+        sync(r);
+        assertEquals(0, r[0].pendingUpdates());
+        assertEquals(5, r[0].length());
+        assertEquals(contents(r[1]), contents(r[0]));
+    }
+
+    @Test
+    public void concurrentSorts_doNotDuplicate() {
+        MusicPlaylistOnRga[] r = replicas(2);
+        r[0].addSong("C");
+        r[0].addSong("A");
+        r[0].addSong("B");
+        sync(r);
+        r[0].sort(Comparator.comparing(Song::title));
+        r[1].sort(Comparator.comparing(Song::title));
+        sync(r);
+        assertEquals("[A, B, C]", contents(r[0]));
+        assertEquals("[A, B, C]", contents(r[1]));
+    }
+
+    @Test
+    public void concurrentMovesOfSameSong_keepOne() {
+        MusicPlaylistOnRga[] r = replicas(2);
+        r[0].addSong("A");
+        r[0].addSong("B");
+        r[0].addSong("C");
+        sync(r);
+        r[0].moveSong(0, 2);
+        r[1].moveSong(0, 1);
+        sync(r);
+        assertEquals(3, r[0].length());
+        assertEquals(contents(r[0]), contents(r[1]));
+        // replica 2 has the larger id, so its move wins
+        assertEquals("[B, A, C]", contents(r[0]));
+    }
+
+    @Test
+    public void removeDuringConcurrentMove_wins() {
+        MusicPlaylistOnRga[] r = replicas(3);
+        r[0].addSong("A");
+        r[0].addSong("B");
+        sync(r);
+        r[0].moveSong(0, 1);
+        r[1].removeSongAt(0);
+        r[2].clear();
+        r[2].addSong("C");
+        sync(r);
+        for (MusicPlaylistOnRga p : r) {
+            assertEquals("[C]", contents(p));
+        }
+    }
+
+    @Test
+    public void removeIf_removesOnlyTheDroppedSongs() {
+        MusicPlaylistOnRga[] r = replicas(2);
+        for (int i = 0; i < 100; i++) {
+            r[0].addSong("S" + i);
+        }
+        sync(r);
+        r[0].removeIf(s -> s.title().equals("S50"));
+        byte[] u = r[0].takeUpdates();
+        // one removal, not the other 99 songs again
+        assertEquals(5, u.length);
+        r[1].removeSongAt(10);
+        r[0].applyUpdates(r[1].takeUpdates());
+        r[1].applyUpdates(u);
+        assertEquals(98, r[0].length());
+        assertEquals(contents(r[0]), contents(r[1]));
+        assertEquals(0, r[0].searchPrefix("S50").length);
+        assertEquals(-1, contents(r[0]).indexOf("S10,"));
+    }
+
+    @Test
+    public void moveRange_movesOnlyTheBlock() {
+        MusicPlaylistOnRga a = new MusicPlaylistOnRga(1);
+        for (int i = 0; i < 100; i++) {
+            a.addSong("S" + i);
+        }
+        a.goToSong(1);
+        a.takeUpdates();
+        a.moveRange(0, 2, 98);
+        assertEquals("S2", a.songAt(0).title());
+        assertEquals("S0", a.songAt(98).title());
+        assertEquals("S1", a.getCurrentSong());
+        assertEquals(99, a.currentIndex());
+        // two moves, not 98
+        assertTrue(a.takeUpdates().length < 40);
+        assertEquals(2, a.tombstones());
+    }
+
+}
@@ -0,0 +1,138 @@
+import static org.junit.Assert.assertTrue;
+
+import java.util.Comparator;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+/**
+ * Checks how the operations of {@link MusicPlaylistOnSequence} grow by
+ * counting the steps its sequence takes at size n and 8n, rather than timing
+ * them, so that a linear operation turning quadratic fails here on any
+ * machine. {@link MusicPlaylistComplexityBenchmark} times the other kernels.
+ */
+public class MusicPlaylistOnSequenceGrowthTest {
+
+    /**
+     * Smaller size measured.
+     */
+    private static final int N = 400;
+
+    /**
+     * Ratio of the larger size to the smaller.
+     */
+    private static final int FACTOR = 8;
+
+    /**
+     * Returns the steps {@code op} takes on a playlist of {@code size} songs
+     * with many repeated titles, current in the middle.
+     */
+    private static long steps(int size, Consumer<MusicPlaylist> op) {
+        CountingSequence<Song> songs = new CountingSequence<>();
+        MusicPlaylist p = new MusicPlaylistOnSequence(songs);
+        for (int i = 0; i < size; i++) {
+            p.addSong(new Song(i, "t" + (i % 50), "a", 1000));
+        }
+        p.goToSong(size / 2);
+        long before = songs.steps();
+        op.accept(p);
+        return songs.steps() - before;
+    }
+
+    /**
+     * Checks that {@code op} takes at most twice the steps at size 8n that
+     * growing like n^{@code exponent} allows.
+     */
+    private static void assertGrows(double exponent,
+            Consumer<MusicPlaylist> op) {
+        long small = Math.max(steps(N, op), 1);
+        long large = steps(N * FACTOR, op);
+        assertTrue(small + " steps, then " + large + " at " + FACTOR
+                + " times the size",
+                large <= 2 * Math.pow(FACTOR, exponent) * small);
+    }
+
+    @Test
+    public void addSong_eachTakesConstantSteps() {
+        assertGrows(1, p -> {
+            MusicPlaylist q = p.newInstance();
+            for (int i = 0; i < p.length(); i++) {
+                q.addSong("s" + i);
+            }
+        });
+    }
+
+    @Test
+    public void tailChurn_takesConstantSteps() {
+        assertGrows(0, p -> {
+            for (int k = 0; k < 100; k++) {
+                p.removeSongAt(p.length() - 1);
+                p.addSong("s" + k);
+            }
+        });
+    }
+
+    @Test
+    public void middleInsertAndRemove_areLinear() {
+        assertGrows(1, p -> {
+            for (int k = 0; k < 10; k++) {
+                p.insertSongAt("s" + k, p.length() / 2);
+                p.removeSongAt(p.length() / 3);
+            }
+        });
+    }
+
+    @Test
+    public void moveRange_isLinear() {
+        assertGrows(1, p -> {
+            p.moveRange(p.length() / 4, p.length() / 4, p.length() / 2);
+            p.moveSong(0, p.length() - 1);
+        });
+    }
+
+    @Test
+    public void removeSong_isLinear() {
+        assertGrows(1, p -> {
+            p.addSong("last");
+            p.removeSong("last");
+            p.removeSong("missing");
+        });
+    }
+
+    @Test
+    public void wholePlaylistQueries_areLinear() {
+        assertGrows(1, p -> {
+            MusicPlaylist q = p.newInstance();
+            q.copyFrom(p);
+            p.equals(q);
+            p.hashCode();
+            p.toString();
+            p.contains("missing");
+            p.indexOfId(-1);
+            p.searchPrefix("t4");
+        });
+    }
+
+    @Test
+    public void bulkLoads_areLinear() {
+        assertGrows(1, p -> {
+            p.shuffle();
+            p.sort(Comparator.comparing(Song::title));
+            p.distinct();
+            p.removeIf(s -> s.id() % 3 == 0);
+        });
+    }
+
+    @Test
+    public void songsInRange_pagingIsLinear() {
+        assertGrows(1, p -> {
+            for (int from = 0; from < p.length(); from += 10) {
+                p.songsInRange(from, Math.min(10, p.length() - from));
+            }
+            for (int from = 0; from < p.length(); from += 10) {
+                p.window(from, Math.min(10, p.length() - from)).toArray();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,144 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ObservableMusicPlaylistTest {
+
+    /**
+     * Listener that writes every event it receives as a string.
+     */
+    private static final class Recorder implements PlaylistListener {
+
+        /**
+         * Events received, in order.
+         */
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void songsInserted(int index, int count) {
+            this.events.add("ins " + index + " " + count);
+        }
+
+        @Override
+        public void songRemoved(int index) {
+            this.events.add("rem " + index);
+        }
+
+        @Override
+        public void songsMoved(int from, int count, int to) {
+            this.events.add("mov " + from + " " + count + " " + to);
+        }
+
+        @Override
+        public void contentsReplaced() {
+            this.events.add("all");
+        }
+
+        @Override
+        public void currentMoved(int from, int to) {
+            this.events.add("cur " + from + " " + to);
+        }
+    }
+
+    @Test
+    public void edits_reported() {
+        ObservableMusicPlaylist p = new ObservableMusicPlaylist(
+                new MusicPlaylistOnSequence());
+        Recorder r = new Recorder();
+        p.addListener(r);
+        p.addSong("A");
+        p.addSong("B", 1000);
+        p.insertSongAt("C", 1);
+        p.moveSong(0, 2);
+        p.removeSong("B");
+        p.removeSong("missing");
+        p.removeCurrentSong();
+        assertEquals("[ins 0 1, ins 1 1, ins 1 1, mov 0 1 2, rem 1, rem 1]",
+                r.events.toString());
+        assertEquals("C", p.getCurrentSong());
+    }
+
+    @Test
+    public void navigation_reportedOnlyWhenCurrentChanges() {
+        ObservableMusicPlaylist p = new ObservableMusicPlaylist(
+                new MusicPlaylistOnColumns());
+        p.addSong("A", 1000);
+        p.addSong("B", 1000);
+        p.addSong("C", 1000);
+        Recorder r = new Recorder();
+        p.addListener(r);
+        p.nextSong();
+        p.goToSong(1);
+        p.goToTime(2500);
+        p.previousSong();
+        assertEquals("[cur 0 1, cur 1 2, cur 2 1]", r.events.toString());
+    }
+
+    @Test
+    public void bulkChanges_reportedAsReplaced() {
+        ObservableMusicPlaylist p = new ObservableMusicPlaylist(
+                new MusicPlaylistOnColumns());
+        p.addSong("B");
+        p.addSong("A");
+        p.addSong("A");
+        Recorder r = new Recorder();
+        p.addListener(r);
+        p.sort(Comparator.comparing(Song::title));
+        p.distinct();
+        p.distinct();
+        p.removeIf(s -> s.title().equals("missing"));
+        MusicPlaylist other = new MusicPlaylistOnSequence();
+        other.addSong("C");
+        p.mergeFrom(other);
+        p.clear();
+        assertEquals("[all, all, ins 2 1, all]", r.events.toString());
+    }
+
+    @Test
+    public void transferFrom_notifiesBoth() {
+        ObservableMusicPlaylist p = new ObservableMusicPlaylist(
+                new MusicPlaylistOnSequence());
+        MusicPlaylist q = p.newInstance();
+        q.addSong("A");
+        Recorder rp = new Recorder();
+        Recorder rq = new Recorder();
+        p.addListener(rp);
+        ((ObservableMusicPlaylist) q).addListener(rq);
+        p.transferFrom(q);
+        assertEquals("A", p.getCurrentSong());
+        assertEquals(0, q.length());
+        assertEquals("[all]", rp.events.toString());
+        assertEquals("[all]", rq.events.toString());
+    }
+
+    @Test
+    public void removeListener_stopsEvents() {
+        ObservableMusicPlaylist p = new ObservableMusicPlaylist(
+                new MusicPlaylistOnSequence());
+        Recorder r = new Recorder();
+        p.addListener(r);
+        p.addSong("A");
+        p.removeListener(r);
+        p.addSong("B");
+        assertEquals("[ins 0 1]", r.events.toString());
+    }
+
+    @Test
+    public void equals_isSymmetric() {
+        ObservableMusicPlaylist p = new ObservableMusicPlaylist(
+                new MusicPlaylistOnSequence());
+        ObservableMusicPlaylist q = new ObservableMusicPlaylist(
+                new MusicPlaylistOnSequence());
+        p.addSong("A");
+        q.addSong("A");
+        assertEquals(p, q);
+        assertFalse(p.equals(p.delegate()));
+        assertFalse(p.delegate().equals(p));
+    }
+
+}
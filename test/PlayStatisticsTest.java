@@ -0,0 +1,164 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PlayStatisticsTest {
+
+    /**
+     * Returns catalog song {@code i}.
+     */
+    private static Song song(int i) {
+        return new Song(1000 + i, "t" + i, "a", 1000);
+    }
+
+    @Test
+    public void countMinSketch_neverUndercounts() {
+        CountMinSketch cms = new CountMinSketch(256, 4);
+        Random rnd = new Random(43);
+        int[] truth = new int[5000];
+        for (int i = 0; i < 50_000; i++) {
+            int item = rnd.nextInt(truth.length);
+            truth[item]++;
+            cms.add(item, 1);
+        }
+        int bad = 0;
+        for (int item = 0; item < truth.length; item++) {
+            long est = cms.estimate(item);
+            assertTrue(est >= truth[item]);
+            // e / width * total, with probability 1 - e^-4 per item
+            if (est - truth[item] > 2.72 * 50_000 / 256) {
+                bad++;
+            }
+        }
+        assertTrue(bad < truth.length / 20);
+        assertEquals(50_000, cms.total());
+    }
+
+    @Test
+    public void hyperLogLog_estimatesDistinctCounts() {
+        for (int n : new int[] { 0, 10, 1000, 200_000 }) {
+            HyperLogLog hll = new HyperLogLog();
+            for (int i = 0; i < n; i++) {
+                hll.add(i);
+                hll.add(i);
+            }
+            assertEquals(n, hll.estimate(), Math.max(1, n * 0.03));
+        }
+    }
+
+    @Test
+    public void hyperLogLog_mergeIsUnion() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        for (int i = 0; i < 60_000; i++) {
+            a.add(i);
+            b.add(i + 30_000);
+        }
+        a.merge(b);
+        assertEquals(90_000, a.estimate(), 90_000 * 0.03);
+    }
+
+    @Test
+    public void topSongs_findsHeavyHitters() {
+        PlayStatistics stats = new PlayStatistics(5, 1024, 4, 12);
+        Random rnd = new Random(43);
+        for (int i = 0; i < 100_000; i++) {
+            // songs 0-4 are hot, the other 20000 form a long tail
+            int s = rnd.nextInt(4) == 0 ? rnd.nextInt(5)
+                    : 5 + rnd.nextInt(20_000);
+            stats.record(song(s));
+        }
+        List<Map.Entry<Song, Long>> top = stats.topSongs();
+        assertEquals(5, top.size());
+        for (Map.Entry<Song, Long> e : top) {
+            assertTrue(e.getKey().id() < 1005);
+            assertTrue(e.getValue() >= 4000);
+        }
+        for (int i = 1; i < top.size(); i++) {
+            assertTrue(top.get(i - 1).getValue() >= top.get(i).getValue());
+        }
+        assertEquals(100_000, stats.totalPlays());
+        assertEquals(20_005, stats.distinctSongs(), 20_005 * 0.05);
+    }
+
+    @Test
+    public void follow_recordsNavigation() throws Exception {
+        ObservableMusicPlaylist p = new ObservableMusicPlaylist(
+                new MusicPlaylistOnSequence());
+        for (int i = 0; i < 3; i++) {
+            p.addSong(song(i));
+        }
+        PlayStatistics stats = new PlayStatistics();
+        AutoCloseable handle = stats.follow(p);
+        for (int i = 0; i < 7; i++) {
+            p.nextSong();
+        }
+        // already current: not a new play
+        p.goToSong(1);
+        handle.close();
+        p.nextSong();
+        assertEquals(7, stats.totalPlays());
+        assertEquals(3, stats.estimatedPlays(song(1)));
+        assertEquals(3, stats.distinctSongs());
+        assertEquals(song(1), stats.topSongs().get(0).getKey());
+    }
+
+    @Test
+    public void follow_ignoresJumps() throws Exception {
+        ObservableMusicPlaylist p = new ObservableMusicPlaylist(
+                new MusicPlaylistOnSequence());
+        for (int i = 0; i < 3; i++) {
+            p.addSong(song(i));
+        }
+        PlayStatistics stats = new PlayStatistics();
+        AutoCloseable handle = stats.follow(p);
+        p.nextSong();
+        assertEquals(1, stats.totalPlays());
+        p.previousSong();
+        p.goToSong(2);
+        p.goToTime(0);
+        assertEquals(1, stats.totalPlays());
+        p.nextSong();
+        assertEquals(2, stats.totalPlays());
+        handle.close();
+    }
+
+    @Test
+    public void merge_combinesThreads() throws Exception {
+        List<PlayStatistics> parts = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            PlayStatistics part = new PlayStatistics();
+            parts.add(part);
+            final int offset = t * 100;
+            Thread th = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    part.record(song(offset + i % 100));
+                    if (i % 10 == 0) {
+                        part.record(song(999));
+                    }
+                }
+            });
+            threads.add(th);
+            th.start();
+        }
+        for (Thread th : threads) {
+            th.join();
+        }
+        PlayStatistics all = new PlayStatistics();
+        for (PlayStatistics part : parts) {
+            all.merge(part);
+        }
+        assertEquals(4 * 11_000, all.totalPlays());
+        assertEquals(401, all.distinctSongs(), 4);
+        assertEquals(song(999), all.topSongs().get(0).getKey());
+        assertEquals(4000, all.estimatedPlays(song(999)));
+    }
+
+}
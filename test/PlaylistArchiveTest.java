@@ -0,0 +1,202 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PlaylistArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns a playlist of songs {@code first} to {@code first + n - 1}.
+     */
+    private static MusicPlaylist playlist(int first, int n) {
+        MusicPlaylist p = new MusicPlaylistOnSequence();
+        for (int i = first; i < first + n; i++) {
+            p.addSong(new Song(i, "Title " + i, "Artist " + (i / 10),
+                    1000 + i));
+        }
+        return p;
+    }
+
+    /**
+     * Writes {@code writer} to a new file and returns its path.
+     */
+    private Path write(PlaylistArchive.Writer writer) throws IOException {
+        Path file = this.folder.newFile().toPath();
+        long bytes = writer.writeTo(file);
+        assertEquals(Files.size(file), bytes);
+        return file;
+    }
+
+    @Test
+    public void roundTrip_keepsSongsAndCurrent() throws IOException {
+        PlaylistArchive.Writer w = new PlaylistArchive.Writer();
+        MusicPlaylist a = playlist(0, 20);
+        a.goToSong(7);
+        MusicPlaylist b = new MusicPlaylistOnColumns();
+        b.addSong("Ünïcode ✓");
+        b.addSong(new Song(-5, "Title 3", "Artist 0", 1003));
+        b.addSong(a.songAt(19));
+        w.add(42, a);
+        w.add(-1, b);
+        w.add(7, new MusicPlaylistOnSequence());
+        assertEquals(3, w.size());
+        assertEquals(23, w.entries());
+        try (PlaylistArchive archive = new PlaylistArchive(this.write(w))) {
+            assertEquals(3, archive.size());
+            assertEquals(23, archive.entries());
+            assertArrayEquals(new long[] { -1, 7, 42 }, archive.ids());
+            MusicPlaylist p = new MusicPlaylistOnSequence();
+            archive.read(42, p);
+            assertEquals(a, p);
+            assertEquals(7, p.currentIndex());
+            assertEquals(a.totalDuration(), p.totalDuration());
+            p = new MusicPlaylistOnColumns();
+            archive.read(-1, p);
+            assertEquals(b, p);
+            assertEquals(new Song(-5, "Title 3", "Artist 0", 1003),
+                    p.songAt(1));
+            archive.read(7, p);
+            assertEquals(0, p.length());
+        }
+    }
+
+    @Test
+    public void randomAccess_acrossManyBlocks() throws IOException {
+        PlaylistArchive.Writer w = new PlaylistArchive.Writer();
+        int n = 5 * PlaylistArchive.BLOCK_SIZE + 3;
+        for (int id = 0; id < n; id++) {
+            w.add(id * 3L, playlist(id % 50, 1 + id % 9));
+        }
+        try (PlaylistArchive archive = new PlaylistArchive(this.write(w))) {
+            MusicPlaylist p = new MusicPlaylistOnSequence();
+            for (int id = n - 1; id >= 0; id -= 37) {
+                archive.read(id * 3L, p);
+                assertEquals(playlist(id % 50, 1 + id % 9), p);
+            }
+            assertTrue(archive.contains(0));
+            assertTrue(archive.contains((n - 1) * 3L));
+            assertFalse(archive.contains(1));
+            assertFalse(archive.contains(-3));
+            assertFalse(archive.contains(n * 3L));
+            assertEquals(58, archive.distinctSongs());
+        }
+    }
+
+    @Test
+    public void forEach_visitsEveryPlaylistInIdOrder() throws IOException {
+        PlaylistArchive.Writer w = new PlaylistArchive.Writer();
+        int n = 2 * PlaylistArchive.BLOCK_SIZE + 5;
+        for (int id = n - 1; id >= 0; id--) {
+            w.add(id, playlist(id, id % 4));
+        }
+        try (PlaylistArchive archive = new PlaylistArchive(this.write(w))) {
+            MusicPlaylist p = new MusicPlaylistOnColumns();
+            long[] next = new long[1];
+            archive.forEach(p, id -> {
+                assertEquals(next[0], id);
+                MusicPlaylist expected = new MusicPlaylistOnColumns();
+                expected.copyFrom(playlist((int) id, (int) id % 4));
+                assertEquals(expected, p);
+                next[0]++;
+            });
+            assertEquals(n, next[0]);
+        }
+    }
+
+    @Test
+    public void repeatedSongs_costAboutOneBytePerEntry() throws IOException {
+        PlaylistArchive.Writer w = new PlaylistArchive.Writer();
+        for (int id = 0; id < 1000; id++) {
+            w.add(id, playlist(id % 100, 100));
+        }
+        Path file = this.write(w);
+        double perEntry = (double) Files.size(file) / w.entries();
+        assertTrue("bytes/entry " + perEntry, perEntry < 1.2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void add_duplicateId() {
+        PlaylistArchive.Writer w = new PlaylistArchive.Writer();
+        w.add(1, playlist(0, 1));
+        w.add(1, playlist(0, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_missingId() throws IOException {
+        PlaylistArchive.Writer w = new PlaylistArchive.Writer();
+        w.add(1, playlist(0, 1));
+        try (PlaylistArchive archive = new PlaylistArchive(this.write(w))) {
+            archive.read(2, new MusicPlaylistOnSequence());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void open_notAnArchive() throws IOException {
+        Path file = this.folder.newFile().toPath();
+        Files.write(file, new byte[64]);
+        new PlaylistArchive(file).close();
+    }
+
+    @Test
+    public void snapshot_restoreAll_acrossManyBlocks() throws IOException {
+        Map<Long, MusicPlaylist> live = new HashMap<>();
+        int n = 3 * PlaylistArchive.BLOCK_SIZE + 5;
+        for (int id = 0; id < n; id++) {
+            MusicPlaylist p = playlist(id % 40, id % 7);
+            if (p.length() > 0) {
+                p.goToSong(id % p.length());
+            }
+            live.put(id * 5L - 100, p);
+        }
+        Path file = this.folder.getRoot().toPath().resolve("boot.snapshot");
+        long bytes = PlaylistArchive.snapshot(live, file);
+        assertEquals(Files.size(file), bytes);
+        try (PlaylistArchive archive = new PlaylistArchive(file)) {
+            Map<Long, MusicPlaylist> restored = archive
+                    .restoreAll(MusicPlaylistOnSequence::new);
+            assertEquals(live, restored);
+            List<Long> ids = new ArrayList<>(restored.keySet());
+            for (int i = 1; i < ids.size(); i++) {
+                assertTrue(ids.get(i - 1) < ids.get(i));
+            }
+            for (Map.Entry<Long, MusicPlaylist> e : live.entrySet()) {
+                MusicPlaylist p = restored.get(e.getKey());
+                assertEquals(e.getValue().currentIndex(), p.currentIndex());
+                assertEquals(e.getValue().getCurrentSong(),
+                        p.getCurrentSong());
+            }
+        }
+    }
+
+    @Test
+    public void snapshot_replacesPreviousImage() throws IOException {
+        Path file = this.folder.getRoot().toPath().resolve("boot.snapshot");
+        Map<Long, MusicPlaylist> live = new HashMap<>();
+        live.put(1L, playlist(0, 3));
+        PlaylistArchive.snapshot(live, file);
+        live.put(2L, playlist(5, 2));
+        PlaylistArchive.snapshot(live, file);
+        try (PlaylistArchive archive = new PlaylistArchive(file)) {
+            assertEquals(2, archive.size());
+            assertEquals(live,
+                    archive.restoreAll(MusicPlaylistOnSequence::new));
+        }
+        assertEquals(1, this.folder.getRoot().list().length);
+    }
+
+}
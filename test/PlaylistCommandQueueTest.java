@@ -0,0 +1,133 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+public class PlaylistCommandQueueTest {
+
+    /**
+     * Returns a song titled {@code title}.
+     */
+    private static Song song(String title) {
+        return new Song(title);
+    }
+
+    @Test
+    public void commands_applyInOrder_withResults() throws Exception {
+        MusicPlaylist p = new MusicPlaylistOnSequence();
+        try (PlaylistCommandQueue q = new PlaylistCommandQueue(p)) {
+            q.addSong(song("A"));
+            q.addSong(song("B"));
+            q.insertSongAt(song("C"), 0);
+            CompletableFuture<String> removed = q.removeSongAt(1);
+            CompletableFuture<Integer> length = q.submit(MusicPlaylist::length);
+            assertEquals("A", removed.get());
+            assertEquals(Integer.valueOf(2), length.get());
+            assertEquals("C", q.submit(pl -> pl.titleAt(0)).get());
+            assertNull(q.removeSong("missing").get());
+        }
+    }
+
+    @Test
+    public void failingCommand_failsOnlyItsFuture() throws Exception {
+        MusicPlaylist p = new MusicPlaylistOnSequence();
+        try (PlaylistCommandQueue q = new PlaylistCommandQueue(p)) {
+            CompletableFuture<String> bad = q.removeSongAt(3);
+            CompletableFuture<Void> good = q.addSong(song("A"));
+            try {
+                bad.get();
+                fail("expected failure");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+            good.get();
+            assertEquals(Integer.valueOf(1), q.submit(MusicPlaylist::length)
+                    .get());
+        }
+    }
+
+    @Test
+    public void manyProducers_everyCommandApplied_inProducerOrder()
+            throws Exception {
+        final int producers = 8;
+        final int each = 5000;
+        MusicPlaylist p = new MusicPlaylistOnSequence();
+        PlaylistCommandQueue q = new PlaylistCommandQueue(p, 64, 32);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<CompletableFuture<Void>> last = new ArrayList<>();
+        for (int t = 0; t < producers; t++) {
+            final int id = t;
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            last.add(done);
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                    CompletableFuture<Void> f = null;
+                    for (int i = 0; i < each; i++) {
+                        f = q.addSong(song(id + ":" + i));
+                    }
+                    f.get();
+                    done.complete(null);
+                } catch (Exception e) {
+                    done.completeExceptionally(e);
+                }
+            });
+            threads.add(th);
+            th.start();
+        }
+        start.countDown();
+        for (CompletableFuture<Void> f : last) {
+            f.get();
+        }
+        q.close();
+        assertEquals(producers * each, p.length());
+        int[] seen = new int[producers];
+        for (Song s : p.window(0, p.length())) {
+            String[] parts = s.title().split(":");
+            int id = Integer.parseInt(parts[0]);
+            assertEquals(seen[id], Integer.parseInt(parts[1]));
+            seen[id]++;
+        }
+        assertEquals(producers * each, q.queueLatency().count());
+        long batches = q.batchSizes().count();
+        assertTrue(batches > 0 && batches <= producers * each);
+        assertTrue(q.batchSizes().max() <= 32);
+        assertEquals(0, q.pending());
+    }
+
+    @Test
+    public void close_drainsThenRejects() throws Exception {
+        MusicPlaylist p = new MusicPlaylistOnSequence();
+        PlaylistCommandQueue q = new PlaylistCommandQueue(p);
+        List<CompletableFuture<Void>> fs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            fs.add(q.addSong(song("s" + i)));
+        }
+        q.close();
+        for (CompletableFuture<Void> f : fs) {
+            assertTrue(f.isDone());
+        }
+        assertEquals(100, p.length());
+        try {
+            q.addSong(song("late"));
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_mustBePowerOfTwo() {
+        new PlaylistCommandQueue(new MusicPlaylistOnSequence(), 100, 10);
+    }
+
+}
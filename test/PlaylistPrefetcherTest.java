@@ -0,0 +1,198 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PlaylistPrefetcherTest {
+
+    /**
+     * Runs the resolutions.
+     */
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @After
+    public void shutDown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Returns an observable playlist of songs "S0", ..., "S(n-1)".
+     */
+    private static ObservableMusicPlaylist playlist(int n) {
+        ObservableMusicPlaylist p = new ObservableMusicPlaylist(
+                new MusicPlaylistOnColumns());
+        for (int i = 0; i < n; i++) {
+            p.addSong("S" + i);
+        }
+        return p;
+    }
+
+    /**
+     * Waits up to five seconds for {@code condition}.
+     */
+    private static void await(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void prefetches_currentAndLookahead() throws Exception {
+        ObservableMusicPlaylist p = playlist(10);
+        FakeSongResolver fake = new FakeSongResolver(false);
+        try (PlaylistPrefetcher<String> pf = PlaylistPrefetcher.attach(p,
+                fake, this.executor, 3, 8)) {
+            for (int i = 0; i <= 3; i++) {
+                assertEquals("stream:S" + i,
+                        pf.resolved(p.songAt(i)).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(4, pf.started());
+            assertFalse(pf.isReady(p.songAt(4)));
+        }
+    }
+
+    @Test
+    public void nextSong_startsOnlyTheNewSong() throws Exception {
+        ObservableMusicPlaylist p = playlist(10);
+        FakeSongResolver fake = new FakeSongResolver(false);
+        try (PlaylistPrefetcher<String> pf = PlaylistPrefetcher.attach(p,
+                fake, this.executor, 3, 8)) {
+            // S0 must be done too, or moving on could cancel it unstarted
+            await(() -> pf.isReady(p.songAt(0)) && pf.isReady(p.songAt(1))
+                    && pf.isReady(p.songAt(2)) && pf.isReady(p.songAt(3)));
+            p.nextSong();
+            await(() -> pf.isReady(p.songAt(4)));
+            assertEquals(5, pf.started());
+            assertTrue(pf.isReady(p.songAt(1)));
+            assertEquals(5, fake.calls.size());
+        }
+    }
+
+    @Test
+    public void lookahead_wrapsAround() throws Exception {
+        ObservableMusicPlaylist p = playlist(5);
+        p.goToSong(4);
+        FakeSongResolver fake = new FakeSongResolver(false);
+        try (PlaylistPrefetcher<String> pf = PlaylistPrefetcher.attach(p,
+                fake, this.executor, 2, 8)) {
+            await(() -> pf.isReady(p.songAt(4)) && pf.isReady(p.songAt(0))
+                    && pf.isReady(p.songAt(1)));
+            assertFalse(pf.isReady(p.songAt(2)));
+            assertEquals(3, pf.started());
+        }
+    }
+
+    @Test
+    public void inFlight_isBounded() throws Exception {
+        ObservableMusicPlaylist p = playlist(20);
+        FakeSongResolver fake = new FakeSongResolver(true);
+        try (PlaylistPrefetcher<String> pf = PlaylistPrefetcher.attach(p,
+                fake, this.executor, 7, 2)) {
+            await(() -> fake.running.get() == 2);
+            assertEquals(2, pf.inFlight());
+            for (int i = 0; i < 8; i++) {
+                fake.release(1);
+                Thread.sleep(2);
+            }
+            await(() -> pf.isReady(p.songAt(7)));
+            assertEquals(8, pf.started());
+            assertEquals(2, fake.maxRunning.get());
+            assertEquals(8, fake.calls.size());
+            assertTrue(fake.calls.containsAll(
+                    Arrays.asList("S0", "S3", "S6", "S7")));
+        }
+    }
+
+    @Test
+    public void goToSong_cancelsStaleWork() throws Exception {
+        ObservableMusicPlaylist p = playlist(100);
+        FakeSongResolver fake = new FakeSongResolver(true);
+        try (PlaylistPrefetcher<String> pf = PlaylistPrefetcher.attach(p,
+                fake, this.executor, 2, 3)) {
+            await(() -> fake.running.get() == 3);
+            p.goToSong(50);
+            await(() -> fake.interrupted.get() == 3);
+            await(() -> fake.calls.size() == 6);
+            assertTrue(fake.calls.subList(3, 6).contains("S52"));
+            assertEquals(3, pf.inFlight());
+            fake.release(3);
+            await(() -> pf.isReady(p.songAt(52)));
+            assertFalse(pf.isReady(p.songAt(0)));
+        }
+    }
+
+    @Test
+    public void cancelledWork_countsUntilItReturns() throws Exception {
+        ObservableMusicPlaylist p = playlist(100);
+        Semaphore permits = new Semaphore(0);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        PlaylistPrefetcher.Resolver<String> stubborn = song -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                permits.acquireUninterruptibly();
+                return "stream:" + song.title();
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+        try (PlaylistPrefetcher<String> pf = PlaylistPrefetcher.attach(p,
+                stubborn, this.executor, 1, 2)) {
+            await(() -> running.get() == 2);
+            p.goToSong(50);
+            assertEquals(2, pf.inFlight());
+            Thread.sleep(20);
+            assertEquals(2, pf.started());
+            permits.release(4);
+            await(() -> pf.isReady(p.songAt(50)) && pf.isReady(p.songAt(51)));
+            assertEquals(4, pf.started());
+            assertEquals(2, maxRunning.get());
+        }
+    }
+
+    @Test
+    public void edit_cancelsOnlyStaleWork() throws Exception {
+        ObservableMusicPlaylist p = playlist(10);
+        FakeSongResolver fake = new FakeSongResolver(true);
+        try (PlaylistPrefetcher<String> pf = PlaylistPrefetcher.attach(p,
+                fake, this.executor, 2, 3)) {
+            await(() -> fake.running.get() == 3);
+            p.removeSongAt(1);
+            await(() -> fake.interrupted.get() == 1);
+            await(() -> fake.calls.size() == 4);
+            assertEquals("S3", fake.calls.get(3));
+            fake.release(3);
+            await(() -> pf.isReady(p.songAt(2)) && pf.isReady(p.songAt(0)));
+            assertEquals(4, pf.started());
+        }
+    }
+
+    @Test
+    public void close_cancelsAndDetaches() throws Exception {
+        ObservableMusicPlaylist p = playlist(10);
+        FakeSongResolver fake = new FakeSongResolver(true);
+        PlaylistPrefetcher<String> pf = PlaylistPrefetcher.attach(p,
+                fake, this.executor, 1, 4);
+        await(() -> fake.running.get() == 2);
+        pf.close();
+        await(() -> fake.interrupted.get() == 2);
+        await(() -> pf.inFlight() == 0);
+        p.nextSong();
+        p.goToSong(5);
+        assertEquals(2, pf.started());
+    }
+
+}
@@ -0,0 +1,140 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+public class SharedPlaylistTest {
+
+    /**
+     * Returns a playlist of songs "0" to "n - 1".
+     */
+    private static MusicPlaylist songs(int n) {
+        MusicPlaylist p = new MusicPlaylistOnSequence();
+        for (int i = 0; i < n; i++) {
+            p.addSong(String.valueOf(i));
+        }
+        return p;
+    }
+
+    @Test
+    public void cursors_areIndependent() {
+        SharedPlaylist shared = new SharedPlaylist(songs(4));
+        SharedPlaylist.Cursor a = shared.newCursor();
+        SharedPlaylist.Cursor b = shared.newCursor(2);
+        a.nextSong();
+        b.nextSong();
+        b.nextSong();
+        assertEquals("1", a.getCurrentSong());
+        assertEquals("0", b.getCurrentSong());
+        a.previousSong();
+        a.previousSong();
+        assertEquals("3", a.getCurrentSong());
+        assertEquals(2, shared.cursors());
+    }
+
+    @Test
+    public void cursor_keepsItsSongThroughEdits() {
+        SharedPlaylist shared = new SharedPlaylist(songs(5));
+        SharedPlaylist.Cursor c = shared.newCursor(2);
+        shared.edit(p -> p.insertSongAt("x", 0));
+        shared.edit(p -> p.removeSongAt(4));
+        shared.edit(p -> p.moveSong(3, 0));
+        assertEquals("2", c.getCurrentSong());
+        assertEquals(0, c.currentIndex());
+        shared.edit(p -> p.removeSongAt(0));
+        assertEquals("x", c.getCurrentSong());
+    }
+
+    @Test
+    public void emptyPlaylist_thenInsert() {
+        SharedPlaylist shared = new SharedPlaylist(songs(0));
+        SharedPlaylist.Cursor c = shared.newCursor();
+        assertEquals("No songs in playlist", c.getCurrentSong());
+        assertNull(c.currentSong());
+        shared.edit(p -> p.addSong("a"));
+        shared.edit(p -> p.insertSongAt("b", 0));
+        assertEquals("a", c.getCurrentSong());
+        shared.edit(MusicPlaylist::clear);
+        assertEquals(0, c.currentIndex());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedCursor_cannotBeUsed() {
+        SharedPlaylist shared = new SharedPlaylist(songs(3));
+        SharedPlaylist.Cursor a = shared.newCursor();
+        SharedPlaylist.Cursor b = shared.newCursor();
+        a.close();
+        assertEquals(1, shared.cursors());
+        assertEquals("0", b.getCurrentSong());
+        a.nextSong();
+    }
+
+    @Test
+    public void randomEdits_matchPrivateCopies() {
+        Random rnd = new Random(41);
+        SharedPlaylist shared = new SharedPlaylist(songs(10));
+        List<SharedPlaylist.Cursor> cursors = new ArrayList<>();
+        List<MusicPlaylist> copies = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            cursors.add(shared.newCursor(i));
+            MusicPlaylist copy = songs(10);
+            copy.goToSong(i);
+            copies.add(copy);
+        }
+        // enough edits to empty the log several times
+        for (int step = 0; step < 5 * SharedPlaylist.LOG_LIMIT; step++) {
+            int n = shared.read(MusicPlaylist::length);
+            int op = rnd.nextInt(5);
+            int i = rnd.nextInt(n + 1);
+            int j = rnd.nextInt(n + 1);
+            int k = rnd.nextInt(3);
+            Consumer<MusicPlaylist> edit;
+            if (n == 0 || op == 0 || (op == 1 && n < 5)) {
+                String title = "s" + step;
+                edit = p -> p.insertSongAt(title, i);
+            } else if (op == 1) {
+                edit = p -> p.removeSongAt(i % n);
+            } else if (op == 2) {
+                int count = Math.min(k, n - i);
+                int to = Math.min(j, n - count);
+                edit = p -> p.moveRange(i, count, to);
+            } else if (op == 3 && rnd.nextInt(50) == 0) {
+                edit = p -> p.sort((x, y) -> x.title()
+                        .compareTo(y.title()));
+            } else {
+                // navigation only
+                int c = rnd.nextInt(cursors.size());
+                if (rnd.nextBoolean()) {
+                    cursors.get(c).nextSong();
+                    copies.get(c).nextSong();
+                } else {
+                    cursors.get(c).goToSong(i % n);
+                    copies.get(c).goToSong(i % n);
+                }
+                continue;
+            }
+            shared.edit(edit);
+            for (MusicPlaylist copy : copies) {
+                int before = copy.currentIndex();
+                edit.accept(copy);
+                if (op == 3) {
+                    // bulk changes keep the index, clamped
+                    copy.goToSong(Math.min(before, copy.length() - 1));
+                }
+            }
+            int c = rnd.nextInt(cursors.size());
+            assertEquals(copies.get(c).currentIndex(),
+                    cursors.get(c).currentIndex());
+        }
+        for (int c = 0; c < cursors.size(); c++) {
+            assertEquals(copies.get(c).getCurrentSong(),
+                    cursors.get(c).getCurrentSong());
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+public class SmartPlaylistTest {
+
+    /**
+     * Songs by artist "X".
+     */
+    private static final Predicate<Song> BY_X = s -> s.artist().equals("X");
+
+    /**
+     * Returns a song with the given title and artist.
+     */
+    private static Song song(String title, String artist) {
+        return new Song(0, title, artist, 1000);
+    }
+
+    /**
+     * Returns the titles of {@code p}, in order.
+     */
+    private static String contents(MusicPlaylist p) {
+        List<String> titles = new ArrayList<>();
+        for (Song s : p.window(0, p.length())) {
+            titles.add(s.title());
+        }
+        return titles.toString();
+    }
+
+    /**
+     * Returns a catalog of songs "A" to "F", by "X" and "Y" alternately.
+     */
+    private static ObservableMusicPlaylist catalog() {
+        ObservableMusicPlaylist c = new ObservableMusicPlaylist(
+                new MusicPlaylistOnColumns());
+        String artist = "X";
+        for (char t = 'A'; t <= 'F'; t++) {
+            c.addSong(song(String.valueOf(t), artist));
+            artist = artist.equals("X") ? "Y" : "X";
+        }
+        return c;
+    }
+
+    @Test
+    public void materializes_matchingSongs() {
+        SmartPlaylist smart = new SmartPlaylist(catalog(), BY_X,
+                new MusicPlaylistOnSequence());
+        assertEquals("[A, C, E]", contents(smart.playlist()));
+        assertEquals("A", smart.playlist().getCurrentSong());
+    }
+
+    @Test
+    public void insert_touchesOnlyMatchingPosition() {
+        ObservableMusicPlaylist c = catalog();
+        SmartPlaylist smart = new SmartPlaylist(c, BY_X,
+                new MusicPlaylistOnSequence());
+        smart.playlist().nextSong();
+        c.insertSongAt(song("N", "X"), 2);
+        c.insertSongAt(song("M", "Y"), 0);
+        c.addSong(song("Z", "X"));
+        assertEquals("[A, N, C, E, Z]", contents(smart.playlist()));
+        assertEquals("C", smart.playlist().getCurrentSong());
+    }
+
+    @Test
+    public void remove_keepsCurrentSong() {
+        ObservableMusicPlaylist c = catalog();
+        SmartPlaylist smart = new SmartPlaylist(c, BY_X,
+                new MusicPlaylistOnColumns());
+        smart.playlist().goToSong(2);
+        c.removeSong("A");
+        c.removeSong("B");
+        assertEquals("[C, E]", contents(smart.playlist()));
+        assertEquals("E", smart.playlist().getCurrentSong());
+        c.removeSong("E");
+        assertEquals("C", smart.playlist().getCurrentSong());
+    }
+
+    @Test
+    public void move_movesMatchingBlock() {
+        ObservableMusicPlaylist c = catalog();
+        SmartPlaylist smart = new SmartPlaylist(c, BY_X,
+                new MusicPlaylistOnColumns());
+        smart.playlist().goToSong(1);
+        c.moveRange(0, 3, 3);
+        assertEquals("[E, A, C]", contents(smart.playlist()));
+        assertEquals("C", smart.playlist().getCurrentSong());
+    }
+
+    @Test
+    public void bulkChange_rebuildsAndKeepsCurrent() {
+        ObservableMusicPlaylist c = catalog();
+        SmartPlaylist smart = new SmartPlaylist(c, BY_X,
+                new MusicPlaylistOnSequence());
+        smart.playlist().goToSong(1);
+        c.sort(Comparator.comparing(Song::title).reversed());
+        assertEquals("[E, C, A]", contents(smart.playlist()));
+        assertEquals("C", smart.playlist().getCurrentSong());
+        c.clear();
+        assertEquals(0, smart.playlist().length());
+    }
+
+    @Test
+    public void bulkChange_movesToNextMatchingSong() {
+        ObservableMusicPlaylist c = catalog();
+        SmartPlaylist smart = new SmartPlaylist(c, BY_X,
+                new MusicPlaylistOnColumns());
+        smart.playlist().goToSong(1);
+        c.removeIf(s -> s.title().equals("C"));
+        assertEquals("[A, E]", contents(smart.playlist()));
+        assertEquals("E", smart.playlist().getCurrentSong());
+        c.removeIf(s -> s.title().compareTo("D") > 0);
+        assertEquals("[A]", contents(smart.playlist()));
+        assertEquals("A", smart.playlist().getCurrentSong());
+    }
+
+    @Test
+    public void close_stopsFollowing() {
+        ObservableMusicPlaylist c = catalog();
+        SmartPlaylist smart = new SmartPlaylist(c, BY_X,
+                new MusicPlaylistOnSequence());
+        smart.close();
+        c.addSong(song("Z", "X"));
+        assertEquals("[A, C, E]", contents(smart.playlist()));
+    }
+
+    @Test
+    public void randomEdits_matchFullRebuild() {
+        Random rnd = new Random(36);
+        ObservableMusicPlaylist c = new ObservableMusicPlaylist(
+                new MusicPlaylistOnColumns());
+        SmartPlaylist smart = new SmartPlaylist(c, BY_X,
+                new MusicPlaylistOnColumns());
+        for (int step = 0; step < 2000; step++) {
+            int n = c.length();
+            int op = rnd.nextInt(4);
+            if (n == 0 || op <= 1) {
+                String artist = rnd.nextBoolean() ? "X" : "Y";
+                c.insertSongAt(song("S" + step, artist), rnd.nextInt(n + 1));
+            } else if (op == 2) {
+                c.removeSongAt(rnd.nextInt(n));
+            } else {
+                int from = rnd.nextInt(n);
+                int count = rnd.nextInt(n - from + 1);
+                c.moveRange(from, count, rnd.nextInt(n - count + 1));
+            }
+            if (smart.playlist().length() > 0) {
+                smart.playlist().goToSong(
+                        rnd.nextInt(smart.playlist().length()));
+            }
+        }
+        MusicPlaylist expected = new MusicPlaylistOnSequence();
+        expected.copyFrom(c);
+        expected.removeIf(BY_X.negate());
+        assertEquals(contents(expected), contents(smart.playlist()));
+    }
+
+}
@@ -1,28 +1,42 @@
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
 public class MusicPlaylistSecondaryTest {
 
+    /**
+     * Invokes the constructor of the implementation under test.
+     *
+     * @return the new, empty playlist
+     */
+    protected MusicPlaylist constructorTest() {
+        return new MusicPlaylistOnSequence();
+    }
+
     // previousSong tests
 
     @Test
     public void previousSong_empty() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.previousSong();
         assertEquals("No songs in playlist", p.getCurrentSong());
     }
 
     @Test
     public void previousSong_single() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.previousSong();
         assertEquals("A", p.getCurrentSong());
@@ -30,7 +44,7 @@ public class MusicPlaylistSecondaryTest {
 
     @Test
     public void previousSong_multi() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         p.addSong("C");
@@ -39,18 +53,92 @@ public class MusicPlaylistSecondaryTest {
         assertEquals("C", p.getCurrentSong());
     }
 
+    @Test
+    public void previousSong_followsJumps() {
+        MusicPlaylist p = this.constructorTest();
+        for (int i = 0; i < 10; i++) {
+            p.addSong("S" + i);
+        }
+        p.goToSong(7);
+        p.goToSong(2);
+        p.nextSong();
+        p.previousSong();
+        assertEquals("S2", p.getCurrentSong());
+        p.previousSong();
+        assertEquals("S7", p.getCurrentSong());
+        p.previousSong();
+        assertEquals("S0", p.getCurrentSong());
+        // history used up: step back one position
+        p.previousSong();
+        assertEquals("S9", p.getCurrentSong());
+    }
+
+    @Test
+    public void previousSong_historyFollowsEdits() {
+        MusicPlaylist p = this.constructorTest();
+        for (int i = 0; i < 10; i++) {
+            p.addSong("S" + i);
+        }
+        p.goToSong(3);
+        p.goToSong(6);
+        p.goToSong(8);
+        p.insertSongAt("New", 0);
+        p.removeSong("S6");
+        p.moveSong(4, 9);
+        p.previousSong();
+        assertEquals("S3", p.getCurrentSong());
+        p.previousSong();
+        assertEquals("S0", p.getCurrentSong());
+    }
+
+    @Test
+    public void previousSong_boundedHistory() {
+        MusicPlaylist p = this.constructorTest();
+        for (int i = 0; i < 1000; i++) {
+            p.addSong("S" + i);
+        }
+        for (int i = 0; i < 999; i++) {
+            p.nextSong();
+        }
+        for (int i = 0; i < PlayHistory.DEFAULT_CAPACITY; i++) {
+            p.previousSong();
+        }
+        int expected = 999 - PlayHistory.DEFAULT_CAPACITY;
+        assertEquals("S" + expected, p.getCurrentSong());
+        p.previousSong();
+        assertEquals("S" + (expected - 1), p.getCurrentSong());
+    }
+
+    @Test
+    public void previousSong_afterShuffle() {
+        MusicPlaylist p = this.constructorTest();
+        for (int i = 0; i < 20; i++) {
+            p.addSong("S" + i);
+        }
+        p.goToSong(5);
+        p.shuffle();
+        // shuffling clears the history, so stepping back wraps around
+        p.previousSong();
+        assertEquals(p.songAt(19).title(), p.getCurrentSong());
+        p.goToSong(13);
+        p.previousSong();
+        assertEquals(p.songAt(19).title(), p.getCurrentSong());
+        p.previousSong();
+        assertEquals(p.songAt(18).title(), p.getCurrentSong());
+    }
+
     // shuffle tests
 
     @Test
     public void shuffle_empty() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.shuffle();
         assertEquals(0, p.length());
     }
 
     @Test
     public void shuffle_single() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.shuffle();
         assertEquals(1, p.length());
@@ -59,7 +147,7 @@ public class MusicPlaylistSecondaryTest {
 
     @Test
     public void shuffle_multisong_preservesContents() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         p.addSong("C");
@@ -84,20 +172,20 @@ public class MusicPlaylistSecondaryTest {
 
     @Test
     public void contains_null() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         assertFalse(p.contains(null));
     }
 
     @Test
     public void contains_empty() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         assertFalse(p.contains("A"));
     }
 
     @Test
     public void contains_presentAndAbsent() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("X");
         p.addSong("Y");
         assertTrue(p.contains("Y"));
@@ -108,7 +196,7 @@ public class MusicPlaylistSecondaryTest {
 
     @Test
     public void displayPlaylist_empty() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         PrintStream orig = System.out;
         System.setOut(new PrintStream(out));
@@ -120,7 +208,7 @@ public class MusicPlaylistSecondaryTest {
 
     @Test
     public void displayPlaylist_twoSongs_currentFirst() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -135,7 +223,7 @@ public class MusicPlaylistSecondaryTest {
 
     @Test
     public void displayPlaylist_afterAdvance() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
         p.nextSong(); // current = B
@@ -153,23 +241,608 @@ public class MusicPlaylistSecondaryTest {
 
     @Test
     public void length_empty() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         assertEquals(0, p.length());
     }
 
     @Test
     public void length_single() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         assertEquals(1, p.length());
     }
 
     @Test
     public void length_multi() {
-        MusicPlaylist p = new MusicPlaylistOnSequence();
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.addSong("C");
+        assertEquals(3, p.length());
+    }
+
+    // searchPrefix tests
+
+    @Test
+    public void searchPrefix_ignoresCase() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("Hey Jude");
+        p.addSong("Help!");
+        p.addSong("Yesterday");
+        p.addSong("hey there");
+        assertArrayEquals(new int[] { 0, 3 }, p.searchPrefix("HEY"));
+        assertArrayEquals(new int[] { 0, 1, 3 }, p.searchPrefix("he"));
+        assertArrayEquals(new int[0], p.searchPrefix("Hex"));
+    }
+
+    @Test
+    public void searchPrefix_followsEdits() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("Help!");
+        p.addSong("Yesterday");
+        p.addSong("Help!");
+        p.insertSongAt("Let It Be", 0);
+        assertArrayEquals(new int[] { 1, 3 }, p.searchPrefix("help"));
+        p.removeSongAt(1);
+        assertArrayEquals(new int[] { 2 }, p.searchPrefix("help"));
+        p.moveSong(2, 0);
+        assertArrayEquals(new int[] { 0 }, p.searchPrefix("help"));
+        p.removeSong("Help!");
+        assertArrayEquals(new int[0], p.searchPrefix("help"));
+    }
+
+    @Test
+    public void searchPrefix_followsBulkEdits() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("Help!");
+        p.addSong("Yesterday");
+        p.addSong("Let It Be");
+        p.addSong("Help!");
+        assertArrayEquals(new int[] { 0, 3 }, p.searchPrefix("help"));
+        p.sort(Comparator.comparing(Song::title));
+        assertArrayEquals(new int[] { 0, 1 }, p.searchPrefix("help"));
+        p.distinct();
+        assertArrayEquals(new int[] { 0 }, p.searchPrefix("help"));
+        assertArrayEquals(new int[] { 2 }, p.searchContaining("terd"));
+        p.removeIf(s -> s.title().startsWith("Help"));
+        assertArrayEquals(new int[0], p.searchPrefix("help"));
+        assertArrayEquals(new int[] { 0 }, p.searchPrefix("let"));
+    }
+
+    @Test
+    public void searchPrefix_afterRemovingBranches() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("Rain");
+        p.addSong("Rainbow");
+        p.addSong("Rainy Day");
+        assertArrayEquals(new int[] { 0, 1, 2 }, p.searchPrefix("rain"));
+        p.removeSong("Rain");
+        p.removeSong("Rainy Day");
+        assertArrayEquals(new int[] { 0 }, p.searchPrefix("rai"));
+        assertArrayEquals(new int[] { 0 }, p.searchPrefix("rainb"));
+        assertArrayEquals(new int[] { 0 }, p.searchPrefix("rainbow"));
+        assertArrayEquals(new int[0], p.searchPrefix("rainy"));
+        assertArrayEquals(new int[0], p.searchPrefix("rainbows"));
+        p.addSong("Rain");
+        assertArrayEquals(new int[] { 0, 1 }, p.searchPrefix("rain"));
+        assertArrayEquals(new int[] { 0 }, p.searchPrefix("rainbow"));
+    }
+
+    // searchContaining tests
+
+    @Test
+    public void searchContaining_substring() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("Smoke on the Water");
+        p.addSong("Back in Black");
+        p.addSong("Waterloo");
+        assertArrayEquals(new int[] { 0, 2 }, p.searchContaining("water"));
+        assertArrayEquals(new int[] { 1 }, p.searchContaining("in"));
+        assertArrayEquals(new int[0], p.searchContaining("fire"));
+    }
+
+    // searchSimilar tests
+
+    @Test
+    public void searchSimilar_toleratesTypo() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("Bohemian Rhapsody");
+        p.addSong("Imagine");
+        p.addSong("Bohemian Rapsody");
+        assertArrayEquals(new int[] { 0, 2 },
+                p.searchSimilar("bohemian rhapsody"));
+        assertArrayEquals(new int[] { 1 }, p.searchSimilar("Imagin"));
+    }
+
+    @Test
+    public void search_matchesScanUnderChurn() {
+        MusicPlaylist p = this.constructorTest();
+        Random rnd = new Random(27);
+        String[] words = { "rain", "rainbow", "brain", "train", "stone",
+            "stones", "99", "9", "go", "ago" };
+        for (int step = 0; step < 2000; step++) {
+            if (p.length() > 0 && rnd.nextInt(5) < 2) {
+                p.removeSongAt(rnd.nextInt(p.length()));
+            } else {
+                String title = words[rnd.nextInt(words.length)] + " "
+                        + words[rnd.nextInt(words.length)];
+                p.insertSongAt(title, rnd.nextInt(p.length() + 1));
+            }
+            String query = words[rnd.nextInt(words.length)];
+            List<Integer> containing = new ArrayList<>();
+            List<Integer> similar = new ArrayList<>();
+            for (int i = 0; i < p.length(); i++) {
+                String title = SongSearchIndex.normalize(p.titleAt(i));
+                if (title.contains(query)) {
+                    containing.add(i);
+                }
+                if (SongSearchIndex.isSimilar(title, query + " " + query)) {
+                    similar.add(i);
+                }
+            }
+            assertArrayEquals(
+                    containing.stream().mapToInt(Integer::intValue)
+                            .toArray(),
+                    p.searchContaining(query));
+            assertArrayEquals(
+                    similar.stream().mapToInt(Integer::intValue).toArray(),
+                    p.searchSimilar(query + " " + query));
+        }
+    }
+
+    // indexOfId tests
+
+    @Test
+    public void indexOfId_presentAndAbsent() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong(new Song(10, "A", "X", 0));
+        p.addSong(new Song(20, "B", "X", 0));
+        p.addSong(new Song(20, "C", "X", 0));
+        assertEquals(1, p.indexOfId(20));
+        assertEquals(-1, p.indexOfId(30));
+    }
+
+    // shuffle metadata test
+
+    @Test
+    public void shuffle_keepsMetadata() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong(new Song(1, "A", "X", 1000));
+        p.addSong(new Song(2, "B", "Y", 2000));
+        p.shuffle();
+        assertEquals(2000, p.songAt(p.indexOfId(2)).durationMillis());
+        assertEquals("X", p.songAt(p.indexOfId(1)).artist());
+    }
+
+    // duration tests
+
+    @Test
+    public void totalDuration_empty() {
+        MusicPlaylist p = this.constructorTest();
+        assertEquals(0, p.totalDuration());
+        assertEquals(0, p.timeRemainingFromCurrent());
+    }
+
+    @Test
+    public void totalDuration_followsEdits() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A", 1000);
+        p.addSong("B", 2000);
+        p.addSong("C", 3000);
+        assertEquals(6000, p.totalDuration());
+        p.insertSongAt(new Song(0, "D", "", 500), 1);
+        p.removeSongAt(2);
+        p.moveSong(0, 2);
+        assertEquals(4500, p.totalDuration());
+    }
+
+    @Test
+    public void timeRemainingFromCurrent_afterAdvance() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A", 1000);
+        p.addSong("B", 2000);
+        p.addSong("C", 3000);
+        assertEquals(6000, p.timeRemainingFromCurrent());
+        p.nextSong();
+        assertEquals(5000, p.timeRemainingFromCurrent());
+        p.nextSong();
+        assertEquals(3000, p.timeRemainingFromCurrent());
+    }
+
+    @Test
+    public void goToTime_boundaries() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A", 1000);
+        p.addSong("B", 0);
+        p.addSong("C", 2000);
+        p.addSong("D", 3000);
+        p.goToTime(0);
+        assertEquals("A", p.getCurrentSong());
+        p.goToTime(999);
+        assertEquals("A", p.getCurrentSong());
+        p.goToTime(1000);
+        assertEquals("C", p.getCurrentSong());
+        p.goToTime(3000);
+        assertEquals("D", p.getCurrentSong());
+        p.goToTime(5999);
+        assertEquals("D", p.getCurrentSong());
+    }
+
+    @Test
+    public void goToTime_manySongs() {
+        MusicPlaylist p = this.constructorTest();
+        for (int i = 0; i < 100; i++) {
+            p.addSong("S" + i, 1000);
+        }
+        p.removeSongAt(10);
+        p.insertSongAt(new Song(0, "X", "", 5000), 50);
+        p.goToTime(49500);
+        assertEquals("S50", p.getCurrentSong());
+        p.goToTime(50000 + 4999);
+        assertEquals("X", p.getCurrentSong());
+        p.goToTime(50000 + 5000);
+        assertEquals("S51", p.getCurrentSong());
+        assertEquals(104000 - 55000, p.timeRemainingFromCurrent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void goToTime_pastEnd() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A", 1000);
+        p.goToTime(1000);
+    }
+
+    // distinct tests
+
+    @Test
+    public void distinct_keepsFirstCopies() {
+        MusicPlaylist p = this.constructorTest();
         p.addSong("A");
         p.addSong("B");
+        p.addSong("A");
         p.addSong("C");
+        p.addSong("B");
+        p.goToSong(4); // second B
+        assertEquals(2, p.distinct());
         assertEquals(3, p.length());
+        assertEquals("B", p.getCurrentSong());
+        assertEquals(1, p.currentIndex());
+        assertEquals("C", p.titleAt(2));
+    }
+
+    @Test
+    public void distinct_metadataMatters() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong(new Song(1, "A", "X", 0));
+        p.addSong(new Song(2, "A", "Y", 0));
+        assertEquals(0, p.distinct());
+        assertEquals(2, p.length());
+    }
+
+    // sort tests
+
+    @Test
+    public void sort_byTitleKeepsCurrent() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("C");
+        p.addSong("A");
+        p.addSong("B");
+        p.goToSong(2); // B
+        p.sort(Comparator.comparing(Song::title));
+        assertEquals("A", p.titleAt(0));
+        assertEquals("C", p.titleAt(2));
+        assertEquals("B", p.getCurrentSong());
+        assertEquals(1, p.currentIndex());
+    }
+
+    @Test
+    public void sort_isStableAndTracksEqualCurrent() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong(new Song(1, "B", "", 0));
+        p.addSong(new Song(2, "A", "", 0));
+        p.addSong(new Song(3, "B", "", 0));
+        p.addSong(new Song(2, "A", "", 0));
+        p.goToSong(3); // second (equal) copy of A
+        p.sort(Comparator.comparing(Song::title));
+        assertEquals(1, p.songAt(2).id());
+        assertEquals(3, p.songAt(3).id());
+        assertEquals(1, p.currentIndex());
+    }
+
+    @Test
+    public void sort_large() {
+        MusicPlaylist p = this.constructorTest();
+        int n = 20000;
+        for (int i = 0; i < n; i++) {
+            p.addSong(new Song(i, "S" + (i * 7919 % n), "", 0));
+        }
+        p.goToSong(123);
+        long currentId = p.songAt(123).id();
+        p.sort(Comparator.comparing(Song::title));
+        assertEquals(n, p.length());
+        assertEquals(currentId, p.songAt(p.currentIndex()).id());
+        p.goToSong(0);
+        String previous = p.getCurrentSong();
+        for (int i = 1; i < n; i++) {
+            p.nextSong();
+            assertTrue(previous.compareTo(p.getCurrentSong()) <= 0);
+            previous = p.getCurrentSong();
+        }
+    }
+
+    // removeIf tests
+
+    @Test
+    public void removeIf_currentRemovedMovesToNext() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A", 1000);
+        p.addSong("B", 5000);
+        p.addSong("C", 1000);
+        p.addSong("D", 5000);
+        p.goToSong(2); // C
+        assertEquals(2, p.removeIf(s -> s.durationMillis() < 2000));
+        assertEquals(2, p.length());
+        assertEquals("D", p.getCurrentSong());
+        assertEquals(10000, p.totalDuration());
+    }
+
+    @Test
+    public void removeIf_currentLastRemovedWraps() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.goToSong(1);
+        assertEquals(1, p.removeIf(s -> s.title().equals("B")));
+        assertEquals("A", p.getCurrentSong());
+    }
+
+    @Test
+    public void removeIf_large() {
+        MusicPlaylist p = this.constructorTest();
+        int n = 40000;
+        for (int i = 0; i < n; i++) {
+            p.addSong(new Song(i, "S" + i, "", 0));
+        }
+        p.goToSong(1001);
+        assertEquals(n / 2, p.removeIf(s -> s.id() % 2 == 1));
+        assertEquals(n / 2, p.length());
+        assertEquals(1002, p.songAt(p.currentIndex()).id());
+        assertEquals(-1, p.indexOfId(1001));
+    }
+
+    // mergeFrom tests
+
+    @Test
+    public void mergeFrom_appendsAndKeepsSources() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.nextSong();
+        MusicPlaylist q = this.constructorTest();
+        q.addSong("C");
+        MusicPlaylist r = new MusicPlaylistOnSequence();
+        r.addSong("D");
+        r.addSong("E");
+        p.mergeFrom(q, r);
+        assertEquals(5, p.length());
+        assertEquals("B", p.getCurrentSong());
+        assertEquals("C", p.titleAt(2));
+        assertEquals("E", p.titleAt(4));
+        assertEquals(1, q.length());
+        assertEquals(2, r.length());
+    }
+
+    @Test
+    public void mergeFrom_self() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.mergeFrom(p);
+        assertEquals(4, p.length());
+        assertEquals("A", p.titleAt(2));
+        assertEquals(1, p.searchPrefix("b")[0]);
+        assertEquals(3, p.searchPrefix("b")[1]);
+    }
+
+    // copyFrom tests
+
+    @Test
+    public void copyFrom_sameImplementation() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong(new Song(1, "A", "X", 1000));
+        p.addSong(new Song(2, "B", "Y", 2000));
+        p.nextSong();
+        MusicPlaylist q = this.constructorTest();
+        q.addSong("Z");
+        q.copyFrom(p);
+        assertEquals(p, q);
+        assertEquals(2, p.length());
+        assertEquals("B", q.getCurrentSong());
+        assertEquals(3000, q.totalDuration());
+        assertEquals(1, q.searchPrefix("b")[0]);
+        q.addSong("C");
+        assertEquals(2, p.length());
+    }
+
+    @Test
+    public void copyFrom_otherImplementations() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong(new Song(1, "A", "X", 1000));
+        p.addSong(new Song(2, "B", "Y", 2000));
+        p.nextSong();
+        MusicPlaylist[] targets = { new MusicPlaylistOnSequence(),
+                new MusicPlaylistOnColumns() };
+        for (MusicPlaylist q : targets) {
+            q.copyFrom(p);
+            assertEquals(2, q.length());
+            assertEquals(new Song(2, "B", "Y", 2000), q.songAt(1));
+            assertEquals(1, q.currentIndex());
+            assertEquals(2000, q.timeRemainingFromCurrent());
+        }
+    }
+
+    @Test
+    public void transferFrom_otherImplementation() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A", 1000);
+        p.addSong("B", 2000);
+        p.nextSong();
+        MusicPlaylist q = new MusicPlaylistOnColumns();
+        if (p instanceof MusicPlaylistOnColumns) {
+            q = new MusicPlaylistOnSequence();
+        }
+        q.transferFrom(p);
+        assertEquals(0, p.length());
+        assertEquals("No songs in playlist", p.getCurrentSong());
+        assertEquals("B", q.getCurrentSong());
+        assertEquals(3000, q.totalDuration());
+        p.transferFrom(q);
+        assertEquals(0, q.length());
+        assertEquals("B", p.getCurrentSong());
+    }
+
+    // window tests
+
+    @Test
+    public void window_middle() {
+        MusicPlaylist p = this.constructorTest();
+        for (int i = 0; i < 10; i++) {
+            p.addSong("S" + i);
+        }
+        p.goToSong(4);
+        PlaylistWindow w = p.window(3, 4);
+        assertEquals(3, w.from());
+        assertEquals(4, w.size());
+        assertEquals("S3", w.get(0).title());
+        assertEquals("S6", w.get(3).title());
+        assertEquals(1, w.currentOffset());
+        StringBuilder titles = new StringBuilder();
+        for (Song s : w) {
+            titles.append(s.title());
+        }
+        assertEquals("S3S4S5S6", titles.toString());
+        assertEquals(10, p.length());
+        assertEquals("S4", p.getCurrentSong());
+    }
+
+    @Test
+    public void window_clippedAtEnd() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.addSong("C");
+        assertEquals(1, p.window(2, 50).size());
+        assertEquals(0, p.window(3, 50).size());
+        assertEquals(-1, p.window(1, 2).currentOffset());
+    }
+
+    @Test
+    public void window_isLive() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.addSong("C");
+        PlaylistWindow w = p.window(1, 5);
+        p.insertSongAt("Z", 1);
+        assertEquals(3, w.size());
+        assertEquals("Z", w.get(0).title());
+        p.removeSongAt(3);
+        p.removeSongAt(2);
+        assertEquals(1, w.size());
+        assertEquals(new Song("Z"), w.get(0));
+    }
+
+    @Test
+    public void window_pagesInAnyOrder() {
+        MusicPlaylist p = this.constructorTest();
+        for (int i = 0; i < 10; i++) {
+            p.addSong("S" + i);
+        }
+        assertEquals("[S2, S3, S4]", p.window(2, 3).toString());
+        assertEquals("[S3, S4]", p.window(3, 2).toString());
+        assertEquals("[S4, S5, S6]", p.window(4, 3).toString());
+        assertEquals("[S8, S9]", p.window(8, 5).toString());
+        assertEquals("[S0, S1]", p.window(0, 2).toString());
+        p.moveSong(9, 1);
+        assertEquals("[S9, S1]", p.window(1, 2).toString());
+        p.removeSongAt(2);
+        assertEquals("[S9, S2]", p.window(1, 2).toString());
+    }
+
+    @Test
+    public void songsInRange_returnsOwnCopy() {
+        MusicPlaylist p = this.constructorTest();
+        for (int i = 0; i < 5; i++) {
+            p.addSong("S" + i);
+        }
+        Song[] read = p.songsInRange(1, 3);
+        assertEquals("S1", read[0].title());
+        assertEquals("S3", read[2].title());
+        read[0] = new Song("X");
+        assertEquals("S1", p.songsInRange(1, 2)[0].title());
+        assertEquals(0, p.songsInRange(5, 0).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void songsInRange_outside() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.songsInRange(0, 2);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void window_isReadOnly() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.window(0, 1).set(0, new Song("B"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void window_getOutside() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.addSong("B");
+        p.window(0, 1).get(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void window_startPastEnd() {
+        MusicPlaylist p = this.constructorTest();
+        p.addSong("A");
+        p.window(2, 1);
+    }
+
+    @Test
+    public void windowAroundCurrent_centeredAndShifted() {
+        MusicPlaylist p = this.constructorTest();
+        for (int i = 0; i < 100; i++) {
+            p.addSong("S" + i);
+        }
+        p.goToSong(50);
+        PlaylistWindow w = p.windowAroundCurrent(10);
+        assertEquals(45, w.from());
+        assertEquals(5, w.currentOffset());
+        p.goToSong(2);
+        w = p.windowAroundCurrent(10);
+        assertEquals(0, w.from());
+        assertEquals(2, w.currentOffset());
+        p.goToSong(98);
+        w = p.windowAroundCurrent(10);
+        assertEquals(90, w.from());
+        assertEquals(10, w.size());
+        assertEquals(8, w.currentOffset());
+    }
+
+    @Test
+    public void windowAroundCurrent_shortPlaylist() {
+        MusicPlaylist p = this.constructorTest();
+        assertEquals(0, p.windowAroundCurrent(10).size());
+        p.addSong("A");
+        p.addSong("B");
+        p.nextSong();
+        PlaylistWindow w = p.windowAroundCurrent(10);
+        assertEquals(0, w.from());
+        assertEquals(2, w.size());
+        assertEquals(1, w.currentOffset());
     }
 }